@@ -142,8 +142,11 @@ public final class RodaConstants {
   public static final String CORE_CROSSWALKS_FOLDER = "crosswalks";
   public static final String CORE_ORCHESTRATOR_FOLDER = "orchestrator";
   public static final String CORE_JOBREPORT_FOLDER = "jobreport";
+  public static final String CORE_JOBREPORT_LOG_FOLDER = "jobreport-log";
+  public static final String CORE_FIXITY_AUDIT_FOLDER = "fixity-audit";
   public static final String CORE_JOB_FOLDER = "job";
   public static final String CORE_TRANSFERREDRESOURCE_FOLDER = "transferredresource";
+  public static final String CORE_TRANSFERREDRESOURCE_SNAPSHOT_FILE = "transferredresource-snapshot.gz";
   public static final String CORE_MEMBERS_FOLDER = "members";
   public static final String CORE_ACTIONLOG_FOLDER = "actionlog";
   public static final String CORE_PRESERVATIONEVENT_FOLDER = "preservationevent";
@@ -760,6 +763,7 @@ public final class RodaConstants {
   public static final String PLUGIN_PARAMS_BOOLEAN_VALUE = "parameter.boolean_value";
   public static final String PLUGIN_PARAMS_CLEAR_INDEXES = "parameter.clear_indexes";
   public static final String PLUGIN_PARAMS_OPTIMIZE_INDEXES = "parameter.optimize_indexes";
+  public static final String PLUGIN_PARAMS_SHADOW_INDEXES = "parameter.shadow_indexes";
   public static final String PLUGIN_PARAMS_OBJECT_CLASS = "parameter.object_class";
   public static final String PLUGIN_PARAMS_CLASS_CANONICAL_NAME = "parameter.class_canonical_name";
   public static final String PLUGIN_PARAMS_SIP_TO_AIP_CLASS = "parameter.sip_to_aip_class";
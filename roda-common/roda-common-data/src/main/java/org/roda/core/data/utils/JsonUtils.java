@@ -9,17 +9,19 @@ package org.roda.core.data.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
-import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadataMixIn;
@@ -27,16 +29,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 
+/**
+ * JSON (de)serialization helpers.
+ *
+ * All of them use shared, pre-configured object mappers (and the readers and
+ * writers created from them, cached per class and mixin), which are
+ * thread-safe, instead of creating a new mapper per call.
+ */
 public final class JsonUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(JsonUtils.class);
   private static final String JSON_ERROR_MESSAGE = "Error while parsing JSON";
 
+  private static final ObjectMapper MAPPER = new ObjectMapper(new JsonFactory());
+  private static final ObjectMapper DESCRIPTIVE_METADATA_MIXIN_MAPPER = new ObjectMapper(new JsonFactory())
+    .addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
+
+  private static final ObjectWriter WRITER = MAPPER.writer();
+  private static final ObjectWriter DESCRIPTIVE_METADATA_MIXIN_WRITER = DESCRIPTIVE_METADATA_MIXIN_MAPPER.writer();
+  private static final ObjectReader MAP_READER = MAPPER.readerFor(new TypeReference<Map<String, String>>() {});
+
+  private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+  private static final Map<Class<?>, ObjectReader> LIST_READERS = new ConcurrentHashMap<>();
+  private static final Map<List<Object>, ObjectWriter> MIXIN_WRITERS = new ConcurrentHashMap<>();
+
   private JsonUtils() {
     // do nothing
   }
@@ -51,9 +75,9 @@ public final class JsonUtils {
 
   public static void writeObjectToFile(Object object, Path file) throws GenericException {
     try {
-      String json = getJsonFromObject(object);
+      byte[] json = getJsonBytesFromObject(object, null);
       if (json != null) {
-        Files.write(file, json.getBytes(), StandardOpenOption.CREATE);
+        Files.write(file, json, StandardOpenOption.CREATE);
       }
     } catch (IOException e) {
       throw new GenericException("Error writing object, as json, to file", e);
@@ -69,11 +93,21 @@ public final class JsonUtils {
     }
   }
 
+  /**
+   * Writes the object, as json, directly to the stream (which is not closed)
+   */
+  public static void writeObjectToStream(Object object, OutputStream stream) throws IOException {
+    writeObjectToStream(object, null, stream);
+  }
+
+  public static void writeObjectToStream(Object object, Class<?> mixin, OutputStream stream) throws IOException {
+    getWriter(object, mixin).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(stream, object);
+  }
+
   public static Map<String, String> getMapFromJson(String json) {
     Map<String, String> ret = new HashMap<>();
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      ret = mapper.readValue(json, new TypeReference<Map<String, String>>() {});
+      ret = MAP_READER.readValue(json);
     } catch (IOException e) {
       LOGGER.error("Error transforming json string to Map<String,String>", e);
     }
@@ -87,66 +121,79 @@ public final class JsonUtils {
   public static String getJsonFromObject(Object object, Class<?> mixin) {
     String ret = null;
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      mapper = addMixinsToMapper(mapper, object, mixin);
-      ret = mapper.writeValueAsString(object);
+      ret = getWriter(object, mixin).writeValueAsString(object);
     } catch (IOException e) {
       LOGGER.error("Error transforming object '{}' to json string", object, e);
     }
     return ret;
   }
 
-  private static ObjectMapper addMixinsToMapper(ObjectMapper mapper, Object object, Class<?> mixin) {
-    if (!(object instanceof DescriptiveMetadata)) {
-      if (object instanceof List<?>) {
-        List<?> objectList = (List<?>) object;
-        if (!objectList.isEmpty() && !(objectList.get(0) instanceof DescriptiveMetadata)) {
-          mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
-        }
-      } else {
+  /**
+   * @return the object as UTF-8 encoded json, or null if an error occurs
+   */
+  public static byte[] getJsonBytesFromObject(Object object, Class<?> mixin) {
+    byte[] ret = null;
+    try {
+      ret = getWriter(object, mixin).writeValueAsBytes(object);
+    } catch (IOException e) {
+      LOGGER.error("Error transforming object '{}' to json", object, e);
+    }
+    return ret;
+  }
+
+  private static ObjectWriter getWriter(Object object, Class<?> mixin) {
+    boolean descriptiveMetadataMixin = needsDescriptiveMetadataMixin(object);
+    if (mixin == null || object == null) {
+      return descriptiveMetadataMixin ? DESCRIPTIVE_METADATA_MIXIN_WRITER : WRITER;
+    }
+
+    Class<?> objectClass = object.getClass();
+    return MIXIN_WRITERS.computeIfAbsent(Arrays.asList(descriptiveMetadataMixin, objectClass, mixin), key -> {
+      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
+      if (descriptiveMetadataMixin) {
         mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
       }
-    }
+      mapper.addMixIn(objectClass, mixin);
+      return mapper.writer();
+    });
+  }
 
-    if (mixin != null) {
-      mapper.addMixIn(object.getClass(), mixin);
+  private static boolean needsDescriptiveMetadataMixin(Object object) {
+    if (object instanceof DescriptiveMetadata) {
+      return false;
+    } else if (object instanceof List<?>) {
+      List<?> objectList = (List<?>) object;
+      return !objectList.isEmpty() && !(objectList.get(0) instanceof DescriptiveMetadata);
+    } else {
+      return true;
     }
+  }
 
-    return mapper;
+  private static ObjectReader getReader(Class<?> objectClass) {
+    return READERS.computeIfAbsent(objectClass, MAPPER::readerFor);
   }
 
   public static <T> T getObjectFromJson(Path json, Class<T> objectClass) throws GenericException {
-    T ret;
-    InputStream stream = null;
-    try {
-      stream = Files.newInputStream(json);
-      String jsonString = IOUtils.toString(stream, RodaConstants.DEFAULT_ENCODING);
-      ret = getObjectFromJson(jsonString, objectClass);
+    try (InputStream stream = Files.newInputStream(json)) {
+      return getReader(objectClass).readValue(stream);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
-    } finally {
-      IOUtils.closeQuietly(stream);
     }
-    return ret;
   }
 
   public static <T> T getObjectFromJson(InputStream json, Class<T> objectClass) throws GenericException {
-    T ret;
     try {
-      String jsonString = IOUtils.toString(json, RodaConstants.DEFAULT_ENCODING);
-      ret = getObjectFromJson(jsonString, objectClass);
+      return getReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(e);
     } finally {
       IOUtils.closeQuietly(json);
     }
-    return ret;
   }
 
   public static <T> T getObjectFromJson(String json, Class<T> objectClass) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readValue(json, objectClass);
+      return getReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
@@ -154,9 +201,9 @@ public final class JsonUtils {
 
   public static <T> List<T> getListFromJson(String json, Class<T> objectClass) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      TypeFactory t = TypeFactory.defaultInstance();
-      return mapper.readValue(json, t.constructCollectionType(ArrayList.class, objectClass));
+      ObjectReader reader = LIST_READERS.computeIfAbsent(objectClass,
+        c -> MAPPER.readerFor(TypeFactory.defaultInstance().constructCollectionType(ArrayList.class, c)));
+      return reader.readValue(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
@@ -164,8 +211,7 @@ public final class JsonUtils {
 
   public static JsonNode parseJson(String json) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readTree(json);
+      return MAPPER.readTree(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
@@ -173,8 +219,7 @@ public final class JsonUtils {
 
   public static JsonNode parseJson(InputStream json) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readTree(json);
+      return MAPPER.readTree(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     } finally {
@@ -185,8 +230,7 @@ public final class JsonUtils {
   public static String getJsonFromNode(JsonNode node) {
     String ret = null;
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      ret = mapper.writeValueAsString(node);
+      ret = WRITER.writeValueAsString(node);
     } catch (IOException e) {
       LOGGER.error("Error transforming object '{}' to json string", node, e);
     }
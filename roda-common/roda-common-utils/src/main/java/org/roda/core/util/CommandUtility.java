@@ -7,30 +7,37 @@
  */
 package org.roda.core.util;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.List;
 
-import org.apache.commons.io.IOUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 /**
  * System command utility.
  * 
+ * Commands are executed by a shared {@link ProcessExecutor}, that limits the
+ * number of processes running at the same time.
+ * 
  * @author Rui Castro
  * @author Luis Faria
  */
 public class CommandUtility {
-  private static final Logger LOGGER = LoggerFactory.getLogger(CommandUtility.class);
+  private static volatile ProcessExecutor processExecutor = new ProcessExecutor();
 
   private CommandUtility() {
     // do nothing
   }
 
+  public static ProcessExecutor getProcessExecutor() {
+    return processExecutor;
+  }
+
+  /**
+   * Replaces the shared process executor (e.g. to use the configured limits).
+   * The executions already running on the previous executor are not affected.
+   */
+  public static void setProcessExecutor(ProcessExecutor executor) {
+    processExecutor = executor;
+  }
+
   /**
    * Execute the given command line.
    * 
@@ -56,60 +63,7 @@ public class CommandUtility {
    * @throws CommandException
    */
   public static String execute(boolean withErrorStream, String... args) throws CommandException {
-    int exitValue = 0;
-    String output;
-
-    try {
-      StringBuilder builder = new StringBuilder();
-      for (String arg : args) {
-        builder.append(arg + " ");
-      }
-
-      LOGGER.debug("Executing {}", builder);
-
-      // create and execute process
-      ProcessBuilder processBuilder = new ProcessBuilder(args);
-      processBuilder.redirectErrorStream(withErrorStream);
-      Process process = processBuilder.start();
-
-      // Get process output
-      InputStream is = process.getInputStream();
-      CaptureOutputThread captureOutputThread = new CaptureOutputThread(is);
-
-      synchronized (is) {
-        captureOutputThread.start();
-
-        // Wait until the CaptureOutputThread notifies that is finished
-        // reading the input stream.
-        LOGGER.debug("Waiting until CaptureOutputThread notifies");
-        is.wait();
-      }
-
-      LOGGER.debug("CaptureOutputThread notified. Getting output...");
-      output = captureOutputThread.output;
-
-      // Get process exit value
-      exitValue = process.waitFor();
-
-      IOUtils.closeQuietly(is);
-
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("Command {} terminated with value {}", Arrays.toString(args), exitValue);
-      }
-
-      if (exitValue == 0) {
-        return output;
-      } else {
-        throw new CommandException("Command " + Arrays.toString(args) + " terminated with error code " + exitValue,
-          exitValue, output);
-      }
-
-    } catch (IOException | InterruptedException e) {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("Error executing command {}", Arrays.toString(args), e);
-      }
-      throw new CommandException("Error executing command " + Arrays.toString(args) + " - " + e.getMessage(), e);
-    }
+    return processExecutor.execute(Arrays.asList(args), withErrorStream);
   }
 
   /**
@@ -127,42 +81,16 @@ public class CommandUtility {
   }
 
   public static String execute(List<String> args, boolean withErrorStream) throws CommandException {
-    return execute(withErrorStream, args.toArray(new String[args.size()]));
+    return processExecutor.execute(args, withErrorStream);
   }
 
-}
-
-class CaptureOutputThread extends Thread {
-  private static final Logger logger = LoggerFactory.getLogger(CaptureOutputThread.class);
-
-  InputStream is;
-  String output;
-
-  public CaptureOutputThread(InputStream is) {
-    this.is = is;
+  /**
+   * Execute the given command line, killing it if it does not terminate in the
+   * given time.
+   */
+  public static String execute(List<String> args, boolean withErrorStream, long timeoutInMillis)
+    throws CommandException {
+    return processExecutor.execute(args, withErrorStream, timeoutInMillis);
   }
 
-  @Override
-  public void run() {
-    StringBuilder outputBuffer = new StringBuilder();
-
-    try {
-      BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-      String line;
-
-      while ((line = reader.readLine()) != null) {
-        outputBuffer.append(line + System.lineSeparator());
-        logger.trace(line);
-      }
-
-    } catch (IOException e) {
-      logger.error("Exception reading from inputstream", e);
-    }
-
-    output = outputBuffer.toString();
-
-    synchronized (is) {
-      is.notify();
-    }
-  }
 }
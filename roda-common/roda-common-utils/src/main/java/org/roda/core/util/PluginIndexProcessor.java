@@ -0,0 +1,183 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.util;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.NoSuchFileException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that writes, at build time, the index of the plugins
+ * of a module: the classes that can be instantiated and that implement the
+ * RODA plugin interface are listed (one per line, like a service provider
+ * configuration file) in {@link #PLUGIN_INDEX}, so that the plugin manager
+ * does not need to scan the classpath to find them.
+ *
+ * It is registered as a service, so javac runs it for every module that has
+ * this module in its classpath (and does nothing where the plugin interface is
+ * not available).
+ *
+ * An incremental compilation only sees the classes being compiled, so the
+ * entries of an index written before are kept if they are still plugins (e.g.
+ * not deleted, nor made abstract).
+ */
+@SupportedAnnotationTypes("*")
+public class PluginIndexProcessor extends AbstractProcessor {
+  public static final String PLUGIN_INTERFACE = "org.roda.core.plugins.Plugin";
+  public static final String PLUGIN_INDEX = "META-INF/services/" + PLUGIN_INTERFACE;
+
+  private final Set<String> plugins = new TreeSet<>();
+  private Set<String> previousPlugins = null;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    TypeElement pluginInterface = processingEnv.getElementUtils().getTypeElement(PLUGIN_INTERFACE);
+    if (pluginInterface == null) {
+      return false;
+    }
+
+    if (previousPlugins == null) {
+      previousPlugins = readPrevious();
+    }
+
+    TypeMirror pluginType = processingEnv.getTypeUtils().erasure(pluginInterface.asType());
+    for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+      collect(type, pluginType);
+    }
+
+    if (roundEnv.processingOver()) {
+      keepPrevious(pluginType);
+      if (!plugins.isEmpty()) {
+        write();
+      }
+    }
+
+    // other processors may also be interested in all the types
+    return false;
+  }
+
+  private void collect(TypeElement type, TypeMirror pluginType) {
+    if (isPlugin(type, pluginType)) {
+      plugins.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+    }
+
+    for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+      if (nested.getModifiers().contains(Modifier.STATIC)) {
+        collect(nested, pluginType);
+      }
+    }
+  }
+
+  private boolean isPlugin(TypeElement type, TypeMirror pluginType) {
+    return isInstantiable(type)
+      && processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type.asType()), pluginType);
+  }
+
+  private static boolean isInstantiable(TypeElement type) {
+    if (type.getKind() != ElementKind.CLASS || !type.getModifiers().contains(Modifier.PUBLIC)
+      || type.getModifiers().contains(Modifier.ABSTRACT)) {
+      return false;
+    }
+
+    // a public constructor without parameters (the default one if there are
+    // no constructors)
+    boolean hasConstructors = false;
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      hasConstructors = true;
+      if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+        return true;
+      }
+    }
+    return !hasConstructors;
+  }
+
+  /**
+   * @return the plugins of the index written by a previous compilation, if
+   *         any
+   */
+  private Set<String> readPrevious() {
+    Set<String> previous = new TreeSet<>();
+    try {
+      FileObject index = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", PLUGIN_INDEX);
+      try (Reader reader = index.openReader(true); BufferedReader lines = new BufferedReader(reader)) {
+        String line;
+        while ((line = lines.readLine()) != null) {
+          String className = line.trim();
+          if (!className.isEmpty() && !className.startsWith("#")) {
+            previous.add(className);
+          }
+        }
+      }
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      // first compilation
+    } catch (IOException | IllegalArgumentException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+        "Could not read previous plugin index " + PLUGIN_INDEX + ": " + e.getMessage());
+    }
+    return previous;
+  }
+
+  /**
+   * Adds the plugins of the previous index that were not compiled now but are
+   * still plugins
+   */
+  private void keepPrevious(TypeMirror pluginType) {
+    for (String className : previousPlugins) {
+      if (!plugins.contains(className)) {
+        // the canonical name, as nested classes are indexed by binary name
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(className.replace('$', '.'));
+        if (type != null && isPlugin(type, pluginType)) {
+          plugins.add(className);
+        }
+      }
+    }
+  }
+
+  private void write() {
+    try {
+      FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", PLUGIN_INDEX,
+        new Element[] {});
+      try (Writer writer = index.openWriter()) {
+        for (String plugin : plugins) {
+          writer.write(plugin);
+          writer.write("\n");
+        }
+      }
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+        "Wrote index of " + plugins.size() + " plugins to " + PLUGIN_INDEX);
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+        "Could not write plugin index " + PLUGIN_INDEX + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,313 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes external processes (i.e. tools) with bounded concurrency, both
+ * global and per tool, timeouts (the process is killed when the timeout
+ * expires) and a cap on the captured output (above which the execution fails).
+ * The output streams are consumed by a pool of threads that are discarded when
+ * idle, so replacing an executor does not affect its running executions.
+ *
+ * The tool of a command is the file name of its first argument.
+ */
+public class ProcessExecutor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcessExecutor.class);
+
+  public static final long NO_TIMEOUT = 0;
+  public static final long DEFAULT_TIMEOUT_IN_MILLIS = 60L * 60L * 1000L;
+  public static final int DEFAULT_MAX_OUTPUT_SIZE = 16 * 1024 * 1024;
+
+  private static final int MAX_ERROR_OUTPUT_SIZE = 64 * 1024;
+  private static final long KILL_GRACE_PERIOD_IN_MILLIS = 5000;
+
+  public enum Outcome {
+    SUCCESS, ERROR_CODE, TIMEOUT, OUTPUT_TRUNCATED, FAILURE
+  }
+
+  /**
+   * Gets notified of every process execution (e.g. to gather metrics)
+   */
+  @FunctionalInterface
+  public interface Listener {
+    void executed(String tool, Outcome outcome, long durationInMillis);
+  }
+
+  /**
+   * Permission to run a process of a tool, to be closed when the process ends
+   */
+  public interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private final Semaphore globalPermits;
+  private final int maxProcessesPerTool;
+  private final ConcurrentHashMap<String, Semaphore> toolPermits = new ConcurrentHashMap<>();
+  private final long defaultTimeoutInMillis;
+  private final int maxOutputSize;
+  private final ExecutorService streamConsumers;
+  private volatile Listener listener = null;
+
+  /**
+   * Creates an executor with at most 4 processes per processor, the default
+   * timeout (1 hour) and the default max output size
+   */
+  public ProcessExecutor() {
+    this(4 * Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors(),
+      DEFAULT_TIMEOUT_IN_MILLIS, DEFAULT_MAX_OUTPUT_SIZE);
+  }
+
+  /**
+   * @param maxProcesses
+   *          max number of processes running at the same time
+   * @param maxProcessesPerTool
+   *          max number of processes of the same tool running at the same time
+   * @param defaultTimeoutInMillis
+   *          timeout of the executions that do not define one, or
+   *          {@link #NO_TIMEOUT}
+   * @param maxOutputSize
+   *          max number of bytes of output of a command (executions with more
+   *          output fail)
+   */
+  public ProcessExecutor(int maxProcesses, int maxProcessesPerTool, long defaultTimeoutInMillis, int maxOutputSize) {
+    this.globalPermits = new Semaphore(Math.max(1, maxProcesses), true);
+    this.maxProcessesPerTool = Math.max(1, maxProcessesPerTool);
+    this.defaultTimeoutInMillis = Math.max(NO_TIMEOUT, defaultTimeoutInMillis);
+    this.maxOutputSize = Math.max(0, maxOutputSize);
+    this.streamConsumers = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger counter = new AtomicInteger(0);
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "process-output-consumer-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Sets the max number of processes of a tool running at the same time
+   * (overriding the default per tool limit). Must be called before the tool is
+   * used.
+   */
+  public void setMaxProcesses(String tool, int maxProcesses) {
+    toolPermits.put(tool, new Semaphore(Math.max(1, maxProcesses), true));
+  }
+
+  public static String getTool(List<String> args) {
+    if (args.isEmpty()) {
+      return "";
+    }
+    try {
+      return Paths.get(args.get(0)).getFileName().toString();
+    } catch (RuntimeException e) {
+      return args.get(0);
+    }
+  }
+
+  /**
+   * Waits until a process of the tool can be run. Meant for the processes that
+   * are not started by this executor (e.g. whose output is streamed) but that
+   * should count towards its limits.
+   */
+  public Permit acquire(String tool) throws InterruptedException {
+    Semaphore perTool = toolPermits.computeIfAbsent(tool, t -> new Semaphore(maxProcessesPerTool, true));
+    perTool.acquire();
+    try {
+      globalPermits.acquire();
+    } catch (InterruptedException e) {
+      perTool.release();
+      throw e;
+    }
+
+    return new Permit() {
+      private boolean released = false;
+
+      @Override
+      public synchronized void close() {
+        if (!released) {
+          released = true;
+          globalPermits.release();
+          perTool.release();
+        }
+      }
+    };
+  }
+
+  public String execute(List<String> args, boolean withErrorStream) throws CommandException {
+    return execute(args, withErrorStream, defaultTimeoutInMillis);
+  }
+
+  /**
+   * Executes the given command line.
+   *
+   * @param args
+   *          the command line as a list of arguments.
+   * @param withErrorStream
+   *          if the error output should be merged with the output
+   * @param timeoutInMillis
+   *          time after which the process is killed, or {@link #NO_TIMEOUT}
+   *
+   * @return a {@link String} with the output of the command.
+   *
+   * @throws CommandException
+   *           if the command could not be executed, did not terminate in time,
+   *           terminated with an error code or its output exceeded the max
+   *           output size (the exception holds the truncated output)
+   */
+  public String execute(List<String> args, boolean withErrorStream, long timeoutInMillis) throws CommandException {
+    String tool = getTool(args);
+    long start = System.currentTimeMillis();
+    Outcome outcome = Outcome.FAILURE;
+
+    try (Permit permit = acquire(tool)) {
+      LOGGER.debug("Executing {}", args);
+      ProcessBuilder processBuilder = new ProcessBuilder(args);
+      processBuilder.redirectErrorStream(withErrorStream);
+      Process process = processBuilder.start();
+
+      Future<CapturedOutput> output = streamConsumers.submit(() -> capture(process.getInputStream(), maxOutputSize));
+      Future<CapturedOutput> errorOutput = withErrorStream ? null
+        : streamConsumers.submit(() -> capture(process.getErrorStream(), MAX_ERROR_OUTPUT_SIZE));
+
+      if (!waitFor(process, timeoutInMillis)) {
+        outcome = Outcome.TIMEOUT;
+        kill(process);
+        throw new CommandException(
+          "Command " + args + " did not terminate in " + timeoutInMillis + " ms and was killed");
+      }
+
+      int exitValue = process.exitValue();
+      CapturedOutput captured = output.get();
+
+      LOGGER.debug("Command {} terminated with value {}", args, exitValue);
+      if (exitValue == 0 && captured.truncated) {
+        outcome = Outcome.OUTPUT_TRUNCATED;
+        throw new CommandException("Output of command " + args + " exceeded " + maxOutputSize + " bytes", exitValue,
+          captured.output);
+      } else if (exitValue == 0) {
+        outcome = Outcome.SUCCESS;
+        return captured.output;
+      } else {
+        outcome = Outcome.ERROR_CODE;
+        String message = "Command " + args + " terminated with error code " + exitValue;
+        if (errorOutput != null) {
+          String error = errorOutput.get().output.trim();
+          if (!error.isEmpty()) {
+            message += ": " + error;
+          }
+        }
+        throw new CommandException(message, exitValue, captured.output);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted while executing command " + args, e);
+    } catch (IOException | ExecutionException e) {
+      LOGGER.debug("Error executing command {}", args, e);
+      throw new CommandException("Error executing command " + args + " - " + e.getMessage(), e);
+    } finally {
+      Listener currentListener = listener;
+      if (currentListener != null) {
+        currentListener.executed(tool, outcome, System.currentTimeMillis() - start);
+      }
+    }
+  }
+
+  private static boolean waitFor(Process process, long timeoutInMillis) throws InterruptedException {
+    try {
+      if (timeoutInMillis > NO_TIMEOUT) {
+        return process.waitFor(timeoutInMillis, TimeUnit.MILLISECONDS);
+      } else {
+        process.waitFor();
+        return true;
+      }
+    } catch (InterruptedException e) {
+      kill(process);
+      throw e;
+    }
+  }
+
+  private static void kill(Process process) {
+    process.destroy();
+    try {
+      if (!process.waitFor(KILL_GRACE_PERIOD_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+        process.destroyForcibly();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      process.destroyForcibly();
+    }
+  }
+
+  /**
+   * Reads the stream until its end, keeping only the first bytes
+   */
+  private static CapturedOutput capture(InputStream inputStream, int maxSize) throws IOException {
+    ByteArrayOutputStream kept = new ByteArrayOutputStream();
+    boolean truncated = false;
+    byte[] buffer = new byte[8192];
+    try {
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        int toKeep = Math.min(read, maxSize - kept.size());
+        if (toKeep > 0) {
+          kept.write(buffer, 0, toKeep);
+        }
+        truncated |= toKeep < read;
+      }
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+    }
+    return new CapturedOutput(new String(kept.toByteArray(), Charset.defaultCharset()), truncated);
+  }
+
+  /**
+   * Stops the output consumers at once, so it must only be called when no
+   * execution is running (idle consumers are discarded anyway)
+   */
+  public void shutdown() {
+    streamConsumers.shutdownNow();
+  }
+
+  private static class CapturedOutput {
+    private final String output;
+    private final boolean truncated;
+
+    public CapturedOutput(String output, boolean truncated) {
+      this.output = output;
+      this.truncated = truncated;
+    }
+  }
+
+}
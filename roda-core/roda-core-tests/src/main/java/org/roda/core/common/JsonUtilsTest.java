@@ -7,6 +7,9 @@
  */
 package org.roda.core.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -45,4 +48,17 @@ public class JsonUtilsTest {
       AssertJUnit.assertNotNull(report);
     }
   }
+
+  @Test
+  public void testWriteToStream() throws GenericException, IOException {
+    Report report = new Report().setId("report").setTitle("Report");
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    JsonUtils.writeObjectToStream(report, outputStream);
+
+    AssertJUnit.assertEquals(JsonUtils.getJsonFromObject(report), outputStream.toString("UTF-8"));
+    Report report2 = JsonUtils.getObjectFromJson(new ByteArrayInputStream(outputStream.toByteArray()), Report.class);
+    AssertJUnit.assertEquals(report.getId(), report2.getId());
+    AssertJUnit.assertEquals(report.getTitle(), report2.getTitle());
+  }
 }
@@ -0,0 +1,177 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Tests of the Prometheus text exposition format written by
+ * {@link PrometheusTextFormat}.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class PrometheusTextFormatTest {
+
+  @Test
+  public void testCounterAndMeter() {
+    MetricRegistry registry = new SummingMetricRegistry();
+    registry.counter("jobs.running").inc(3);
+    registry.meter("jobs.created").mark(5);
+
+    assertEquals("# HELP roda_jobs_running jobs.running\n" + "# TYPE roda_jobs_running gauge\n"
+      + "roda_jobs_running 3\n" + "# HELP roda_jobs_created_total jobs.created\n"
+      + "# TYPE roda_jobs_created_total counter\n" + "roda_jobs_created_total 5\n",
+      PrometheusTextFormat.toString(registry));
+  }
+
+  @Test
+  public void testGauges() {
+    MetricRegistry registry = new SummingMetricRegistry();
+    registry.register("integer", (Gauge<Integer>) () -> 42);
+    registry.register("double", (Gauge<Double>) () -> 0.25);
+    registry.register("boolean", (Gauge<Boolean>) () -> true);
+    registry.register("nan", (Gauge<Double>) () -> Double.NaN);
+    registry.register("infinite", (Gauge<Double>) () -> Double.NEGATIVE_INFINITY);
+    registry.register("string", (Gauge<String>) () -> "not a number");
+    registry.register("failing", (Gauge<Integer>) () -> {
+      throw new IllegalStateException("failing gauge");
+    });
+
+    String output = PrometheusTextFormat.toString(registry);
+    assertEquals(42.0, sample(output, "roda_integer"));
+    assertEquals(0.25, sample(output, "roda_double"));
+    assertEquals(1.0, sample(output, "roda_boolean"));
+    assertTrue(lines(output).contains("roda_nan NaN"));
+    assertTrue(lines(output).contains("roda_infinite -Inf"));
+    assertFalse(output.contains("roda_string"));
+    assertFalse(output.contains("roda_failing"));
+  }
+
+  @Test
+  public void testNamesAreSanitized() {
+    MetricRegistry registry = new SummingMetricRegistry();
+    registry.counter("org.roda.Some-Class$Inner.count 1").inc();
+    // becomes equal to the previous one after sanitization
+    registry.counter("org.roda.Some-Class$Inner.count_1").inc(2);
+    registry.counter("back\\slash").inc();
+
+    String output = PrometheusTextFormat.toString(registry);
+    List<String> lines = lines(output);
+    assertTrue(lines.contains("# TYPE roda_org_roda_Some_Class_Inner_count_1 gauge"));
+    assertEquals(1, lines.stream().filter(line -> line.startsWith("roda_org_roda_Some_Class_Inner_count_1 ")).count());
+    assertTrue(lines.contains("# HELP roda_back_slash back\\\\slash"));
+  }
+
+  @Test
+  public void testHistogramSummary() {
+    MetricRegistry registry = new SummingMetricRegistry();
+    Histogram histogram = registry.histogram("block.size");
+    histogram.update(7);
+    histogram.update(7L);
+    histogram.update(7);
+
+    String output = PrometheusTextFormat.toString(registry);
+    List<String> lines = lines(output);
+    assertTrue(lines.contains("# TYPE roda_block_size summary"));
+    for (String quantile : Arrays.asList("0.5", "0.75", "0.95", "0.98", "0.99", "0.999")) {
+      assertTrue(quantile, lines.contains("roda_block_size{quantile=\"" + quantile + "\"} 7"));
+    }
+    assertEquals(21.0, sample(output, "roda_block_size_sum"));
+    assertEquals(3.0, sample(output, "roda_block_size_count"));
+  }
+
+  @Test
+  public void testTimerSummaryInSeconds() throws Exception {
+    MetricRegistry registry = new SummingMetricRegistry();
+    Timer timer = registry.timer("find");
+    timer.update(2, TimeUnit.SECONDS);
+    timer.update(500, TimeUnit.MILLISECONDS);
+
+    String output = PrometheusTextFormat.toString(registry);
+    assertTrue(lines(output).contains("# TYPE roda_find_seconds summary"));
+    assertEquals(2.0, sample(output, "roda_find_seconds{quantile=\"0.999\"}"), 1e-9);
+    assertEquals(2.5, sample(output, "roda_find_seconds_sum"), 1e-9);
+    assertEquals(2.0, sample(output, "roda_find_seconds_count"));
+
+    // durations timed by the timer itself are summed too
+    timer.time(() -> sleep(10));
+    timer.time(() -> {
+      Thread.sleep(10);
+      return null;
+    });
+    timer.timeSupplier(() -> "value");
+    try (Timer.Context context = timer.time()) {
+      Thread.sleep(10);
+    }
+
+    output = PrometheusTextFormat.toString(registry);
+    assertEquals(6.0, sample(output, "roda_find_seconds_count"));
+    assertTrue(sample(output, "roda_find_seconds_sum") >= 2.53);
+  }
+
+  @Test
+  public void testSumIsEstimatedForOtherRegistries() {
+    MetricRegistry registry = new MetricRegistry();
+    Histogram histogram = registry.histogram("size");
+    histogram.update(5);
+    histogram.update(5);
+
+    assertEquals(10.0, sample(PrometheusTextFormat.toString(registry), "roda_size_sum"), 1e-9);
+  }
+
+  @Test
+  public void testEmptySummary() {
+    MetricRegistry registry = new SummingMetricRegistry();
+    registry.timer("idle");
+
+    String output = PrometheusTextFormat.toString(registry);
+    assertEquals(0.0, sample(output, "roda_idle_seconds_sum"));
+    assertEquals(0.0, sample(output, "roda_idle_seconds_count"));
+    assertNull(sample(output, "roda_idle_seconds"));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static List<String> lines(String output) {
+    assertTrue(output.isEmpty() || output.endsWith("\n"));
+    return Arrays.asList(output.split("\n"));
+  }
+
+  /**
+   * @return the value of the sample with the given name and labels or null if
+   *         there is none
+   */
+  private static Double sample(String output, String nameAndLabels) {
+    for (String line : lines(output)) {
+      if (line.startsWith(nameAndLabels + " ")) {
+        return Double.parseDouble(line.substring(nameAndLabels.length() + 1));
+      }
+    }
+    return null;
+  }
+}
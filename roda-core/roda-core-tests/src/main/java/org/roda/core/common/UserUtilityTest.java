@@ -0,0 +1,225 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import static org.testng.AssertJUnit.fail;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.IsIndexed;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItems;
+import org.roda.core.data.v2.index.select.SelectedItemsFilter;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.IndexedRepresentation;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Permissions.PermissionType;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.data.v2.user.User;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the permission checks of {@link UserUtility}, both the bulk checks
+ * over selected items (done in batches of index counts) and the cached
+ * decisions of the single object checks.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class UserUtilityTest {
+  private static final String READERS_GROUP = "readers";
+
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+
+  private static User alice;
+  private static User carol;
+  private static User admin;
+
+  private static String allowedAIP;
+  private static String deniedAIP;
+  private static String allowedRepresentation;
+  private static String deniedRepresentation;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(UserUtilityTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+
+    alice = new User("alice", "alice", false);
+    carol = new User("carol", "carol", false);
+    carol.addGroup(READERS_GROUP);
+    admin = new User(RodaConstants.ADMIN, RodaConstants.ADMIN, false);
+
+    Permissions allowed = new Permissions();
+    allowed.setUserPermissions(alice.getId(), EnumSet.of(PermissionType.READ));
+    allowed.setGroupPermissions(READERS_GROUP, EnumSet.of(PermissionType.READ));
+    allowedAIP = model.createAIP(null, "MIXED", allowed, RodaConstants.ADMIN).getId();
+    allowedRepresentation = createRepresentation(allowedAIP);
+
+    Permissions denied = new Permissions();
+    denied.setUserPermissions("bob", EnumSet.of(PermissionType.READ));
+    deniedAIP = model.createAIP(null, "MIXED", denied, RodaConstants.ADMIN).getId();
+    deniedRepresentation = createRepresentation(deniedAIP);
+
+    index.commitAIPs();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testAIPListIsCheckedInBatches() throws RODAException {
+    // more ids than a batch, the AIPs that do not exist being ignored
+    List<String> ids = new ArrayList<>();
+    ids.add(allowedAIP);
+    for (int i = 0; i < 1200; i++) {
+      ids.add(IdUtils.createUUID());
+    }
+    UserUtility.checkAIPPermissions(alice, SelectedItemsList.create(IndexedAIP.class, ids), PermissionType.READ);
+
+    // the denied AIP is only in the last batch
+    ids.add(deniedAIP);
+    assertDenied(() -> UserUtility.checkAIPPermissions(alice, SelectedItemsList.create(IndexedAIP.class, ids),
+      PermissionType.READ));
+    assertDenied(() -> UserUtility.checkAIPPermissions(alice, SelectedItemsList.create(IndexedAIP.class, allowedAIP),
+      PermissionType.UPDATE));
+  }
+
+  @Test
+  public void testAIPFilter() throws RODAException {
+    UserUtility.checkAIPPermissions(alice, filter(IndexedAIP.class, allowedAIP), PermissionType.READ);
+    UserUtility.checkAIPPermissions(carol, filter(IndexedAIP.class, allowedAIP), PermissionType.READ);
+
+    assertDenied(() -> UserUtility.checkAIPPermissions(alice, filter(IndexedAIP.class, allowedAIP, deniedAIP),
+      PermissionType.READ));
+    assertDenied(() -> UserUtility.checkAIPPermissions(carol, filter(IndexedAIP.class, allowedAIP, deniedAIP),
+      PermissionType.READ));
+  }
+
+  @Test
+  public void testRepresentationListFailsIfMissing() throws RODAException {
+    UserUtility.checkRepresentationPermissions(alice,
+      SelectedItemsList.create(IndexedRepresentation.class, allowedRepresentation), PermissionType.READ);
+
+    // repeated ids are only counted once
+    List<String> repeated = new ArrayList<>(Collections.nCopies(1000, allowedRepresentation));
+    UserUtility.checkRepresentationPermissions(alice, SelectedItemsList.create(IndexedRepresentation.class, repeated),
+      PermissionType.READ);
+
+    assertDenied(() -> UserUtility.checkRepresentationPermissions(alice, SelectedItemsList
+      .create(IndexedRepresentation.class, Arrays.asList(allowedRepresentation, IdUtils.createUUID())),
+      PermissionType.READ));
+    assertDenied(() -> UserUtility.checkRepresentationPermissions(alice,
+      SelectedItemsList.create(IndexedRepresentation.class, deniedRepresentation), PermissionType.READ));
+    assertDenied(() -> UserUtility.checkRepresentationPermissions(alice,
+      filter(IndexedRepresentation.class, allowedRepresentation, deniedRepresentation), PermissionType.READ));
+  }
+
+  @Test
+  public void testAdministratorIsNotChecked() throws RODAException {
+    UserUtility.checkRepresentationPermissions(admin, SelectedItemsList.create(IndexedRepresentation.class,
+      Arrays.asList(deniedRepresentation, IdUtils.createUUID())), PermissionType.DELETE);
+    UserUtility.checkAIPPermissions(admin, filter(IndexedAIP.class, deniedAIP), PermissionType.DELETE);
+  }
+
+  @Test
+  public void testDecisionIsCached() throws RODAException {
+    RodaCoreFactory.getRodaConfiguration().setProperty("core.permissions.decision_cache.ttl_ms", 3600000L);
+    UserUtility.clearCaches();
+    try {
+      Permissions permissions = new Permissions();
+      permissions.setUserPermissions(alice.getId(), EnumSet.of(PermissionType.READ));
+      AIP aip = model.createAIP(null, "MIXED", permissions, RodaConstants.ADMIN);
+      String representationUUID = createRepresentation(aip.getId());
+      index.commitAIPs();
+
+      IndexedRepresentation representation = index.retrieve(IndexedRepresentation.class, representationUUID,
+        RodaConstants.REPRESENTATION_FIELDS_TO_RETURN);
+      UserUtility.checkRepresentationPermissions(alice, representation, PermissionType.READ);
+
+      // revoke the permission
+      aip.getPermissions().setUserPermissions(alice.getId(), EnumSet.noneOf(PermissionType.class));
+      model.updateAIPPermissions(aip, RodaConstants.ADMIN);
+      index.commitAIPs();
+
+      // the decision is still cached
+      UserUtility.checkRepresentationPermissions(alice, representation, PermissionType.READ);
+
+      // but not for other users or permissions, nor for bulk checks
+      assertDenied(() -> UserUtility.checkRepresentationPermissions(carol, representation, PermissionType.READ));
+      assertDenied(() -> UserUtility.checkRepresentationPermissions(alice, representation, PermissionType.UPDATE));
+      assertDenied(() -> UserUtility.checkRepresentationPermissions(alice,
+        SelectedItemsList.create(IndexedRepresentation.class, representationUUID), PermissionType.READ));
+
+      // clearing the caches forgets the decision
+      UserUtility.clearCaches();
+      assertDenied(() -> UserUtility.checkRepresentationPermissions(alice, representation, PermissionType.READ));
+    } finally {
+      RodaCoreFactory.getRodaConfiguration().clearProperty("core.permissions.decision_cache.ttl_ms");
+      UserUtility.clearCaches();
+    }
+  }
+
+  private static String createRepresentation(String aipId) throws RODAException {
+    Representation representation = model.createRepresentation(aipId, IdUtils.createUUID(), true, "MIXED", true,
+      RodaConstants.ADMIN);
+    return IdUtils.getRepresentationId(representation);
+  }
+
+  private static <T extends IsIndexed> SelectedItems<T> filter(Class<T> classToFilter, String... uuids) {
+    return new SelectedItemsFilter<>(new Filter(new OneOfManyFilterParameter(RodaConstants.INDEX_UUID,
+      Arrays.asList(uuids))), classToFilter.getName(), false);
+  }
+
+  private static void assertDenied(PermissionCheck check) throws RODAException {
+    try {
+      check.run();
+      fail("The permission check should have been denied");
+    } catch (AuthorizationDeniedException e) {
+      // expected
+    }
+  }
+
+  @FunctionalInterface
+  private interface PermissionCheck {
+    void run() throws RODAException;
+  }
+}
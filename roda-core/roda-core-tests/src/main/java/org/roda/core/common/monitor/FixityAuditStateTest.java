@@ -0,0 +1,176 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.common.monitor.FixityAuditState.FileState;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the persistence of the fixity audit state: the due queue, the log
+ * of audits and its compaction, the discovery times and the file states.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class FixityAuditStateTest {
+  private Path basePath;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(FixityAuditStateTest.class, false);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testDueAIPsAreSortedByLastAudit() throws IOException {
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      state.setLastAudit("audited-later", 300);
+      state.setLastAudit("audited-first", 100);
+      assertTrue(state.track("never-audited"));
+      assertFalse(state.track("audited-first"));
+      state.setLastAudit("audited-second", 200);
+
+      assertEquals(Arrays.asList("never-audited", "audited-first", "audited-second", "audited-later"),
+        state.getDueAIPs(1000, 10));
+      assertEquals(Arrays.asList("never-audited", "audited-first"), state.getDueAIPs(1000, 2));
+      assertEquals(Arrays.asList("never-audited", "audited-first"), state.getDueAIPs(200, 10));
+      assertEquals(2, state.countDueAIPs(200));
+      assertEquals(4, state.countDueAIPs(1000));
+      assertEquals(0, state.countDueAIPs(FixityAuditState.NEVER));
+
+      // audited again, goes to the end of the queue
+      state.setLastAudit("never-audited", 400);
+      assertEquals(Arrays.asList("audited-first", "audited-second", "audited-later", "never-audited"),
+        state.getDueAIPs(1000, 10));
+      assertEquals(4, state.getTrackedAIPsCount());
+
+      state.remove("audited-second");
+      assertEquals(Arrays.asList("audited-first", "audited-later", "never-audited"), state.getDueAIPs(1000, 10));
+      assertEquals(new HashSet<>(Arrays.asList("audited-first", "audited-later", "never-audited")),
+        state.getTrackedAIPs());
+    }
+  }
+
+  @Test
+  public void testStateIsPersisted() throws IOException {
+    String encodedId = "aip with spaces\tand/slashes";
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      state.setLastAudit("aip1", 100);
+      state.setLastAudit(encodedId, 200);
+      state.track("aip3");
+      state.setLastAudit("aip4", 300);
+      state.setLastAudit("aip1", 500);
+      state.remove("aip4");
+      state.setDiscovery(1000, 900);
+    }
+
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      assertEquals(500, state.getLastAudit("aip1"));
+      assertEquals(200, state.getLastAudit(encodedId));
+      assertEquals(FixityAuditState.NEVER, state.getLastAudit("aip3"));
+      assertEquals(FixityAuditState.NEVER, state.getLastAudit("aip4"));
+      assertEquals(3, state.getTrackedAIPsCount());
+      assertEquals(Arrays.asList("aip3", encodedId, "aip1"), state.getDueAIPs(1000, 10));
+      assertEquals(1000, state.getLastDiscovery());
+      assertEquals(900, state.getLastReconciliation());
+    }
+  }
+
+  @Test
+  public void testPartiallyWrittenLineIsIgnored() throws IOException {
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      state.setLastAudit("aip1", 100);
+    }
+    // as if stopped while writing
+    Files.write(basePath.resolve(FixityAuditState.AIPS_LOG), "aip1\t2\naip2\t1x".getBytes(StandardCharsets.UTF_8),
+      StandardOpenOption.APPEND);
+
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      assertEquals(2, state.getLastAudit("aip1"));
+      assertEquals(1, state.getTrackedAIPsCount());
+    }
+  }
+
+  @Test
+  public void testLogIsCompacted() throws IOException {
+    Path log = basePath.resolve(FixityAuditState.AIPS_LOG);
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      state.setLastAudit("aip1", 1);
+      state.setLastAudit("aip2", 1);
+      state.remove("aip2");
+      for (int i = 2; i <= 100; i++) {
+        state.setLastAudit("aip1", i);
+      }
+      assertEquals(102, Files.readAllLines(log).size());
+    }
+
+    // compacted when opened
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      assertEquals(Collections.singletonList("aip1\t100"), Files.readAllLines(log));
+
+      // and when it grows too much
+      for (int i = 101; i <= 20000; i++) {
+        state.setLastAudit("aip1", i);
+      }
+      assertTrue(Files.readAllLines(log).size() < 10010);
+      assertEquals(20000, state.getLastAudit("aip1"));
+    }
+
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      assertEquals(20000, state.getLastAudit("aip1"));
+      assertEquals(1, state.getTrackedAIPsCount());
+    }
+  }
+
+  @Test
+  public void testFileStates() throws IOException {
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      assertTrue(state.getFileStates("aip1").isEmpty());
+
+      Map<String, FileState> states = new HashMap<>();
+      states.put("rep/folder/file.txt", new FileState(100, true));
+      states.put("rep/other.txt", new FileState(200, false));
+      state.setLastAudit("aip1", 300);
+      state.setFileStates("aip1", states);
+    }
+
+    try (FixityAuditState state = new FixityAuditState(basePath)) {
+      Map<String, FileState> states = state.getFileStates("aip1");
+      assertEquals(2, states.size());
+      assertEquals(100, states.get("rep/folder/file.txt").getLastVerified());
+      assertTrue(states.get("rep/folder/file.txt").isPassed());
+      assertFalse(states.get("rep/other.txt").isPassed());
+
+      // forgotten with the AIP
+      state.remove("aip1");
+      assertTrue(state.getFileStates("aip1").isEmpty());
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.xmlbeans.XmlException;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.PremisV3Utils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItemsNone;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.data.v2.risks.RiskIncidence;
+import org.roda.core.data.v2.risks.RiskIncidence.INCIDENCE_STATUS;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.plugins.plugins.characterization.PremisSkeletonPluginUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests of the fixity audit: incidences of corrupted files (created and
+ * mitigated once per AIP), files without fixity information, resuming with
+ * the persisted state, finding new and deleted AIPs and the bandwidth limit.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class FixityAuditorTest {
+  private static final String REPRESENTATION_ID = "representation";
+  private static final long ONE_DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+  private Path basePath;
+  private ModelService model;
+  private IndexService index;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testIncidencesOfCorruptedFiles() throws IOException, InterruptedException, RODAException, XmlException {
+    Map<String, String> files = new LinkedHashMap<>();
+    files.put("ok.txt", "content that is not changed");
+    files.put("corrupted1.txt", "content that will be changed");
+    files.put("corrupted2.txt", "other content that will be changed");
+    String aipId = createAIP(files, true);
+    String noFixityAIPId = createAIP(Collections.singletonMap("no-fixity.txt", "content without PREMIS"), false);
+    index.commitAIPs();
+
+    setContent(aipId, "corrupted1.txt", "changed");
+    setContent(aipId, "corrupted2.txt", "changed too");
+
+    long failed = getCount("files", "failed");
+    long noFixity = getCount("files", "no_fixity");
+    try (FixityAuditor auditor = createAuditor(0, 0)) {
+      assertEquals(2, auditor.auditNextAIPs());
+      assertEquals(2, countIncidences(aipId, INCIDENCE_STATUS.UNMITIGATED));
+      assertEquals(failed + 2, getCount("files", "failed"));
+
+      // files without fixity are not failures
+      assertEquals(0, countIncidences(noFixityAIPId, INCIDENCE_STATUS.UNMITIGATED));
+      assertEquals(noFixity + 1, getCount("files", "no_fixity"));
+
+      // no new incidences for the files that still fail
+      auditor.auditNextAIPs();
+      assertEquals(2, countIncidences(aipId, INCIDENCE_STATUS.UNMITIGATED));
+
+      // the incidence of the repaired file is mitigated
+      setContent(aipId, "corrupted1.txt", files.get("corrupted1.txt"));
+      auditor.auditNextAIPs();
+      assertEquals(1, countIncidences(aipId, INCIDENCE_STATUS.UNMITIGATED));
+      assertEquals(1, countIncidences(aipId, INCIDENCE_STATUS.MITIGATED));
+      assertEquals(0, countIncidences(noFixityAIPId, INCIDENCE_STATUS.UNMITIGATED));
+    }
+  }
+
+  @Test
+  public void testMissingFileIsAFailure() throws IOException, InterruptedException, RODAException, XmlException {
+    String aipId = createAIP(Collections.singletonMap("missing.txt", "content that will be deleted"), true);
+    index.commitAIPs();
+    model.getStorage().deleteResource(
+      ModelUtils.getFileStoragePath(aipId, REPRESENTATION_ID, Collections.emptyList(), "missing.txt"));
+
+    try (FixityAuditor auditor = createAuditor(0, 0)) {
+      auditor.auditNextAIPs();
+      assertEquals(1, countIncidences(aipId, INCIDENCE_STATUS.UNMITIGATED));
+    }
+  }
+
+  @Test
+  public void testAuditResumesAndFindsNewAndDeletedAIPs()
+    throws IOException, InterruptedException, RODAException, XmlException {
+    for (int i = 0; i < 3; i++) {
+      createAIP(Collections.singletonMap("file.txt", "content " + i), true);
+    }
+    index.commitAIPs();
+    long passed = getCount("files", "passed");
+
+    // one AIP at a time
+    try (FixityAuditor auditor = createAuditor(0, ONE_DAY_IN_MILLIS)) {
+      assertEquals(1, auditor.auditNextAIPs());
+    }
+
+    FixityAuditState state = new FixityAuditState(getStatePath());
+    assertEquals(3, state.getTrackedAIPsCount());
+    assertEquals(2, state.countDueAIPs(System.currentTimeMillis() - ONE_DAY_IN_MILLIS));
+    long lastReconciliation = state.getLastReconciliation();
+    assertTrue(lastReconciliation > FixityAuditState.NEVER);
+
+    try (FixityAuditor auditor = new FixityAuditor(model, index, state, 2, 0, 1.0, ONE_DAY_IN_MILLIS, 1)) {
+      assertEquals(1, auditor.auditNextAIPs());
+      assertEquals(1, auditor.auditNextAIPs());
+      // all audited less than the min interval ago
+      assertEquals(0, auditor.auditNextAIPs());
+      assertEquals(passed + 3, getCount("files", "passed"));
+
+      // new AIPs are found without searching all the AIPs again
+      String newAIPId = createAIP(Collections.singletonMap("file.txt", "new content"), true);
+      index.commitAIPs();
+      assertEquals(1, auditor.auditNextAIPs());
+      assertTrue(state.getLastAudit(newAIPId) > FixityAuditState.NEVER);
+      assertEquals(lastReconciliation, state.getLastReconciliation());
+
+      // AIPs no longer in the index are forgotten
+      state.track("deleted-aip");
+      assertEquals(1, auditor.auditNextAIPs());
+      assertFalse(state.getTrackedAIPs().contains("deleted-aip"));
+      assertEquals(4, state.getTrackedAIPsCount());
+      assertEquals(passed + 4, getCount("files", "passed"));
+    }
+  }
+
+  @Test
+  public void testBandwidthIsLimited() throws IOException, InterruptedException, RODAException, XmlException {
+    int size = 250000;
+    StringBuilder content = new StringBuilder(size);
+    for (int i = 0; i < size; i++) {
+      content.append((char) ('a' + i % 26));
+    }
+    createAIP(Collections.singletonMap("large.txt", content.toString()), true);
+    index.commitAIPs();
+
+    long bytes = RodaCoreFactory.getMetrics().meter(MetricRegistry.name(FixityAuditor.class, "bytes")).getCount();
+    try (FixityAuditor auditor = createAuditor(100000, 0)) {
+      long start = System.currentTimeMillis();
+      assertEquals(1, auditor.auditNextAIPs());
+      long elapsed = System.currentTimeMillis() - start;
+      assertTrue("Took " + elapsed + " ms", elapsed >= 1500);
+    }
+    assertEquals(bytes + size,
+      RodaCoreFactory.getMetrics().meter(MetricRegistry.name(FixityAuditor.class, "bytes")).getCount());
+  }
+
+  @Test
+  public void testBandwidthIsReducedWhileIngesting() throws IOException, RODAException {
+    try (FixityAuditor auditor = new FixityAuditor(model, index, new FixityAuditState(getStatePath()), 1, 1000000,
+      0.25, 0, 1)) {
+      assertEquals(1000000.0, auditor.getRate(), 0.001);
+
+      Job job = new Job().setId(IdUtils.createUUID()).setName("ingest").setPluginType(PluginType.INGEST);
+      job.setSourceObjects(SelectedItemsNone.create());
+      job.setState(Job.JOB_STATE.STARTED);
+      model.createOrUpdateJob(job);
+      index.commit(Job.class);
+      auditor.checkBusy();
+      assertEquals(250000.0, auditor.getRate(), 0.001);
+
+      job.setState(Job.JOB_STATE.COMPLETED);
+      model.createOrUpdateJob(job);
+      index.commit(Job.class);
+      auditor.checkBusy();
+      assertEquals(1000000.0, auditor.getRate(), 0.001);
+    }
+  }
+
+  private FixityAuditor createAuditor(long maxBytesPerSecond, long minIntervalInMillis) throws IOException {
+    return new FixityAuditor(model, index, new FixityAuditState(getStatePath()), 2, maxBytesPerSecond, 1.0,
+      minIntervalInMillis, minIntervalInMillis > 0 ? 1 : 10);
+  }
+
+  private Path getStatePath() {
+    return basePath.resolve(RodaConstants.CORE_FIXITY_AUDIT_FOLDER);
+  }
+
+  private String createAIP(Map<String, String> files, boolean withFixity)
+    throws RODAException, XmlException, IOException {
+    AIP aip = model.createAIP(null, "MIXED", new Permissions(), RodaConstants.ADMIN);
+    model.createRepresentation(aip.getId(), REPRESENTATION_ID, true, "MIXED", true, RodaConstants.ADMIN);
+    gov.loc.premis.v3.Representation premisRepresentation = PremisV3Utils.createBaseRepresentation(aip.getId(),
+      REPRESENTATION_ID);
+
+    for (Map.Entry<String, String> entry : files.entrySet()) {
+      File file = model.createFile(aip.getId(), REPRESENTATION_ID, Collections.emptyList(), entry.getKey(),
+        new StringContentPayload(entry.getValue()), true);
+      if (withFixity) {
+        PremisSkeletonPluginUtils.createPremisSkeletonOnFile(model, file,
+          Collections.singletonList(RodaConstants.SHA256), premisRepresentation);
+      }
+    }
+    return aip.getId();
+  }
+
+  private void setContent(String aipId, String fileId, String content) throws RODAException {
+    model.getStorage().updateBinaryContent(
+      ModelUtils.getFileStoragePath(aipId, REPRESENTATION_ID, Collections.emptyList(), fileId),
+      new StringContentPayload(content), false, false);
+  }
+
+  private long countIncidences(String aipId, INCIDENCE_STATUS status) throws RODAException {
+    index.commit(RiskIncidence.class);
+    return index.count(RiskIncidence.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_AIP_ID, aipId),
+        new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_RISK_ID, FixityAuditor.RISK_ID),
+        new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_STATUS, status.toString())));
+  }
+
+  private static long getCount(String... names) {
+    return RodaCoreFactory.getMetrics().counter(MetricRegistry.name(FixityAuditor.class, names)).getCount();
+  }
+}
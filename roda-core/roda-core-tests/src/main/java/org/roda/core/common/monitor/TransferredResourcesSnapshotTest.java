@@ -0,0 +1,153 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.common.monitor.TransferredResourcesSnapshot.Entry;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the persistence and scopes of {@link TransferredResourcesSnapshot}.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class TransferredResourcesSnapshotTest {
+  private static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+
+  private Path basePath;
+  private Path file;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(TransferredResourcesSnapshotTest.class, false);
+    file = basePath.resolve("snapshot.gz");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testPathsWithSpecialCharactersSurviveReload() {
+    Map<String, Entry> entries = new HashMap<>();
+    entries.put("tab\tfolder", new Entry(true, 0, 1, 2, null));
+    entries.put("tab\tfolder" + SEPARATOR + "new\nline.txt", new Entry(false, 10, 11, 12, "(dev=1,ino=2)"));
+    entries.put("quote\"and\\backslash", new Entry(false, 20, 21, 22, "key\twith\ttabs"));
+    entries.put("ação é ü 日本", new Entry(false, 30, 31, 32, null));
+
+    new TransferredResourcesSnapshot(file).replaceScope(Optional.empty(), entries);
+
+    TransferredResourcesSnapshot reloaded = new TransferredResourcesSnapshot(file);
+    assertTrue(reloaded.isComplete());
+    NavigableMap<String, Entry> scope = reloaded.getScope(Optional.empty());
+    assertEquals(entries.keySet(), scope.keySet());
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      assertSameEntry(entry.getValue(), scope.get(entry.getKey()));
+    }
+  }
+
+  @Test
+  public void testFolderScope() {
+    Map<String, Entry> entries = new HashMap<>();
+    entries.put("a", new Entry(true, 0, 1, 1, null));
+    entries.put("a" + SEPARATOR + "1", new Entry(false, 1, 1, 1, null));
+    entries.put("a" + SEPARATOR + "2", new Entry(false, 2, 1, 1, null));
+    entries.put("ab", new Entry(false, 3, 1, 1, null));
+    entries.put("b", new Entry(false, 4, 1, 1, null));
+
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(file);
+    snapshot.replaceScope(Optional.empty(), entries);
+
+    NavigableMap<String, Entry> scope = snapshot.getScope(Optional.of("a"));
+    assertEquals(3, scope.size());
+    assertTrue(scope.containsKey("a" + SEPARATOR + "1"));
+    assertFalse(scope.containsKey("ab"));
+
+    Map<String, Entry> replacement = new HashMap<>();
+    replacement.put("a", new Entry(true, 0, 2, 1, null));
+    replacement.put("a" + SEPARATOR + "3", new Entry(false, 5, 2, 1, null));
+    snapshot.replaceScope(Optional.of("a"), replacement);
+
+    NavigableMap<String, Entry> reloaded = new TransferredResourcesSnapshot(file).getScope(Optional.empty());
+    assertEquals(4, reloaded.size());
+    assertNull(reloaded.get("a" + SEPARATOR + "1"));
+    assertEquals(5, reloaded.get("a" + SEPARATOR + "3").getSize());
+    assertEquals(3, reloaded.get("ab").getSize());
+  }
+
+  @Test
+  public void testPartialSnapshotIsNotComplete() {
+    Map<String, Entry> entries = new HashMap<>();
+    entries.put("a", new Entry(true, 0, 1, 1, null));
+    new TransferredResourcesSnapshot(file).replaceScope(Optional.of("a"), entries);
+
+    TransferredResourcesSnapshot reloaded = new TransferredResourcesSnapshot(file);
+    assertFalse(reloaded.isComplete());
+    assertFalse(reloaded.isEmpty());
+  }
+
+  @Test
+  public void testUnknownFormatIsIgnored() throws IOException {
+    try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(file))) {
+      outputStream.write("v1 complete\nF\t1\t2\t3\t-\tfile\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(file);
+    assertFalse(snapshot.isComplete());
+    assertTrue(snapshot.isEmpty());
+  }
+
+  @Test
+  public void testCorruptedFileIsIgnored() throws IOException {
+    Files.write(file, "not gzip".getBytes(StandardCharsets.UTF_8));
+
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(file);
+    assertFalse(snapshot.isComplete());
+    assertTrue(snapshot.isEmpty());
+  }
+
+  @Test
+  public void testChanges() {
+    Entry entry = new Entry(false, 10, 100, 50, "key");
+    assertTrue(entry.isChanged(null));
+    assertFalse(entry.isChanged(new Entry(false, 10, 100, 60, "key")));
+    assertTrue(entry.isChanged(new Entry(false, 11, 100, 50, "key")));
+    assertTrue(entry.isChanged(new Entry(false, 10, 101, 50, "key")));
+    assertTrue(entry.isChanged(new Entry(false, 10, 100, 50, "other")));
+    assertTrue(entry.isChanged(new Entry(true, 10, 100, 50, "key")));
+  }
+
+  private static void assertSameEntry(Entry expected, Entry actual) {
+    assertEquals(expected.isDirectory(), actual.isDirectory());
+    assertEquals(expected.getSize(), actual.getSize());
+    assertEquals(expected.getLastModified(), actual.getLastModified());
+    assertEquals(expected.getCreationTime(), actual.getCreationTime());
+    assertEquals(expected.getFileKey(), actual.getFileKey());
+  }
+}
@@ -0,0 +1,292 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tools;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the zips created by {@link ParallelZipper} keep the order and the
+ * content of the entries, storing the incompressible ones and compressing the
+ * others, whether they are kept in memory or in temporary files.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ParallelZipperTest {
+  private static final int MAX_BUFFERED_ENTRY_SIZE = 65536;
+  private static final String TEMP_FILE_PREFIX = "zip-entry-";
+
+  private Path basePath;
+  private ParallelZipper zipper;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(ParallelZipperTest.class, false);
+    zipper = new ParallelZipper(4, 3, Deflater.DEFAULT_COMPRESSION, MAX_BUFFERED_ENTRY_SIZE);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    zipper.shutdown();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testEntriesAreStoredOrCompressed() throws IOException {
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("folder/", null);
+    contents.put("folder/text.txt", ZipStreamWriterTest.repeat("compressible text\n", 5000));
+    // compressible, but stored because of the extension
+    contents.put("folder/photo.JPG", ZipStreamWriterTest.repeat("not really a photo\n", 100));
+    contents.put("random.bin", random(100000, 1));
+    contents.put("empty.txt", new byte[0]);
+    contents.put("empty/", null);
+    // compressed or stored above the maximum buffered size, so kept in a
+    // temporary file or read again when written
+    contents.put("big/text.txt", randomText(20 * MAX_BUFFERED_ENTRY_SIZE, 5));
+    contents.put("big/random.bin", random(3 * MAX_BUFFERED_ENTRY_SIZE + 17, 2));
+
+    Map<String, Integer> methods = new LinkedHashMap<>();
+    methods.put("folder/text.txt", ZipEntry.DEFLATED);
+    methods.put("folder/photo.JPG", ZipEntry.STORED);
+    methods.put("random.bin", ZipEntry.STORED);
+    methods.put("empty.txt", ZipEntry.STORED);
+    methods.put("big/text.txt", ZipEntry.DEFLATED);
+    methods.put("big/random.bin", ZipEntry.STORED);
+
+    List<String> tempFilesBefore = listTempFiles();
+    Path zip = zip("mixed.zip", zipper, contents);
+    assertEquals(tempFilesBefore, listTempFiles());
+
+    assertZip(zip, contents);
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      for (Map.Entry<String, Integer> method : methods.entrySet()) {
+        assertEquals(method.getKey(), method.getValue().intValue(), zipFile.getEntry(method.getKey()).getMethod());
+      }
+      ZipEntry text = zipFile.getEntry("folder/text.txt");
+      assertTrue(text.getCompressedSize() < text.getSize() / 10);
+      ZipEntry big = zipFile.getEntry("big/text.txt");
+      assertTrue(big.getCompressedSize() > MAX_BUFFERED_ENTRY_SIZE);
+      assertTrue(big.getCompressedSize() < big.getSize());
+    }
+  }
+
+  @Test
+  public void testOrderIsKeptWithManyEntries() throws IOException {
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    Random random = new Random(3);
+    for (int i = 0; i < 300; i++) {
+      // different sizes so that entries are prepared in a different order
+      int size = random.nextInt(4) == 0 ? 2 * MAX_BUFFERED_ENTRY_SIZE : random.nextInt(2000);
+      contents.put(String.format("entry-%03d.%s", i, i % 2 == 0 ? "txt" : "bin"),
+        i % 2 == 0 ? ZipStreamWriterTest.repeat(Integer.toString(i), size / 3 + 1) : random(size, i));
+    }
+
+    Path zip = zip("many.zip", zipper, contents);
+    assertZip(zip, contents);
+  }
+
+  @Test
+  public void testNoCompression() throws IOException {
+    ParallelZipper storingZipper = new ParallelZipper(2, Deflater.NO_COMPRESSION, MAX_BUFFERED_ENTRY_SIZE);
+    try {
+      Map<String, byte[]> contents = new LinkedHashMap<>();
+      contents.put("text.txt", ZipStreamWriterTest.repeat("compressible text\n", 5000));
+      Path zip = zip("stored.zip", storingZipper, contents);
+
+      assertZip(zip, contents);
+      try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+        assertEquals(ZipEntry.STORED, zipFile.getEntry("text.txt").getMethod());
+      }
+    } finally {
+      storingZipper.shutdown();
+    }
+  }
+
+  @Test
+  public void testContentChangedWhileZipping() throws IOException {
+    // stored and too big to be kept, so it is read again when written
+    byte[] content = random(2 * MAX_BUFFERED_ENTRY_SIZE, 4);
+    AtomicInteger reads = new AtomicInteger();
+    ContentPayload changing = new TestPayload(() -> {
+      byte[] data = content.clone();
+      if (reads.getAndIncrement() > 0) {
+        data[data.length / 2] ^= 1;
+      }
+      return data;
+    });
+
+    try (OutputStream out = Files.newOutputStream(basePath.resolve("changed.zip"))) {
+      zipper.zip(Arrays.asList(new ZipEntryInfo("changing.bin", changing)).iterator(), out);
+      fail("A content that changed should make the zip fail");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("changing.bin"));
+    }
+  }
+
+  @Test
+  public void testFailingEntryReleasesTheOthers() throws IOException {
+    List<ZipEntryInfo> entries = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      byte[] content = ZipStreamWriterTest.repeat("compressible text " + i + "\n", 20000);
+      entries.add(new ZipEntryInfo("entry-" + i + ".txt", new TestPayload(() -> content)));
+    }
+    entries.add(2, new ZipEntryInfo("failing.txt", new TestPayload(() -> {
+      throw new IOException("failing payload");
+    })));
+
+    List<String> tempFilesBefore = listTempFiles();
+    try (OutputStream out = Files.newOutputStream(basePath.resolve("failing.zip"))) {
+      zipper.zip(entries.iterator(), out);
+      fail("A failing payload should make the zip fail");
+    } catch (IOException e) {
+      assertEquals("failing payload", e.getMessage());
+    }
+    assertEquals(tempFilesBefore, listTempFiles());
+  }
+
+  private Path zip(String zipName, ParallelZipper parallelZipper, Map<String, byte[]> contents) throws IOException {
+    List<ZipEntryInfo> entries = new ArrayList<>();
+    for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+      if (content.getValue() == null) {
+        entries.add(new ZipEntryInfo(content.getKey()));
+      } else {
+        Path file = basePath.resolve(zipName + "-files").resolve(content.getKey());
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getValue());
+        entries.add(new ZipEntryInfo(content.getKey(), file));
+      }
+    }
+
+    Path zip = basePath.resolve(zipName);
+    try (OutputStream out = Files.newOutputStream(zip)) {
+      parallelZipper.zip(entries.iterator(), out);
+    }
+    return zip;
+  }
+
+  private static void assertZip(Path zip, Map<String, byte[]> contents) throws IOException {
+    List<String> names = new ArrayList<>(contents.keySet());
+
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      assertEquals(contents.size(), zipFile.size());
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      for (String name : names) {
+        ZipEntry entry = entries.nextElement();
+        assertEquals(name, entry.getName());
+        byte[] content = contents.get(name);
+        if (content == null) {
+          assertTrue(name, entry.isDirectory());
+          assertEquals(name, 0, entry.getSize());
+        } else {
+          assertEquals(name, content.length, entry.getSize());
+          assertEquals(name, ZipStreamWriterTest.crc(content), entry.getCrc());
+          try (InputStream inputStream = zipFile.getInputStream(entry)) {
+            assertTrue(name, Arrays.equals(content, IOUtils.toByteArray(inputStream)));
+          }
+        }
+      }
+    }
+
+    try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zip))) {
+      for (String name : names) {
+        ZipEntry entry = zipInputStream.getNextEntry();
+        assertEquals(name, entry.getName());
+        byte[] content = contents.get(name);
+        assertTrue(name, Arrays.equals(content == null ? new byte[0] : content, IOUtils.toByteArray(zipInputStream)));
+      }
+      assertNull(zipInputStream.getNextEntry());
+    }
+  }
+
+  private static List<String> listTempFiles() throws IOException {
+    try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+      return files.map(file -> file.getFileName().toString()).filter(name -> name.startsWith(TEMP_FILE_PREFIX))
+        .sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static byte[] random(int size, long seed) {
+    byte[] data = new byte[size];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * @return random hexadecimal lines, which compress to about half their size
+   */
+  private static byte[] randomText(int size, long seed) {
+    Random random = new Random(seed);
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) (i % 64 == 63 ? '\n' : Character.forDigit(random.nextInt(16), 16));
+    }
+    return data;
+  }
+
+  @FunctionalInterface
+  private interface ContentSupplier {
+    byte[] get() throws IOException;
+  }
+
+  private static final class TestPayload implements ContentPayload {
+    private final ContentSupplier supplier;
+
+    private TestPayload(ContentSupplier supplier) {
+      this.supplier = supplier;
+    }
+
+    @Override
+    public InputStream createInputStream() throws IOException {
+      return new ByteArrayInputStream(supplier.get());
+    }
+
+    @Override
+    public void writeToPath(Path path) throws IOException {
+      Files.write(path, supplier.get());
+    }
+
+    @Override
+    public URI getURI() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
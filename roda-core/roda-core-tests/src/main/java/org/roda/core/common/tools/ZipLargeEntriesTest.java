@@ -0,0 +1,269 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tools;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of entries above 4 GiB, which need the ZIP64 extensions for their sizes
+ * and for the offsets of the entries that follow them. The content is all
+ * zeros, generated on the fly and written to a sparse file, so these tests
+ * take some time but little disk space.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL})
+public class ZipLargeEntriesTest {
+  private static final long LARGE_SIZE = 0x100000000L + 1;
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final byte[] SMALL_CONTENT = "after the large entry".getBytes(StandardCharsets.UTF_8);
+
+  private Path basePath;
+  private long largeCrc;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(ZipLargeEntriesTest.class, false);
+    largeCrc = zerosCrc(LARGE_SIZE);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testLargeStoredEntry() throws IOException {
+    Path zip = basePath.resolve("stored.zip");
+    try (ZipStreamWriter writer = new ZipStreamWriter(new SparseFileOutputStream(zip))) {
+      writer.writeEntry("large.bin", ZipStreamWriter.STORED, largeCrc, LARGE_SIZE, LARGE_SIZE,
+        new ZerosInputStream(LARGE_SIZE));
+      // its offset does not fit in 32 bits
+      writer.writeEntry("small.txt", ZipStreamWriter.STORED, ZipStreamWriterTest.crc(SMALL_CONTENT),
+        SMALL_CONTENT.length, SMALL_CONTENT.length, new ByteArrayInputStream(SMALL_CONTENT));
+    }
+
+    assertTrue(Files.size(zip) > LARGE_SIZE);
+    assertLargeZip(zip, ZipEntry.STORED);
+  }
+
+  @Test
+  public void testLargeDeflatedEntry() throws IOException {
+    ParallelZipper zipper = new ParallelZipper(2, Deflater.DEFAULT_COMPRESSION,
+      ParallelZipper.DEFAULT_MAX_BUFFERED_ENTRY_SIZE);
+    Path zip = basePath.resolve("deflated.zip");
+    try (OutputStream out = new SparseFileOutputStream(zip)) {
+      zipper.zip(Arrays.asList(new ZipEntryInfo("large.bin", new ZerosPayload(LARGE_SIZE)),
+        new ZipEntryInfo("small.txt", new ZerosPayload(0))).iterator(), out);
+    } finally {
+      zipper.shutdown();
+    }
+
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      ZipEntry large = zipFile.getEntry("large.bin");
+      assertEquals(ZipEntry.DEFLATED, large.getMethod());
+      assertEquals(LARGE_SIZE, large.getSize());
+      assertEquals(largeCrc, large.getCrc());
+      assertEquals(0, zipFile.getEntry("small.txt").getSize());
+    }
+
+    try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zip))) {
+      assertEquals("large.bin", zipInputStream.getNextEntry().getName());
+      assertEquals(LARGE_SIZE, readZeros(zipInputStream));
+      assertEquals("small.txt", zipInputStream.getNextEntry().getName());
+      assertEquals(-1, zipInputStream.read());
+      assertNull(zipInputStream.getNextEntry());
+    }
+  }
+
+  private void assertLargeZip(Path zip, int method) throws IOException {
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      assertEquals(2, zipFile.size());
+      ZipEntry large = zipFile.getEntry("large.bin");
+      assertEquals(method, large.getMethod());
+      assertEquals(LARGE_SIZE, large.getSize());
+      assertEquals(largeCrc, large.getCrc());
+      try (InputStream inputStream = zipFile.getInputStream(large)) {
+        IOUtils.skipFully(inputStream, LARGE_SIZE - 1);
+        assertEquals(0, inputStream.read());
+        assertEquals(-1, inputStream.read());
+      }
+
+      ZipEntry small = zipFile.getEntry("small.txt");
+      try (InputStream inputStream = zipFile.getInputStream(small)) {
+        assertTrue(Arrays.equals(SMALL_CONTENT, IOUtils.toByteArray(inputStream)));
+      }
+    }
+
+    try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zip))) {
+      ZipEntry large = zipInputStream.getNextEntry();
+      assertEquals("large.bin", large.getName());
+      // the CRC is checked by the stream when the entry is read to its end
+      assertEquals(LARGE_SIZE, readZeros(zipInputStream));
+      assertEquals("small.txt", zipInputStream.getNextEntry().getName());
+      assertTrue(Arrays.equals(SMALL_CONTENT, IOUtils.toByteArray(zipInputStream)));
+      assertNull(zipInputStream.getNextEntry());
+    }
+  }
+
+  private static long readZeros(InputStream inputStream) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long total = 0;
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      total += read;
+    }
+    return total;
+  }
+
+  private static long zerosCrc(long size) {
+    CRC32 crc = new CRC32();
+    byte[] zeros = new byte[BUFFER_SIZE];
+    for (long remaining = size; remaining > 0; remaining -= zeros.length) {
+      crc.update(zeros, 0, (int) Math.min(zeros.length, remaining));
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Stream of the given number of zeros
+   */
+  private static final class ZerosInputStream extends InputStream {
+    private long remaining;
+
+    private ZerosInputStream(long size) {
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() {
+      if (remaining <= 0) {
+        return -1;
+      }
+      remaining--;
+      return 0;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (remaining <= 0) {
+        return -1;
+      }
+      int read = (int) Math.min(len, remaining);
+      Arrays.fill(b, off, off + read, (byte) 0);
+      remaining -= read;
+      return read;
+    }
+  }
+
+  private static final class ZerosPayload implements ContentPayload {
+    private final long size;
+
+    private ZerosPayload(long size) {
+      this.size = size;
+    }
+
+    @Override
+    public InputStream createInputStream() {
+      return new ZerosInputStream(size);
+    }
+
+    @Override
+    public void writeToPath(Path path) throws IOException {
+      try (OutputStream out = new SparseFileOutputStream(path)) {
+        IOUtils.copyLarge(createInputStream(), out);
+      }
+    }
+
+    @Override
+    public URI getURI() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Output stream that skips the writes of zeros, leaving holes in the file
+   */
+  private static final class SparseFileOutputStream extends OutputStream {
+    private final FileChannel channel;
+    private long position = 0;
+
+    private SparseFileOutputStream(Path path) throws IOException {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (!isZeros(b, off, len)) {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+          writePosition += channel.write(buffer, writePosition);
+        }
+      }
+      position += len;
+    }
+
+    private static boolean isZeros(byte[] b, int off, int len) {
+      for (int i = off; i < off + len; i++) {
+        if (b[i] != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (channel.size() < position) {
+          // the file ends with a hole
+          channel.write(ByteBuffer.wrap(new byte[1]), position - 1);
+        }
+      } finally {
+        channel.close();
+      }
+    }
+  }
+}
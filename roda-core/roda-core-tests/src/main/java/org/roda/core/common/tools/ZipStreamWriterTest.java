@@ -0,0 +1,261 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tools;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the zips written by {@link ZipStreamWriter} are read back by
+ * {@link ZipFile} (central directory) and {@link ZipInputStream} (local
+ * headers), including the ZIP64 end of central directory used when there are
+ * too many entries.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ZipStreamWriterTest {
+  private static final byte[] ZIP64_END_SIGNATURE = {0x50, 0x4b, 0x06, 0x06};
+
+  private Path basePath;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(ZipStreamWriterTest.class, false);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testStoredDeflatedDirectoryAndEmptyEntries() throws IOException {
+    byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+    byte[] text = repeat("a line of compressible text\n", 1000);
+    byte[] deflated = deflate(text);
+    String utf8Name = "ação/ficheiro é.txt";
+
+    Path zip = basePath.resolve("entries.zip");
+    try (ZipStreamWriter writer = new ZipStreamWriter(Files.newOutputStream(zip))) {
+      writer.writeEntry("stored.txt", ZipStreamWriter.STORED, crc(stored), stored.length, stored.length,
+        new ByteArrayInputStream(stored));
+      writer.writeEntry("deflated.txt", ZipStreamWriter.DEFLATED, crc(text), text.length, deflated.length,
+        new ByteArrayInputStream(deflated));
+      writer.writeDirectory("folder");
+      writer.writeDirectory("folder/subfolder/");
+      writer.writeEntry("folder/empty.txt", ZipStreamWriter.STORED, 0, 0, 0, null);
+      writer.writeEntry(utf8Name, ZipStreamWriter.STORED, crc(stored), stored.length, stored.length,
+        new ByteArrayInputStream(stored));
+    }
+
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      assertEquals(6, zipFile.size());
+      assertEntry(zipFile, "stored.txt", ZipEntry.STORED, stored);
+      assertEntry(zipFile, "deflated.txt", ZipEntry.DEFLATED, text);
+      assertEntry(zipFile, "folder/empty.txt", ZipEntry.STORED, new byte[0]);
+      assertEntry(zipFile, utf8Name, ZipEntry.STORED, stored);
+      assertEquals(deflated.length, zipFile.getEntry("deflated.txt").getCompressedSize());
+      assertTrue(zipFile.getEntry("folder/").isDirectory());
+      assertTrue(zipFile.getEntry("folder/subfolder/").isDirectory());
+      assertFalse(zipFile.getEntry("folder/empty.txt").isDirectory());
+
+      // the central directory keeps the order of the entries
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      for (String name : new String[] {"stored.txt", "deflated.txt", "folder/", "folder/subfolder/",
+        "folder/empty.txt", utf8Name}) {
+        assertEquals(name, entries.nextElement().getName());
+      }
+    }
+
+    try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zip))) {
+      assertNextEntry(zipInputStream, "stored.txt", stored);
+      assertNextEntry(zipInputStream, "deflated.txt", text);
+      assertNextEntry(zipInputStream, "folder/", new byte[0]);
+      assertNextEntry(zipInputStream, "folder/subfolder/", new byte[0]);
+      assertNextEntry(zipInputStream, "folder/empty.txt", new byte[0]);
+      assertNextEntry(zipInputStream, utf8Name, stored);
+      assertNull(zipInputStream.getNextEntry());
+    }
+  }
+
+  @Test
+  public void testEmptyZip() throws IOException {
+    Path zip = basePath.resolve("empty.zip");
+    try (ZipStreamWriter writer = new ZipStreamWriter(Files.newOutputStream(zip))) {
+      writer.finish();
+    }
+
+    assertEquals(22, Files.size(zip));
+    try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zip))) {
+      assertNull(zipInputStream.getNextEntry());
+    }
+  }
+
+  @Test
+  public void testEntriesBelowTheLimitDoNotUseZip64() throws IOException {
+    Path zip = writeEntries("65534.zip", 65534);
+    assertFalse(contains(Files.readAllBytes(zip), ZIP64_END_SIGNATURE));
+    assertEntriesCount(zip, 65534);
+  }
+
+  @Test
+  public void testTooManyEntriesUseZip64() throws IOException {
+    Path zip = writeEntries("65536.zip", 65536);
+    assertTrue(contains(Files.readAllBytes(zip), ZIP64_END_SIGNATURE));
+    assertEntriesCount(zip, 65536);
+  }
+
+  @Test
+  public void testDuplicateEntryIsRejected() throws IOException {
+    try (ZipStreamWriter writer = new ZipStreamWriter(new ByteArrayOutputStream())) {
+      writer.writeDirectory("folder");
+      writer.writeDirectory("folder/");
+      fail("Duplicate entries should not be accepted");
+    } catch (ZipException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMissingDataIsRejected() throws IOException {
+    byte[] data = "short".getBytes(StandardCharsets.UTF_8);
+    try (ZipStreamWriter writer = new ZipStreamWriter(new ByteArrayOutputStream())) {
+      writer.writeEntry("short.txt", ZipStreamWriter.STORED, crc(data), data.length + 1, data.length + 1,
+        new ByteArrayInputStream(data));
+      fail("Entries with less data than announced should not be accepted");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("short.txt"));
+    }
+  }
+
+  @Test
+  public void testNoEntriesAfterFinish() throws IOException {
+    try (ZipStreamWriter writer = new ZipStreamWriter(new ByteArrayOutputStream())) {
+      writer.finish();
+      writer.writeDirectory("late");
+      fail("Entries should not be accepted after the zip is finished");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private Path writeEntries(String zipName, int count) throws IOException {
+    byte[] data = {'x'};
+    long crc = crc(data);
+    Path zip = basePath.resolve(zipName);
+    try (OutputStream out = Files.newOutputStream(zip); ZipStreamWriter writer = new ZipStreamWriter(out)) {
+      for (int i = 0; i < count; i++) {
+        writer.writeEntry("entry-" + i, ZipStreamWriter.STORED, crc, 1, 1, new ByteArrayInputStream(data));
+      }
+    }
+    return zip;
+  }
+
+  private static void assertEntriesCount(Path zip, int count) throws IOException {
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      assertEquals(count, zipFile.size());
+      assertEntry(zipFile, "entry-" + (count - 1), ZipEntry.STORED, new byte[] {'x'});
+    }
+
+    int read = 0;
+    try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zip))) {
+      while (zipInputStream.getNextEntry() != null) {
+        read++;
+      }
+    }
+    assertEquals(count, read);
+  }
+
+  private static void assertEntry(ZipFile zipFile, String name, int method, byte[] content) throws IOException {
+    ZipEntry entry = zipFile.getEntry(name);
+    assertEquals(name, method, entry.getMethod());
+    assertEquals(name, content.length, entry.getSize());
+    assertEquals(name, crc(content), entry.getCrc());
+    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+      assertTrue(name, Arrays.equals(content, IOUtils.toByteArray(inputStream)));
+    }
+  }
+
+  private static void assertNextEntry(ZipInputStream zipInputStream, String name, byte[] content)
+    throws IOException {
+    ZipEntry entry = zipInputStream.getNextEntry();
+    assertEquals(name, entry.getName());
+    // the CRC is checked by the stream when the entry is read to its end
+    assertTrue(name, Arrays.equals(content, IOUtils.toByteArray(zipInputStream)));
+  }
+
+  static long crc(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return crc.getValue();
+  }
+
+  static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  static byte[] repeat(String text, int times) {
+    StringBuilder builder = new StringBuilder(text.length() * times);
+    for (int i = 0; i < times; i++) {
+      builder.append(text);
+    }
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static boolean contains(byte[] data, byte[] sequence) {
+    for (int i = 0; i <= data.length - sequence.length; i++) {
+      int j = 0;
+      while (j < sequence.length && data[i + j] == sequence[j]) {
+        j++;
+      }
+      if (j == sequence.length) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.log.LogEntry;
+import org.roda.core.data.v2.log.LogEntry.LOG_ENTRY_STATE;
+import org.roda.core.index.utils.SolrBulkWriter;
+import org.roda.core.model.ModelObserver;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the errors of the documents buffered by {@link IndexModelObserver}
+ * are only returned to the source (e.g. block of a job) that indexed them,
+ * whichever source flushes the documents.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class IndexModelObserverBulkTest {
+  private static final long NO_TIMER_FLUSH = 3600000L;
+
+  private Path basePath;
+  private RejectingSolrClient client;
+  private SolrBulkWriter writer;
+  private IndexModelObserver observer;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    client = new RejectingSolrClient("bad");
+    writer = new SolrBulkWriter(client, 100, Long.MAX_VALUE, NO_TIMER_FLUSH, 1000);
+    observer = new IndexModelObserver(client, null, writer);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    writer.close();
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testErrorsAreReturnedToTheirSource() {
+    Object failingBlock = new Object();
+    Object otherBlock = new Object();
+
+    observer.startIndexing(failingBlock);
+    try {
+      assertTrue(observer.logEntriesCreated(Collections.singletonList(logEntry("bad"))).isEmpty());
+    } finally {
+      observer.endIndexing();
+    }
+
+    // the other block sends the documents of both blocks but only gets its own
+    // errors
+    observer.startIndexing(otherBlock);
+    try {
+      assertTrue(observer.logEntriesCreated(Collections.singletonList(logEntry("good"))).isEmpty());
+      assertTrue(observer.flush().isEmpty());
+      assertTrue(client.indexed.contains("good"));
+    } finally {
+      observer.endIndexing();
+    }
+
+    observer.startIndexing(failingBlock);
+    try {
+      ReturnWithExceptions<Void, ModelObserver> ret = observer.flush();
+      assertEquals(1, ret.getExceptions().size());
+      assertTrue(ret.getExceptions().get(0).getMessage().contains("bad"));
+      assertTrue(observer.flush().isEmpty());
+    } finally {
+      observer.endIndexing();
+    }
+  }
+
+  @Test
+  public void testErrorsWithoutSourceAreKeptForTheThread() throws InterruptedException {
+    observer.logEntriesCreated(Collections.singletonList(logEntry("bad")));
+
+    AtomicReference<ReturnWithExceptions<Void, ModelObserver>> otherThreadRet = new AtomicReference<>();
+    Thread otherThread = new Thread(() -> otherThreadRet.set(observer.flush()));
+    otherThread.start();
+    otherThread.join();
+    assertTrue(otherThreadRet.get().isEmpty());
+
+    assertEquals(1, observer.flush().getExceptions().size());
+  }
+
+  private static LogEntry logEntry(String id) {
+    LogEntry entry = new LogEntry();
+    entry.setId(id);
+    entry.setState(LOG_ENTRY_STATE.SUCCESS);
+    return entry;
+  }
+
+  /**
+   * Fails any update request that contains a rejected id.
+   */
+  private static class RejectingSolrClient extends SolrClient {
+    private static final long serialVersionUID = 1L;
+
+    private final Set<String> rejected = new HashSet<>();
+    private final Set<String> indexed = Collections.synchronizedSet(new HashSet<>());
+
+    public RejectingSolrClient(String... rejected) {
+      Collections.addAll(this.rejected, rejected);
+    }
+
+    @Override
+    public NamedList<Object> request(@SuppressWarnings("rawtypes") SolrRequest request, String collection)
+      throws SolrServerException, IOException {
+      List<String> ids = new ArrayList<>();
+      for (SolrInputDocument document : ((UpdateRequest) request).getDocuments()) {
+        ids.add((String) document.getFieldValue(RodaConstants.INDEX_UUID));
+      }
+      for (String id : ids) {
+        if (rejected.contains(id)) {
+          throw new SolrServerException("Rejected document " + id);
+        }
+      }
+      indexed.addAll(ids);
+      return new NamedList<>();
+    }
+
+    @Override
+    public void close() throws IOException {
+      // nothing to close
+    }
+  }
+}
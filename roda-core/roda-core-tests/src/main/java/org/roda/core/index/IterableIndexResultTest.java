@@ -0,0 +1,191 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.sort.SortParameter;
+import org.roda.core.data.v2.index.sort.Sorter;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.index.utils.IterableIndexResult;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the cursor based iteration of {@link IterableIndexResult}.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class IterableIndexResultTest {
+  private static final int PAGE_SIZE = 5;
+  private static final List<String> FIELDS = Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_PARENT_ID);
+
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(IterableIndexResultTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testEmptyResult() throws RODAException {
+    AIP parent = createAIP(null);
+    index.commitAIPs();
+
+    IterableIndexResult<IndexedAIP> result = findChildren(parent.getId(), false);
+    Iterator<IndexedAIP> iterator = result.iterator();
+    assertFalse(iterator.hasNext());
+    assertEquals(0, result.getTotalObjects());
+
+    try {
+      iterator.next();
+      throw new AssertionError("Expected NoSuchElementException");
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testExactlyOnePage() throws RODAException {
+    AIP parent = createAIP(null);
+    Set<String> expected = createChildren(parent.getId(), PAGE_SIZE);
+    index.commitAIPs();
+
+    for (boolean prefetch : Arrays.asList(false, true)) {
+      IterableIndexResult<IndexedAIP> result = findChildren(parent.getId(), prefetch);
+      assertEquals(PAGE_SIZE, result.getTotalObjects());
+      assertEquals(expected, collectIds(result));
+    }
+  }
+
+  @Test
+  public void testSeveralPagesWithSorter() throws RODAException {
+    AIP parent = createAIP(null);
+    Set<String> expected = createChildren(parent.getId(), 2 * PAGE_SIZE + 2);
+    index.commitAIPs();
+
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.AIP_PARENT_ID, parent.getId()));
+    Sorter sorter = new Sorter(new SortParameter(RodaConstants.AIP_PARENT_ID, true));
+    IterableIndexResult<IndexedAIP> result = index.findAll(IndexedAIP.class, filter, sorter, FIELDS);
+    assertEquals(expected, collectIds(result));
+  }
+
+  @Test
+  public void testResultMutatedDuringIteration() throws RODAException {
+    AIP parent = createAIP(null);
+    Set<String> expected = createChildren(parent.getId(), 3 * PAGE_SIZE);
+    index.commitAIPs();
+
+    IterableIndexResult<IndexedAIP> result = findChildren(parent.getId(), false);
+    Iterator<IndexedAIP> iterator = result.iterator();
+    List<String> seen = new ArrayList<>();
+    seen.add(iterator.next().getUUID());
+
+    // delete objects that were not returned yet, including some of later pages
+    List<String> notSeen = new ArrayList<>(expected);
+    notSeen.removeAll(seen);
+    notSeen.sort(null);
+    Set<String> deleted = new HashSet<>(notSeen.subList(notSeen.size() - PAGE_SIZE - 2, notSeen.size()));
+    for (String id : deleted) {
+      model.deleteAIP(id);
+    }
+    index.commitAIPs();
+
+    while (iterator.hasNext()) {
+      seen.add(iterator.next().getUUID());
+    }
+
+    // no duplicates and nothing that still exists was skipped
+    assertEquals(seen.size(), new HashSet<>(seen).size());
+    Set<String> remaining = new HashSet<>(expected);
+    remaining.removeAll(deleted);
+    assertTrue(seen.containsAll(remaining));
+    assertTrue(expected.containsAll(seen));
+  }
+
+  @Test
+  public void testCloseEndsIteration() throws RODAException {
+    AIP parent = createAIP(null);
+    createChildren(parent.getId(), 2 * PAGE_SIZE);
+    index.commitAIPs();
+
+    // the second page is being obtained in background when the result is
+    // closed
+    IterableIndexResult<IndexedAIP> result = findChildren(parent.getId(), true);
+    Iterator<IndexedAIP> iterator = result.iterator();
+    iterator.next();
+    result.close();
+    assertFalse(iterator.hasNext());
+  }
+
+  private static IterableIndexResult<IndexedAIP> findChildren(String parentId, boolean prefetch) {
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.AIP_PARENT_ID, parentId));
+    return index.findAllWithCursor(IndexedAIP.class, filter, Sorter.NONE, null, true, FIELDS, PAGE_SIZE, prefetch);
+  }
+
+  private static Set<String> collectIds(IterableIndexResult<IndexedAIP> result) {
+    List<String> ids = new ArrayList<>();
+    result.forEach(aip -> ids.add(aip.getUUID()));
+    Set<String> ret = new HashSet<>(ids);
+    assertEquals(ids.size(), ret.size());
+    return ret;
+  }
+
+  private static Set<String> createChildren(String parentId, int count) throws RODAException {
+    Set<String> ret = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      ret.add(createAIP(parentId).getId());
+    }
+    return ret;
+  }
+
+  private static AIP createAIP(String parentId) throws RODAException {
+    return model.createAIP(parentId, RodaConstants.AIP_TYPE_MIXED, new Permissions(), RodaConstants.ADMIN);
+  }
+}
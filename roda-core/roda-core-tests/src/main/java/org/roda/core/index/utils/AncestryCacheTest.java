@@ -0,0 +1,165 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link AncestryCache} never returns an ancestry made stale by a
+ * move, including when the moved AIP is not itself a cache key.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class AncestryCacheTest {
+  private static Path basePath;
+  private static ModelService model;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(AncestryCacheTest.class, true);
+
+    boolean deploySolr = false;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    model = RodaCoreFactory.getModelService();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testAncestorsAreCached() throws RODAException {
+    AIP root = createAIP(null);
+    AIP child = createAIP(root.getId());
+    AIP grandChild = createAIP(child.getId());
+
+    AncestryCache cache = new AncestryCache(100, null);
+    assertEquals(Arrays.asList(child.getId(), root.getId()), cache.getAncestors(child.getId(), model));
+    assertEquals(0, cache.getHits());
+
+    assertEquals(Arrays.asList(child.getId(), root.getId()), cache.getAncestors(child.getId(), model));
+    assertEquals(1, cache.getHits());
+
+    // the upper part of the hierarchy is reused
+    assertEquals(Arrays.asList(grandChild.getId(), child.getId(), root.getId()),
+      cache.getAncestors(grandChild.getId(), model));
+  }
+
+  @Test
+  public void testMove() throws RODAException {
+    AIP root = createAIP(null);
+    AIP otherRoot = createAIP(null);
+    AIP child = createAIP(root.getId());
+    AIP grandChild = createAIP(child.getId());
+
+    AncestryCache cache = new AncestryCache(100, null);
+    cache.getAncestors(child.getId(), model);
+    cache.getAncestors(grandChild.getId(), model);
+
+    AIP moved = model.moveAIP(child.getId(), otherRoot.getId(), RodaConstants.ADMIN);
+    cache.invalidateIfParentChanged(moved);
+
+    assertEquals(Arrays.asList(child.getId(), otherRoot.getId()), cache.getAncestors(child.getId(), model));
+    assertEquals(Arrays.asList(grandChild.getId(), child.getId(), otherRoot.getId()),
+      cache.getAncestors(grandChild.getId(), model));
+  }
+
+  @Test
+  public void testMoveOfAncestorThatIsNotCached() throws RODAException {
+    AIP root = createAIP(null);
+    AIP otherRoot = createAIP(null);
+    AIP child = createAIP(root.getId());
+    AIP grandChild = createAIP(child.getId());
+
+    // only the descendant is a cache key, as if the moved AIP had been evicted
+    AncestryCache cache = new AncestryCache(100, null);
+    cache.getAncestors(grandChild.getId(), model);
+
+    AIP moved = model.moveAIP(child.getId(), otherRoot.getId(), RodaConstants.ADMIN);
+    cache.invalidateIfParentChanged(moved);
+
+    assertEquals(Arrays.asList(grandChild.getId(), child.getId(), otherRoot.getId()),
+      cache.getAncestors(grandChild.getId(), model));
+  }
+
+  @Test
+  public void testEviction() throws RODAException {
+    AIP root = createAIP(null);
+    AIP otherRoot = createAIP(null);
+    AIP child = createAIP(root.getId());
+    AIP grandChild = createAIP(child.getId());
+    AIP greatGrandChild = createAIP(grandChild.getId());
+
+    AncestryCache cache = new AncestryCache(1, null);
+    cache.getAncestors(child.getId(), model);
+    cache.getAncestors(grandChild.getId(), model);
+    cache.getAncestors(greatGrandChild.getId(), model);
+
+    AIP moved = model.moveAIP(child.getId(), otherRoot.getId(), RodaConstants.ADMIN);
+    cache.invalidateIfParentChanged(moved);
+
+    assertEquals(Arrays.asList(greatGrandChild.getId(), grandChild.getId(), child.getId(), otherRoot.getId()),
+      cache.getAncestors(greatGrandChild.getId(), model));
+    assertEquals(Arrays.asList(grandChild.getId(), child.getId(), otherRoot.getId()),
+      cache.getAncestors(grandChild.getId(), model));
+  }
+
+  @Test
+  public void testUnchangedParentKeepsCachedAncestries() throws RODAException {
+    AIP root = createAIP(null);
+    AIP child = createAIP(root.getId());
+
+    AncestryCache cache = new AncestryCache(100, null);
+    cache.getAncestors(child.getId(), model);
+    cache.invalidateIfParentChanged(model.retrieveAIP(child.getId()));
+
+    cache.getAncestors(child.getId(), model);
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void testNewAIPsKeepCachedAncestries() throws RODAException {
+    AIP root = createAIP(null);
+    AIP child = createAIP(root.getId());
+
+    AncestryCache cache = new AncestryCache(100, null);
+    cache.getAncestors(child.getId(), model);
+    cache.invalidateIfParentChanged(createAIP(child.getId()));
+    cache.invalidateIfParentChanged(createAIP(null));
+
+    cache.getAncestors(child.getId(), model);
+    assertEquals(1, cache.getHits());
+  }
+
+  private static AIP createAIP(String parentId) throws RODAException {
+    return model.createAIP(parentId, RodaConstants.AIP_TYPE_MIXED, new Permissions(), RodaConstants.ADMIN);
+  }
+}
@@ -0,0 +1,284 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the rebuild of an index in a shadow index of the embedded Solr: the
+ * updates copied to it while it is rebuilt, its validation, the swap with the
+ * live index, its removal when aborted or not valid and the removal of the
+ * shadow indexes left by rebuilds that did not finish.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ShadowIndexManagerTest {
+  private static final String INDEX = RodaConstants.INDEX_MEMBERS;
+
+  private Path basePath;
+  private Path indexDataPath;
+  private ShadowIndexSolrClient client;
+  private SolrClient delegate;
+  private ShadowIndexManager manager;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    indexDataPath = RodaCoreFactory.getDataPath().resolve(RodaConstants.CORE_INDEX_FOLDER);
+    client = (ShadowIndexSolrClient) RodaCoreFactory.getSolr();
+    delegate = client.getDelegate();
+    manager = new ShadowIndexManager(client, indexDataPath.resolve(ShadowIndexManager.GENERATIONS_FILE));
+
+    client.deleteByQuery(INDEX, "*:*");
+    client.commit(INDEX);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testSwapReplacesLiveIndex() throws GenericException, SolrServerException, IOException {
+    add(client, INDEX, "1", "2", "3");
+    client.commit(INDEX);
+
+    manager.create(INDEX);
+    assertTrue(manager.hasShadow(INDEX));
+    String shadowName = client.getShadow(INDEX);
+    assertNotNull(shadowName);
+    assertTrue(getCoreNames().contains(shadowName));
+
+    // the rebuild and the updates that arrive meanwhile go to both indexes
+    add(client, INDEX, "1", "2", "3");
+    add(client, INDEX, "4");
+    client.deleteById(INDEX, "2");
+
+    // the live index stays available
+    client.commit(INDEX);
+    assertEquals(3, count(INDEX));
+
+    manager.swap(INDEX);
+    assertFalse(manager.hasShadow(INDEX));
+    assertEquals(3, count(INDEX));
+    assertEquals(1, count(INDEX, "4"));
+    assertEquals(0, count(INDEX, "2"));
+
+    // the old core is removed and the new data folder is used from now on
+    assertFalse(getCoreNames().contains(shadowName));
+    Path dataFolder = ShadowIndexManager.getDataFolder(indexDataPath, RodaConstants.CORE_MEMBERS_FOLDER);
+    assertEquals(RodaConstants.CORE_MEMBERS_FOLDER + "_" + shadowName.substring(INDEX.length() + 1),
+      dataFolder.getFileName().toString());
+    assertTrue(Files.isDirectory(dataFolder));
+    assertFalse(Files.exists(indexDataPath.resolve(RodaConstants.CORE_MEMBERS_FOLDER)));
+
+    // updates are no longer copied
+    add(client, INDEX, "5");
+    client.commit(INDEX);
+    assertEquals(4, count(INDEX));
+  }
+
+  @Test
+  public void testMissingDocumentsPreventSwap() throws GenericException, SolrServerException, IOException {
+    add(client, INDEX, "1", "2", "3");
+    client.commit(INDEX);
+
+    manager.create(INDEX);
+    String shadowName = client.getShadow(INDEX);
+    // the rebuild did not reindex one of the documents
+    add(client, INDEX, "1", "2");
+
+    try {
+      manager.swap(INDEX);
+      fail("A shadow index with fewer documents should not replace the live one");
+    } catch (GenericException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("has 2 documents"));
+    }
+
+    // the shadow index is removed and the live one is kept
+    assertFalse(manager.hasShadow(INDEX));
+    assertFalse(getCoreNames().contains(shadowName));
+    assertEquals(3, count(INDEX));
+    assertEquals(indexDataPath.resolve(RodaConstants.CORE_MEMBERS_FOLDER),
+      ShadowIndexManager.getDataFolder(indexDataPath, RodaConstants.CORE_MEMBERS_FOLDER));
+  }
+
+  @Test
+  public void testDeletesDuringRebuildAreAllowed() throws GenericException, SolrServerException, IOException {
+    add(client, INDEX, "1", "2", "3");
+    client.commit(INDEX);
+
+    manager.create(INDEX);
+    String shadowName = client.getShadow(INDEX);
+    add(client, INDEX, "1", "2", "3");
+    client.commit(INDEX);
+
+    // a document added to the shadow index after being deleted, as when the
+    // copy of an update of another thread arrives after the delete
+    client.deleteByQuery(INDEX, RodaConstants.INDEX_UUID + ":1");
+    add(delegate, shadowName, "1");
+    assertEquals(1, client.getShadowDeletes(INDEX));
+
+    manager.validate(INDEX);
+    manager.swap(INDEX);
+    assertEquals(3, count(INDEX));
+  }
+
+  @Test
+  public void testOnlyExistingDocumentsAreCountedAsDeleted() throws GenericException, SolrServerException, IOException {
+    add(client, INDEX, "1", "2");
+    client.commit(INDEX);
+
+    manager.create(INDEX);
+    client.deleteById(INDEX, Arrays.asList("1", "missing"));
+    client.deleteById(INDEX, "other missing");
+    assertEquals(1, client.getShadowDeletes(INDEX));
+  }
+
+  @Test
+  public void testCopyFailuresPreventSwap() throws GenericException, SolrServerException, IOException {
+    manager.create(INDEX);
+    String shadowName = client.getShadow(INDEX);
+    CoreAdminRequest.unloadCore(shadowName, delegate);
+
+    // the live index is updated even if the copy fails
+    add(client, INDEX, "1");
+    client.commit(INDEX);
+    assertEquals(1, count(INDEX));
+    assertEquals(1, client.getShadowFailures(INDEX));
+
+    try {
+      manager.swap(INDEX);
+      fail("A shadow index that missed updates should not replace the live one");
+    } catch (GenericException e) {
+      // expected
+    }
+    assertFalse(manager.hasShadow(INDEX));
+    assertEquals(1, count(INDEX));
+  }
+
+  @Test
+  public void testAbortRemovesShadowIndex() throws GenericException, SolrServerException, IOException {
+    add(client, INDEX, "1");
+    client.commit(INDEX);
+
+    manager.create(INDEX);
+    String shadowName = client.getShadow(INDEX);
+    add(client, INDEX, "2");
+    manager.abort(INDEX);
+
+    assertFalse(manager.hasShadow(INDEX));
+    assertFalse(getCoreNames().contains(shadowName));
+    assertTrue(listShadowFolders().isEmpty());
+
+    // updates are no longer copied
+    add(client, INDEX, "3");
+    client.commit(INDEX);
+    assertEquals(3, count(INDEX));
+  }
+
+  @Test
+  public void testCleanupRemovesStaleShadowIndexes() throws GenericException, SolrServerException, IOException {
+    manager.create(INDEX);
+    String shadowName = client.getShadow(INDEX);
+    // data folder of a shadow core that is no longer loaded
+    Path staleFolder = indexDataPath.resolve(RodaConstants.CORE_MEMBERS_FOLDER + "_123");
+    Files.createDirectories(staleFolder);
+
+    // as after a restart, the shadow index is unknown to the client
+    ShadowIndexManager restarted = new ShadowIndexManager(new ShadowIndexSolrClient(delegate),
+      indexDataPath.resolve(ShadowIndexManager.GENERATIONS_FILE));
+    restarted.cleanup();
+
+    assertFalse(getCoreNames().contains(shadowName));
+    assertTrue(getCoreNames().contains(INDEX));
+    assertTrue(listShadowFolders().isEmpty());
+    assertTrue(Files.isDirectory(indexDataPath.resolve(RodaConstants.CORE_MEMBERS_FOLDER)));
+  }
+
+  private static void add(SolrClient solrClient, String collection, String... ids)
+    throws SolrServerException, IOException {
+    List<SolrInputDocument> documents = new ArrayList<>();
+    for (String id : ids) {
+      SolrInputDocument document = new SolrInputDocument();
+      document.addField(RodaConstants.INDEX_UUID, id);
+      document.addField(RodaConstants.MEMBERS_NAME, "member" + id);
+      document.addField(RodaConstants.MEMBERS_IS_ACTIVE, true);
+      document.addField(RodaConstants.MEMBERS_IS_USER, true);
+      documents.add(document);
+    }
+    solrClient.add(collection, documents);
+  }
+
+  private long count(String collection) throws SolrServerException, IOException {
+    return count(new SolrQuery("*:*"), collection);
+  }
+
+  private long count(String collection, String id) throws SolrServerException, IOException {
+    return count(new SolrQuery(RodaConstants.INDEX_UUID + ":" + id), collection);
+  }
+
+  private long count(SolrQuery query, String collection) throws SolrServerException, IOException {
+    query.setRows(0);
+    return delegate.query(collection, query).getResults().getNumFound();
+  }
+
+  private List<String> getCoreNames() throws SolrServerException, IOException {
+    NamedList<NamedList<Object>> cores = CoreAdminRequest.getStatus(null, delegate).getCoreStatus();
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < cores.size(); i++) {
+      names.add(cores.getName(i));
+    }
+    return names;
+  }
+
+  private List<Path> listShadowFolders() throws IOException {
+    try (Stream<Path> paths = Files.list(indexDataPath)) {
+      return paths.filter(p -> p.getFileName().toString().startsWith(RodaConstants.CORE_MEMBERS_FOLDER + "_"))
+        .collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of {@link SolrBulkWriter} against a client that records the update
+ * requests and rejects some documents.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class SolrBulkWriterTest {
+  private static final String COLLECTION = "collection";
+  private static final long NO_TIMER_FLUSH = 3600000L;
+
+  @Test
+  public void testFlushWhenBufferIsFull() {
+    RecordingSolrClient client = new RecordingSolrClient();
+    try (SolrBulkWriter writer = new SolrBulkWriter(client, 3, Long.MAX_VALUE, NO_TIMER_FLUSH, 10)) {
+      Object source = new Object();
+      assertTrue(writer.add(COLLECTION, document("1"), source).isEmpty());
+      assertTrue(writer.add(COLLECTION, document("2"), source).isEmpty());
+      assertEquals(0, client.requests.size());
+
+      assertTrue(writer.add(COLLECTION, document("3"), source).isEmpty());
+      assertEquals(1, client.requests.size());
+      assertEquals(3, client.requests.get(0).size());
+    }
+  }
+
+  @Test
+  public void testFlushBarrierKeepsOrder() {
+    RecordingSolrClient client = new RecordingSolrClient();
+    try (SolrBulkWriter writer = new SolrBulkWriter(client, 2, Long.MAX_VALUE, NO_TIMER_FLUSH, 10)) {
+      Object source = new Object();
+      for (int i = 1; i <= 5; i++) {
+        writer.add(COLLECTION, document(Integer.toString(i)), source);
+      }
+      assertTrue(writer.flush(source).isEmpty());
+
+      List<String> sent = new ArrayList<>();
+      for (List<String> request : client.requests) {
+        sent.addAll(request);
+      }
+      assertEquals(Arrays.asList("1", "2", "3", "4", "5"), sent);
+    }
+  }
+
+  @Test
+  public void testErrorsAreReturnedToTheSourceOfTheFailingDocument() {
+    RecordingSolrClient client = new RecordingSolrClient("bad");
+    try (SolrBulkWriter writer = new SolrBulkWriter(client, 2, Long.MAX_VALUE, NO_TIMER_FLUSH, 10)) {
+      Object failingSource = new Object();
+      Object triggeringSource = new Object();
+
+      assertTrue(writer.add(COLLECTION, document("bad"), failingSource).isEmpty());
+      // this source triggers the flush but its document was indexed
+      ReturnWithExceptions<Void, Object> triggeringRet = writer.add(COLLECTION, document("good"), triggeringSource);
+      assertTrue(triggeringRet.isEmpty());
+      assertTrue(writer.flush(triggeringSource).isEmpty());
+
+      // bulk request plus one request per document
+      assertEquals(3, client.requests.size());
+      assertTrue(client.indexed.contains("good"));
+
+      ReturnWithExceptions<Void, Object> failingRet = writer.flush(failingSource);
+      assertEquals(1, failingRet.getExceptions().size());
+      assertTrue(failingRet.getExceptions().get(0).getMessage().contains("bad"));
+
+      // errors are returned only once
+      assertTrue(writer.flush(failingSource).isEmpty());
+    }
+  }
+
+  @Test
+  public void testTimerFlushErrorsAreKeptForTheSource() throws InterruptedException {
+    RecordingSolrClient client = new RecordingSolrClient("bad");
+    try (SolrBulkWriter writer = new SolrBulkWriter(client, 100, Long.MAX_VALUE, 100L, 100)) {
+      Object source = new Object();
+      writer.add(COLLECTION, document("bad"), source);
+
+      long deadline = System.currentTimeMillis() + 10000L;
+      while (client.requests.isEmpty() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      assertTrue(!client.requests.isEmpty());
+
+      assertTrue(writer.flush(new Object()).isEmpty());
+      assertEquals(1, writer.flush(source).getExceptions().size());
+    }
+  }
+
+  private static SolrInputDocument document(String id) {
+    SolrInputDocument document = new SolrInputDocument();
+    document.addField(RodaConstants.INDEX_UUID, id);
+    return document;
+  }
+
+  /**
+   * Records the ids of every update request and fails any request that
+   * contains a rejected id.
+   */
+  private static class RecordingSolrClient extends SolrClient {
+    private static final long serialVersionUID = 1L;
+
+    private final Set<String> rejected;
+    private final List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> indexed = Collections.synchronizedSet(new HashSet<>());
+
+    public RecordingSolrClient(String... rejected) {
+      this.rejected = new HashSet<>(Arrays.asList(rejected));
+    }
+
+    @Override
+    public NamedList<Object> request(@SuppressWarnings("rawtypes") SolrRequest request, String collection)
+      throws SolrServerException, IOException {
+      List<String> ids = new ArrayList<>();
+      for (SolrInputDocument document : ((UpdateRequest) request).getDocuments()) {
+        ids.add((String) document.getFieldValue(RodaConstants.INDEX_UUID));
+      }
+      requests.add(ids);
+
+      for (String id : ids) {
+        if (rejected.contains(id)) {
+          throw new SolrServerException("Rejected document " + id);
+        }
+      }
+      indexed.addAll(ids);
+      return new NamedList<>();
+    }
+
+    @Override
+    public void close() throws IOException {
+      // nothing to close
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.apache.solr.handler.loader.XMLLoader;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.RodaUtils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.fs.FSPathContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Tests that {@link SolrInputDocumentHandler} builds the same documents as
+ * Solr's {@link XMLLoader}, both for handcrafted documents and for the output
+ * of the ingest crosswalks over the test corpora.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class SolrInputDocumentHandlerTest {
+  private static Path basePath;
+  private static Path corporaPath;
+
+  @BeforeClass
+  public static void setUp() throws IOException, URISyntaxException {
+    basePath = TestsHelper.createBaseTempDir(SolrInputDocumentHandlerTest.class, true);
+
+    boolean deploySolr = false;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    corporaPath = Paths.get(SolrInputDocumentHandlerTest.class.getResource("/corpora").toURI());
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testPlainFields() throws Exception {
+    String xml = "<add><doc boost=\"2.5\">" + "<field name=\"id\">1</field>"
+      + "<field name=\"title\" boost=\"3.0\">  a title\n with whitespace </field>"
+      + "<field name=\"multi\">one</field><field name=\"multi\">two</field>"
+      + "<field name=\"empty\"></field><field name=\"ignored\" null=\"true\">value</field>"
+      + "<field name=\"escaped\">a &amp; b &lt;c&gt;</field>" + "<field name=\"cdata\"><![CDATA[<x>]]></field>"
+      + "</doc></add>";
+
+    SolrInputDocument document = assertSameAsXMLLoader(xml);
+    assertEquals(2.5f, document.getDocumentBoost());
+    assertEquals("  a title\n with whitespace ", document.getFieldValue("title"));
+    assertEquals(Arrays.asList("one", "two"), new ArrayList<>(document.getFieldValues("multi")));
+    assertNull(document.getField("ignored"));
+  }
+
+  @Test
+  public void testRepeatedUpdateFieldsAreMerged() throws Exception {
+    String xml = "<add><doc>" + "<field name=\"id\">1</field>" + "<field name=\"tags\" update=\"add\">a</field>"
+      + "<field name=\"title\" update=\"set\">t</field>" + "<field name=\"tags\" update=\"add\">b</field>"
+      + "<field name=\"tags\" update=\"add\">c</field>" + "<field name=\"tags\" update=\"remove\">d</field>"
+      + "<field name=\"other\">x</field>" + "</doc></add>";
+
+    SolrInputDocument document = assertSameAsXMLLoader(xml);
+
+    Map<String, Object> tags = new LinkedHashMap<>();
+    tags.put("add", Arrays.asList("a", "b", "c"));
+    tags.put("remove", "d");
+    assertEquals(1, document.getFieldValues("tags").size());
+    assertEquals(tags, document.getFieldValue("tags"));
+    assertEquals(Collections.singletonMap("set", "t"), document.getFieldValue("title"));
+  }
+
+  @Test
+  public void testNullUpdateFields() throws Exception {
+    String xml = "<add><doc>" + "<field name=\"id\">1</field>"
+      + "<field name=\"removed\" update=\"set\" null=\"true\"/>" + "<field name=\"twice\" update=\"set\">a</field>"
+      + "<field name=\"twice\" update=\"set\" null=\"true\"/>" + "</doc></add>";
+
+    SolrInputDocument document = assertSameAsXMLLoader(xml);
+    assertEquals(Collections.singletonMap("set", null), document.getFieldValue("removed"));
+    assertEquals(Collections.singletonMap("set", Arrays.asList("a", null)), document.getFieldValue("twice"));
+  }
+
+  @Test
+  public void testDescriptiveMetadataCrosswalks() throws Exception {
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("prefix", RodaConstants.INDEX_OTHER_DESCRIPTIVE_DATA_PREFIX);
+
+    assertCrosswalkSameAsXMLLoader(corporaPath.resolve("aip/AIP_1/metadata/descriptive/ead.xml"),
+      RodaConstants.CORE_CROSSWALKS_INGEST, "ead", "2002", parameters);
+    assertCrosswalkSameAsXMLLoader(corporaPath.resolve("aip/AIP_3/metadata/descriptive/ead.xml"),
+      RodaConstants.CORE_CROSSWALKS_INGEST, "ead", "2002", parameters);
+    assertCrosswalkSameAsXMLLoader(corporaPath.resolve("aip/AIP_VERSION_EAD_3/metadata/descriptive/ead_3.xml"),
+      RodaConstants.CORE_CROSSWALKS_INGEST, "ead", "3", parameters);
+    assertCrosswalkSameAsXMLLoader(corporaPath.resolve("aip/AIP_2/metadata/descriptive/dc.xml"),
+      RodaConstants.CORE_CROSSWALKS_INGEST, "dc", "SimpleDC20021212", parameters);
+  }
+
+  @Test
+  public void testPreservationMetadataCrosswalk() throws Exception {
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("aipID", "AIP_1");
+    parameters.put("representationID", "representation_2");
+    parameters.put("representationUUID", "representation_2-uuid");
+    parameters.put("fileID", "fil_7516.jpg.tiff");
+    parameters.put("fileUUID", "fil_7516.jpg.tiff-uuid");
+    parameters.put("objectClass", "file");
+
+    assertCrosswalkSameAsXMLLoader(
+      corporaPath.resolve(
+        "aip/AIP_1/representations/representation_2/metadata/preservation/urn:roda:premis:file:fil_7516.jpg.tiff.xml"),
+      RodaConstants.CORE_CROSSWALKS_INGEST_OTHER, RodaConstants.PREMIS_METADATA_TYPE,
+      RodaConstants.PREMIS_METADATA_VERSION, parameters);
+  }
+
+  private static void assertCrosswalkSameAsXMLLoader(Path metadata, String crosswalkPath, String metadataType,
+    String metadataVersion, Map<String, String> parameters) throws RODAException, IOException, XMLStreamException {
+    Binary binary = new DefaultBinary(DefaultStoragePath.parse(metadata.getFileName().toString()),
+      new FSPathContentPayload(metadata), Files.size(metadata), false, new HashMap<>());
+
+    SolrInputDocument expected;
+    try (Reader reader = RodaUtils.applyMetadataStylesheet(binary, crosswalkPath, metadataType, metadataVersion,
+      parameters)) {
+      expected = loadWithXMLLoader(reader);
+    }
+
+    SolrInputDocumentHandler handler = new SolrInputDocumentHandler();
+    RodaUtils.applyMetadataStylesheet(binary, crosswalkPath, metadataType, metadataVersion, parameters, handler);
+
+    assertNotNull(metadata.toString(), expected);
+    assertFalse(metadata.toString(), expected.getFieldNames().isEmpty());
+    assertSameDocument(expected, handler.getDocument());
+  }
+
+  private static SolrInputDocument assertSameAsXMLLoader(String xml)
+    throws XMLStreamException, SAXException, IOException, ParserConfigurationException {
+    SolrInputDocument expected = loadWithXMLLoader(new StringReader(xml));
+
+    SolrInputDocumentHandler handler = new SolrInputDocumentHandler();
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.newSAXParser().parse(new InputSource(new StringReader(xml)), handler);
+
+    assertSameDocument(expected, handler.getDocument());
+    return handler.getDocument();
+  }
+
+  private static SolrInputDocument loadWithXMLLoader(Reader reader) throws XMLStreamException {
+    XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+    try {
+      SolrInputDocument document = null;
+      while (parser.hasNext()) {
+        if (parser.next() == XMLStreamConstants.START_ELEMENT && "doc".equals(parser.getLocalName())) {
+          document = new XMLLoader().readDoc(parser);
+        }
+      }
+      return document;
+    } finally {
+      parser.close();
+    }
+  }
+
+  private static void assertSameDocument(SolrInputDocument expected, SolrInputDocument actual) {
+    assertNotNull(actual);
+    assertEquals(expected.getDocumentBoost(), actual.getDocumentBoost());
+    assertEquals(expected.getFieldNames(), actual.getFieldNames());
+    for (String name : expected.getFieldNames()) {
+      SolrInputField expectedField = expected.getField(name);
+      SolrInputField actualField = actual.getField(name);
+      assertEquals(name, new ArrayList<>(expectedField.getValues()), new ArrayList<>(actualField.getValues()));
+      assertEquals(name, expectedField.getBoost(), actualField.getBoost());
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginState;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the job report log of {@link JobReportStore}: report steps that only
+ * differ by their position, log replay and recovery after a crash.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class JobReportStoreTest {
+  private static final String PLUGIN = "org.roda.core.plugins.plugins.DummyPlugin";
+
+  private static Path basePath;
+  private static ModelService model;
+
+  private Path logDirectory;
+  private Job job;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(JobReportStoreTest.class, true);
+
+    boolean deploySolr = false;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    model = RodaCoreFactory.getModelService();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @BeforeMethod
+  public void createJob() throws RODAException, IOException {
+    logDirectory = Files.createTempDirectory(basePath, "job-report-log");
+    job = new Job();
+    job.setId(UUID.randomUUID().toString());
+    job.setName("job");
+    model.createJob(job);
+  }
+
+  @AfterMethod
+  public void deleteLog() {
+    FSUtils.deletePathQuietly(logDirectory);
+  }
+
+  @Test
+  public void testEqualStepsAreAllKept() throws RODAException {
+    Date sameDate = new Date();
+    JobReportStore store = newStore();
+    Report base = baseReport("report");
+    store.appendReportItem(base, item(sameDate), false, job);
+    store.appendReportItem(base, item(sameDate), false, job);
+    store.flush(job.getId(), false);
+    store.close();
+
+    assertEquals(2, model.retrieveStoredJobReport(job.getId(), "report").getReports().size());
+  }
+
+  @Test
+  public void testRecoveryReplaysUnflushedRecords() throws RODAException {
+    JobReportStore crashed = newStore();
+    Report base = baseReport("report");
+    Date sameDate = new Date();
+    crashed.appendReportItem(base, item(sameDate), false, job);
+    crashed.appendReportItem(base, item(sameDate), false, job);
+    crashed.appendReportItem(base, item(new Date()), false, job);
+    // crash: nothing is flushed nor closed
+
+    JobReportStore recovered = newStore();
+    recovered.recover();
+    recovered.close();
+
+    Report report = model.retrieveStoredJobReport(job.getId(), "report");
+    assertEquals(3, report.getReports().size());
+    assertEquals(3, report.getStepsCompleted().intValue());
+    assertFalse(Files.exists(logDirectory.resolve(job.getId())));
+  }
+
+  @Test
+  public void testRecoveryAfterFlushBeforeCheckpoint() throws RODAException, IOException {
+    JobReportStore crashed = newStore();
+    Report base = baseReport("report");
+    crashed.appendReportItem(base, item(new Date()), false, job);
+    crashed.flush(job.getId(), false);
+
+    // second segment starts from the report already written to storage
+    crashed.appendReportItem(base, item(new Date()), false, job);
+    crashed.appendReportItem(base, item(new Date()), true, job);
+    crashed.updateOutcomeObjectState(job.getId(), "report", AIPState.ACTIVE);
+    List<Path> segments = copySegments();
+
+    // crash after the reports were written but before the segments were deleted
+    crashed.flush(job.getId(), false);
+    restoreSegments(segments);
+    Report written = model.retrieveStoredJobReport(job.getId(), "report");
+    assertEquals(2, written.getReports().size());
+
+    JobReportStore recovered = newStore();
+    recovered.recover();
+    recovered.close();
+
+    Report report = model.retrieveStoredJobReport(job.getId(), "report");
+    assertEquals(2, report.getReports().size());
+    assertEquals(written.getStepsCompleted(), report.getStepsCompleted());
+    assertEquals(AIPState.ACTIVE, report.getOutcomeObjectState());
+  }
+
+  @Test
+  public void testRecordsAreNotReplayedTwice() throws RODAException, IOException {
+    JobReportStore crashed = newStore();
+    Report base = baseReport("report");
+    crashed.appendReportItem(base, item(new Date()), false, job);
+
+    // the same records twice in the log, as if a segment had been copied
+    Path jobDirectory = logDirectory.resolve(job.getId());
+    Path segment = listSegments(jobDirectory).get(0);
+    Files.copy(segment, jobDirectory.resolve("9999999999.log"));
+
+    JobReportStore recovered = newStore();
+    recovered.recover();
+    recovered.close();
+
+    assertEquals(1, model.retrieveStoredJobReport(job.getId(), "report").getReports().size());
+  }
+
+  private JobReportStore newStore() {
+    return new JobReportStore(model, logDirectory, 0, 100, false);
+  }
+
+  private Report baseReport(String id) {
+    Report report = new Report();
+    report.setId(id);
+    report.setJobId(job.getId());
+    report.setTotalSteps(10);
+    return report;
+  }
+
+  private static Report item(Date date) {
+    Report item = new Report();
+    item.setPlugin(PLUGIN);
+    item.setPluginState(PluginState.SUCCESS);
+    item.setDateCreated(date);
+    return item;
+  }
+
+  private List<Path> copySegments() throws IOException {
+    List<Path> ret = new ArrayList<>();
+    Path backup = Files.createTempDirectory(basePath, "segments");
+    for (Path segment : listSegments(logDirectory.resolve(job.getId()))) {
+      ret.add(Files.copy(segment, backup.resolve(segment.getFileName())));
+    }
+    return ret;
+  }
+
+  private void restoreSegments(List<Path> segments) throws IOException {
+    Path jobDirectory = Files.createDirectories(logDirectory.resolve(job.getId()));
+    for (Path segment : segments) {
+      Files.copy(segment, jobDirectory.resolve(segment.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static List<Path> listSegments(Path directory) throws IOException {
+    try (Stream<Path> segments = Files.list(directory)) {
+      return segments.sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.log.LogEntry;
+import org.roda.core.model.LogEntryWriter.FsyncPolicy;
+import org.roda.core.model.LogEntryWriter.OverflowPolicy;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests of the group commit, ordering and shutdown of {@link LogEntryWriter}.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class LogEntryWriterTest {
+  private static Path basePath;
+  private static ModelService model;
+
+  private Path logDirectory;
+  private RecordingObserver recorder;
+  private ModelObserver observer;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(LogEntryWriterTest.class, true);
+
+    boolean deploySolr = false;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    model = RodaCoreFactory.getModelService();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @BeforeMethod
+  public void addObserver() throws IOException {
+    logDirectory = Files.createTempDirectory(basePath, "action-log");
+    recorder = new RecordingObserver();
+    observer = (ModelObserver) Proxy.newProxyInstance(ModelObserver.class.getClassLoader(),
+      new Class<?>[] {ModelObserver.class}, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "logEntriesCreated":
+            @SuppressWarnings("unchecked")
+            List<LogEntry> entries = (List<LogEntry>) args[0];
+            recorder.entriesCreated(entries);
+            return new ReturnWithExceptions<>(proxy);
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          case "toString":
+            return RecordingObserver.class.getSimpleName();
+          default:
+            return new ReturnWithExceptions<>(proxy);
+        }
+      });
+    model.addModelObserver(observer);
+  }
+
+  @AfterMethod
+  public void removeObserver() {
+    recorder.release();
+    model.removeModelObserver(observer);
+    FSUtils.deletePathQuietly(logDirectory);
+  }
+
+  @Test
+  public void testOrderIsKept() throws IOException, GenericException {
+    LogEntryWriter writer = newWriter(8192, OverflowPolicy.BLOCK, new MetricRegistry());
+    List<String> submitted = submit(writer, 2000);
+    writer.flush();
+
+    assertEquals(submitted, readLogFileIds());
+    assertEquals(submitted, recorder.getIds());
+    writer.close();
+  }
+
+  @Test
+  public void testEntriesQueuedDuringACommitAreCommittedTogether()
+    throws IOException, GenericException, InterruptedException {
+    MetricRegistry metrics = new MetricRegistry();
+    LogEntryWriter writer = newWriter(8192, OverflowPolicy.BLOCK, metrics);
+
+    recorder.blockNextCommit();
+    List<String> submitted = submit(writer, 1);
+    assertTrue(recorder.awaitBlocked());
+    submitted.addAll(submit(writer, 100));
+    recorder.release();
+    writer.flush();
+
+    Histogram batchSizes = metrics.histogram(MetricRegistry.name(LogEntryWriter.class, "batchSize"));
+    assertEquals(2, batchSizes.getCount());
+    assertEquals(100, batchSizes.getSnapshot().getMax());
+    assertEquals(submitted, readLogFileIds());
+    assertEquals(submitted, recorder.getIds());
+    writer.close();
+  }
+
+  @Test
+  public void testCloseWritesPendingEntries() throws IOException, GenericException {
+    LogEntryWriter writer = newWriter(8192, OverflowPolicy.BLOCK, new MetricRegistry());
+    List<String> submitted = submit(writer, 1000);
+    writer.close();
+
+    assertEquals(submitted, readLogFileIds());
+    assertEquals(submitted, recorder.getIds());
+    assertTrue(!writer.submit(logEntry("after-close"), logDirectory, true));
+  }
+
+  @Test
+  public void testDropWhenFull() throws InterruptedException {
+    MetricRegistry metrics = new MetricRegistry();
+    LogEntryWriter writer = newWriter(2, OverflowPolicy.DROP, metrics);
+
+    recorder.blockNextCommit();
+    submit(writer, 1);
+    assertTrue(recorder.awaitBlocked());
+    submit(writer, 10);
+    recorder.release();
+    writer.close();
+
+    long dropped = metrics.counter(MetricRegistry.name(LogEntryWriter.class, "dropped")).getCount();
+    assertTrue(dropped > 0);
+    assertEquals(11 - dropped, recorder.getIds().size());
+  }
+
+  private LogEntryWriter newWriter(int queueSize, OverflowPolicy overflowPolicy, MetricRegistry metrics) {
+    return new LogEntryWriter(model, logDirectory, queueSize, overflowPolicy, FsyncPolicy.NEVER, 0, 512, metrics);
+  }
+
+  private List<String> submit(LogEntryWriter writer, int count) {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      LogEntry entry = logEntry(Integer.toString(recorder.nextId()));
+      assertTrue(writer.submit(entry, logDirectory, true));
+      ids.add(entry.getId());
+    }
+    return ids;
+  }
+
+  private static LogEntry logEntry(String id) {
+    LogEntry entry = new LogEntry();
+    entry.setId(id);
+    entry.setDatetime(new Date());
+    entry.setActionMethod("test");
+    return entry;
+  }
+
+  private List<String> readLogFileIds() throws IOException, GenericException {
+    List<String> ret = new ArrayList<>();
+    List<Path> files;
+    try (Stream<Path> list = Files.list(logDirectory)) {
+      files = list.sorted().collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        ret.add(JsonUtils.getObjectFromJson(line, LogEntry.class).getId());
+      }
+    }
+    return ret;
+  }
+
+  private static class RecordingObserver {
+    private final List<String> ids = Collections.synchronizedList(new ArrayList<>());
+    private int nextId = 0;
+    private volatile CountDownLatch blocked = null;
+    private volatile CountDownLatch released = null;
+
+    public int nextId() {
+      return nextId++;
+    }
+
+    public void blockNextCommit() {
+      blocked = new CountDownLatch(1);
+      released = new CountDownLatch(1);
+    }
+
+    public boolean awaitBlocked() throws InterruptedException {
+      return blocked.await(10, TimeUnit.SECONDS);
+    }
+
+    public void release() {
+      if (released != null) {
+        released.countDown();
+      }
+    }
+
+    public void entriesCreated(List<LogEntry> entries) {
+      for (LogEntry entry : entries) {
+        ids.add(entry.getId());
+      }
+      CountDownLatch toRelease = released;
+      if (blocked != null && blocked.getCount() > 0) {
+        blocked.countDown();
+        try {
+          toRelease.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    public List<String> getIds() {
+      synchronized (ids) {
+        return new ArrayList<>(ids);
+      }
+    }
+  }
+}
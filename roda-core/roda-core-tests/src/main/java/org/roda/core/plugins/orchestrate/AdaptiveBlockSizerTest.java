@@ -0,0 +1,147 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests of the block size decisions of {@link AdaptiveBlockSizer}.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class AdaptiveBlockSizerTest {
+
+  @Test
+  public void testFixedBlockSize() {
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(100, null);
+    assertFalse(sizer.isAdaptive());
+    sizer.blockDone(100, 1);
+    sizer.blockDone(100, 1000000);
+    assertEquals(100, sizer.getBlockSize());
+
+    // a block size is never less than one
+    assertEquals(1, new AdaptiveBlockSizer(0, null).getBlockSize());
+  }
+
+  @Test
+  public void testNotAdaptiveWithoutTargetDuration() {
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(true, 100, 10, 1000, 0, null);
+    assertFalse(sizer.isAdaptive());
+    sizer.blockDone(100, 1);
+    assertEquals(100, sizer.getBlockSize());
+  }
+
+  @Test
+  public void testInitialBlockSizeIsKeptWithinBounds() {
+    assertEquals(1000, new AdaptiveBlockSizer(true, 5000, 10, 1000, 1000, null).getBlockSize());
+    assertEquals(10, new AdaptiveBlockSizer(true, 1, 10, 1000, 1000, null).getBlockSize());
+    // min greater than max
+    assertEquals(50, new AdaptiveBlockSizer(true, 100, 200, 50, 1000, null).getBlockSize());
+  }
+
+  @Test
+  public void testGrowsAtMostTwiceEachTime() {
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(true, 10, 1, 1000, 1000, null);
+    assertTrue(sizer.isAdaptive());
+
+    // 1 ms per object, so the ideal block size is 1000
+    sizer.blockDone(10, 10);
+    assertEquals(20, sizer.getBlockSize());
+    sizer.blockDone(20, 20);
+    assertEquals(40, sizer.getBlockSize());
+  }
+
+  @Test
+  public void testShrinksAtMostHalfEachTime() {
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(true, 100, 10, 1000, 1000, null);
+
+    // 1 second per object, so the ideal block size is 1 (below the minimum)
+    sizer.blockDone(100, 100000);
+    assertEquals(50, sizer.getBlockSize());
+    sizer.blockDone(50, 50000);
+    assertEquals(25, sizer.getBlockSize());
+    sizer.blockDone(25, 25000);
+    assertEquals(12, sizer.getBlockSize());
+    sizer.blockDone(12, 12000);
+    assertEquals(10, sizer.getBlockSize());
+    sizer.blockDone(10, 10000);
+    assertEquals(10, sizer.getBlockSize());
+  }
+
+  @Test
+  public void testConvergesToTargetDuration() {
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(true, 1, 1, 1000, 1000, null);
+
+    // 10 ms per object, so the ideal block size is 100
+    for (int i = 0; i < 20; i++) {
+      int blockSize = sizer.getBlockSize();
+      sizer.blockDone(blockSize, 10L * blockSize);
+    }
+    assertEquals(100, sizer.getBlockSize());
+
+    // capped by the maximum
+    AdaptiveBlockSizer capped = new AdaptiveBlockSizer(true, 1, 1, 50, 1000, null);
+    for (int i = 0; i < 20; i++) {
+      int blockSize = capped.getBlockSize();
+      capped.blockDone(blockSize, 10L * blockSize);
+    }
+    assertEquals(50, capped.getBlockSize());
+  }
+
+  @Test
+  public void testMovingAverageSmoothsOutliers() {
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(true, 100, 1, 1000, 1000, null);
+    // 10 ms per object
+    sizer.blockDone(100, 1000);
+    assertEquals(100, sizer.getBlockSize());
+
+    // an outlier of 100 ms per object only moves the average to 37 ms (ideal
+    // block size of 27) and the block size is at most halved
+    sizer.blockDone(100, 10000);
+    assertEquals(50, sizer.getBlockSize());
+
+    // back to 10 ms per object, the average (28.9 ms) still recovers slowly
+    sizer.blockDone(50, 500);
+    assertEquals(35, sizer.getBlockSize());
+  }
+
+  @Test
+  public void testInvalidMeasuresAreIgnored() {
+    MetricRegistry metrics = new MetricRegistry();
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(true, 100, 1, 1000, 1000, metrics);
+    sizer.blockDone(0, 1000);
+    sizer.blockDone(-1, 1000);
+    sizer.blockDone(100, -1);
+    assertEquals(100, sizer.getBlockSize());
+    assertEquals(0,
+      metrics.histogram(MetricRegistry.name(AdaptiveBlockSizer.class, "blockSize")).getCount());
+
+    // zero durations count as 1 ms
+    sizer.blockDone(100, 0);
+    assertEquals(200, sizer.getBlockSize());
+  }
+
+  @Test
+  public void testMetrics() {
+    MetricRegistry metrics = new MetricRegistry();
+    AdaptiveBlockSizer sizer = new AdaptiveBlockSizer(50, metrics);
+    sizer.blockDone(50, 300);
+    sizer.blockDone(20, 100);
+
+    assertEquals(2, metrics.histogram(MetricRegistry.name(AdaptiveBlockSizer.class, "blockSize")).getCount());
+    assertEquals(300,
+      metrics.histogram(MetricRegistry.name(AdaptiveBlockSizer.class, "blockDurationInMillis")).getSnapshot().getMax());
+  }
+
+}
@@ -9,6 +9,7 @@ package org.roda.core.plugins.orchestrate;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,9 +22,15 @@ import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.IndexResult;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItemsFilter;
 import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.index.select.SelectedItemsNone;
+import org.roda.core.data.v2.index.sublist.Sublist;
 import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.IndexedAIP;
 import org.roda.core.data.v2.ip.Permissions;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
@@ -33,10 +40,12 @@ import org.roda.core.plugins.PluginException;
 import org.roda.core.plugins.plugins.DummyPlugin;
 import org.roda.core.plugins.plugins.PluginThatFailsDuringInit;
 import org.roda.core.plugins.plugins.PluginThatFailsDuringXMethod;
+import org.roda.core.plugins.plugins.PluginThatMutatesItsInput;
 import org.roda.core.plugins.plugins.PluginThatStopsItself;
 import org.roda.core.storage.fs.FSUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.roda.core.index.IndexService;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -166,4 +175,60 @@ public class JobsTest {
     JobsHelper.setSyncTimeout(originalSyncTimeout);
   }
 
+  /**
+   * The objects of a job run from the index must each be processed exactly
+   * once even if the job deletes and creates objects matched by its own filter
+   * while iterating over them (which, with offset pagination, would make it
+   * skip objects)
+   */
+  @Test
+  public void testJobMutatingItsOwnInput() throws Exception {
+    ModelService model = RodaCoreFactory.getModelService();
+    IndexService index = RodaCoreFactory.getIndexService();
+
+    AIP parent = model.createAIP(null, RodaConstants.AIP_TYPE_MIXED, new Permissions(), RodaConstants.ADMIN);
+    List<String> originalIds = new ArrayList<>();
+    for (int i = 0; i < 23; i++) {
+      originalIds.add(model
+        .createAIP(parent.getId(), RodaConstants.AIP_TYPE_MIXED, new Permissions(), RodaConstants.ADMIN).getId());
+    }
+    index.commitAIPs();
+
+    int originalNumberOfJobWorkers = JobsHelper.getNumberOfJobsWorkers();
+    int originalBlockSize = JobsHelper.getBlockSize();
+    JobsHelper.setNumberOfJobsWorkers(2);
+    JobsHelper.setBlockSize(2);
+    // several index pages, so that later pages are obtained after the changes
+    RodaCoreFactory.getRodaConfiguration().setProperty("core.index.cursor.page_size", 5);
+    PluginThatMutatesItsInput.getProcessed().clear();
+
+    try {
+      Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.AIP_PARENT_ID, parent.getId()));
+      TestsHelper.executeJob(PluginThatMutatesItsInput.class, new HashMap<>(), PluginType.MISC,
+        new SelectedItemsFilter<IndexedAIP>(filter, IndexedAIP.class.getName(), true), JOB_STATE.COMPLETED);
+    } finally {
+      JobsHelper.setNumberOfJobsWorkers(originalNumberOfJobWorkers);
+      JobsHelper.setBlockSize(originalBlockSize);
+      RodaCoreFactory.getRodaConfiguration().clearProperty("core.index.cursor.page_size");
+    }
+
+    Map<String, Integer> processed = PluginThatMutatesItsInput.getProcessed();
+    for (String originalId : originalIds) {
+      Assert.assertEquals(processed.get(originalId), Integer.valueOf(1), "AIP " + originalId);
+    }
+    for (Map.Entry<String, Integer> entry : processed.entrySet()) {
+      Assert.assertEquals(entry.getValue(), Integer.valueOf(1), "AIP " + entry.getKey());
+    }
+
+    // every original AIP was replaced by a new one
+    index.commitAIPs();
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.AIP_PARENT_ID, parent.getId()));
+    IndexResult<IndexedAIP> children = index.find(IndexedAIP.class, filter, null, new Sublist(0, 100),
+      Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_TYPE));
+    Assert.assertEquals(children.getTotalCount(), originalIds.size());
+    for (IndexedAIP child : children.getResults()) {
+      Assert.assertEquals(child.getType(), PluginThatMutatesItsInput.CREATED_AIP_TYPE);
+    }
+  }
+
 }
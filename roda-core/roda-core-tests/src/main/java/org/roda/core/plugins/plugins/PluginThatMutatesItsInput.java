@@ -0,0 +1,154 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.common.RodaConstants.PreservationEventType;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.LiteOptionalWithCause;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.plugins.AbstractPlugin;
+import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.PluginException;
+import org.roda.core.storage.StorageService;
+
+/**
+ * Plugin that, for each original AIP it receives, deletes it and creates a new
+ * sibling (thus changing the objects matched by the filter of its own job
+ * while the job is still iterating over them)
+ */
+public class PluginThatMutatesItsInput extends AbstractPlugin<AIP> {
+  public static final String CREATED_AIP_TYPE = "CREATED_BY_JOB";
+
+  // Map<aipId, number of times it was processed>
+  private static final Map<String, Integer> PROCESSED = new ConcurrentHashMap<>();
+
+  public static Map<String, Integer> getProcessed() {
+    return PROCESSED;
+  }
+
+  @Override
+  public String getName() {
+    return getClass().getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return getClass().getName();
+  }
+
+  @Override
+  public PreservationEventType getPreservationEventType() {
+    return null;
+  }
+
+  @Override
+  public String getPreservationEventDescription() {
+    return null;
+  }
+
+  @Override
+  public String getPreservationEventSuccessMessage() {
+    return null;
+  }
+
+  @Override
+  public String getPreservationEventFailureMessage() {
+    return null;
+  }
+
+  @Override
+  public PluginType getType() {
+    return PluginType.MISC;
+  }
+
+  @Override
+  public List<String> getCategories() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public Plugin<AIP> cloneMe() {
+    return new PluginThatMutatesItsInput();
+  }
+
+  @Override
+  public boolean areParameterValuesValid() {
+    return true;
+  }
+
+  @Override
+  public void init() throws PluginException {
+    // do nothing
+  }
+
+  @Override
+  public List<Class<AIP>> getObjectClasses() {
+    return Arrays.asList(AIP.class);
+  }
+
+  @Override
+  public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage)
+    throws PluginException {
+    return null;
+  }
+
+  @Override
+  public Report execute(IndexService index, ModelService model, StorageService storage,
+    List<LiteOptionalWithCause> list) throws PluginException {
+    try {
+      for (LiteOptionalWithCause lite : list) {
+        if (!lite.getLite().isPresent()) {
+          throw new PluginException("Received an object with error: " + lite.getExceptionMessage());
+        }
+        OptionalWithCause<?> object = model.retrieveObjectFromLite(lite.getLite().get());
+        if (!object.isPresent()) {
+          throw new PluginException("Received an object that does not exist", object.getCause());
+        }
+
+        AIP aip = (AIP) object.get();
+        PROCESSED.merge(aip.getId(), 1, Integer::sum);
+        if (RodaConstants.AIP_TYPE_MIXED.equals(aip.getType())) {
+          model.deleteAIP(aip.getId());
+          model.createAIP(aip.getParentId(), CREATED_AIP_TYPE, aip.getPermissions(), RodaConstants.ADMIN);
+        }
+      }
+      index.commitAIPs();
+    } catch (RODAException e) {
+      throw new PluginException(e);
+    }
+    return null;
+  }
+
+  @Override
+  public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) throws PluginException {
+    return null;
+  }
+
+  @Override
+  public void shutdown() {
+    // do nothing
+  }
+
+  @Override
+  public String getVersionImpl() {
+    return null;
+  }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.characterization;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.plugins.plugins.characterization.SiegfriedRuntime.FilesIterable;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Tests of the streaming parser of the Siegfried JSON output.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class SiegfriedRuntimeTest {
+
+  private static final String HEADER = "{\"siegfried\":\"1.7.8\",\"scandate\":\"2018-01-01T00:00:00Z\","
+    + "\"signature\":\"default.sig\",\"created\":\"2017-12-01T00:00:00Z\",\"identifiers\":[{\"name\":\"pronom\","
+    + "\"details\":\"DROID_SignatureFile_V93.xml\"}],";
+
+  private final AtomicInteger closed = new AtomicInteger();
+  private final AtomicInteger ended = new AtomicInteger();
+
+  @BeforeMethod
+  public void resetCounters() {
+    closed.set(0);
+    ended.set(0);
+  }
+
+  @Test
+  public void testFilesAreStreamedInOrder() throws IOException {
+    String json = HEADER + "\"files\":[" + file("a.txt", "x-fmt/111") + "," + file("b.pdf", "fmt/276") + "]}";
+
+    try (FilesIterable files = filesIterable(json)) {
+      List<JsonNode> nodes = toList(files.iterator());
+      assertEquals(2, nodes.size());
+      assertEquals("a.txt", nodes.get(0).get("filename").asText());
+      assertEquals("x-fmt/111", nodes.get(0).get("matches").get(0).get("id").asText());
+      assertEquals("b.pdf", nodes.get(1).get("filename").asText());
+      assertEquals(1, ended.get());
+    }
+    assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void testFieldsAfterFilesAndNestedObjectsBeforeThem() throws IOException {
+    String json = "{\"identifiers\":[{\"name\":\"pronom\",\"files\":[{\"filename\":\"not me\"}]}],"
+      + "\"other\":{\"files\":[]},\"files\":[" + file("c.xml", "fmt/101") + "],\"trailer\":true}";
+
+    try (FilesIterable files = filesIterable(json)) {
+      List<JsonNode> nodes = toList(files.iterator());
+      assertEquals(1, nodes.size());
+      assertEquals("c.xml", nodes.get(0).get("filename").asText());
+    }
+  }
+
+  @Test
+  public void testNoFiles() throws IOException {
+    for (String json : new String[] {HEADER + "\"files\":[]}", HEADER + "\"files\":null}", "{}", "", "[]"}) {
+      ended.set(0);
+      try (FilesIterable files = filesIterable(json)) {
+        Iterator<JsonNode> iterator = files.iterator();
+        assertFalse(json, iterator.hasNext());
+        assertFalse(json, iterator.hasNext());
+        assertEquals(json, 1, ended.get());
+      }
+    }
+  }
+
+  @Test
+  public void testManyFiles() throws IOException {
+    StringBuilder json = new StringBuilder(HEADER).append("\"files\":[");
+    int count = 10000;
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append(file("file" + i, "fmt/" + i));
+    }
+    json.append("]}");
+
+    try (FilesIterable files = filesIterable(json.toString())) {
+      int i = 0;
+      for (JsonNode node : files) {
+        assertEquals("file" + i, node.get("filename").asText());
+        i++;
+      }
+      assertEquals(count, i);
+    }
+  }
+
+  @Test
+  public void testMalformedOutput() throws IOException {
+    String json = HEADER + "\"files\":[" + file("a.txt", "x-fmt/111") + ",{\"filename\":";
+
+    try (FilesIterable files = filesIterable(json)) {
+      Iterator<JsonNode> iterator = files.iterator();
+      assertTrue(iterator.hasNext());
+      iterator.next();
+      try {
+        iterator.hasNext();
+        fail("Truncated output should have failed");
+      } catch (UncheckedIOException e) {
+        // expected
+      }
+    }
+    assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void testErrorAtTheEnd() throws IOException {
+    String json = HEADER + "\"files\":[]}";
+    Runnable onEnd = () -> {
+      throw new UncheckedIOException(new IOException("Siegfried terminated with error code 1"));
+    };
+
+    try (FilesIterable files = new FilesIterable(stream(json), () -> closed.incrementAndGet(), onEnd)) {
+      files.iterator().hasNext();
+      fail("The error at the end of the output should have been thrown");
+    } catch (UncheckedIOException e) {
+      assertEquals("Siegfried terminated with error code 1", e.getCause().getMessage());
+    }
+    assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void testCloseBeforeTheEnd() throws IOException {
+    String json = HEADER + "\"files\":[" + file("a.txt", "x-fmt/111") + "," + file("b.pdf", "fmt/276") + "]}";
+
+    FilesIterable files = filesIterable(json);
+    Iterator<JsonNode> iterator = files.iterator();
+    assertTrue(iterator.hasNext());
+    iterator.next();
+    files.close();
+    files.close();
+
+    assertEquals(1, closed.get());
+    assertFalse(iterator.hasNext());
+  }
+
+  private FilesIterable filesIterable(String json) {
+    return new FilesIterable(stream(json), () -> closed.incrementAndGet(), () -> ended.incrementAndGet());
+  }
+
+  private static InputStream stream(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String file(String filename, String puid) {
+    return "{\"filename\":\"" + filename + "\",\"filesize\":10,\"modified\":\"2018-01-01T00:00:00Z\","
+      + "\"errors\":\"\",\"matches\":[{\"ns\":\"pronom\",\"id\":\"" + puid + "\",\"format\":\"Format\","
+      + "\"version\":\"\",\"mime\":\"\",\"basis\":[\"extension match\"],\"warning\":\"\"}]}";
+  }
+
+  private static List<JsonNode> toList(Iterator<JsonNode> iterator) {
+    List<JsonNode> ret = new ArrayList<>();
+    while (iterator.hasNext()) {
+      ret.add(iterator.next());
+    }
+    return ret;
+  }
+}
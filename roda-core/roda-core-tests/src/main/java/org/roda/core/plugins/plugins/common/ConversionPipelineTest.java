@@ -0,0 +1,329 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.plugins.common.ConversionPipeline.Conversion;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.util.CommandException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the concurrent conversion of the files of a representation: the
+ * hand-over of the results in the order of the files, the limit of the
+ * conversions running at a time by the free space of the scratch directory and
+ * the propagation of the conversion errors.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ConversionPipelineTest {
+  private static final String AIP_ID = "aip";
+  private static final String REPRESENTATION_ID = "representation";
+  private static final String FILE_FORMAT = "txt";
+
+  private Path basePath;
+  private Path scratchBaseDirectory;
+  private StorageService storage;
+  private UpperCasePlugin plugin;
+
+  @BeforeMethod
+  public void setUp() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(ConversionPipelineTest.class, false);
+    scratchBaseDirectory = basePath.resolve("scratch");
+    storage = new FileStorageService(basePath.resolve("storage"), false, null, false);
+    storage.createContainer(DefaultStoragePath.parse(RodaConstants.STORAGE_CONTAINER_AIP));
+    plugin = new UpperCasePlugin();
+    plugin.setOutputFormat(FILE_FORMAT);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testResultsAreHandedOverInOrder() throws RODAException, IOException {
+    List<Conversion> conversions = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      String fileId = "file" + i;
+      conversions.add(createConversion(fileId, "content of " + fileId));
+      // the first files take longer to convert
+      plugin.delays.put(fileId, 50L * (8 - i));
+    }
+
+    Path previousOutput = null;
+    try (ConversionPipeline pipeline = newPipeline(conversions, 4, 0)) {
+      for (int i = 0; i < 8; i++) {
+        Conversion conversion = pipeline.next();
+        String fileId = "file" + i;
+        assertEquals(fileId, conversion.getFile().getId());
+        assertNull(conversion.getError());
+        assertEquals("converted " + fileId, conversion.getResult());
+        assertEquals(("content of " + fileId).toUpperCase(),
+          new String(Files.readAllBytes(conversion.getOutput()), StandardCharsets.UTF_8));
+
+        // the converted file of the previous conversion is removed
+        if (previousOutput != null) {
+          assertFalse(Files.exists(previousOutput));
+        }
+        previousOutput = conversion.getOutput();
+      }
+      assertNull(pipeline.next());
+    }
+
+    assertTrue(plugin.maxRunning.get() > 1);
+    assertTrue(plugin.maxRunning.get() <= 4);
+    assertEquals(0, countEntries(scratchBaseDirectory));
+  }
+
+  @Test
+  public void testSingleThreadConvertsOneFileAtATime() throws RODAException, IOException {
+    List<Conversion> conversions = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      conversions.add(createConversion("file" + i, "content " + i));
+      plugin.delays.put("file" + i, 20L);
+    }
+
+    try (ConversionPipeline pipeline = newPipeline(conversions, 1, 0)) {
+      for (int i = 0; i < 4; i++) {
+        assertEquals("file" + i, pipeline.next().getFile().getId());
+      }
+      assertNull(pipeline.next());
+    }
+    assertEquals(1, plugin.maxRunning.get());
+  }
+
+  @Test
+  public void testFreeSpaceLimitsRunningConversions() throws RODAException, IOException {
+    int size = 4 * 1024 * 1024;
+    String content = StringUtils.repeat('a', size);
+    List<Conversion> conversions = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      conversions.add(createConversion("file" + i, content));
+      plugin.delays.put("file" + i, 100L);
+    }
+
+    // room for the converted files of two conversions, with some slack
+    Files.createDirectories(scratchBaseDirectory);
+    long minFreeSpace = Files.getFileStore(scratchBaseDirectory).getUsableSpace() - (5L * size / 2);
+    try (ConversionPipeline pipeline = newPipeline(conversions, 4, minFreeSpace)) {
+      for (int i = 0; i < 6; i++) {
+        Conversion conversion = pipeline.next();
+        assertEquals("file" + i, conversion.getFile().getId());
+        assertEquals(size, conversion.getSourceSize());
+        assertEquals(size, Files.size(conversion.getOutput()));
+      }
+      assertNull(pipeline.next());
+    }
+    assertTrue(plugin.maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testNotEnoughFreeSpaceFails() throws RODAException, IOException {
+    List<Conversion> conversions = Collections.singletonList(createConversion("file", "content"));
+
+    try (ConversionPipeline pipeline = newPipeline(conversions, 2, Long.MAX_VALUE / 2)) {
+      pipeline.next();
+      fail("Conversion should not start without free space");
+    } catch (GenericException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Not enough free space"));
+    }
+    assertEquals(0, plugin.maxRunning.get());
+    assertEquals(0, countEntries(scratchBaseDirectory));
+  }
+
+  @Test
+  public void testCommandErrorsAreHandedOver() throws RODAException, IOException {
+    List<Conversion> conversions = new ArrayList<>();
+    conversions.add(createConversion("file0", "content"));
+    conversions.add(createConversion("fail1", "content"));
+    conversions.add(createConversion("file2", "content"));
+
+    try (ConversionPipeline pipeline = newPipeline(conversions, 2, 0)) {
+      assertNull(pipeline.next().getError());
+
+      Conversion failed = pipeline.next();
+      assertEquals("fail1", failed.getFile().getId());
+      assertNotNull(failed.getError());
+      assertEquals(1, failed.getError().getExitCode());
+      assertNull(failed.getResult());
+
+      // the next files are still converted
+      Conversion conversion = pipeline.next();
+      assertEquals("file2", conversion.getFile().getId());
+      assertEquals("converted file2", conversion.getResult());
+      assertNull(pipeline.next());
+    }
+  }
+
+  @Test
+  public void testOtherErrorsArePropagated() throws RODAException, IOException {
+    List<Conversion> conversions = new ArrayList<>();
+    conversions.add(createConversion("file0", "content"));
+    conversions.add(createConversion("io1", "content"));
+    conversions.add(createConversion("runtime2", "content"));
+
+    try (ConversionPipeline pipeline = newPipeline(conversions, 3, 0)) {
+      assertEquals("file0", pipeline.next().getFile().getId());
+      try {
+        pipeline.next();
+        fail("I/O errors should be propagated");
+      } catch (IOException e) {
+        assertEquals("io1", e.getMessage());
+      }
+      try {
+        pipeline.next();
+        fail("Runtime errors should be propagated");
+      } catch (IllegalStateException e) {
+        assertEquals("runtime2", e.getMessage());
+      }
+      assertNull(pipeline.next());
+    }
+    assertEquals(0, countEntries(scratchBaseDirectory));
+  }
+
+  private ConversionPipeline newPipeline(List<Conversion> conversions, int threads, long minFreeSpace)
+    throws IOException {
+    return new ConversionPipeline(plugin, storage, conversions, threads, scratchBaseDirectory, minFreeSpace);
+  }
+
+  private Conversion createConversion(String fileId, String content) throws RODAException {
+    File file = new File(fileId, AIP_ID, REPRESENTATION_ID, new ArrayList<>(), false);
+    storage.createBinary(ModelUtils.getFileStoragePath(file), new StringContentPayload(content), false);
+    return new Conversion(file, FILE_FORMAT);
+  }
+
+  private static long countEntries(Path directory) throws IOException {
+    try (Stream<Path> entries = Files.list(directory)) {
+      return entries.count();
+    }
+  }
+
+  /**
+   * Converts a file to upper case, after the delay set for it, and fails the
+   * conversion of the files whose id starts with "fail" (command error), "io"
+   * or "runtime"
+   */
+  private static class UpperCasePlugin extends AbstractConvertPlugin<AIP> {
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger maxRunning = new AtomicInteger(0);
+
+    @Override
+    public String executePlugin(Path inputPath, Path outputPath, String fileFormat)
+      throws IOException, CommandException {
+      String fileId = inputPath.getFileName().toString();
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(delays.getOrDefault(fileId, 0L));
+        if (fileId.startsWith("fail")) {
+          throw new CommandException("Command terminated with error code 1", 1, fileId);
+        } else if (fileId.startsWith("io")) {
+          throw new IOException(fileId);
+        } else if (fileId.startsWith("runtime")) {
+          throw new IllegalStateException(fileId);
+        }
+
+        String content = new String(Files.readAllBytes(inputPath), StandardCharsets.UTF_8);
+        Files.write(outputPath, content.toUpperCase().getBytes(StandardCharsets.UTF_8));
+        return "converted " + fileId;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+
+    @Override
+    public String getName() {
+      return "Upper case conversion";
+    }
+
+    @Override
+    public String getDescription() {
+      return "Converts text files to upper case";
+    }
+
+    @Override
+    public String getVersionImpl() {
+      return "1.0";
+    }
+
+    @Override
+    public Plugin<AIP> cloneMe() {
+      return new UpperCasePlugin();
+    }
+
+    @Override
+    public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage) {
+      return new Report();
+    }
+
+    @Override
+    public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) {
+      return new Report();
+    }
+
+    @Override
+    public List<String> getApplicableTo() {
+      return Collections.singletonList(FILE_FORMAT);
+    }
+
+    @Override
+    public List<String> getConvertableTo() {
+      return Collections.singletonList(FILE_FORMAT);
+    }
+
+    @Override
+    public Map<String, List<String>> getPronomToExtension() {
+      return new HashMap<>();
+    }
+
+    @Override
+    public Map<String, List<String>> getMimetypeToExtension() {
+      return new HashMap<>();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Content payload whose writes fail after writing some bytes of its content,
+ * like a full disk (an {@link IOException}) or a dying writer (an unchecked
+ * exception) would, to test that partial writes are never visible.
+ */
+public class FailingContentPayload implements ContentPayload {
+  private final byte[] content;
+  private final int failAt;
+  private final boolean unchecked;
+
+  /**
+   * @param failAt
+   *          number of bytes written before failing
+   * @param unchecked
+   *          if the failure is an unchecked exception instead of an
+   *          {@link IOException}
+   */
+  public FailingContentPayload(byte[] content, int failAt, boolean unchecked) {
+    this.content = content;
+    this.failAt = failAt;
+    this.unchecked = unchecked;
+  }
+
+  @Override
+  public InputStream createInputStream() throws IOException {
+    return new ByteArrayInputStream(content, 0, failAt);
+  }
+
+  @Override
+  public void writeToPath(Path path) throws IOException {
+    try (OutputStream out = Files.newOutputStream(path)) {
+      out.write(content, 0, failAt);
+      out.flush();
+    }
+
+    String message = "Injected failure after writing " + failAt + " bytes to " + path;
+    if (unchecked) {
+      throw new IllegalStateException(message);
+    } else {
+      throw new IOException(message);
+    }
+  }
+
+  @Override
+  public URI getURI() throws IOException, UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+}
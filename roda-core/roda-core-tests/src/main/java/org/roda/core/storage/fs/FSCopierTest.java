@@ -0,0 +1,229 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.util.CommandException;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the copy strategies of {@link FSCopier} and of their use by
+ * {@link FileStorageService}.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class FSCopierTest {
+  private static final int CONTENT_SIZE = 64 * 1024;
+
+  private Path basePath;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(FSCopierTest.class, false);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testStreamCopy() throws IOException {
+    Path source = createFile(basePath.resolve("source"), true);
+    Path target = basePath.resolve("target");
+
+    assertEquals(FSCopier.Strategy.STREAM, new FSCopier(false, false).copy(source, target, false));
+    assertSameContent(source, target);
+    assertFalse(isSameFile(source, target));
+  }
+
+  @Test(expectedExceptions = FileAlreadyExistsException.class)
+  public void testCopyDoesNotReplaceExisting() throws IOException {
+    Path source = createFile(basePath.resolve("source"), true);
+    Path target = createFile(basePath.resolve("target"), true);
+
+    new FSCopier(true, true, 0).copy(source, target, false);
+  }
+
+  @Test
+  public void testImmutableFileIsHardLinked() throws IOException {
+    assumeHardLinksSupported();
+    Path source = createFile(basePath.resolve("source"), false);
+    byte[] content = Files.readAllBytes(source);
+    Path target = createFile(basePath.resolve("target"), true);
+
+    assertEquals(FSCopier.Strategy.HARDLINK, new FSCopier(false, true).copy(source, target, true));
+    assertTrue(isSameFile(source, target));
+
+    // later writes replace the target, so the source must not change
+    Path other = createFile(basePath.resolve("other"), true);
+    new FSPathContentPayload(other).writeToPath(target);
+    assertSameContent(other, target);
+    assertEquals(new String(content, StandardCharsets.UTF_8),
+      new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testWritableFileIsNotHardLinked() throws IOException {
+    Path source = createFile(basePath.resolve("source"), true);
+    Path target = basePath.resolve("target");
+
+    FSCopier.Strategy strategy = new FSCopier(false, true).copy(source, target, false);
+    assertEquals(FSCopier.Strategy.STREAM, strategy);
+    assertFalse(isSameFile(source, target));
+  }
+
+  @Test
+  public void testReflinkIsCopyOnWrite() throws IOException {
+    Path source = createFile(basePath.resolve("source"), true);
+    byte[] content = Files.readAllBytes(source);
+    Path target = basePath.resolve("target");
+
+    FSCopier copier = new FSCopier(true, false, 0);
+    FSCopier.Strategy strategy = copier.copy(source, target, false);
+    assertTrue(strategy == FSCopier.Strategy.REFLINK || strategy == FSCopier.Strategy.STREAM);
+    assertSameContent(source, target);
+
+    // unlike a hard link, a reflink may be written in place
+    try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap("changed".getBytes(StandardCharsets.UTF_8)), CONTENT_SIZE / 2);
+    }
+    assertEquals(new String(content, StandardCharsets.UTF_8),
+      new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+
+    // the file store capability is only probed once
+    Boolean reflinkSupported = copier.isReflinkSupported(Files.getFileStore(basePath));
+    if (reflinkSupported != null) {
+      assertEquals(strategy == FSCopier.Strategy.REFLINK, reflinkSupported.booleanValue());
+      assertEquals(strategy, copier.copy(source, basePath.resolve("target2"), false));
+    }
+  }
+
+  @Test
+  public void testOnlyUnsupportedReflinkErrorsAreRemembered() {
+    String command = "Command [cp, --reflink=always, -T, source, target] terminated with error code 1";
+    assertTrue(FSCopier.isReflinkUnsupported(new CommandException(command, 1,
+      "cp: failed to clone 'target' from 'source': Operation not supported\n")));
+    assertTrue(FSCopier.isReflinkUnsupported(new CommandException(command, 1,
+      "cp: failed to clone 'target' from 'source': Inappropriate ioctl for device\n")));
+    assertTrue(FSCopier.isReflinkUnsupported(new CommandException(command, 1,
+      "cp: failed to clone 'target' from 'source': Invalid cross-device link\n")));
+    assertTrue(FSCopier.isReflinkUnsupported(new CommandException(command, 1, "cp: illegal option -- -\n")));
+    assertTrue(FSCopier.isReflinkUnsupported(
+      new CommandException("Error executing command [cp]", new IOException("Cannot run program \"cp\""))));
+
+    // failures of this copy only
+    assertFalse(FSCopier.isReflinkUnsupported(new CommandException(command, 1,
+      "cp: failed to clone 'target' from 'source': No space left on device\n")));
+    assertFalse(FSCopier.isReflinkUnsupported(
+      new CommandException(command, 1, "cp: cannot stat 'source': No such file or directory\n")));
+    assertFalse(FSCopier.isReflinkUnsupported(
+      new CommandException("Interrupted while executing command [cp]", new InterruptedException())));
+  }
+
+  @Test
+  public void testCrossDeviceFallsBackToStreamCopy() throws IOException {
+    Path otherDevice = Paths.get("/dev/shm");
+    if (!Files.isDirectory(otherDevice) || !Files.isWritable(otherDevice)
+      || Files.getFileStore(otherDevice).equals(Files.getFileStore(basePath))) {
+      throw new SkipException("No other writable file system available");
+    }
+
+    Path source = createFile(basePath.resolve("source"), false);
+    Path targetDir = Files.createTempDirectory(otherDevice, FSCopierTest.class.getSimpleName());
+    try {
+      Path target = targetDir.resolve("target");
+      assertEquals(FSCopier.Strategy.STREAM, new FSCopier(true, true, 0).copy(source, target, false));
+      assertSameContent(source, target);
+    } finally {
+      FSUtils.deletePathQuietly(targetDir);
+    }
+  }
+
+  @Test
+  public void testStorageOnlyHardLinksItsOwnFiles() throws IOException, RODAException {
+    assumeHardLinksSupported();
+    FileStorageService storage = new FileStorageService(basePath.resolve("storage"), false, null, false, false,
+      new FSCopier(false, true));
+    FileStorageService otherStorage = new FileStorageService(basePath.resolve("other"), false, null, false, false);
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    otherStorage.createContainer(containerStoragePath);
+
+    StoragePath sourceStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(sourceStoragePath, new StringContentPayload(RandomStringUtils.randomAlphanumeric(100)),
+      false);
+    Files.setPosixFilePermissions(storage.resolve(sourceStoragePath), EnumSet.of(PosixFilePermission.OWNER_READ));
+    otherStorage.createBinary(sourceStoragePath, new StringContentPayload(RandomStringUtils.randomAlphanumeric(100)),
+      false);
+    Files.setPosixFilePermissions(otherStorage.resolve(sourceStoragePath),
+      EnumSet.of(PosixFilePermission.OWNER_READ));
+
+    StoragePath targetStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.copy(storage, sourceStoragePath, targetStoragePath);
+    // not even its own files if read-only files can be written (e.g. as root)
+    assertEquals(FSBlobStore.isWriteProtectionEnforced(basePath),
+      isSameFile(storage.resolve(sourceStoragePath), storage.resolve(targetStoragePath)));
+    assertSameContent(storage.resolve(sourceStoragePath), storage.resolve(targetStoragePath));
+
+    StoragePath foreignTargetStoragePath = StorageTestUtils
+      .generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.copy(otherStorage, sourceStoragePath, foreignTargetStoragePath);
+    assertFalse(isSameFile(otherStorage.resolve(sourceStoragePath), storage.resolve(foreignTargetStoragePath)));
+    assertSameContent(otherStorage.resolve(sourceStoragePath), storage.resolve(foreignTargetStoragePath));
+  }
+
+  private void assumeHardLinksSupported() {
+    if (!FSBlobStore.isSupported(basePath)) {
+      throw new SkipException("File system does not support hard links");
+    }
+  }
+
+  private static Path createFile(Path path, boolean writable) throws IOException {
+    Files.write(path, RandomStringUtils.randomAlphanumeric(CONTENT_SIZE).getBytes(StandardCharsets.UTF_8));
+    if (!writable) {
+      Files.setPosixFilePermissions(path, EnumSet.of(PosixFilePermission.OWNER_READ));
+    }
+    return path;
+  }
+
+  private static boolean isSameFile(Path path, Path otherPath) throws IOException {
+    return Files.readAttributes(path, BasicFileAttributes.class).fileKey()
+      .equals(Files.readAttributes(otherPath, BasicFileAttributes.class).fileKey());
+  }
+
+  private static void assertSameContent(Path expected, Path actual) throws IOException {
+    assertEquals(new String(Files.readAllBytes(expected), StandardCharsets.UTF_8),
+      new String(Files.readAllBytes(actual), StandardCharsets.UTF_8));
+  }
+}
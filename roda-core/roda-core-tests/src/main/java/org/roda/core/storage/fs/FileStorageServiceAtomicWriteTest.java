@@ -0,0 +1,238 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.FailingContentPayload;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link FileStorageService} writes binaries atomically (failures at
+ * random offsets of the write never leave partial content behind, nor
+ * temporary files in the storage) and that its attribute cache is invalidated
+ * by the write methods.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class FileStorageServiceAtomicWriteTest {
+  private static final int CONTENT_SIZE = 256 * 1024;
+  private static final int FAULTS = 20;
+
+  private final Random random = new Random(42);
+  private Path basePath;
+  private FileStorageService storage;
+  private StoragePath containerStoragePath;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(FileStorageServiceAtomicWriteTest.class, false);
+    storage = new FileStorageService(basePath.resolve("storage"), true, null, true, false, new FSCopier(true, true),
+      new FSAttributeCache(FSAttributeCache.DEFAULT_MAXIMUM_SIZE, FSAttributeCache.DEFAULT_EXPIRE_SECONDS),
+      getTempPath());
+    containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testFailedUpdatesKeepPreviousContent() throws RODAException, IOException {
+    String content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    StoragePath binaryStoragePath = newBinaryStoragePath();
+    storage.createBinary(binaryStoragePath, new StringContentPayload(content), false);
+
+    for (int i = 0; i < FAULTS; i++) {
+      ContentPayload payload = newFailingPayload(i % 2 == 0);
+      try {
+        storage.updateBinaryContent(binaryStoragePath, payload, false, false);
+        fail("Update should have failed");
+      } catch (GenericException | IllegalStateException e) {
+        // expected
+      }
+
+      Binary binary = storage.getBinary(binaryStoragePath);
+      assertEquals(CONTENT_SIZE, binary.getSizeInBytes().longValue());
+      assertContent(content, binary);
+      assertEquals(1L, storage.countResourcesUnderContainer(containerStoragePath, false).longValue());
+    }
+    assertEquals(0, countFiles(getTempPath()));
+  }
+
+  @Test
+  public void testTemporaryFilesAreWrittenOutsideTheStorage() throws RODAException, IOException {
+    Path storagePath = basePath.resolve("storage");
+    Path stale = Files.createFile(getTempPath().resolve("stale"));
+    Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)));
+    Path recent = Files.createFile(getTempPath().resolve("recent"));
+
+    // stale files are removed when the storage starts, the ones of writes that
+    // may be in progress are kept
+    FileStorageService restarted = new FileStorageService(storagePath, true, null, true, false,
+      new FSCopier(true, true), null, getTempPath());
+    assertFalse(Files.exists(stale));
+    assertTrue(Files.exists(recent));
+    Files.delete(recent);
+
+    StoragePath binaryStoragePath = newBinaryStoragePath();
+    restarted.createBinary(binaryStoragePath, new StringContentPayload("first"), false);
+    restarted.updateBinaryContent(binaryStoragePath, new StringContentPayload("second"), false, false);
+    assertEquals(0, countFiles(getTempPath()));
+    assertEquals(1, countFiles(storagePath));
+  }
+
+  @Test
+  public void testOtherStoragesLeaveNothingNextToTheirFolder() throws RODAException, IOException {
+    // e.g. the storages of transferred resources or exports
+    Path otherPath = basePath.resolve("other");
+    FileStorageService other = new FileStorageService(otherPath, false, null, false);
+    assertFalse(Files.exists(basePath.resolve("other" + FileStorageService.TEMP_SUFFIX)));
+    assertEquals(0, countFiles(otherPath));
+
+    StoragePath otherContainerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    other.createContainer(otherContainerStoragePath);
+    StoragePath binaryStoragePath = StorageTestUtils
+      .generateRandomResourceStoragePathUnder(otherContainerStoragePath);
+    other.createBinary(binaryStoragePath, new StringContentPayload("first"), false);
+    other.updateBinaryContent(binaryStoragePath, new StringContentPayload("second"), false, false);
+    assertEquals(1, countFiles(otherPath));
+  }
+
+  @Test
+  public void testFailedCreatesLeaveNoBinary() throws RODAException {
+    for (int i = 0; i < FAULTS; i++) {
+      StoragePath binaryStoragePath = newBinaryStoragePath();
+      ContentPayload payload = newFailingPayload(i % 2 == 0);
+      try {
+        if (i % 4 < 2) {
+          storage.createBinary(binaryStoragePath, payload, false);
+        } else {
+          storage.createRandomBinary(containerStoragePath, payload, false);
+        }
+        fail("Create should have failed");
+      } catch (GenericException | IllegalStateException e) {
+        // expected
+      }
+
+      assertFalse(storage.hasBinary(binaryStoragePath));
+      assertEquals(0L, storage.countResourcesUnderContainer(containerStoragePath, false).longValue());
+    }
+  }
+
+  @Test
+  public void testWritesInvalidateCachedAttributes() throws RODAException, IOException {
+    StoragePath binaryStoragePath = newBinaryStoragePath();
+    storage.createBinary(binaryStoragePath, new StringContentPayload("first"), false);
+    assertEquals(5L, storage.getBinary(binaryStoragePath).getSizeInBytes().longValue());
+
+    storage.updateBinaryContent(binaryStoragePath, new StringContentPayload("second"), false, false);
+    assertEquals(6L, storage.getBinary(binaryStoragePath).getSizeInBytes().longValue());
+
+    StoragePath copyStoragePath = newBinaryStoragePath();
+    assertFalse(storage.hasBinary(copyStoragePath));
+    storage.copy(storage, binaryStoragePath, copyStoragePath);
+    assertEquals(6L, storage.getBinary(copyStoragePath).getSizeInBytes().longValue());
+
+    storage.deleteResource(binaryStoragePath);
+    assertFalse(storage.hasBinary(binaryStoragePath));
+
+    try (DirectResourceAccess directAccess = storage.getDirectAccess(copyStoragePath)) {
+      Files.write(directAccess.getPath(), "changed directly".getBytes(StandardCharsets.UTF_8));
+    }
+    assertEquals(16L, storage.getBinary(copyStoragePath).getSizeInBytes().longValue());
+  }
+
+  @Test
+  public void testAttributesAreCached() throws RODAException, IOException {
+    StoragePath binaryStoragePath = newBinaryStoragePath();
+    storage.createBinary(binaryStoragePath, new StringContentPayload("first"), false);
+    Binary binary = storage.getBinary(binaryStoragePath);
+
+    // changes behind the back of the storage are only seen when the entry
+    // expires
+    Files.write(storage.resolve(binaryStoragePath), "second".getBytes(StandardCharsets.UTF_8));
+    assertEquals(binary.getSizeInBytes(), storage.getBinary(binaryStoragePath).getSizeInBytes());
+
+    FileStorageService uncachedStorage = new FileStorageService(basePath.resolve("storage"), true, null, true, false,
+      new FSCopier(true, true), null);
+    assertEquals(6L, uncachedStorage.getBinary(binaryStoragePath).getSizeInBytes().longValue());
+
+    // not cached by default
+    FileStorageService defaultStorage = new FileStorageService(basePath.resolve("storage"), true, null, true, false,
+      new FSCopier(true, true));
+    defaultStorage.getBinary(binaryStoragePath);
+    Files.write(storage.resolve(binaryStoragePath), "third!!".getBytes(StandardCharsets.UTF_8));
+    assertEquals(7L, defaultStorage.getBinary(binaryStoragePath).getSizeInBytes().longValue());
+  }
+
+  @Test(expectedExceptions = NotFoundException.class)
+  public void testMissingBinariesAreNotCached() throws RODAException {
+    StoragePath binaryStoragePath = newBinaryStoragePath();
+    assertFalse(storage.hasBinary(binaryStoragePath));
+    storage.createBinary(binaryStoragePath, new StringContentPayload("content"), false);
+    assertTrue(storage.hasBinary(binaryStoragePath));
+
+    storage.deleteResource(binaryStoragePath);
+    storage.getBinary(binaryStoragePath);
+  }
+
+  private ContentPayload newFailingPayload(boolean unchecked) {
+    byte[] content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE).getBytes(StandardCharsets.UTF_8);
+    return new FailingContentPayload(content, random.nextInt(CONTENT_SIZE), unchecked);
+  }
+
+  private StoragePath newBinaryStoragePath() throws RODAException {
+    return StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+  }
+
+  private Path getTempPath() {
+    return basePath.resolve("storage" + FileStorageService.TEMP_SUFFIX);
+  }
+
+  private static long countFiles(Path path) throws IOException {
+    try (Stream<Path> paths = Files.walk(path)) {
+      return paths.filter(Files::isRegularFile).count();
+    }
+  }
+
+  private static void assertContent(String expected, Binary binary) throws IOException {
+    try (InputStream inputStream = binary.getContent().createInputStream()) {
+      assertEquals(expected, IOUtils.toString(inputStream, "UTF-8"));
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the content addressed (deduplicating) storage of
+ * {@link FileStorageService}.
+ *
+ * @see FSBlobStore
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class FileStorageServiceDeduplicationTest {
+  private static final int CONTENT_SIZE = 1024 * 1024;
+  private static final int TIMES = 10;
+
+  private Path basePath;
+  private Path storagePath;
+  private FileStorageService storage;
+  private StoragePath containerStoragePath;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(FileStorageServiceDeduplicationTest.class, false);
+    if (!FSBlobStore.isSupported(basePath)) {
+      FSUtils.deletePath(basePath);
+      throw new SkipException("File system does not support hard links");
+    }
+
+    storagePath = basePath.resolve("storage");
+    storage = new FileStorageService(storagePath, true, null, true, true);
+    containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+  }
+
+  @AfterMethod
+  public void tearDown() throws RODAException {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testSameContentIngestedSeveralTimesIsStoredOnce() throws RODAException, IOException {
+    String content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+
+    storage.createBinary(newBinaryStoragePath(), new StringContentPayload(content), true);
+    long usageAfterFirst = getDiskUsage(basePath);
+
+    for (int i = 1; i < TIMES; i++) {
+      Binary binary = storage.createBinary(newBinaryStoragePath(), new StringContentPayload(content), true);
+      assertTrue(binary.isReference());
+      assertContent(content, binary);
+    }
+
+    assertEquals(usageAfterFirst, getDiskUsage(basePath));
+    assertEquals(CONTENT_SIZE, getDiskUsage(basePath));
+  }
+
+  @Test
+  public void testCopyReferencesContent() throws RODAException, IOException {
+    assumeWriteProtectionEnforced();
+    String content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    StoragePath sourceStoragePath = newBinaryStoragePath();
+    storage.createBinary(sourceStoragePath, new StringContentPayload(content), false);
+
+    for (int i = 0; i < TIMES; i++) {
+      StoragePath targetStoragePath = newBinaryStoragePath();
+      storage.copy(storage, sourceStoragePath, targetStoragePath);
+      assertContent(content, storage.getBinary(targetStoragePath));
+    }
+
+    assertEquals(CONTENT_SIZE, getDiskUsage(basePath));
+    assertTrue(storage.getBinary(sourceStoragePath).isReference());
+  }
+
+  @Test
+  public void testCopyDirectoryReferencesContent() throws RODAException, IOException {
+    assumeWriteProtectionEnforced();
+    StoragePath sourceStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createDirectory(sourceStoragePath);
+    long size = 0;
+    for (int i = 0; i < TIMES; i++) {
+      String content = RandomStringUtils.randomAlphanumeric(1000 + i);
+      storage.createBinary(StorageTestUtils.generateRandomResourceStoragePathUnder(sourceStoragePath),
+        new StringContentPayload(content), false);
+      size += content.length();
+    }
+
+    StoragePath targetStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.copy(storage, sourceStoragePath, targetStoragePath);
+
+    StorageTestUtils.testEntityEqualRecursively(storage, sourceStoragePath, storage, targetStoragePath);
+    assertEquals(size, getDiskUsage(basePath));
+  }
+
+  @Test
+  public void testUpdateDoesNotChangeOtherReferences() throws RODAException, IOException {
+    String content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    String otherContent = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    StoragePath storagePath1 = newBinaryStoragePath();
+    StoragePath storagePath2 = newBinaryStoragePath();
+    storage.createBinary(storagePath1, new StringContentPayload(content), true);
+    storage.createBinary(storagePath2, new StringContentPayload(content), true);
+
+    storage.updateBinaryContent(storagePath1, new StringContentPayload(otherContent), false, false);
+
+    assertContent(otherContent, storage.getBinary(storagePath1));
+    assertFalse(storage.getBinary(storagePath1).isReference());
+    assertContent(content, storage.getBinary(storagePath2));
+  }
+
+  @Test
+  public void testBinaryVersionReferencesContent() throws RODAException, IOException {
+    assumeWriteProtectionEnforced();
+    String content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    String otherContent = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    StoragePath binaryStoragePath = newBinaryStoragePath();
+    storage.createBinary(binaryStoragePath, new StringContentPayload(content), false);
+
+    Map<String, String> properties = new HashMap<>();
+    BinaryVersion version = storage.createBinaryVersion(binaryStoragePath, properties);
+    Path versionPath = ((FSPathContentPayload) version.getBinary().getContent()).getPath();
+    assertEquals(getFileKey(storage.resolve(binaryStoragePath)), getFileKey(versionPath));
+
+    storage.updateBinaryContent(binaryStoragePath, new StringContentPayload(otherContent), false, false);
+    assertContent(otherContent, storage.getBinary(binaryStoragePath));
+    assertContent(content, storage.getBinaryVersion(binaryStoragePath, version.getId()).getBinary());
+
+    storage.revertBinaryVersion(binaryStoragePath, version.getId());
+    assertContent(content, storage.getBinary(binaryStoragePath));
+  }
+
+  @Test
+  public void testGarbageCollection() throws RODAException, IOException {
+    String content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    StoragePath binaryStoragePath = newBinaryStoragePath();
+    storage.createBinary(binaryStoragePath, new StringContentPayload(content), true);
+
+    // still referenced
+    assertEquals(0, storage.collectGarbage());
+
+    // still referenced by the trash
+    storage.deleteResource(binaryStoragePath);
+    assertEquals(0, storage.collectGarbage());
+
+    FSUtils.deletePath(basePath.resolve("trash"));
+    assertEquals(CONTENT_SIZE, storage.collectGarbage());
+    assertEquals(0, getDiskUsage(basePath));
+
+    // content can be stored again
+    storage.createBinary(binaryStoragePath, new StringContentPayload(content), true);
+    assertContent(content, storage.getBinary(binaryStoragePath));
+  }
+
+  @Test
+  public void testCopiesAreNotSharedWhenReadOnlyFilesCanBeWritten() throws RODAException, IOException {
+    if (FSBlobStore.isWriteProtectionEnforced(storagePath)) {
+      throw new SkipException("Read-only files cannot be written");
+    }
+
+    // e.g. running as root, shared content could be changed in place
+    String content = RandomStringUtils.randomAlphanumeric(CONTENT_SIZE);
+    StoragePath sourceStoragePath = newBinaryStoragePath();
+    storage.createBinary(sourceStoragePath, new StringContentPayload(content), false);
+    StoragePath targetStoragePath = newBinaryStoragePath();
+    storage.copy(storage, sourceStoragePath, targetStoragePath);
+
+    assertContent(content, storage.getBinary(targetStoragePath));
+    assertFalse(getFileKey(storage.resolve(sourceStoragePath)).equals(getFileKey(storage.resolve(targetStoragePath))));
+    assertFalse(storage.getBinary(sourceStoragePath).isReference());
+    assertTrue(Files.isWritable(storage.resolve(sourceStoragePath)));
+    assertEquals(2 * CONTENT_SIZE, getDiskUsage(basePath));
+  }
+
+  private void assumeWriteProtectionEnforced() {
+    if (!FSBlobStore.isWriteProtectionEnforced(storagePath)) {
+      throw new SkipException("Read-only files can be written (e.g. running as root), deduplication is disabled");
+    }
+  }
+
+  private StoragePath newBinaryStoragePath() throws RODAException {
+    return StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+  }
+
+  private static void assertContent(String expected, Binary binary) throws IOException {
+    try (InputStream inputStream = binary.getContent().createInputStream()) {
+      assertEquals(expected, IOUtils.toString(inputStream, "UTF-8"));
+    }
+  }
+
+  private static Object getFileKey(Path path) throws IOException {
+    return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+  }
+
+  /**
+   * @return the bytes used by the files under the path, counting each inode
+   *         once (like du)
+   */
+  private static long getDiskUsage(Path path) throws IOException {
+    final Map<Object, Long> sizes = new HashMap<>();
+    if (Files.exists(path)) {
+      Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          sizes.put(attrs.fileKey(), attrs.size());
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    return sizes.values().stream().mapToLong(Long::longValue).sum();
+  }
+}
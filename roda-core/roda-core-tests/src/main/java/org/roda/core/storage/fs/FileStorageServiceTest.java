@@ -52,6 +52,7 @@ public class FileStorageServiceTest extends AbstractStorageServiceTest<FileStora
   public static void tearDown() throws RODAException {
     FSUtils.deletePath(basePath);
     FSUtils.deletePath(basePath.getParent().resolve(basePath.getFileName() + FileStorageService.HISTORY_SUFFIX));
+    FSUtils.deletePathQuietly(basePath.getParent().resolve(basePath.getFileName() + FileStorageService.BLOBS_SUFFIX));
   }
 
   @Override
@@ -0,0 +1,178 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.utils;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSPathContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the single-pass digests of {@link ContentDigester} match the
+ * well-known per-algorithm values and the ones computed separately by
+ * {@link MessageDigest}.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ContentDigesterTest {
+  private static final List<String> ALGORITHMS = Arrays.asList("MD5", "SHA-1", "SHA-256");
+
+  private static final String ABC = "abc";
+  private static final String ABC_MD5 = "900150983cd24fb0d6963f7d28e17f72";
+  private static final String ABC_SHA1 = "a9993e364706816aba3e25717850c26c9cd0d89d";
+  private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+  private static final String EMPTY_MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+  private static final String EMPTY_SHA1 = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+  private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+  private Path basePath;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(ContentDigesterTest.class, false);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testKnownValuesFromStream() throws IOException, NoSuchAlgorithmException {
+    Map<String, String> digests = ContentDigester
+      .digest(new ByteArrayInputStream(ABC.getBytes(StandardCharsets.US_ASCII)), ALGORITHMS);
+
+    assertEquals(3, digests.size());
+    assertEquals(ABC_MD5, digests.get("MD5"));
+    assertEquals(ABC_SHA1, digests.get("SHA-1"));
+    assertEquals(ABC_SHA256, digests.get("SHA-256"));
+  }
+
+  @Test
+  public void testKnownValuesFromFile() throws IOException, NoSuchAlgorithmException {
+    Path file = basePath.resolve("abc");
+    Files.write(file, ABC.getBytes(StandardCharsets.US_ASCII));
+
+    Map<String, String> digests = ContentDigester.digest(file, ALGORITHMS);
+
+    assertEquals(ABC_MD5, digests.get("MD5"));
+    assertEquals(ABC_SHA1, digests.get("SHA-1"));
+    assertEquals(ABC_SHA256, digests.get("SHA-256"));
+  }
+
+  @Test
+  public void testKnownValuesFromPayloads() throws IOException, NoSuchAlgorithmException {
+    Path file = basePath.resolve("abc-payload");
+    Files.write(file, ABC.getBytes(StandardCharsets.US_ASCII));
+
+    assertEquals(ABC_SHA256, ContentDigester.digest(new FSPathContentPayload(file), ALGORITHMS).get("SHA-256"));
+    assertEquals(ABC_SHA256, ContentDigester.digest(new StringContentPayload(ABC), ALGORITHMS).get("SHA-256"));
+  }
+
+  @Test
+  public void testEmptyContent() throws IOException, NoSuchAlgorithmException {
+    Path file = basePath.resolve("empty");
+    Files.createFile(file);
+
+    Map<String, String> digests = ContentDigester.digest(file, ALGORITHMS);
+
+    assertEquals(EMPTY_MD5, digests.get("MD5"));
+    assertEquals(EMPTY_SHA1, digests.get("SHA-1"));
+    assertEquals(EMPTY_SHA256, digests.get("SHA-256"));
+  }
+
+  @Test
+  public void testRepeatedAlgorithmIsDigestedOnce() throws IOException, NoSuchAlgorithmException {
+    Map<String, String> digests = ContentDigester.digest(
+      new ByteArrayInputStream(ABC.getBytes(StandardCharsets.US_ASCII)), Arrays.asList("SHA-256", "SHA-256"));
+
+    assertEquals(1, digests.size());
+    assertEquals(ABC_SHA256, digests.get("SHA-256"));
+  }
+
+  @Test
+  public void testBufferedFileMatchesSeparateDigests() throws IOException, NoSuchAlgorithmException {
+    // several buffers long, not a multiple of the buffer size
+    Path file = createRandomFile(basePath.resolve("buffered"), 3 * 1048576L + 12345);
+    assertSameAsSeparateDigests(file, ContentDigester.digest(file, ALGORITHMS));
+  }
+
+  @Test
+  public void testMappedFileMatchesSeparateDigests() throws IOException, NoSuchAlgorithmException {
+    // above the memory mapped threshold and spanning two mapped windows
+    Path file = createRandomFile(basePath.resolve("mapped"), 64L * 1048576L + 4097);
+    assertSameAsSeparateDigests(file, ContentDigester.digest(file, ALGORITHMS));
+
+    // a single algorithm takes the non concurrent branch
+    Map<String, String> single = ContentDigester.digest(file, Arrays.asList("SHA-1"));
+    assertEquals(separateDigest(file, "SHA-1"), single.get("SHA-1"));
+  }
+
+  @Test
+  public void testStreamMatchesFile() throws IOException, NoSuchAlgorithmException {
+    Path file = createRandomFile(basePath.resolve("stream"), 2 * 1048576L + 1);
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      assertSameAsSeparateDigests(file, ContentDigester.digest(inputStream, ALGORITHMS));
+    }
+  }
+
+  private static void assertSameAsSeparateDigests(Path file, Map<String, String> digests)
+    throws IOException, NoSuchAlgorithmException {
+    assertEquals(ALGORITHMS.size(), digests.size());
+    for (String algorithm : ALGORITHMS) {
+      assertEquals(algorithm, separateDigest(file, algorithm), digests.get(algorithm));
+    }
+  }
+
+  private static String separateDigest(Path file, String algorithm) throws IOException, NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance(algorithm);
+    byte[] buffer = new byte[8192];
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return ContentDigester.toHexString(digest.digest());
+  }
+
+  private static Path createRandomFile(Path file, long size) throws IOException {
+    Random random = new Random(size);
+    byte[] buffer = new byte[65536];
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      long remaining = size;
+      while (remaining > 0) {
+        random.nextBytes(buffer);
+        int length = (int) Math.min(buffer.length, remaining);
+        outputStream.write(buffer, 0, length);
+        remaining -= length;
+      }
+    }
+    return file;
+  }
+}
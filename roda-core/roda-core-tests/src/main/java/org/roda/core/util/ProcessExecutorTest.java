@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.util;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.util.ProcessExecutor.Outcome;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the limits, timeouts and output handling of {@link ProcessExecutor}
+ * (requires a POSIX shell).
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ProcessExecutorTest {
+  private static final long BLOCKED_WAIT_IN_MILLIS = 500;
+
+  private ExecutorService callers;
+
+  @BeforeClass
+  public void setUp() {
+    callers = Executors.newCachedThreadPool();
+  }
+
+  @AfterClass
+  public void tearDown() {
+    callers.shutdownNow();
+  }
+
+  @Test
+  public void testSuccess() throws CommandException {
+    ProcessExecutor executor = new ProcessExecutor();
+    List<Outcome> outcomes = listen(executor);
+
+    assertEquals("hello\n", executor.execute(sh("echo hello"), true));
+    assertEquals(Arrays.asList(Outcome.SUCCESS), outcomes);
+  }
+
+  @Test
+  public void testErrorCode() {
+    ProcessExecutor executor = new ProcessExecutor();
+    List<Outcome> outcomes = listen(executor);
+
+    try {
+      executor.execute(sh("echo partial; echo oops >&2; exit 3"), false);
+      fail("An error code should have been thrown");
+    } catch (CommandException e) {
+      assertEquals(3, e.getExitCode());
+      assertEquals("partial\n", e.getOutput());
+      assertTrue(e.getMessage(), e.getMessage().endsWith(": oops"));
+    }
+    assertEquals(Arrays.asList(Outcome.ERROR_CODE), outcomes);
+  }
+
+  @Test
+  public void testTimeoutKillsTheProcess() {
+    ProcessExecutor executor = new ProcessExecutor(4, 4, 200, ProcessExecutor.DEFAULT_MAX_OUTPUT_SIZE);
+    List<Outcome> outcomes = listen(executor);
+
+    long start = System.currentTimeMillis();
+    try {
+      executor.execute(sh("sleep 30"), true);
+      fail("The command should have timed out");
+    } catch (CommandException e) {
+      // expected
+    }
+    assertTrue(System.currentTimeMillis() - start < 10000);
+    assertEquals(Arrays.asList(Outcome.TIMEOUT), outcomes);
+
+    // an explicit timeout overrides the default one
+    try {
+      assertEquals("done\n", executor.execute(sh("sleep 0.5; echo done"), true, ProcessExecutor.NO_TIMEOUT));
+    } catch (CommandException e) {
+      fail("Command without timeout should not have been killed: " + e.getMessage());
+    }
+  }
+
+  @Test
+  public void testTruncatedOutputFails() throws CommandException {
+    ProcessExecutor executor = new ProcessExecutor(4, 4, ProcessExecutor.NO_TIMEOUT, 10);
+    List<Outcome> outcomes = listen(executor);
+
+    assertEquals("0123456789", executor.execute(sh("printf 0123456789"), true));
+    try {
+      executor.execute(sh("printf 0123456789abcdef"), true);
+      fail("The truncated output should have failed the execution");
+    } catch (CommandException e) {
+      assertEquals("0123456789", e.getOutput());
+    }
+    assertEquals(Arrays.asList(Outcome.SUCCESS, Outcome.OUTPUT_TRUNCATED), outcomes);
+  }
+
+  @Test
+  public void testPerToolLimit() throws Exception {
+    ProcessExecutor executor = new ProcessExecutor(4, 1, ProcessExecutor.NO_TIMEOUT,
+      ProcessExecutor.DEFAULT_MAX_OUTPUT_SIZE);
+
+    ProcessExecutor.Permit permit = executor.acquire("sh");
+    Future<String> blocked = callers.submit(() -> executor.execute(sh("echo blocked"), true));
+    // other tools are not limited by it
+    assertEquals("other\n", executor.execute(Arrays.asList("/bin/echo", "other"), true));
+    Thread.sleep(BLOCKED_WAIT_IN_MILLIS);
+    assertFalse(blocked.isDone());
+
+    permit.close();
+    assertEquals("blocked\n", blocked.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testToolLimitOverride() throws Exception {
+    ProcessExecutor executor = new ProcessExecutor(4, 1, ProcessExecutor.NO_TIMEOUT,
+      ProcessExecutor.DEFAULT_MAX_OUTPUT_SIZE);
+    executor.setMaxProcesses("tool", 2);
+
+    ProcessExecutor.Permit first = executor.acquire("tool");
+    ProcessExecutor.Permit second = executor.acquire("tool");
+    Future<ProcessExecutor.Permit> third = callers.submit(() -> executor.acquire("tool"));
+    Thread.sleep(BLOCKED_WAIT_IN_MILLIS);
+    assertFalse(third.isDone());
+
+    first.close();
+    // closing twice releases only once
+    first.close();
+    third.get(10, TimeUnit.SECONDS).close();
+    second.close();
+  }
+
+  @Test
+  public void testGlobalLimit() throws Exception {
+    ProcessExecutor executor = new ProcessExecutor(1, 4, ProcessExecutor.NO_TIMEOUT,
+      ProcessExecutor.DEFAULT_MAX_OUTPUT_SIZE);
+
+    ProcessExecutor.Permit permit = executor.acquire("a");
+    Future<ProcessExecutor.Permit> other = callers.submit(() -> executor.acquire("b"));
+    Thread.sleep(BLOCKED_WAIT_IN_MILLIS);
+    assertFalse(other.isDone());
+
+    permit.close();
+    other.get(10, TimeUnit.SECONDS).close();
+  }
+
+  @Test
+  public void testReplacingTheSharedExecutorKeepsRunningExecutions() throws Exception {
+    ProcessExecutor original = CommandUtility.getProcessExecutor();
+    try {
+      Future<String> running = callers.submit(() -> CommandUtility.execute(sh("sleep 0.5; echo done")));
+      Thread.sleep(200);
+      CommandUtility.setProcessExecutor(new ProcessExecutor());
+      assertEquals("done\n", running.get(10, TimeUnit.SECONDS));
+      assertEquals("after\n", CommandUtility.execute(sh("echo after")));
+    } finally {
+      CommandUtility.setProcessExecutor(original);
+    }
+  }
+
+  private static List<String> sh(String command) {
+    return Arrays.asList("/bin/sh", "-c", command);
+  }
+
+  private static List<Outcome> listen(ProcessExecutor executor) {
+    List<Outcome> outcomes = new CopyOnWriteArrayList<>();
+    executor.setListener((tool, outcome, durationInMillis) -> outcomes.add(outcome));
+    return outcomes;
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.storage.fs.FSUtils;
+
+/**
+ * Measures the cold start of RODA core (with embedded Solr, LDAP and the plugin
+ * manager): each measurement is the first and only startup of a new JVM. The
+ * duration of each startup phase is logged by {@link RodaCoreFactory}.
+ *
+ * Not part of the test suite, run it with the main method (or with the JMH
+ * runner) from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class RodaCoreStartupBenchmark {
+
+  private Path basePath;
+
+  @Setup
+  public void setup() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(RodaCoreStartupBenchmark.class, true);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, NotFoundException, GenericException {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Benchmark
+  public boolean coldStart() {
+    boolean deploySolr = true;
+    boolean deployLdap = true;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = true;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    return RodaCoreFactory.instantiatedWithoutErrors();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RodaCoreStartupBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
+import org.roda.core.data.v2.ip.metadata.DescriptiveMetadataMixIn;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.data.v2.jobs.Report.PluginState;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the throughput of creating a new object mapper per (de)serialization
+ * (as JsonUtils used to do) with the shared readers and writers of JsonUtils.
+ *
+ * Not part of the test suite, run it with the main method (or with the JMH
+ * runner) from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JsonUtilsBenchmark {
+
+  private Report report;
+  private String reportJson;
+
+  @Setup
+  public void setup() {
+    Report innerReport = new Report().setId("inner").setTitle("Inner report").setPluginState(PluginState.SUCCESS)
+      .setPluginDetails("Everything went fine");
+
+    report = new Report().setId("b2b9c8f4-52a5-4a1f-bf49-8d7a8c2c6d5e").setSourceObjectId("source")
+      .setSourceObjectClass("org.roda.core.data.v2.ip.AIP").setSourceObjectOriginalIds(Arrays.asList("a", "b"))
+      .setOutcomeObjectId("outcome").setOutcomeObjectClass("org.roda.core.data.v2.ip.AIP")
+      .setOutcomeObjectState(AIPState.ACTIVE).setTitle("Job report").setDateCreated(new Date())
+      .setDateUpdated(new Date()).setCompletionPercentage(100).setStepsCompleted(10).setTotalSteps(10)
+      .setPlugin("org.roda.core.plugins.plugins.characterization.SiegfriedPlugin").setPluginName("Siegfried")
+      .setPluginVersion("1.0").setPluginState(PluginState.SUCCESS).setPluginDetails("Details");
+    List<Report> reports = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      reports.add(innerReport);
+    }
+    report.setReports(reports);
+
+    reportJson = JsonUtils.getJsonFromObject(report);
+  }
+
+  @Benchmark
+  public String writeWithNewMapper() throws IOException {
+    ObjectMapper mapper = new ObjectMapper(new JsonFactory());
+    mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
+    return mapper.writeValueAsString(report);
+  }
+
+  @Benchmark
+  public String writeWithSharedWriter() {
+    return JsonUtils.getJsonFromObject(report);
+  }
+
+  @Benchmark
+  public void writeToStreamWithSharedWriter() throws IOException {
+    JsonUtils.writeObjectToStream(report, NullOutputStream.NULL_OUTPUT_STREAM);
+  }
+
+  @Benchmark
+  public Report readWithNewMapper() throws IOException {
+    ObjectMapper mapper = new ObjectMapper(new JsonFactory());
+    return mapper.readValue(reportJson, Report.class);
+  }
+
+  @Benchmark
+  public Report readWithSharedReader() throws GenericException {
+    return JsonUtils.getObjectFromJson(reportJson, Report.class);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(JsonUtilsBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+
+/**
+ * Compares the throughput of copying a directory (like a representation) in
+ * the file storage with full copies and with deduplication (i.e. hard links to
+ * the content addressed store).
+ *
+ * Not part of the test suite, run it with the main method (or with the JMH
+ * runner) from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageServiceCopyBenchmark {
+  private static final int FILES = 20;
+  private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+  @Param({"false", "true"})
+  public boolean deduplicate;
+
+  private Path basePath;
+  private FileStorageService storage;
+  private StoragePath containerStoragePath;
+  private StoragePath sourceStoragePath;
+  private StoragePath targetStoragePath;
+
+  @Setup
+  public void setup() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(FileStorageServiceCopyBenchmark.class, false);
+    storage = new FileStorageService(basePath.resolve("storage"), true, null, true, deduplicate);
+    containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+
+    sourceStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createDirectory(sourceStoragePath);
+    for (int i = 0; i < FILES; i++) {
+      storage.createBinary(StorageTestUtils.generateRandomResourceStoragePathUnder(sourceStoragePath),
+        new StringContentPayload(RandomStringUtils.randomAlphanumeric(FILE_SIZE)), false);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteCopy() {
+    FSUtils.deletePathQuietly(storage.resolve(targetStoragePath));
+  }
+
+  @Benchmark
+  public StoragePath copyDirectory() throws RODAException {
+    targetStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.copy(storage, sourceStoragePath, targetStoragePath);
+    return targetStoragePath;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(FileStorageServiceCopyBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
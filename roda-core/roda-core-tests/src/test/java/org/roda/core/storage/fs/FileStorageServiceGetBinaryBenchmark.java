@@ -0,0 +1,94 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+
+/**
+ * Measures the latency of getting binaries from the file storage with and
+ * without the attribute cache (warmed by the benchmark warmup).
+ *
+ * Not part of the test suite, run it with the main method (or with the JMH
+ * runner) from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageServiceGetBinaryBenchmark {
+  private static final int BINARIES = 1000;
+
+  @Param({"false", "true"})
+  public boolean cache;
+
+  private Path basePath;
+  private FileStorageService storage;
+  private List<StoragePath> binaryStoragePaths;
+
+  @Setup
+  public void setup() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(FileStorageServiceGetBinaryBenchmark.class, false);
+    FSAttributeCache attributeCache = cache
+      ? new FSAttributeCache(FSAttributeCache.DEFAULT_MAXIMUM_SIZE, FSAttributeCache.DEFAULT_EXPIRE_SECONDS) : null;
+    storage = new FileStorageService(basePath.resolve("storage"), true, null, true, false, new FSCopier(true, true),
+      attributeCache);
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+
+    binaryStoragePaths = new ArrayList<>();
+    for (int i = 0; i < BINARIES; i++) {
+      StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+      storage.createBinary(binaryStoragePath, new StringContentPayload("content " + i), false);
+      binaryStoragePaths.add(binaryStoragePath);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Benchmark
+  public Binary getBinary() throws RODAException {
+    return storage.getBinary(binaryStoragePaths.get(ThreadLocalRandom.current().nextInt(BINARIES)));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(FileStorageServiceGetBinaryBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
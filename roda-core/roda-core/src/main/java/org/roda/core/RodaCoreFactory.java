@@ -37,6 +37,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
@@ -62,6 +65,7 @@ import org.apache.solr.cloud.ZkController;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.Aliases;
 import org.apache.solr.common.cloud.ClusterState;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
@@ -74,10 +78,19 @@ import org.reflections.util.FilterBuilder;
 import org.roda.core.common.LdapUtility;
 import org.roda.core.common.Messages;
 import org.roda.core.common.RodaUtils;
+import org.roda.core.common.StartupReport;
+import org.roda.core.common.SummingMetricRegistry;
 import org.roda.core.common.UserUtility;
 import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.monitor.FixityAuditState;
+import org.roda.core.common.monitor.FixityAuditor;
 import org.roda.core.common.monitor.TransferUpdateStatus;
+import org.roda.core.common.monitor.ReindexTransferredResourcesRunnable;
 import org.roda.core.common.monitor.TransferredResourcesScanner;
+import org.roda.core.common.monitor.TransferredResourcesSnapshot;
+import org.roda.core.common.monitor.TransferredResourcesWatcher;
+import org.roda.core.common.tools.ParallelZipper;
+import org.roda.core.common.tools.ZipTools;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.NodeType;
 import org.roda.core.data.common.RodaConstants.OrchestratorType;
@@ -110,8 +123,13 @@ import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.ShadowIndexManager;
+import org.roda.core.index.utils.ShadowIndexSolrClient;
+import org.roda.core.index.utils.SolrBulkWriter;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.migration.MigrationManager;
+import org.roda.core.model.JobReportStore;
+import org.roda.core.model.LogEntryWriter;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.PluginManager;
 import org.roda.core.plugins.PluginManagerException;
@@ -119,12 +137,20 @@ import org.roda.core.plugins.PluginOrchestrator;
 import org.roda.core.plugins.orchestrate.AkkaDistributedPluginOrchestrator;
 import org.roda.core.plugins.orchestrate.AkkaEmbeddedPluginOrchestrator;
 import org.roda.core.plugins.orchestrate.akka.distributed.AkkaDistributedPluginWorker;
+import org.roda.core.plugins.plugins.characterization.SiegfriedRuntime;
 import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.InstrumentedStorageService;
 import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceUtils;
 import org.roda.core.storage.fedora.FedoraStorageService;
+import org.roda.core.storage.fs.FSAttributeCache;
+import org.roda.core.storage.fs.FSCopier;
 import org.roda.core.storage.fs.FSUtils;
 import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.storage.utils.ContentDigester;
+import org.roda.core.util.CommandUtility;
+import org.roda.core.util.ProcessExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -133,6 +159,8 @@ import com.codahale.metrics.jmx.JmxReporter;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.joran.JoranConfigurator;
@@ -168,6 +196,7 @@ public class RodaCoreFactory {
   private static ModelService model;
   private static IndexService index;
   private static SolrClient solr;
+  private static SolrBulkWriter solrBulkWriter;
   private static boolean FEATURE_OVERRIDE_INDEX_CONFIGS = true;
 
   // instantiation toggles, all true by default, disable them in specific cases
@@ -195,6 +224,10 @@ public class RodaCoreFactory {
 
   // TransferredResources related objects
   private static TransferredResourcesScanner transferredResourcesScanner;
+  private static TransferredResourcesWatcher transferredResourcesWatcher;
+
+  // Fixity audit
+  private static FixityAuditor fixityAuditor;
 
   // Configuration related objects
   private static CompositeConfiguration rodaConfiguration = null;
@@ -305,7 +338,11 @@ public class RodaCoreFactory {
     RodaCoreFactory.nodeType = nodeType;
 
     if (!instantiated) {
+      StartupReport startupReport = new StartupReport();
+      ExecutorService startupExecutor = null;
       try {
+        StartupReport.Phase configurationPhase = startupReport.phase("configuration");
+
         // determine RODA HOME
         rodaHomePath = determineRodaHomePath();
         LOGGER.debug("RODA HOME is {}", rodaHomePath);
@@ -328,19 +365,63 @@ public class RodaCoreFactory {
 
         // initialize reports directory
         initializeReportsDirectory();
+        configurationPhase.close();
+
+        try (StartupReport.Phase phase = startupReport.phase("metrics & tools")) {
+          // initialize metrics stuff
+          initializeMetrics();
+
+          // instantiate the executor of external tools (needs the metrics)
+          instantiateProcessExecutor();
+
+          // instantiate the zip engine used by downloads
+          instantiateZipper();
+        }
 
-        // initialize metrics stuff
-        initializeMetrics();
+        // subsystems that do not depend on each other are started concurrently
+        startupExecutor = getRodaConfiguration().getBoolean("core.startup.parallel", true)
+          ? Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("roda-startup-%d").setDaemon(true).build())
+          : MoreExecutors.newDirectExecutorService();
+
+        // start solr (which, when embedded, loads all the cores)
+        Future<SolrClient> solrClientFuture = startupExecutor.submit(() -> {
+          try (StartupReport.Phase phase = startupReport.phase("solr")) {
+            return instantiateSolrClient(nodeType);
+          }
+        });
+
+        // find and initialize internal plugins
+        if (INSTANTIATE_PLUGIN_MANAGER) {
+          PluginManager.preloadInternalPlugins();
+        }
 
         // instantiate storage and model service
-        instantiateStorageAndModel();
+        try (StartupReport.Phase phase = startupReport.phase("storage & model")) {
+          instantiateStorageAndModel();
+        }
         LOGGER.debug("Finished instantiating storage & model");
 
-        // instantiate solr and index service
-        instantiateSolrAndIndexService(nodeType);
+        // instantiate index service (needs solr and the model)
+        SolrClient solrClient = getStartupResult(solrClientFuture);
+        try (StartupReport.Phase phase = startupReport.phase("index")) {
+          instantiateIndexService(solrClient, nodeType);
+        }
         LOGGER.debug("Finished instantiating solr & index");
 
-        instantiateNodeSpecificObjects(nodeType);
+        try (StartupReport.Phase phase = startupReport.phase("job report store & action log")) {
+          // instantiate job report store (needs the index)
+          instantiateJobReportStore(nodeType);
+          LOGGER.debug("Finished instantiating job report store");
+
+          // instantiate action log writer (needs the index)
+          instantiateLogEntryWriter();
+          LOGGER.debug("Finished instantiating action log writer");
+        }
+
+        try (StartupReport.Phase phase = startupReport.phase("node specific objects")) {
+          instantiateNodeSpecificObjects(nodeType);
+        }
         LOGGER.debug("Finished instantiating node specific objects");
 
         // verify if is necessary to perform a model/index migration
@@ -352,15 +433,21 @@ public class RodaCoreFactory {
           throw new GenericException("It's necessary to do a model/index migration");
         }
 
-        instantiateDefaultObjects();
+        try (StartupReport.Phase phase = startupReport.phase("default objects")) {
+          instantiateDefaultObjects();
+        }
         LOGGER.debug("Finished instantiating default objects");
 
         // instantiate plugin manager
         // 20160920 hsilva: this must be the last thing to be instantiated as
         // problems may araise when instantiating objects at the same time the
         // plugin manager is loading both internal & external plugins (it looks
-        // like Reflections is the blame)
-        instantiatePluginManager();
+        // like Reflections is the blame). Internal plugins may have been
+        // preloaded (without Reflections) in the meantime, if there's a plugin
+        // index.
+        try (StartupReport.Phase phase = startupReport.phase("plugins")) {
+          instantiatePluginManager();
+        }
         LOGGER.debug("Finished instantiating plugin manager");
 
         // now that plugin manager is up, lets do some tasks that can only be
@@ -370,6 +457,17 @@ public class RodaCoreFactory {
           LOGGER.debug("Finished clean unfinished jobs operation (doing jobs clean up asynchronously)");
         }
 
+        if (nodeType == NodeType.MASTER) {
+          instantiateFixityAuditor();
+          collectStorageGarbageAsync();
+        }
+
+        startupReport.finish();
+        startupReport.log(LOGGER);
+        if (getMetrics() != null) {
+          startupReport.registerMetrics(getMetrics(), RodaCoreFactory.class);
+        }
+
         instantiated = true;
 
       } catch (ConfigurationException e) {
@@ -386,6 +484,10 @@ public class RodaCoreFactory {
       } catch (Exception e) {
         LOGGER.error("Error instantiating " + RodaCoreFactory.class.getSimpleName(), e);
         instantiatedWithoutErrors = false;
+      } finally {
+        if (startupExecutor != null) {
+          startupExecutor.shutdown();
+        }
       }
 
       // last log message that state if system was loaded without errors or not
@@ -419,7 +521,8 @@ public class RodaCoreFactory {
   }
 
   private static void initializeMetrics() {
-    metricsRegistry = new MetricRegistry();
+    metricsRegistry = new SummingMetricRegistry();
+    ContentDigester.initializeMetrics(metricsRegistry);
     if (getSystemProperty("com.sun.management.jmxremote", null) != null) {
       jmxMetricsReporter = JmxReporter.forRegistry(metricsRegistry).inDomain("RODA").build();
       jmxMetricsReporter.start();
@@ -690,6 +793,9 @@ public class RodaCoreFactory {
 
   private static void instantiateStorageAndModel() throws GenericException {
     storage = instantiateStorage();
+    if (getRodaConfiguration().getBoolean("core.metrics.storage.enabled", true)) {
+      storage = new InstrumentedStorageService(storage, getMetrics());
+    }
     LOGGER.debug("Finished instantiating storage...");
     model = new ModelService(storage);
     LOGGER.debug("Finished instantiating model...");
@@ -715,7 +821,17 @@ public class RodaCoreFactory {
     } else if (storageType == RodaConstants.StorageType.FILESYSTEM) {
       LOGGER.debug("Going to instantiate Filesystem on '{}'", storagePath);
       String trashDirName = getRodaConfiguration().getString("core.storage.filesystem.trash", "trash");
-      return new FileStorageService(storagePath, trashDirName);
+      boolean deduplicate = getRodaConfiguration().getBoolean("core.storage.filesystem.deduplication", false);
+      FSCopier copier = new FSCopier(getRodaConfiguration().getBoolean("core.storage.filesystem.copy.reflinks", true),
+        getRodaConfiguration().getBoolean("core.storage.filesystem.copy.hardlinks", true));
+      // only safe when the storage is changed by this instance alone
+      long attributeCacheSize = getRodaConfiguration().getLong("core.storage.filesystem.attribute_cache.max_size", 0);
+      FSAttributeCache attributeCache = attributeCacheSize > 0 ? new FSAttributeCache(attributeCacheSize,
+        getRodaConfiguration().getLong("core.storage.filesystem.attribute_cache.expire_seconds",
+          FSAttributeCache.DEFAULT_EXPIRE_SECONDS))
+        : null;
+      return new FileStorageService(storagePath, true, trashDirName, true, deduplicate, copier, attributeCache,
+        storagePath.resolveSibling(storagePath.getFileName() + FileStorageService.TEMP_SUFFIX));
     } else {
       LOGGER.error("Unknown storage service '{}'", storageType.name());
       throw new GenericException();
@@ -739,7 +855,8 @@ public class RodaCoreFactory {
    * @throws GenericException
    * 
    */
-  private static void instantiateSolrAndIndexService(NodeType nodeType) throws URISyntaxException, GenericException {
+  private static SolrClient instantiateSolrClient(NodeType nodeType) throws URISyntaxException, GenericException {
+    SolrClient solrClient = null;
     if (INSTANTIATE_SOLR) {
       Path solrHome = null;
 
@@ -779,13 +896,44 @@ public class RodaCoreFactory {
 
       if (instantiatedWithoutErrors) {
         // instantiate solr
-        solr = instantiateSolr(solrHome);
-
-        // instantiate index related object
-        index = new IndexService(solr, model);
+        solrClient = instantiateSolr(solrHome);
       }
     }
+    return solrClient;
+  }
+
+  private static void instantiateIndexService(SolrClient solrClient, NodeType nodeType) {
+    if (solrClient != null) {
+      ShadowIndexSolrClient shadowIndexSolrClient = new ShadowIndexSolrClient(solrClient);
+      solr = shadowIndexSolrClient;
 
+      // instantiate index related object
+      solrBulkWriter = instantiateSolrBulkWriter(solr);
+      index = new IndexService(solr, model, solrBulkWriter);
+      index.setShadowIndexManager(instantiateShadowIndexManager(shadowIndexSolrClient, nodeType));
+    }
+  }
+
+  private static <T> T getStartupResult(Future<T> future) throws URISyntaxException, GenericException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while starting up", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof GenericException) {
+        throw (GenericException) cause;
+      } else if (cause instanceof URISyntaxException) {
+        throw (URISyntaxException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new GenericException(cause);
+      }
+    }
   }
 
   private static String getConfigurationString(String key, String defaultValue) {
@@ -803,6 +951,113 @@ public class RodaCoreFactory {
     return value;
   }
 
+  private static SolrBulkWriter instantiateSolrBulkWriter(SolrClient solrClient) {
+    SolrBulkWriter bulkWriter = null;
+    if (getRodaConfiguration().getBoolean("core.index.bulk.enabled", false)) {
+      int maxDocuments = getRodaConfigurationAsInt(SolrBulkWriter.DEFAULT_MAX_DOCUMENTS, "core", "index", "bulk",
+        "max_documents");
+      long maxBytes = getRodaConfiguration().getLong("core.index.bulk.max_bytes", SolrBulkWriter.DEFAULT_MAX_BYTES);
+      long maxDelay = getRodaConfiguration().getLong("core.index.bulk.max_delay_ms",
+        SolrBulkWriter.DEFAULT_MAX_DELAY_IN_MILLIS);
+      int maxPendingDocuments = getRodaConfigurationAsInt(SolrBulkWriter.DEFAULT_MAX_PENDING_DOCUMENTS, "core",
+        "index", "bulk", "max_pending_documents");
+      bulkWriter = new SolrBulkWriter(solrClient, maxDocuments, maxBytes, maxDelay, maxPendingDocuments);
+      LOGGER.info("Using bulk index writer (max documents: {}, max bytes: {}, max delay: {} ms)", maxDocuments,
+        maxBytes, maxDelay);
+    }
+    return bulkWriter;
+  }
+
+  private static ShadowIndexManager instantiateShadowIndexManager(ShadowIndexSolrClient shadowIndexSolrClient,
+    NodeType nodeType) {
+    // only the data directories of the embedded Solr are managed by RODA
+    Path generationsFile = shadowIndexSolrClient.getDelegate() instanceof EmbeddedSolrServer
+      ? indexDataPath.resolve(ShadowIndexManager.GENERATIONS_FILE)
+      : null;
+    ShadowIndexManager shadowIndexManager = new ShadowIndexManager(shadowIndexSolrClient, generationsFile);
+    if (nodeType == NodeType.MASTER) {
+      shadowIndexManager.cleanup();
+    }
+    return shadowIndexManager;
+  }
+
+  private static void instantiateProcessExecutor() {
+    int maxProcesses = getRodaConfigurationAsInt(4 * Runtime.getRuntime().availableProcessors(), "core", "tools",
+      "executor", "max_processes");
+    int maxProcessesPerTool = getRodaConfigurationAsInt(maxProcesses, "core", "tools", "executor",
+      "max_processes_per_tool");
+    long timeout = getRodaConfiguration().getLong("core.tools.executor.timeout_ms",
+      ProcessExecutor.DEFAULT_TIMEOUT_IN_MILLIS);
+    int maxOutputSize = getRodaConfigurationAsInt(ProcessExecutor.DEFAULT_MAX_OUTPUT_SIZE, "core", "tools",
+      "executor", "max_output_size");
+    ProcessExecutor processExecutor = new ProcessExecutor(maxProcesses, maxProcessesPerTool, timeout, maxOutputSize);
+
+    // e.g. core.tools.executor.tool.clamdscan.max_processes = 2
+    Configuration toolsConfiguration = getRodaConfiguration().subset("core.tools.executor.tool");
+    Iterator<String> keys = toolsConfiguration.getKeys();
+    while (keys.hasNext()) {
+      String key = keys.next();
+      if (key.endsWith(".max_processes")) {
+        processExecutor.setMaxProcesses(key.substring(0, key.length() - ".max_processes".length()),
+          toolsConfiguration.getInt(key));
+      }
+    }
+
+    MetricRegistry metrics = getMetrics();
+    processExecutor.setListener((tool, outcome, durationInMillis) -> {
+      metrics.timer(MetricRegistry.name(ProcessExecutor.class, tool, "executions")).update(durationInMillis,
+        TimeUnit.MILLISECONDS);
+      if (outcome != ProcessExecutor.Outcome.SUCCESS) {
+        metrics.counter(MetricRegistry.name(ProcessExecutor.class, tool, outcome.name().toLowerCase())).inc();
+      }
+    });
+
+    CommandUtility.setProcessExecutor(processExecutor);
+  }
+
+  private static void instantiateZipper() {
+    int threads = getRodaConfigurationAsInt(Runtime.getRuntime().availableProcessors(), "core", "zip", "threads");
+    int lookahead = getRodaConfigurationAsInt(2 * threads, "core", "zip", "lookahead");
+    int compressionLevel = getRodaConfigurationAsInt(ParallelZipper.DEFAULT_COMPRESSION_LEVEL, "core", "zip",
+      "compression_level");
+    int maxBufferedEntrySize = getRodaConfigurationAsInt(ParallelZipper.DEFAULT_MAX_BUFFERED_ENTRY_SIZE, "core", "zip",
+      "max_buffered_entry_size");
+    ZipTools.setZipper(new ParallelZipper(threads, lookahead, compressionLevel, maxBufferedEntrySize));
+  }
+
+  private static void instantiateJobReportStore(NodeType nodeType) {
+    if (index != null && getRodaConfiguration().getBoolean("core.jobreport.log.enabled", true)) {
+      long flushInterval = getRodaConfiguration().getLong("core.jobreport.log.flush_interval_ms",
+        JobReportStore.DEFAULT_FLUSH_INTERVAL_IN_MILLIS);
+      int maxCachedReports = getRodaConfigurationAsInt(JobReportStore.DEFAULT_MAX_CACHED_REPORTS, "core", "jobreport",
+        "log", "max_cached_reports");
+      boolean sync = getRodaConfiguration().getBoolean("core.jobreport.log.sync", false);
+      JobReportStore jobReportStore = new JobReportStore(model,
+        dataPath.resolve(RodaConstants.CORE_JOBREPORT_LOG_FOLDER), flushInterval, maxCachedReports, sync);
+      if (nodeType == NodeType.MASTER) {
+        jobReportStore.recover();
+      }
+      model.setJobReportStore(jobReportStore);
+    }
+  }
+
+  private static void instantiateLogEntryWriter() {
+    if (index != null && getRodaConfiguration().getBoolean("core.actionlog.writer.async", true)) {
+      int queueSize = getRodaConfigurationAsInt(LogEntryWriter.DEFAULT_QUEUE_SIZE, "core", "actionlog", "writer",
+        "queue_size");
+      int maxBatchSize = getRodaConfigurationAsInt(LogEntryWriter.DEFAULT_MAX_BATCH_SIZE, "core", "actionlog",
+        "writer", "max_batch_size");
+      LogEntryWriter.OverflowPolicy overflowPolicy = LogEntryWriter.OverflowPolicy
+        .valueOf(getRodaConfiguration().getString("core.actionlog.writer.overflow_policy", "BLOCK").toUpperCase());
+      LogEntryWriter.FsyncPolicy fsyncPolicy = LogEntryWriter.FsyncPolicy
+        .valueOf(getRodaConfiguration().getString("core.actionlog.writer.fsync", "NEVER").toUpperCase());
+      long fsyncInterval = getRodaConfiguration().getLong("core.actionlog.writer.fsync_interval_ms",
+        LogEntryWriter.DEFAULT_FSYNC_INTERVAL_IN_MILLIS);
+      model.setLogEntryWriter(new LogEntryWriter(model, getLogPath(), queueSize, overflowPolicy, fsyncPolicy,
+        fsyncInterval, maxBatchSize, getMetrics()));
+    }
+  }
+
   private static SolrClient instantiateSolr(Path solrHome) throws GenericException {
     SolrType solrType = SolrType
       .valueOf(getConfigurationString(RodaConstants.CORE_SOLR_TYPE, RodaConstants.DEFAULT_SOLR_TYPE.toString()));
@@ -938,6 +1193,13 @@ public class RodaCoreFactory {
         existingCollections = new ArrayList<>();
       }
 
+      // collections are aliases, so that they can be rebuilt in shadow
+      // collections
+      Aliases aliases = cloudSolrClient.getZkStateReader().getAliases();
+      if (aliases != null && aliases.getCollectionAliasMap() != null) {
+        existingCollections.addAll(aliases.getCollectionAliasMap().keySet());
+      }
+
       Map<String, Path> defaultCollections = getDefaultCollections(solrHome);
 
       for (String defaultCollection : defaultCollections.keySet()) {
@@ -975,7 +1237,10 @@ public class RodaCoreFactory {
 
       cloudSolrClient.uploadConfig(collectionConf, collection);
 
-      req.setCollectionName(collection).setConfigName(collection);
+      // the index is an alias to a collection that can be replaced by another
+      // one when the index is rebuilt (see ShadowIndexManager)
+      String generationCollection = ShadowIndexManager.getGenerationName(collection);
+      req.setCollectionName(generationCollection).setConfigName(collection);
 
       req.setNumShards(getEnvInt("SOLR_NUM_SHARDS", 1));
       req.setMaxShardsPerNode(getEnvInt("SOLR_MAX_SHARDS_PER_NODE", 1));
@@ -985,7 +1250,13 @@ public class RodaCoreFactory {
       CollectionAdminResponse response = req.process(cloudSolrClient);
       if (!response.isSuccess()) {
         LOGGER.error("Could not create collection {}: {}", collection, response.getErrorMessages());
+        return;
       }
+
+      CollectionAdminRequest.CreateAlias alias = new CollectionAdminRequest.CreateAlias();
+      alias.setAliasName(collection);
+      alias.setAliasedCollections(generationCollection);
+      alias.process(cloudSolrClient);
     } catch (SolrServerException | SolrException | IOException e) {
       LOGGER.error("Error creating collection {}", collection, e);
     }
@@ -1018,35 +1289,40 @@ public class RodaCoreFactory {
     return envInt;
   }
 
+  private static Path getIndexDataFolder(String folder) {
+    // the folder changes when the index is rebuilt in a shadow index
+    return ShadowIndexManager.getDataFolder(indexDataPath, folder);
+  }
+
   private static void setSolrSystemProperties() {
     System.setProperty("solr.data.dir", indexDataPath.toString());
-    System.setProperty("solr.data.dir.aip", indexDataPath.resolve(RodaConstants.CORE_AIP_FOLDER).toString());
+    System.setProperty("solr.data.dir.aip", getIndexDataFolder(RodaConstants.CORE_AIP_FOLDER).toString());
     System.setProperty("solr.data.dir.representations",
-      indexDataPath.resolve(RodaConstants.CORE_REPRESENTATION_FOLDER).toString());
-    System.setProperty("solr.data.dir.file", indexDataPath.resolve(RodaConstants.CORE_FILE_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_REPRESENTATION_FOLDER).toString());
+    System.setProperty("solr.data.dir.file", getIndexDataFolder(RodaConstants.CORE_FILE_FOLDER).toString());
     System.setProperty("solr.data.dir.preservationevent",
-      indexDataPath.resolve(RodaConstants.CORE_PRESERVATIONEVENT_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_PRESERVATIONEVENT_FOLDER).toString());
     System.setProperty("solr.data.dir.preservationagent",
-      indexDataPath.resolve(RodaConstants.CORE_PRESERVATIONAGENT_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_PRESERVATIONAGENT_FOLDER).toString());
     System.setProperty("solr.data.dir.actionlog",
-      indexDataPath.resolve(RodaConstants.CORE_ACTIONLOG_FOLDER).toString());
-    System.setProperty("solr.data.dir.members", indexDataPath.resolve(RodaConstants.CORE_MEMBERS_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_ACTIONLOG_FOLDER).toString());
+    System.setProperty("solr.data.dir.members", getIndexDataFolder(RodaConstants.CORE_MEMBERS_FOLDER).toString());
     System.setProperty("solr.data.dir.transferredresource",
-      indexDataPath.resolve(RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER).toString());
-    System.setProperty("solr.data.dir.job", indexDataPath.resolve(RodaConstants.CORE_JOB_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER).toString());
+    System.setProperty("solr.data.dir.job", getIndexDataFolder(RodaConstants.CORE_JOB_FOLDER).toString());
     System.setProperty("solr.data.dir.jobreport",
-      indexDataPath.resolve(RodaConstants.CORE_JOBREPORT_FOLDER).toString());
-    System.setProperty("solr.data.dir.risk", indexDataPath.resolve(RodaConstants.CORE_RISK_FOLDER).toString());
-    System.setProperty("solr.data.dir.format", indexDataPath.resolve(RodaConstants.CORE_FORMAT_FOLDER).toString());
-    System.setProperty("solr.data.dir.agent", indexDataPath.resolve(RodaConstants.CORE_AGENT_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_JOBREPORT_FOLDER).toString());
+    System.setProperty("solr.data.dir.risk", getIndexDataFolder(RodaConstants.CORE_RISK_FOLDER).toString());
+    System.setProperty("solr.data.dir.format", getIndexDataFolder(RodaConstants.CORE_FORMAT_FOLDER).toString());
+    System.setProperty("solr.data.dir.agent", getIndexDataFolder(RodaConstants.CORE_AGENT_FOLDER).toString());
     System.setProperty("solr.data.dir.notification",
-      indexDataPath.resolve(RodaConstants.CORE_NOTIFICATION_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_NOTIFICATION_FOLDER).toString());
     System.setProperty("solr.data.dir.riskincidence",
-      indexDataPath.resolve(RodaConstants.CORE_RISKINCIDENCE_FOLDER).toString());
-    System.setProperty("solr.data.dir.dip", indexDataPath.resolve(RodaConstants.CORE_DIP_FOLDER).toString());
-    System.setProperty("solr.data.dir.dipfile", indexDataPath.resolve(RodaConstants.CORE_DIP_FILE_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_RISKINCIDENCE_FOLDER).toString());
+    System.setProperty("solr.data.dir.dip", getIndexDataFolder(RodaConstants.CORE_DIP_FOLDER).toString());
+    System.setProperty("solr.data.dir.dipfile", getIndexDataFolder(RodaConstants.CORE_DIP_FILE_FOLDER).toString());
     System.setProperty("solr.data.dir.representation-information",
-      indexDataPath.resolve(RodaConstants.CORE_REPRESENTATION_INFORMATION_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_REPRESENTATION_INFORMATION_FOLDER).toString());
   }
 
   private static void instantiateNodeSpecificObjects(NodeType nodeType) {
@@ -1076,6 +1352,45 @@ public class RodaCoreFactory {
     }
   }
 
+  private static void instantiateFixityAuditor() {
+    if (index != null && getRodaConfiguration().getBoolean("core.fixity_audit.enabled", false)) {
+      try {
+        FixityAuditState state = new FixityAuditState(dataPath.resolve(RodaConstants.CORE_FIXITY_AUDIT_FOLDER));
+        int threads = getRodaConfigurationAsInt(FixityAuditor.DEFAULT_THREADS, "core", "fixity_audit", "threads");
+        long maxBytesPerSecond = getRodaConfiguration().getLong("core.fixity_audit.max_bytes_per_second",
+          FixityAuditor.DEFAULT_MAX_BYTES_PER_SECOND);
+        double busyFactor = getRodaConfiguration().getDouble("core.fixity_audit.busy_factor",
+          FixityAuditor.DEFAULT_BUSY_FACTOR);
+        long minInterval = TimeUnit.DAYS.toMillis(getRodaConfigurationAsInt(
+          (int) TimeUnit.MILLISECONDS.toDays(FixityAuditor.DEFAULT_MIN_INTERVAL_IN_MILLIS), "core", "fixity_audit",
+          "min_interval_days"));
+        int aipBatchSize = getRodaConfigurationAsInt(FixityAuditor.DEFAULT_AIP_BATCH_SIZE, "core", "fixity_audit",
+          "aip_batch_size");
+        fixityAuditor = new FixityAuditor(model, index, state, threads, maxBytesPerSecond, busyFactor, minInterval,
+          aipBatchSize);
+        fixityAuditor.start();
+      } catch (IOException e) {
+        LOGGER.error("Could not start the fixity audit", e);
+      }
+    }
+  }
+
+  private static void collectStorageGarbageAsync() {
+    StorageService storageService = StorageServiceUtils.unwrap(storage);
+    if (storageService instanceof FileStorageService
+      && getRodaConfiguration().getBoolean("core.storage.filesystem.gc_on_startup", true)) {
+      Thread thread = new Thread(() -> {
+        try {
+          ((FileStorageService) storageService).collectGarbage();
+        } catch (GenericException e) {
+          LOGGER.error("Could not collect storage garbage", e);
+        }
+      }, "storage-gc");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
   private static void instantiateOrchestrator() {
     OrchestratorType orchestratorType = getOrchestratorType();
     if (orchestratorType == OrchestratorType.AKKA_DISTRIBUTED) {
@@ -1128,7 +1443,27 @@ public class RodaCoreFactory {
 
   public static void shutdown() throws IOException {
     if (instantiated) {
+      // the orchestrator goes first so that running jobs can still persist
+      // their progress to the model and the index
+      if (INSTANTIATE_PLUGIN_ORCHESTRATOR) {
+        pluginOrchestrator.shutdown();
+      }
+      if (transferredResourcesWatcher != null) {
+        transferredResourcesWatcher.close();
+      }
+      if (fixityAuditor != null) {
+        fixityAuditor.close();
+      }
+      if (model != null && model.getLogEntryWriter() != null) {
+        model.getLogEntryWriter().close();
+      }
+      if (model != null && model.getJobReportStore() != null) {
+        model.getJobReportStore().close();
+      }
       if (INSTANTIATE_SOLR) {
+        if (solrBulkWriter != null) {
+          solrBulkWriter.close();
+        }
         solr.close();
       }
       if (INSTANTIATE_LDAP) {
@@ -1137,9 +1472,10 @@ public class RodaCoreFactory {
       if (INSTANTIATE_PLUGIN_MANAGER) {
         pluginManager.shutdown();
       }
-      if (INSTANTIATE_PLUGIN_ORCHESTRATOR) {
-        pluginOrchestrator.shutdown();
-      }
+      SiegfriedRuntime.shutdownInstance();
+      // back to the default executor, shutting down the configured one
+      CommandUtility.setProcessExecutor(new ProcessExecutor());
+      ZipTools.setZipper(new ParallelZipper());
       if (nodeType == NodeType.TEST) {
         // final cleanup
         FSUtils.deletePathQuietly(workingDirectoryPath);
@@ -1290,7 +1626,27 @@ public class RodaCoreFactory {
         Files.createDirectories(transferredResourcesFolderPath);
       }
 
-      transferredResourcesScanner = new TransferredResourcesScanner(transferredResourcesFolderPath, getIndexService());
+      int parallelism = getRodaConfigurationAsInt(1, "core", "transferredresources", "scanner", "parallelism");
+      int batchSize = getRodaConfigurationAsInt(ReindexTransferredResourcesRunnable.DEFAULT_BATCH_SIZE, "core",
+        "transferredresources", "scanner", "batch_size");
+      boolean incremental = "INCREMENTAL"
+        .equalsIgnoreCase(getRodaConfiguration().getString("core.transferredresources.scanner.mode", "FULL"));
+
+      TransferredResourcesSnapshot snapshot = null;
+      if (incremental) {
+        snapshot = new TransferredResourcesSnapshot(
+          dataPath.resolve(RodaConstants.CORE_TRANSFERREDRESOURCE_SNAPSHOT_FILE));
+      }
+
+      transferredResourcesScanner = new TransferredResourcesScanner(transferredResourcesFolderPath, getIndexService(),
+        parallelism, batchSize, snapshot);
+
+      if (incremental && nodeType == NodeType.MASTER
+        && getRodaConfiguration().getBoolean("core.transferredresources.scanner.watch", false)) {
+        transferredResourcesWatcher = new TransferredResourcesWatcher(transferredResourcesScanner,
+          getRodaConfiguration().getLong("core.transferredresources.scanner.watch.quiet_period_ms",
+            TransferredResourcesWatcher.DEFAULT_QUIET_PERIOD_IN_MILLIS));
+      }
     } catch (final Exception e) {
       LOGGER.error("Error starting Transferred Resources Scanner: " + e.getMessage(), e);
       instantiatedWithoutErrors = false;
@@ -1544,6 +1900,7 @@ public class RodaCoreFactory {
     rodaPropertiesCache.clear();
     RODA_SCHEMAS_CACHE.invalidateAll();
     I18N_CACHE.invalidateAll();
+    UserUtility.clearCaches();
     processPreservationEventTypeProperties();
 
     LOGGER.info("Reloaded roda configurations after file change!");
@@ -0,0 +1,179 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.fs.FSPathContentPayload;
+
+/**
+ * Sends the content of a binary, either whole or a range of it (to support
+ * resumable downloads and seeking), and provides what is needed to validate
+ * cached copies (an entity tag and, when known, the last modification date).
+ *
+ * When the binary is stored in the file system its content is sent with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which
+ * transfers it without copying it through the JVM heap whenever the target
+ * allows it.
+ *
+ * The entity tag is strong: it is derived from the digest of the content
+ * (given by the storage or the stored fixity information) and its size or, if
+ * there is no digest, from the size and modification date of the file.
+ */
+public class BinaryConsumesOutputStream implements ConsumesOutputStream {
+  public static final long UNKNOWN_SIZE = -1;
+
+  private final Binary binary;
+  private final String fileName;
+  private final String mediaType;
+  private final Path path;
+  private final long size;
+  private final Date lastModified;
+  private final String entityTag;
+
+  public BinaryConsumesOutputStream(Binary binary, String fileName, String mediaType) throws IOException {
+    this(binary, fileName, mediaType, null);
+  }
+
+  /**
+   * @param fixity
+   *          digest of the content from the stored fixity information (e.g. in
+   *          the PREMIS file) or null if unknown
+   */
+  public BinaryConsumesOutputStream(Binary binary, String fileName, String mediaType, String fixity)
+    throws IOException {
+    this.binary = binary;
+    this.fileName = fileName;
+    this.mediaType = mediaType;
+
+    if (binary.getContent() instanceof FSPathContentPayload) {
+      this.path = ((FSPathContentPayload) binary.getContent()).getPath();
+      this.size = Files.size(path);
+      // HTTP dates have a precision of seconds
+      this.lastModified = new Date(Files.getLastModifiedTime(path).to(TimeUnit.SECONDS) * 1000);
+    } else {
+      this.path = null;
+      this.size = binary.getSizeInBytes() != null ? binary.getSizeInBytes() : UNKNOWN_SIZE;
+      this.lastModified = null;
+    }
+
+    String digest = getDigest(binary.getContentDigest());
+    if (digest == null) {
+      digest = StringUtils.trimToNull(fixity);
+    }
+
+    if (digest != null && size != UNKNOWN_SIZE) {
+      this.entityTag = digest + "-" + Long.toHexString(size);
+    } else if (lastModified != null) {
+      this.entityTag = Long.toHexString(size) + "-" + Long.toHexString(lastModified.getTime());
+    } else {
+      this.entityTag = null;
+    }
+  }
+
+  private static String getDigest(Map<String, String> contentDigest) {
+    String ret = null;
+    if (contentDigest != null && !contentDigest.isEmpty()) {
+      // always the same algorithm, so the entity tag does not change
+      ret = StringUtils.trimToNull(new TreeMap<>(contentDigest).firstEntry().getValue());
+    }
+    return ret;
+  }
+
+  @Override
+  public String getFileName() {
+    return fileName;
+  }
+
+  @Override
+  public String getMediaType() {
+    return mediaType;
+  }
+
+  /**
+   * @return the size of the content in bytes or {@link #UNKNOWN_SIZE}
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the date of the last modification of the content or null if
+   *         unknown
+   */
+  public Date getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return the (strong) entity tag of the content or null if it could not be
+   *         determined
+   */
+  public String getEntityTag() {
+    return entityTag;
+  }
+
+  @Override
+  public void consumeOutputStream(OutputStream out) throws IOException {
+    if (size == UNKNOWN_SIZE) {
+      try (InputStream inputStream = binary.getContent().createInputStream()) {
+        IOUtils.copyLarge(inputStream, out);
+      }
+      out.flush();
+    } else {
+      consumeOutputStream(out, 0, size);
+    }
+  }
+
+  /**
+   * Sends part of the content
+   *
+   * @param start
+   *          position of the first byte to send
+   * @param length
+   *          number of bytes to send
+   */
+  public void consumeOutputStream(OutputStream out, long start, long length) throws IOException {
+    if (path != null) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        // not closed as that would close the output stream
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+          long transferred = channel.transferTo(position, remaining, target);
+          if (transferred <= 0) {
+            throw new IOException("Could only send " + (length - remaining) + " of " + length + " bytes of " + path);
+          }
+          position += transferred;
+          remaining -= transferred;
+        }
+      }
+    } else {
+      try (InputStream inputStream = binary.getContent().createInputStream()) {
+        IOUtils.copyLarge(inputStream, out, start, length);
+      }
+    }
+    out.flush();
+  }
+}
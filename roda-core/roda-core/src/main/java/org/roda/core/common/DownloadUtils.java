@@ -7,14 +7,12 @@
  */
 package org.roda.core.common;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.roda.core.common.iterables.CloseableIterable;
@@ -56,42 +54,46 @@ public class DownloadUtils {
 
         @Override
         public void consumeOutputStream(OutputStream out) throws IOException {
-          CloseableIterable<Resource> resources;
-          BufferedOutputStream bos = new BufferedOutputStream(out);
-          ZipOutputStream zos = new ZipOutputStream(bos);
+          CloseableIterable<Resource> resources = null;
           try {
             resources = storage.listResourcesUnderDirectory(storagePath, true);
             int basePathSize = storagePath.asList().size();
+            Iterator<Resource> iterator = resources.iterator();
 
-            for (Resource r : resources) {
-              List<String> pathAsList = r.getStoragePath().asList();
-              List<String> relativePathAsList = pathAsList.subList(basePathSize, pathAsList.size());
-              String entryPath = relativePathAsList.stream().collect(Collectors.joining(ZIP_PATH_DELIMITER));
-
-              if (r.isDirectory()) {
-                // adding a directory
-                entryPath += ZIP_PATH_DELIMITER;
-                zos.putNextEntry(new ZipEntry(entryPath));
-                zos.closeEntry();
-              } else {
-                // adding a file
-                ZipEntry entry = new ZipEntry(entryPath);
-                zos.putNextEntry(entry);
-                Binary binary = storage.getBinary(r.getStoragePath());
-                InputStream inputStream = binary.getContent().createInputStream();
-                IOUtils.copy(inputStream, zos);
-                IOUtils.closeQuietly(inputStream);
-                zos.closeEntry();
+            ZipTools.zip(new Iterator<ZipEntryInfo>() {
+              @Override
+              public boolean hasNext() {
+                return iterator.hasNext();
               }
-            }
-
-            IOUtils.closeQuietly(resources);
 
+              @Override
+              public ZipEntryInfo next() {
+                Resource r = iterator.next();
+                List<String> pathAsList = r.getStoragePath().asList();
+                List<String> relativePathAsList = pathAsList.subList(basePathSize, pathAsList.size());
+                String entryPath = relativePathAsList.stream().collect(Collectors.joining(ZIP_PATH_DELIMITER));
+
+                if (r.isDirectory()) {
+                  // adding a directory
+                  return new ZipEntryInfo(entryPath);
+                } else {
+                  // adding a file
+                  try {
+                    Binary binary = storage.getBinary(r.getStoragePath());
+                    return new ZipEntryInfo(entryPath, binary.getContent());
+                  } catch (GenericException | RequestNotValidException | NotFoundException
+                    | AuthorizationDeniedException e) {
+                    throw new UncheckedIOException(new IOException(e));
+                  }
+                }
+              }
+            }, out);
           } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
             throw new IOException(e);
+          } catch (UncheckedIOException e) {
+            throw e.getCause();
           } finally {
-            IOUtils.closeQuietly(zos);
-            IOUtils.closeQuietly(bos);
+            IOUtils.closeQuietly(resources);
             IOUtils.closeQuietly(out);
           }
 
@@ -114,17 +116,12 @@ public class DownloadUtils {
 
         @Override
         public void consumeOutputStream(OutputStream out) throws IOException {
-          BufferedOutputStream bos = new BufferedOutputStream(out);
-          Binary binary;
           try {
-            binary = storage.getBinary(storagePath);
-            InputStream inputStream = binary.getContent().createInputStream();
-            IOUtils.copy(inputStream, bos);
-            IOUtils.closeQuietly(inputStream);
+            Binary binary = storage.getBinary(storagePath);
+            new BinaryConsumesOutputStream(binary, getFileName(), getMediaType()).consumeOutputStream(out);
           } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
             throw new IOException(e);
           } finally {
-            IOUtils.closeQuietly(bos);
             IOUtils.closeQuietly(out);
           }
 
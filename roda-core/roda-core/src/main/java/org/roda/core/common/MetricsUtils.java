@@ -0,0 +1,48 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import org.roda.core.RodaCoreFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+
+/**
+ * Access to the metrics of the RODA metrics registry from code that may run
+ * before (or without) {@link RodaCoreFactory} being instantiated, in which
+ * case the values are recorded in metrics that are not registered anywhere.
+ */
+public final class MetricsUtils {
+  private static final Timer DETACHED_TIMER = new Timer();
+  private static final Histogram DETACHED_HISTOGRAM = new Histogram(new UniformReservoir());
+
+  private MetricsUtils() {
+    // do nothing
+  }
+
+  /**
+   * @return the timer registered under the name made of the class name and the
+   *         given names, e.g. to be used as
+   *         {@code try (Timer.Context context = MetricsUtils.timer(...).time())}
+   */
+  public static Timer timer(Class<?> klass, String... names) {
+    MetricRegistry registry = RodaCoreFactory.getMetrics();
+    return registry != null ? registry.timer(MetricRegistry.name(klass, names)) : DETACHED_TIMER;
+  }
+
+  /**
+   * @return the histogram registered under the name made of the class name and
+   *         the given names
+   */
+  public static Histogram histogram(Class<?> klass, String... names) {
+    MetricRegistry registry = RodaCoreFactory.getMetrics();
+    return registry != null ? registry.histogram(MetricRegistry.name(klass, names)) : DETACHED_HISTOGRAM;
+  }
+}
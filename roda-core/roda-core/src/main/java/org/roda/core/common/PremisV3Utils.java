@@ -56,7 +56,7 @@ import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.plugins.characterization.PremisSkeletonPluginUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.ContentPayload;
-import org.roda.core.util.FileUtility;
+import org.roda.core.storage.utils.ContentDigester;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,17 +106,15 @@ public final class PremisV3Utils {
   public static List<Fixity> calculateFixities(Binary binary, Collection<String> algorithms, String originator)
     throws IOException, NoSuchAlgorithmException {
     List<Fixity> ret = new ArrayList<>();
-    InputStream stream = binary.getContent().createInputStream();
-
-    Map<String, String> checksums = FileUtility.checksums(stream, algorithms);
+    Map<String, String> checksums = ContentDigester.digest(binary.getContent(), algorithms);
 
     for (Entry<String, String> entry : checksums.entrySet()) {
       String algorithm = entry.getKey();
-      String checksum = entry.getValue();
+      // keep upper case hexadecimal checksums, as previously stored in PREMIS
+      String checksum = entry.getValue().toUpperCase();
       ret.add(new Fixity(algorithm, checksum, originator));
     }
 
-    IOUtils.closeQuietly(stream);
     return ret;
   }
 
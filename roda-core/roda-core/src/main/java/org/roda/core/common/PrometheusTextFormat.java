@@ -0,0 +1,172 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.common.SummingMetricRegistry.Summing;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Writes the metrics of a {@link MetricRegistry} in the Prometheus text
+ * exposition format (version 0.0.4), so they can be scraped by a Prometheus
+ * server.
+ *
+ * Counters and gauges are exposed as gauges (only the numeric and boolean
+ * gauges), meters as counters of events and histograms and timers as summaries
+ * (timers in seconds). The sum of the summaries is exact for the metrics of a
+ * {@link SummingMetricRegistry} and estimated from the mean of the reservoir
+ * otherwise. Metric names are prefixed with {@value #PREFIX} and the
+ * characters not allowed by Prometheus are replaced by underscores.
+ */
+public final class PrometheusTextFormat {
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final String PREFIX = "roda_";
+  private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+  private static final double SECONDS_PER_NANO = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+  private PrometheusTextFormat() {
+    // do nothing
+  }
+
+  public static String toString(MetricRegistry registry) {
+    StringWriter writer = new StringWriter();
+    try {
+      write(registry, writer);
+    } catch (IOException e) {
+      // a string writer does not throw IO exceptions
+      throw new IllegalStateException(e);
+    }
+    return writer.toString();
+  }
+
+  public static void write(MetricRegistry registry, Writer writer) throws IOException {
+    // names that become equal after sanitization are only written once
+    Set<String> written = new HashSet<>();
+
+    for (Map.Entry<String, Gauge> entry : registry.getGauges().entrySet()) {
+      Double value = toDouble(entry.getValue());
+      String name = sanitize(entry.getKey());
+      if (value != null && written.add(name)) {
+        writeHeader(writer, name, entry.getKey(), "gauge");
+        writeSample(writer, name, "", value);
+      }
+    }
+
+    for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+      String name = sanitize(entry.getKey());
+      if (written.add(name)) {
+        writeHeader(writer, name, entry.getKey(), "gauge");
+        writeSample(writer, name, "", entry.getValue().getCount());
+      }
+    }
+
+    for (Map.Entry<String, Meter> entry : registry.getMeters().entrySet()) {
+      String name = sanitize(entry.getKey()) + "_total";
+      if (written.add(name)) {
+        writeHeader(writer, name, entry.getKey(), "counter");
+        writeSample(writer, name, "", entry.getValue().getCount());
+      }
+    }
+
+    for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+      String name = sanitize(entry.getKey());
+      if (written.add(name)) {
+        Histogram histogram = entry.getValue();
+        writeSummary(writer, name, entry.getKey(), histogram, histogram.getSnapshot(), 1.0, histogram.getCount());
+      }
+    }
+
+    for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+      String name = sanitize(entry.getKey()) + "_seconds";
+      if (written.add(name)) {
+        Timer timer = entry.getValue();
+        writeSummary(writer, name, entry.getKey(), timer, timer.getSnapshot(), SECONDS_PER_NANO, timer.getCount());
+      }
+    }
+
+    writer.flush();
+  }
+
+  private static void writeSummary(Writer writer, String name, String originalName, Metric metric, Snapshot snapshot,
+    double factor, long count) throws IOException {
+    writeHeader(writer, name, originalName, "summary");
+    for (double quantile : QUANTILES) {
+      writeSample(writer, name, "{quantile=\"" + quantile + "\"}", snapshot.getValue(quantile) * factor);
+    }
+    double sum = metric instanceof Summing ? ((Summing) metric).getSum() : snapshot.getMean() * count;
+    writeSample(writer, name + "_sum", "", sum * factor);
+    writeSample(writer, name + "_count", "", count);
+  }
+
+  private static void writeHeader(Writer writer, String name, String originalName, String type) throws IOException {
+    writer.write("# HELP " + name + " " + originalName.replace("\\", "\\\\") + "\n");
+    writer.write("# TYPE " + name + " " + type + "\n");
+  }
+
+  private static void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+    writer.write(name + labels + " " + formatValue(value) + "\n");
+  }
+
+  private static Double toDouble(Gauge<?> gauge) {
+    Object value;
+    try {
+      value = gauge.getValue();
+    } catch (RuntimeException e) {
+      // a failing gauge must not prevent the others from being exposed
+      return null;
+    }
+
+    Double ret = null;
+    if (value instanceof Number) {
+      ret = ((Number) value).doubleValue();
+    } else if (value instanceof Boolean) {
+      ret = ((Boolean) value) ? 1.0 : 0.0;
+    }
+    return ret;
+  }
+
+  private static String formatValue(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    } else {
+      return Double.toString(value);
+    }
+  }
+
+  private static String sanitize(String metricName) {
+    StringBuilder builder = new StringBuilder(PREFIX.length() + metricName.length());
+    builder.append(PREFIX);
+    for (int i = 0; i < metricName.length(); i++) {
+      char c = metricName.charAt(i);
+      boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+        || c == ':';
+      builder.append(allowed ? c : '_');
+    }
+    return builder.toString();
+  }
+}
@@ -51,6 +51,7 @@ import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.storage.Binary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -60,8 +61,10 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 
+import net.sf.saxon.s9api.Destination;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SAXDestination;
 import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.s9api.XdmAtomicValue;
 import net.sf.saxon.s9api.XdmValue;
@@ -95,6 +98,12 @@ public class RodaUtils {
       }
     });
 
+  /**
+   * SAX parsers of the metadata being transformed, reused by each thread (a
+   * parser can parse several documents, one at a time)
+   */
+  private static final ThreadLocal<XMLReader> XML_READERS = new ThreadLocal<>();
+
   /** Private empty constructor */
   private RodaUtils() {
     // do nothing
@@ -233,21 +242,35 @@ public class RodaUtils {
 
   public static Reader applyMetadataStylesheet(Binary binary, String basePath, String metadataType,
     String metadataVersion, Map<String, String> parameters) throws GenericException {
+    CharArrayWriter transformerResult = new CharArrayWriter();
+    applyMetadataStylesheet(binary, basePath, metadataType, metadataVersion, parameters,
+      PROCESSOR.newSerializer(transformerResult));
+    return new CharArrayReader(transformerResult.toCharArray());
+  }
+
+  /**
+   * Applies the metadata stylesheet sending its result, as SAX events, directly
+   * to the handler (i.e. without serializing it)
+   */
+  public static void applyMetadataStylesheet(Binary binary, String basePath, String metadataType,
+    String metadataVersion, Map<String, String> parameters, ContentHandler handler) throws GenericException {
+    applyMetadataStylesheet(binary, basePath, metadataType, metadataVersion, parameters, new SAXDestination(handler));
+  }
+
+  private static void applyMetadataStylesheet(Binary binary, String basePath, String metadataType,
+    String metadataVersion, Map<String, String> parameters, Destination destination) throws GenericException {
     try (
       Reader descMetadataReader = new InputStreamReader(new BOMInputStream(binary.getContent().createInputStream()))) {
 
-      XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-      xmlReader.setEntityResolver(new RodaEntityResolver());
       InputSource source = new InputSource(descMetadataReader);
-      Source text = new SAXSource(xmlReader, source);
+      Source text = new SAXSource(getXMLReader(), source);
 
       XsltExecutable xsltExecutable = CACHE.get(Triple.of(basePath, metadataType, metadataVersion));
 
       XsltTransformer transformer = xsltExecutable.load();
-      CharArrayWriter transformerResult = new CharArrayWriter();
 
       transformer.setSource(text);
-      transformer.setDestination(PROCESSOR.newSerializer(transformerResult));
+      transformer.setDestination(destination);
 
       for (Entry<String, String> parameter : parameters.entrySet()) {
         QName qName = new QName(parameter.getKey());
@@ -257,23 +280,29 @@ public class RodaUtils {
 
       transformer.transform();
 
-      return new CharArrayReader(transformerResult.toCharArray());
-
     } catch (IOException | SAXException | ExecutionException | SaxonApiException e) {
       throw new GenericException("Could not process descriptive metadata binary " + binary.getStoragePath()
         + " metadata type " + metadataType + " and version " + metadataVersion, e);
     }
   }
 
+  private static XMLReader getXMLReader() throws SAXException {
+    XMLReader xmlReader = XML_READERS.get();
+    if (xmlReader == null) {
+      xmlReader = XMLReaderFactory.createXMLReader();
+      xmlReader.setEntityResolver(new RodaEntityResolver());
+      XML_READERS.set(xmlReader);
+    }
+    return xmlReader;
+  }
+
   public static Reader applyEventStylesheet(Binary binary, boolean onlyDetails, Map<String, String> translations,
     String path) throws GenericException {
     try (
       Reader descMetadataReader = new InputStreamReader(new BOMInputStream(binary.getContent().createInputStream()))) {
 
-      XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-      xmlReader.setEntityResolver(new RodaEntityResolver());
       InputSource source = new InputSource(descMetadataReader);
-      Source text = new SAXSource(xmlReader, source);
+      Source text = new SAXSource(getXMLReader(), source);
 
       XsltExecutable xsltExecutable = EVENT_CACHE.get(path);
 
@@ -0,0 +1,94 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Duration of each phase of the startup, to be used as
+ * {@code try (StartupReport.Phase phase = report.phase("storage")) {...}}.
+ * Phases may run concurrently (in which case the sum of their durations is
+ * greater than the total startup time).
+ */
+public class StartupReport {
+  private final long start = System.nanoTime();
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+  private long total = -1;
+
+  public Phase phase(String name) {
+    return new Phase(name);
+  }
+
+  /**
+   * Marks the end of the startup
+   */
+  public synchronized void finish() {
+    total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  /**
+   * @return the duration in milliseconds of each finished phase, in the order
+   *         they finished
+   */
+  public synchronized Map<String, Long> getPhases() {
+    return new LinkedHashMap<>(phases);
+  }
+
+  /**
+   * @return the duration in milliseconds of the whole startup or -1 if it did
+   *         not finish yet
+   */
+  public synchronized long getTotal() {
+    return total;
+  }
+
+  public void log(Logger logger) {
+    StringBuilder b = new StringBuilder();
+    for (Map.Entry<String, Long> phase : getPhases().entrySet()) {
+      b.append("\n  ").append(phase.getKey()).append(": ").append(phase.getValue()).append(" ms");
+    }
+    logger.info("Startup took {} ms{}", getTotal(), b);
+  }
+
+  /**
+   * Registers a gauge (in milliseconds) for the total and for each phase
+   */
+  public void registerMetrics(MetricRegistry metrics, Class<?> klass) {
+    metrics.register(MetricRegistry.name(klass, "startup", "total"), (Gauge<Long>) this::getTotal);
+    for (Map.Entry<String, Long> phase : getPhases().entrySet()) {
+      Long duration = phase.getValue();
+      metrics.register(MetricRegistry.name(klass, "startup", phase.getKey().replaceAll("\\W+", "_")),
+        (Gauge<Long>) () -> duration);
+    }
+  }
+
+  private synchronized void record(String name, long durationInNanos) {
+    phases.put(name, TimeUnit.NANOSECONDS.toMillis(durationInNanos));
+  }
+
+  public class Phase implements AutoCloseable {
+    private final String name;
+    private final long phaseStart = System.nanoTime();
+
+    private Phase(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void close() {
+      record(name, System.nanoTime() - phaseStart);
+    }
+  }
+}
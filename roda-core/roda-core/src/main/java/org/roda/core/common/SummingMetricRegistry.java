@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+/**
+ * {@link MetricRegistry} whose timers and histograms also keep the sum of all
+ * the recorded values (which the reservoirs cannot give), so they can be
+ * exposed as complete Prometheus summaries by {@link PrometheusTextFormat}.
+ */
+public class SummingMetricRegistry extends MetricRegistry {
+
+  /**
+   * A metric that keeps the sum of all the recorded values
+   */
+  public interface Summing {
+    /**
+     * @return the sum of all the recorded values (in nanoseconds for timers)
+     */
+    long getSum();
+  }
+
+  @Override
+  public Timer timer(String name) {
+    return timer(name, SummingTimer::new);
+  }
+
+  @Override
+  public Histogram histogram(String name) {
+    return histogram(name, () -> new SummingHistogram(new ExponentiallyDecayingReservoir()));
+  }
+
+  public static class SummingTimer extends Timer implements Summing {
+    private final LongAdder sum = new LongAdder();
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+      super.update(duration, unit);
+      if (duration >= 0) {
+        sum.add(unit.toNanos(duration));
+      }
+    }
+
+    // the following go through the context so that the durations are summed
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+      try (Context context = time()) {
+        return event.call();
+      }
+    }
+
+    @Override
+    public <T> T timeSupplier(Supplier<T> event) {
+      try (Context context = time()) {
+        return event.get();
+      }
+    }
+
+    @Override
+    public void time(Runnable event) {
+      try (Context context = time()) {
+        event.run();
+      }
+    }
+
+    @Override
+    public long getSum() {
+      return sum.sum();
+    }
+  }
+
+  public static class SummingHistogram extends Histogram implements Summing {
+    private final LongAdder sum = new LongAdder();
+
+    public SummingHistogram(Reservoir reservoir) {
+      super(reservoir);
+    }
+
+    @Override
+    public void update(long value) {
+      super.update(value);
+      sum.add(value);
+    }
+
+    @Override
+    public long getSum() {
+      return sum.sum();
+    }
+  }
+}
@@ -11,8 +11,12 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import javax.servlet.http.HttpServletRequest;
@@ -24,10 +28,14 @@ import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.index.IsIndexed;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.NotSimpleFilterParameter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
 import org.roda.core.data.v2.index.select.SelectedItems;
 import org.roda.core.data.v2.index.select.SelectedItemsFilter;
 import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.ip.DIPFile;
+import org.roda.core.data.v2.ip.HasPermissions;
 import org.roda.core.data.v2.ip.IndexedAIP;
 import org.roda.core.data.v2.ip.IndexedDIP;
 import org.roda.core.data.v2.ip.IndexedFile;
@@ -36,11 +44,12 @@ import org.roda.core.data.v2.ip.Permissions.PermissionType;
 import org.roda.core.data.v2.ip.metadata.IndexedPreservationEvent;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.index.IndexService;
-import org.roda.core.index.utils.IterableIndexResult;
-import org.roda.core.model.utils.ModelUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 public class UserUtility {
@@ -50,8 +59,15 @@ public class UserUtility {
   private static final String REGISTER_DEFAULT_GROUPS = "ui.register.defaultGroups";
   private static final String REGISTER_DEFAULT_ROLES = "ui.register.defaultRoles";
 
+  private static final long DEFAULT_DECISION_CACHE_TTL_IN_MILLIS = 5000;
+  private static final int DEFAULT_DECISION_CACHE_MAX_SIZE = 10000;
+  private static final int PERMISSIONS_CHECK_BATCH_SIZE = 500;
+
   private static LdapUtility ldapUtility;
 
+  private static final Map<List<Object>, RequiredRoles> REQUIRED_ROLES = new ConcurrentHashMap<>();
+  private static volatile Cache<List<Object>, Boolean> decisionCache = null;
+
   /** Private empty constructor */
   private UserUtility() {
     // do nothing
@@ -135,19 +151,70 @@ public class UserUtility {
   public static void checkRoles(final User user, final Class<?> invokingMethodInnerClass, final Class<?> classToReturn)
     throws AuthorizationDeniedException {
     final Method method = invokingMethodInnerClass.getEnclosingMethod();
-    final String classParam = (classToReturn == null) ? "" : "(" + classToReturn.getSimpleName() + ")";
-    final String configKey = String.format("core.roles.%s.%s%s", method.getDeclaringClass().getName(), method.getName(),
-      classParam);
-    if (RodaCoreFactory.getRodaConfiguration().containsKey(configKey)) {
-      LOGGER.trace("Testing if user '{}' has permissions to '{}'", user.getName(), configKey);
-      final List<String> roles = RodaCoreFactory.getRodaConfigurationAsList(configKey);
-      checkRoles(user, roles);
+    final RequiredRoles requiredRoles = REQUIRED_ROLES.computeIfAbsent(Arrays.asList(method, classToReturn),
+      key -> new RequiredRoles(method, classToReturn));
+    if (requiredRoles.roles != null) {
+      LOGGER.trace("Testing if user '{}' has permissions to '{}'", user.getName(), requiredRoles.configKey);
+      checkRoles(user, requiredRoles.roles);
     } else {
       LOGGER.error("Unable to determine which roles the user '{}' needs because the config. key '{}' is not defined",
-        user.getName(), configKey);
-      throw new AuthorizationDeniedException(
-        "Unable to determine which roles the user needs because the config. key '" + configKey + "' is not defined");
+        user.getName(), requiredRoles.configKey);
+      throw new AuthorizationDeniedException("Unable to determine which roles the user needs because the config. key '"
+        + requiredRoles.configKey + "' is not defined");
+    }
+  }
+
+  /**
+   * Roles needed to invoke a method, obtained from the configuration only once
+   */
+  private static class RequiredRoles {
+    private final String configKey;
+    private final List<String> roles;
+
+    public RequiredRoles(Method method, Class<?> classToReturn) {
+      final String classParam = (classToReturn == null) ? "" : "(" + classToReturn.getSimpleName() + ")";
+      this.configKey = String.format("core.roles.%s.%s%s", method.getDeclaringClass().getName(), method.getName(),
+        classParam);
+      this.roles = RodaCoreFactory.getRodaConfiguration().containsKey(configKey)
+        ? RodaCoreFactory.getRodaConfigurationAsList(configKey)
+        : null;
+    }
+  }
+
+  /**
+   * Clears the roles table and the permission decisions cache (e.g. after a
+   * configuration change), the latter being created again with the current
+   * configuration on its next use
+   */
+  public static void clearCaches() {
+    REQUIRED_ROLES.clear();
+    Cache<List<Object>, Boolean> cache;
+    synchronized (UserUtility.class) {
+      cache = decisionCache;
+      decisionCache = null;
+    }
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  private static Cache<List<Object>, Boolean> getDecisionCache() {
+    Cache<List<Object>, Boolean> cache = decisionCache;
+    if (cache == null) {
+      synchronized (UserUtility.class) {
+        cache = decisionCache;
+        if (cache == null) {
+          long ttl = RodaCoreFactory.getRodaConfiguration().getLong("core.permissions.decision_cache.ttl_ms",
+            DEFAULT_DECISION_CACHE_TTL_IN_MILLIS);
+          int maxSize = RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_DECISION_CACHE_MAX_SIZE, "core",
+            "permissions", "decision_cache", "max_size");
+          cache = CacheBuilder.newBuilder().expireAfterWrite(Math.max(0, ttl), TimeUnit.MILLISECONDS)
+            .maximumSize(Math.max(0, maxSize)).build();
+          decisionCache = cache;
+        }
+      }
     }
+    return cache;
   }
 
   public static void setUser(final HttpServletRequest request, final User user) {
@@ -250,55 +317,52 @@ public class UserUtility {
 
   private static <T extends IsIndexed> void checkAIPObjectPermissions(User user, T obj, Function<T, String> toAIP,
     PermissionType permissionType) throws AuthorizationDeniedException {
-
-    if (isAdministrator(user)) {
-      return;
-    }
-
-    String aipId = toAIP.apply(obj);
-    IndexedAIP aip;
-    try {
-      aip = RodaCoreFactory.getIndexService().retrieve(IndexedAIP.class, aipId,
-        RodaConstants.AIP_PERMISSIONS_FIELDS_TO_RETURN);
-    } catch (NotFoundException | GenericException e) {
-      throw new AuthorizationDeniedException("Could not check permissions of object " + obj, e);
-    }
-
-    Set<String> users = aip.getPermissions().getUsers().get(permissionType);
-    Set<String> groups = aip.getPermissions().getGroups().get(permissionType);
-
-    LOGGER.debug("Checking if user '{}' has permissions to {} object {} (object read permissions: {} & {})",
-      user.getId(), permissionType, aip.getId(), users, groups);
-
-    if (!users.contains(user.getId()) && iterativeDisjoint(groups, user.getGroups())) {
-      throw new AuthorizationDeniedException(
-        "The user '" + user.getId() + "' does not have permissions to " + permissionType);
-    }
+    checkParentObjectPermissions(user, obj, IndexedAIP.class, toAIP.apply(obj),
+      RodaConstants.AIP_PERMISSIONS_FIELDS_TO_RETURN, permissionType);
   }
 
   private static <T extends IsIndexed> void checkDIPObjectPermissions(User user, T obj, Function<T, String> toDIP,
     PermissionType permissionType) throws AuthorizationDeniedException {
+    checkParentObjectPermissions(user, obj, IndexedDIP.class, toDIP.apply(obj),
+      RodaConstants.DIP_PERMISSIONS_FIELDS_TO_RETURN, permissionType);
+  }
+
+  /**
+   * Checks the permissions of the AIP or DIP of an object, caching the decision
+   * for a short time (to avoid retrieving the AIP or DIP once per object)
+   */
+  private static <T extends IsIndexed, P extends IsIndexed & HasPermissions> void checkParentObjectPermissions(
+    User user, T obj, Class<P> parentClass, String parentId, List<String> fieldsToReturn,
+    PermissionType permissionType) throws AuthorizationDeniedException {
 
     if (isAdministrator(user)) {
       return;
     }
 
-    String dipId = toDIP.apply(obj);
-    IndexedDIP dip;
-    try {
-      dip = RodaCoreFactory.getIndexService().retrieve(IndexedDIP.class, dipId,
-        RodaConstants.DIP_PERMISSIONS_FIELDS_TO_RETURN);
-    } catch (NotFoundException | GenericException e) {
-      throw new AuthorizationDeniedException("Could not check permissions of object " + obj, e);
-    }
+    List<Object> decisionKey = Arrays.asList(user.getId(), new HashSet<>(user.getGroups()), permissionType,
+      parentClass, parentId);
+    Cache<List<Object>, Boolean> cache = getDecisionCache();
+    Boolean allowed = cache.getIfPresent(decisionKey);
+
+    if (allowed == null) {
+      P parent;
+      try {
+        parent = RodaCoreFactory.getIndexService().retrieve(parentClass, parentId, fieldsToReturn);
+      } catch (NotFoundException | GenericException e) {
+        throw new AuthorizationDeniedException("Could not check permissions of object " + obj, e);
+      }
 
-    Set<String> users = dip.getPermissions().getUsers().get(permissionType);
-    Set<String> groups = dip.getPermissions().getGroups().get(permissionType);
+      Set<String> users = parent.getPermissions().getUsers().get(permissionType);
+      Set<String> groups = parent.getPermissions().getGroups().get(permissionType);
 
-    LOGGER.debug("Checking if user '{}' has permissions to {} object {} (object read permissions: {} & {})",
-      user.getId(), permissionType, dip.getId(), users, groups);
+      LOGGER.debug("Checking if user '{}' has permissions to {} object {} (object read permissions: {} & {})",
+        user.getId(), permissionType, parent.getId(), users, groups);
 
-    if (!users.contains(user.getId()) && iterativeDisjoint(groups, user.getGroups())) {
+      allowed = users.contains(user.getId()) || !iterativeDisjoint(groups, user.getGroups());
+      cache.put(decisionKey, allowed);
+    }
+
+    if (!allowed) {
       throw new AuthorizationDeniedException(
         "The user '" + user.getId() + "' does not have permissions to " + permissionType);
     }
@@ -326,58 +390,14 @@ public class UserUtility {
 
   public static void checkAIPPermissions(User user, SelectedItems<IndexedAIP> selected, PermissionType permission)
     throws AuthorizationDeniedException, GenericException, RequestNotValidException {
-
-    if (isAdministrator(user)) {
-      return;
-    }
-
-    IndexService index = RodaCoreFactory.getIndexService();
-    if (selected instanceof SelectedItemsFilter) {
-      SelectedItemsFilter<IndexedAIP> selectedItems = (SelectedItemsFilter<IndexedAIP>) selected;
-      IterableIndexResult<IndexedAIP> findAll = index.findAll(IndexedAIP.class, selectedItems.getFilter(),
-        RodaConstants.AIP_PERMISSIONS_FIELDS_TO_RETURN);
-
-      for (IndexedAIP aip : findAll) {
-        checkAIPPermissions(user, aip, permission);
-      }
-    } else if (selected instanceof SelectedItemsList) {
-      SelectedItemsList<IndexedAIP> selectedItems = (SelectedItemsList<IndexedAIP>) selected;
-      List<IndexedAIP> aips = ModelUtils.getIndexedAIPsFromObjectIds(selectedItems);
-      for (IndexedAIP aip : aips) {
-        checkAIPPermissions(user, aip, permission);
-      }
-    } else {
-      throw new RequestNotValidException(
-        "SelectedItems implementations not supported: " + selected.getClass().getName());
-    }
+    // AIPs of the list that do not exist are ignored
+    checkPermissionsInBulk(user, IndexedAIP.class, selected, permission, false);
   }
 
   public static void checkDIPPermissions(User user, SelectedItems<IndexedDIP> selected, PermissionType permission)
     throws AuthorizationDeniedException, GenericException, RequestNotValidException {
-
-    if (isAdministrator(user)) {
-      return;
-    }
-
-    IndexService index = RodaCoreFactory.getIndexService();
-    if (selected instanceof SelectedItemsFilter) {
-      SelectedItemsFilter<IndexedDIP> selectedItems = (SelectedItemsFilter<IndexedDIP>) selected;
-      IterableIndexResult<IndexedDIP> findAll = index.findAll(IndexedDIP.class, selectedItems.getFilter(),
-        RodaConstants.DIP_PERMISSIONS_FIELDS_TO_RETURN);
-
-      for (IndexedDIP dip : findAll) {
-        checkDIPPermissions(user, dip, permission);
-      }
-    } else if (selected instanceof SelectedItemsList) {
-      SelectedItemsList<IndexedDIP> selectedItems = (SelectedItemsList<IndexedDIP>) selected;
-      List<IndexedDIP> dips = ModelUtils.getIndexedDIPsFromObjectIds(selectedItems);
-      for (IndexedDIP dip : dips) {
-        checkDIPPermissions(user, dip, permission);
-      }
-    } else {
-      throw new RequestNotValidException(
-        "SelectedItems implementations not supported: " + selected.getClass().getName());
-    }
+    // DIPs of the list that do not exist are ignored
+    checkPermissionsInBulk(user, IndexedDIP.class, selected, permission, false);
   }
 
   @SuppressWarnings("unchecked")
@@ -396,54 +416,46 @@ public class UserUtility {
     }
   }
 
-  private static <T extends IsIndexed> void checkObjectPermissions(User user, SelectedItems<T> selected,
-    Function<T, String> toAIP, PermissionType permission, List<String> fieldsToRequestIndex)
+  /**
+   * Checks if the user has a permission on all the selected objects, asking the
+   * index how many of them deny it (objects are indexed with the permissions
+   * of their AIP or DIP), instead of checking them one by one.
+   *
+   * @param failIfMissing
+   *          if the check should fail when objects of a list do not exist
+   */
+  private static <T extends IsIndexed> void checkPermissionsInBulk(User user, Class<T> classToCheck,
+    SelectedItems<T> selected, PermissionType permission, boolean failIfMissing)
     throws AuthorizationDeniedException, GenericException, RequestNotValidException {
 
     if (isAdministrator(user)) {
       return;
     }
 
-    Class<T> classToReturn = SelectedItemsUtils.parseClass(selected.getSelectedClass());
     IndexService index = RodaCoreFactory.getIndexService();
     if (selected instanceof SelectedItemsFilter) {
       SelectedItemsFilter<T> selectedItems = (SelectedItemsFilter<T>) selected;
-      IterableIndexResult<T> findAll = index.findAll(classToReturn, selectedItems.getFilter(), fieldsToRequestIndex);
-
-      for (T obj : findAll) {
-        String aipId = toAIP.apply(obj);
-        IndexedAIP aip;
-        try {
-          aip = index.retrieve(IndexedAIP.class, aipId, RodaConstants.AIP_PERMISSIONS_FIELDS_TO_RETURN);
-          checkAIPPermissions(user, aip, permission);
-        } catch (NotFoundException e) {
-          // conservative approach
-          throw new AuthorizationDeniedException(
-            "Could not verify permissions of object [" + classToReturn.getSimpleName() + "] " + obj.getUUID(), e);
-        }
-
+      Filter filter = selectedItems.getFilter() != null ? selectedItems.getFilter() : new Filter();
+      if (index.count(classToCheck, getPermissionDeniedFilter(user, filter, permission)) > 0) {
+        throw new AuthorizationDeniedException(
+          "The user '" + user.getId() + "' does not have permissions to " + permission);
       }
     } else if (selected instanceof SelectedItemsList) {
       SelectedItemsList<T> selectedItems = (SelectedItemsList<T>) selected;
+      List<String> ids = new ArrayList<>(new LinkedHashSet<>(selectedItems.getIds()));
 
-      List<IndexedAIP> aips = new ArrayList<>();
-      for (String uuid : selectedItems.getIds()) {
-        T obj;
-        try {
-          obj = index.retrieve(classToReturn, uuid, fieldsToRequestIndex);
-          String aipId = toAIP.apply(obj);
-          IndexedAIP aip = index.retrieve(IndexedAIP.class, aipId, RodaConstants.AIP_PERMISSIONS_FIELDS_TO_RETURN);
-          aips.add(aip);
-        } catch (NotFoundException e) {
+      for (List<String> batch : Lists.partition(ids, PERMISSIONS_CHECK_BATCH_SIZE)) {
+        Filter filter = new Filter(new OneOfManyFilterParameter(RodaConstants.INDEX_UUID, batch));
+        if (failIfMissing && index.count(classToCheck, filter) < batch.size()) {
           // conservative approach
           throw new AuthorizationDeniedException(
-            "Could not verify permissions of object [" + classToReturn.getSimpleName() + "] " + uuid, e);
+            "Could not verify permissions of objects [" + classToCheck.getSimpleName() + "] " + batch);
         }
 
-      }
-
-      for (IndexedAIP aip : aips) {
-        checkAIPPermissions(user, aip, permission);
+        if (index.count(classToCheck, getPermissionDeniedFilter(user, filter, permission)) > 0) {
+          throw new AuthorizationDeniedException(
+            "The user '" + user.getId() + "' does not have permissions to " + permission);
+        }
       }
     } else {
       throw new RequestNotValidException(
@@ -451,15 +463,28 @@ public class UserUtility {
     }
   }
 
+  /**
+   * @return filter of the objects, matched by the given filter, on which the
+   *         user has not got the permission
+   */
+  private static Filter getPermissionDeniedFilter(User user, Filter filter, PermissionType permission) {
+    Filter deniedFilter = new Filter(new ArrayList<>(filter.getParameters()));
+    deniedFilter.add(new NotSimpleFilterParameter(RodaConstants.INDEX_PERMISSION_USERS_PREFIX + permission,
+      user.getId()));
+    for (String group : user.getGroups()) {
+      deniedFilter.add(new NotSimpleFilterParameter(RodaConstants.INDEX_PERMISSION_GROUPS_PREFIX + permission, group));
+    }
+    return deniedFilter;
+  }
+
   public static void checkRepresentationPermissions(User user, SelectedItems<IndexedRepresentation> selected,
     PermissionType permission) throws AuthorizationDeniedException, GenericException, RequestNotValidException {
-    checkObjectPermissions(user, selected, rep -> rep.getAipId(), permission,
-      RodaConstants.REPRESENTATION_FIELDS_TO_RETURN);
+    checkPermissionsInBulk(user, IndexedRepresentation.class, selected, permission, true);
   }
 
   public static void checkFilePermissions(User user, SelectedItems<IndexedFile> selected, PermissionType permission)
     throws AuthorizationDeniedException, GenericException, RequestNotValidException {
-    checkObjectPermissions(user, selected, file -> file.getAipId(), permission, RodaConstants.FILE_FIELDS_TO_RETURN);
+    checkPermissionsInBulk(user, IndexedFile.class, selected, permission, true);
   }
 
   public static User resetGroupsAndRoles(User user) {
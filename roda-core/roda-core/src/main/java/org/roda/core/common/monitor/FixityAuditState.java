@@ -0,0 +1,383 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent state of the fixity audit: the AIPs being tracked and when each
+ * was last audited (kept in memory, sorted by last audit so the due AIPs are
+ * taken without searching the index, and appended to a log that is compacted
+ * on startup and when it grows too much), until when the index was searched
+ * for new AIPs and, for each AIP, when each of its files was last verified and
+ * with which result (kept in a JSON file per AIP, only read when the AIP is
+ * audited).
+ */
+public class FixityAuditState implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FixityAuditState.class);
+
+  public static final long NEVER = 0L;
+
+  static final String AIPS_LOG = "aips.log";
+  static final String DISCOVERY_FILE = "discovery";
+  private static final String FILES_FOLDER = "files";
+  private static final String FILES_EXTENSION = ".json";
+  private static final String SEPARATOR = "\t";
+  private static final String REMOVED = "removed";
+  /** The log is compacted when it has more lines than this plus twice the AIPs */
+  private static final int MIN_LINES_TO_COMPACT = 10000;
+
+  private final Path directory;
+  private final Map<String, Long> lastAudits = new HashMap<>();
+  private final NavigableSet<AIPAudit> dueQueue = new TreeSet<>(AIPAudit.ORDER);
+  private long lastDiscovery = NEVER;
+  private long lastReconciliation = NEVER;
+  private BufferedWriter aipsLog;
+  private int aipsLogLines = 0;
+
+  public FixityAuditState(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory.resolve(FILES_FOLDER));
+    load();
+    loadDiscovery();
+    compact();
+  }
+
+  /**
+   * @return the time of the last audit of the AIP or {@link #NEVER}
+   */
+  public synchronized long getLastAudit(String aipId) {
+    return lastAudits.getOrDefault(aipId, NEVER);
+  }
+
+  /**
+   * @return the number of AIPs being tracked, audited or not
+   */
+  public synchronized int getTrackedAIPsCount() {
+    return lastAudits.size();
+  }
+
+  /**
+   * @return the ids of the AIPs being tracked
+   */
+  public synchronized Set<String> getTrackedAIPs() {
+    return new HashSet<>(lastAudits.keySet());
+  }
+
+  /**
+   * Starts tracking an AIP, that will be due immediately
+   *
+   * @return true if the AIP was not being tracked
+   */
+  public synchronized boolean track(String aipId) throws IOException {
+    boolean ret = false;
+    if (!lastAudits.containsKey(aipId)) {
+      setLastAudit(aipId, NEVER);
+      ret = true;
+    }
+    return ret;
+  }
+
+  public synchronized void setLastAudit(String aipId, long time) throws IOException {
+    Long previous = lastAudits.put(aipId, time);
+    if (previous != null) {
+      dueQueue.remove(new AIPAudit(aipId, previous));
+    }
+    dueQueue.add(new AIPAudit(aipId, time));
+    appendToLog(encode(aipId) + SEPARATOR + time);
+  }
+
+  /**
+   * @return the ids of up to the given number of AIPs last audited before the
+   *         given time, the ones audited longer ago (or never) first
+   */
+  public synchronized List<String> getDueAIPs(long dueBefore, int max) {
+    List<String> ret = new ArrayList<>();
+    for (AIPAudit audit : dueQueue) {
+      if (ret.size() >= max || audit.lastAudit >= dueBefore) {
+        break;
+      }
+      ret.add(audit.aipId);
+    }
+    return ret;
+  }
+
+  /**
+   * @return the number of AIPs last audited before the given time
+   */
+  public synchronized int countDueAIPs(long dueBefore) {
+    return dueQueue.headSet(new AIPAudit("", dueBefore), false).size();
+  }
+
+  /**
+   * @return the time until which the index was searched for new AIPs or
+   *         {@link #NEVER}
+   */
+  public synchronized long getLastDiscovery() {
+    return lastDiscovery;
+  }
+
+  /**
+   * @return the time of the last search of all the AIPs of the index or
+   *         {@link #NEVER}
+   */
+  public synchronized long getLastReconciliation() {
+    return lastReconciliation;
+  }
+
+  public synchronized void setDiscovery(long lastDiscovery, long lastReconciliation) throws IOException {
+    this.lastDiscovery = lastDiscovery;
+    this.lastReconciliation = lastReconciliation;
+    Path file = directory.resolve(DISCOVERY_FILE);
+    Path temp = directory.resolve(DISCOVERY_FILE + ".tmp");
+    Files.write(temp, (lastDiscovery + SEPARATOR + lastReconciliation).getBytes(StandardCharsets.UTF_8));
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the state of the files of the AIP, by file key (an empty map if the
+   *         AIP was never audited)
+   */
+  public Map<String, FileState> getFileStates(String aipId) {
+    Path file = getFileStatesPath(aipId);
+    Map<String, FileState> ret = new HashMap<>();
+    if (Files.exists(file)) {
+      try {
+        ret = JsonUtils.getObjectFromJson(file, FileStates.class).getFiles();
+      } catch (GenericException e) {
+        // the files will be verified again
+        LOGGER.warn("Could not read fixity audit state of AIP {}", aipId, e);
+      }
+    }
+    return ret;
+  }
+
+  public void setFileStates(String aipId, Map<String, FileState> states) throws IOException {
+    Path file = getFileStatesPath(aipId);
+    Files.createDirectories(file.getParent());
+    // written to a temporary file first, so a crash does not leave it corrupted
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(temp, JsonUtils.getJsonFromObject(new FileStates(states)).getBytes(StandardCharsets.UTF_8));
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Forgets an AIP (e.g. that no longer exists)
+   */
+  public synchronized void remove(String aipId) throws IOException {
+    Long previous = lastAudits.remove(aipId);
+    if (previous != null) {
+      dueQueue.remove(new AIPAudit(aipId, previous));
+      appendToLog(encode(aipId) + SEPARATOR + REMOVED);
+      FSUtils.deletePathQuietly(getFileStatesPath(aipId));
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (aipsLog != null) {
+      aipsLog.close();
+      aipsLog = null;
+    }
+  }
+
+  private Path getFileStatesPath(String aipId) {
+    // spread by 256 folders
+    String folder = String.format("%02x", aipId.hashCode() & 0xFF);
+    return directory.resolve(FILES_FOLDER).resolve(folder).resolve(encode(aipId) + FILES_EXTENSION);
+  }
+
+  private void load() throws IOException {
+    Path log = directory.resolve(AIPS_LOG);
+    if (Files.exists(log)) {
+      try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split(SEPARATOR);
+          if (fields.length == 2) {
+            if (REMOVED.equals(fields[1])) {
+              lastAudits.remove(decode(fields[0]));
+            } else {
+              try {
+                lastAudits.put(decode(fields[0]), Long.parseLong(fields[1]));
+              } catch (NumberFormatException e) {
+                // line partially written when stopped, ignore it
+              }
+            }
+          }
+        }
+      }
+    }
+
+    for (Map.Entry<String, Long> entry : lastAudits.entrySet()) {
+      dueQueue.add(new AIPAudit(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  private void loadDiscovery() throws IOException {
+    Path file = directory.resolve(DISCOVERY_FILE);
+    if (Files.exists(file)) {
+      String[] fields = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(SEPARATOR);
+      try {
+        if (fields.length == 2) {
+          lastDiscovery = Long.parseLong(fields[0]);
+          lastReconciliation = Long.parseLong(fields[1]);
+        }
+      } catch (NumberFormatException e) {
+        // all the AIPs will be searched again
+        LOGGER.warn("Could not read fixity audit discovery state", e);
+      }
+    }
+  }
+
+  private void appendToLog(String line) throws IOException {
+    aipsLog.write(line);
+    aipsLog.newLine();
+    aipsLog.flush();
+    if (++aipsLogLines > MIN_LINES_TO_COMPACT + 2 * lastAudits.size()) {
+      aipsLog.close();
+      compact();
+    }
+  }
+
+  /**
+   * Rewrites the log with only the last audit of each AIP
+   */
+  private void compact() throws IOException {
+    Path log = directory.resolve(AIPS_LOG);
+    Path temp = directory.resolve(AIPS_LOG + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, Long> entry : lastAudits.entrySet()) {
+        writer.write(encode(entry.getKey()) + SEPARATOR + entry.getValue());
+        writer.newLine();
+      }
+    }
+    Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    aipsLog = Files.newBufferedWriter(log, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    aipsLogLines = lastAudits.size();
+  }
+
+  private static String encode(String id) {
+    try {
+      return URLEncoder.encode(id, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String decode(String id) {
+    try {
+      return URLDecoder.decode(id, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * An AIP in the due queue, ordered by last audit
+   */
+  private static final class AIPAudit {
+    private static final Comparator<AIPAudit> ORDER = Comparator.<AIPAudit> comparingLong(a -> a.lastAudit)
+      .thenComparing(a -> a.aipId);
+
+    private final String aipId;
+    private final long lastAudit;
+
+    private AIPAudit(String aipId, long lastAudit) {
+      this.aipId = aipId;
+      this.lastAudit = lastAudit;
+    }
+  }
+
+  /**
+   * When a file was last verified and if it passed the verification
+   */
+  public static class FileState implements Serializable {
+    private static final long serialVersionUID = -1452392340405328231L;
+
+    private long lastVerified = NEVER;
+    private boolean passed = false;
+
+    public FileState() {
+      super();
+    }
+
+    public FileState(long lastVerified, boolean passed) {
+      this.lastVerified = lastVerified;
+      this.passed = passed;
+    }
+
+    public long getLastVerified() {
+      return lastVerified;
+    }
+
+    public void setLastVerified(long lastVerified) {
+      this.lastVerified = lastVerified;
+    }
+
+    public boolean isPassed() {
+      return passed;
+    }
+
+    public void setPassed(boolean passed) {
+      this.passed = passed;
+    }
+  }
+
+  /**
+   * The state of the files of an AIP, as stored
+   */
+  public static class FileStates implements Serializable {
+    private static final long serialVersionUID = 4061396005226893498L;
+
+    private Map<String, FileState> files = new HashMap<>();
+
+    public FileStates() {
+      super();
+    }
+
+    public FileStates(Map<String, FileState> files) {
+      this.files = files;
+    }
+
+    public Map<String, FileState> getFiles() {
+      return files;
+    }
+
+    public void setFiles(Map<String, FileState> files) {
+      this.files = files;
+    }
+  }
+}
@@ -0,0 +1,624 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.xmlbeans.XmlException;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.MetricsUtils;
+import org.roda.core.common.PremisV3Utils;
+import org.roda.core.common.monitor.FixityAuditState.FileState;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.filter.DateRangeFilterParameter;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.metadata.Fixity;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.data.v2.risks.Risk;
+import org.roda.core.data.v2.risks.RiskIncidence;
+import org.roda.core.data.v2.risks.RiskIncidence.INCIDENCE_STATUS;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.plugins.plugins.PluginHelper;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.utils.ContentDigester;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Background fixity audit: continuously verifies the fixity of the files of
+ * all AIPs, auditing first the AIPs that were never audited or that were
+ * audited longer ago, and skipping the files verified (with success) less than
+ * the minimum interval ago. As the state is persisted ({@link FixityAuditState})
+ * the audit resumes where it was after a restart.
+ *
+ * The due AIPs are taken from the state, sorted by last audit, so the index is
+ * not searched for all the AIPs each time: new AIPs are found by searching the
+ * AIPs updated since the previous search, AIPs no longer in the index are
+ * forgotten when their turn comes, and all the AIPs of the index are searched
+ * only once a day to find the ones that were missed.
+ *
+ * The expected digests are taken from the index (that has the fixity of the
+ * PREMIS files) so the PREMIS file is only parsed when the index has no digest
+ * or the digest does not match. Files are read in parallel with a global
+ * bandwidth limit, which is reduced while ingest jobs are running.
+ *
+ * Corrupted or missing files get an incidence of the same risk used by
+ * {@code AIPCorruptionRiskAssessmentPlugin}, and incidences of files that
+ * pass the verification are mitigated; incidences are searched, created and
+ * updated once per AIP (and committed together). Files without fixity
+ * information can not be verified, so they are only logged and counted (and
+ * checked again in the next audit). Progress is exposed in the metrics
+ * {@code org.roda.core.common.monitor.FixityAuditor.*}.
+ */
+public class FixityAuditor implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FixityAuditor.class);
+
+  public static final String RISK_ID = "urn:fixityplugin:r1";
+  public static final int DEFAULT_THREADS = 2;
+  public static final long DEFAULT_MAX_BYTES_PER_SECOND = 50L * 1024 * 1024;
+  public static final double DEFAULT_BUSY_FACTOR = 0.2;
+  public static final long DEFAULT_MIN_INTERVAL_IN_MILLIS = TimeUnit.DAYS.toMillis(30);
+  public static final int DEFAULT_AIP_BATCH_SIZE = 100;
+
+  private static final String DETECTED_BY = "Fixity audit";
+  private static final long IDLE_DELAY_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final long BUSY_CHECK_INTERVAL_IN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  private static final long RECONCILIATION_INTERVAL_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+  /** AIPs updated a bit before the previous search, as commits take time */
+  private static final long DISCOVERY_MARGIN_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final int CHECKPOINT_FILES = 1000;
+  private static final List<String> AIP_FIELDS = Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_ID);
+  private static final List<String> FILE_FIELDS = Arrays.asList(RodaConstants.INDEX_UUID,
+    RodaConstants.FILE_AIP_ID, RodaConstants.FILE_REPRESENTATION_ID, RodaConstants.FILE_PATH,
+    RodaConstants.FILE_FILE_ID, RodaConstants.FILE_ISDIRECTORY, RodaConstants.FILE_HASH);
+
+  private enum Outcome {
+    PASSED, FAILED, NO_FIXITY, ERROR
+  }
+
+  private final ModelService model;
+  private final IndexService index;
+  private final StorageService storage;
+  private final FixityAuditState state;
+  private final int threads;
+  private final long maxBytesPerSecond;
+  private final double busyFactor;
+  private final long minIntervalInMillis;
+  private final int aipBatchSize;
+
+  private final RateLimiter rateLimiter;
+  private final ExecutorService verifiers;
+  private final ScheduledExecutorService busyChecker;
+  private final Thread auditorThread;
+  private volatile boolean closed = false;
+  private volatile boolean busy = false;
+  private volatile long dueAIPs = 0;
+
+  private final Meter bytesMeter;
+  private final Counter passedCounter;
+  private final Counter failedCounter;
+  private final Counter errorCounter;
+  private final Counter noFixityCounter;
+  private final Counter aipsCounter;
+
+  /**
+   * @param maxBytesPerSecond
+   *          max number of bytes read per second by all the threads (0 means
+   *          no limit)
+   * @param busyFactor
+   *          factor applied to the max bytes per second while ingest jobs are
+   *          running
+   * @param minIntervalInMillis
+   *          min time between verifications of the same file
+   * @param aipBatchSize
+   *          number of due AIPs taken from the state at a time
+   */
+  public FixityAuditor(ModelService model, IndexService index, FixityAuditState state, int threads,
+    long maxBytesPerSecond, double busyFactor, long minIntervalInMillis, int aipBatchSize) {
+    this.model = model;
+    this.index = index;
+    this.storage = model.getStorage();
+    this.state = state;
+    this.threads = Math.max(1, threads);
+    this.maxBytesPerSecond = maxBytesPerSecond;
+    this.busyFactor = Math.min(1.0, Math.max(0.01, busyFactor));
+    this.minIntervalInMillis = minIntervalInMillis;
+    this.aipBatchSize = Math.max(1, aipBatchSize);
+    this.rateLimiter = maxBytesPerSecond > 0 ? RateLimiter.create(maxBytesPerSecond) : null;
+
+    this.verifiers = Executors.newFixedThreadPool(this.threads, r -> {
+      Thread thread = new Thread(r, "fixity-audit-verifier");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.busyChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "fixity-audit-busy-checker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.auditorThread = new Thread(this::audit, "fixity-audit");
+    this.auditorThread.setDaemon(true);
+
+    MetricRegistry metrics = RodaCoreFactory.getMetrics();
+    if (metrics == null) {
+      metrics = new MetricRegistry();
+    }
+    this.bytesMeter = metrics.meter(MetricRegistry.name(FixityAuditor.class, "bytes"));
+    this.passedCounter = metrics.counter(MetricRegistry.name(FixityAuditor.class, "files", "passed"));
+    this.failedCounter = metrics.counter(MetricRegistry.name(FixityAuditor.class, "files", "failed"));
+    this.errorCounter = metrics.counter(MetricRegistry.name(FixityAuditor.class, "files", "errors"));
+    this.noFixityCounter = metrics.counter(MetricRegistry.name(FixityAuditor.class, "files", "no_fixity"));
+    this.aipsCounter = metrics.counter(MetricRegistry.name(FixityAuditor.class, "aips", "audited"));
+    metrics.gauge(MetricRegistry.name(FixityAuditor.class, "aips", "due"), () -> (Gauge<Long>) () -> dueAIPs);
+    metrics.gauge(MetricRegistry.name(FixityAuditor.class, "aips", "tracked"),
+      () -> (Gauge<Integer>) state::getTrackedAIPsCount);
+    metrics.gauge(MetricRegistry.name(FixityAuditor.class, "rate"),
+      () -> (Gauge<Double>) this::getRate);
+    metrics.gauge(MetricRegistry.name(FixityAuditor.class, "busy"), () -> (Gauge<Integer>) () -> busy ? 1 : 0);
+  }
+
+  public void start() {
+    if (rateLimiter != null) {
+      busyChecker.scheduleWithFixedDelay(this::checkBusy, 0, BUSY_CHECK_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    auditorThread.start();
+    LOGGER.info("Fixity audit started with {} threads and a limit of {} bytes per second", threads,
+      maxBytesPerSecond);
+  }
+
+  /**
+   * Stops the audit, waiting for the files being verified
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    auditorThread.interrupt();
+    busyChecker.shutdownNow();
+    verifiers.shutdown();
+    try {
+      auditorThread.join(TimeUnit.MINUTES.toMillis(1));
+      verifiers.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    state.close();
+  }
+
+  /**
+   * @return the current max bytes read per second (0 if there is no limit)
+   */
+  double getRate() {
+    return rateLimiter != null ? rateLimiter.getRate() : 0.0;
+  }
+
+  void checkBusy() {
+    try {
+      Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.JOB_STATE, Job.JOB_STATE.STARTED.toString()),
+        new SimpleFilterParameter(RodaConstants.JOB_PLUGIN_TYPE, PluginType.INGEST.toString()));
+      boolean ingesting = index.count(Job.class, filter) > 0;
+      if (ingesting != busy) {
+        busy = ingesting;
+        rateLimiter.setRate(busy ? maxBytesPerSecond * busyFactor : maxBytesPerSecond);
+        LOGGER.debug("Fixity audit rate set to {} bytes per second", rateLimiter.getRate());
+      }
+    } catch (GenericException | RequestNotValidException | RuntimeException e) {
+      LOGGER.warn("Could not check if there are ingest jobs running", e);
+    }
+  }
+
+  private void audit() {
+    while (!closed) {
+      try {
+        if (auditNextAIPs() == 0) {
+          Thread.sleep(IDLE_DELAY_IN_MILLIS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (IOException | RuntimeException e) {
+        LOGGER.error("Error during fixity audit", e);
+        try {
+          Thread.sleep(IDLE_DELAY_IN_MILLIS);
+        } catch (InterruptedException e1) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Audits the next batch of due AIPs
+   *
+   * @return the number of AIPs that were due
+   */
+  int auditNextAIPs() throws IOException, InterruptedException {
+    List<String> aipIds = getNextAIPs();
+    for (String aipId : aipIds) {
+      if (closed) {
+        break;
+      }
+      auditAIP(aipId);
+    }
+    return aipIds.size();
+  }
+
+  /**
+   * @return the AIPs that are due, the ones audited longer ago first
+   */
+  private List<String> getNextAIPs() throws IOException {
+    discoverAIPs();
+    long dueBefore = System.currentTimeMillis() - minIntervalInMillis;
+    dueAIPs = state.countDueAIPs(dueBefore);
+    return state.getDueAIPs(dueBefore, aipBatchSize);
+  }
+
+  /**
+   * Tracks the AIPs updated (e.g. created or ingested) since the previous
+   * search or, once a day, all the AIPs of the index, forgetting the ones no
+   * longer there
+   */
+  private void discoverAIPs() throws IOException {
+    long now = System.currentTimeMillis();
+    long lastReconciliation = state.getLastReconciliation();
+
+    if (lastReconciliation <= now - RECONCILIATION_INTERVAL_IN_MILLIS) {
+      Set<String> forgotten = state.getTrackedAIPs();
+      int added = 0;
+      for (IndexedAIP aip : index.findAll(IndexedAIP.class, Filter.ALL, AIP_FIELDS)) {
+        forgotten.remove(aip.getId());
+        if (state.track(aip.getId())) {
+          added++;
+        }
+      }
+      for (String aipId : forgotten) {
+        state.remove(aipId);
+      }
+      state.setDiscovery(now, now);
+      LOGGER.info("Fixity audit found {} new AIPs and forgot {} AIPs no longer in the index", added,
+        forgotten.size());
+    } else {
+      Filter filter = new Filter(new DateRangeFilterParameter(RodaConstants.AIP_UPDATED_ON,
+        new Date(state.getLastDiscovery() - DISCOVERY_MARGIN_IN_MILLIS), new Date(now)));
+      for (IndexedAIP aip : index.findAll(IndexedAIP.class, filter, AIP_FIELDS)) {
+        state.track(aip.getId());
+      }
+      state.setDiscovery(now, lastReconciliation);
+    }
+  }
+
+  private void auditAIP(String aipId) throws IOException, InterruptedException {
+    long start = System.currentTimeMillis();
+    try {
+      index.retrieve(IndexedAIP.class, aipId, AIP_FIELDS);
+    } catch (NotFoundException e) {
+      LOGGER.debug("AIP {} is no longer in the index, it will not be audited", aipId);
+      state.remove(aipId);
+      return;
+    } catch (GenericException e) {
+      throw new IOException("Could not retrieve AIP " + aipId, e);
+    }
+
+    Map<String, FileState> previousStates = state.getFileStates(aipId);
+    Map<String, FileState> states = new ConcurrentHashMap<>();
+    Map<String, IndexedFile> failedFiles = new ConcurrentHashMap<>();
+    Map<String, IndexedFile> passedFiles = new ConcurrentHashMap<>();
+    Semaphore inFlight = new Semaphore(2 * threads);
+    int submitted = 0;
+
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.FILE_AIP_ID, aipId));
+    for (IndexedFile file : index.findAll(IndexedFile.class, filter, FILE_FIELDS)) {
+      if (closed) {
+        break;
+      }
+      if (file.isDirectory()) {
+        continue;
+      }
+
+      String key = getFileKey(file.getRepresentationId(), file.getPath(), file.getId());
+      FileState previous = previousStates.get(key);
+      if (previous != null && previous.isPassed() && previous.getLastVerified() >= start - minIntervalInMillis) {
+        states.put(key, previous);
+        continue;
+      }
+
+      inFlight.acquire();
+      verifiers.execute(() -> {
+        try {
+          Outcome outcome = verify(file);
+          if (outcome == Outcome.PASSED || outcome == Outcome.FAILED) {
+            states.put(key, new FileState(System.currentTimeMillis(), outcome == Outcome.PASSED));
+            // incidences only change for failures or files that did not pass
+            if (outcome == Outcome.FAILED) {
+              failedFiles.put(key, file);
+            } else if (previous == null || !previous.isPassed()) {
+              passedFiles.put(key, file);
+            }
+          } else if (outcome == Outcome.NO_FIXITY) {
+            // not verified, so it does not change the incidences
+            states.put(key, new FileState(System.currentTimeMillis(), false));
+          } else if (previous != null) {
+            states.put(key, previous);
+          }
+        } finally {
+          inFlight.release();
+        }
+      });
+
+      if (++submitted % CHECKPOINT_FILES == 0) {
+        state.setFileStates(aipId, new HashMap<>(states));
+      }
+    }
+
+    // wait for the files being verified
+    inFlight.acquire(2 * threads);
+    inFlight.release(2 * threads);
+
+    state.setFileStates(aipId, new HashMap<>(states));
+    recordIncidences(aipId, failedFiles, passedFiles);
+    if (!closed) {
+      state.setLastAudit(aipId, start);
+      aipsCounter.inc();
+    }
+  }
+
+  private Outcome verify(IndexedFile file) {
+    Outcome outcome;
+    Timer.Context context = MetricsUtils.timer(FixityAuditor.class, "verifications").time();
+    try {
+      Binary binary = storage.getBinary(
+        ModelUtils.getFileStoragePath(file.getAipId(), file.getRepresentationId(), file.getPath(), file.getId()));
+
+      Map<String, String> expected = getIndexedFixities(file.getHash());
+      boolean fromIndex = !expected.isEmpty();
+      if (!fromIndex) {
+        expected = getPremisFixities(file);
+      }
+
+      if (expected.isEmpty()) {
+        LOGGER.warn("File {} has no fixity information, it can not be verified", file.getUUID());
+        outcome = Outcome.NO_FIXITY;
+      } else {
+        Map<String, String> computed = digest(binary, expected.keySet());
+        if (matches(expected, computed)) {
+          outcome = Outcome.PASSED;
+        } else if (fromIndex) {
+          // the index may be out of date, the PREMIS file has the last word
+          Map<String, String> premisFixities = getPremisFixities(file);
+          if (!computed.keySet().containsAll(premisFixities.keySet())) {
+            computed = digest(binary, premisFixities.keySet());
+          }
+          outcome = !premisFixities.isEmpty() && matches(premisFixities, computed) ? Outcome.PASSED : Outcome.FAILED;
+        } else {
+          outcome = Outcome.FAILED;
+        }
+      }
+    } catch (NotFoundException e) {
+      LOGGER.debug("File {} was not found", file.getUUID(), e);
+      outcome = Outcome.FAILED;
+    } catch (IOException | GenericException | RequestNotValidException | AuthorizationDeniedException
+      | NoSuchAlgorithmException | XmlException | RuntimeException e) {
+      // not a reason to consider the file corrupted, it will be verified again
+      LOGGER.warn("Could not verify fixity of file {}", file.getUUID(), e);
+      outcome = Outcome.ERROR;
+    } finally {
+      context.stop();
+    }
+
+    if (outcome == Outcome.PASSED) {
+      passedCounter.inc();
+    } else if (outcome == Outcome.FAILED) {
+      failedCounter.inc();
+    } else if (outcome == Outcome.NO_FIXITY) {
+      noFixityCounter.inc();
+    } else {
+      errorCounter.inc();
+    }
+    return outcome;
+  }
+
+  private Map<String, String> digest(Binary binary, Set<String> algorithms)
+    throws IOException, NoSuchAlgorithmException {
+    try (InputStream inputStream = new ThrottledInputStream(binary.getContent().createInputStream())) {
+      return ContentDigester.digest(inputStream, algorithms);
+    }
+  }
+
+  private static boolean matches(Map<String, String> expected, Map<String, String> computed) {
+    boolean ret = true;
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      String checksum = computed.get(entry.getKey());
+      if (checksum == null || !entry.getValue().trim().equalsIgnoreCase(checksum.trim())) {
+        ret = false;
+        break;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param hashes
+   *          the indexed hashes, i.e. "digest (algorithm[, originator])"
+   */
+  private static Map<String, String> getIndexedFixities(List<String> hashes) {
+    Map<String, String> ret = new HashMap<>();
+    if (hashes != null) {
+      for (String hash : hashes) {
+        String digest = StringUtils.substringBefore(hash, " (");
+        String algorithm = StringUtils.substringBefore(StringUtils.substringBetween(hash, "(", ")"), ",");
+        if (StringUtils.isNotBlank(digest) && StringUtils.isNotBlank(algorithm)) {
+          ret.put(algorithm.trim(), digest.trim());
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return the fixities of the PREMIS file of the file (empty if there is no
+   *         PREMIS file)
+   */
+  private Map<String, String> getPremisFixities(IndexedFile file) throws RequestNotValidException, GenericException,
+    AuthorizationDeniedException, XmlException, IOException {
+    Map<String, String> ret = new HashMap<>();
+    try {
+      Binary premisFile = model.retrievePreservationFile(file.getAipId(), file.getRepresentationId(), file.getPath(),
+        file.getId());
+      for (Fixity fixity : PremisV3Utils.extractFixities(premisFile)) {
+        ret.put(fixity.getMessageDigestAlgorithm(), fixity.getMessageDigest());
+      }
+    } catch (NotFoundException e) {
+      LOGGER.debug("File {} has no PREMIS file", file.getUUID(), e);
+    }
+    return ret;
+  }
+
+  private void recordIncidences(String aipId, Map<String, IndexedFile> failedFiles,
+    Map<String, IndexedFile> passedFiles) {
+    if (failedFiles.isEmpty() && passedFiles.isEmpty()) {
+      return;
+    }
+
+    try {
+      Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_AIP_ID, aipId),
+        new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_RISK_ID, RISK_ID),
+        new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_STATUS, INCIDENCE_STATUS.UNMITIGATED.toString()));
+      Map<String, List<RiskIncidence>> unmitigated = new HashMap<>();
+      for (RiskIncidence incidence : index.findAll(RiskIncidence.class, filter, Collections.emptyList())) {
+        unmitigated.computeIfAbsent(
+          getFileKey(incidence.getRepresentationId(), incidence.getFilePath(), incidence.getFileId()),
+          k -> new ArrayList<>()).add(incidence);
+      }
+
+      Risk risk = null;
+      for (Map.Entry<String, IndexedFile> entry : failedFiles.entrySet()) {
+        if (!unmitigated.containsKey(entry.getKey())) {
+          if (risk == null) {
+            risk = PluginHelper.createRiskIfNotExists(model, RISK_ID, getClass().getClassLoader());
+          }
+          model.createRiskIncidence(createIncidence(entry.getValue(), risk), false);
+        }
+      }
+
+      for (String key : passedFiles.keySet()) {
+        for (RiskIncidence incidence : unmitigated.getOrDefault(key, Collections.emptyList())) {
+          incidence.setStatus(INCIDENCE_STATUS.MITIGATED);
+          model.updateRiskIncidence(incidence, false);
+        }
+      }
+
+      index.commit(RiskIncidence.class);
+    } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | AlreadyExistsException
+      | NotFoundException | RuntimeException e) {
+      LOGGER.error("Could not record fixity incidences of AIP {}", aipId, e);
+    }
+  }
+
+  private RiskIncidence createIncidence(IndexedFile file, Risk risk) {
+    RiskIncidence incidence = new RiskIncidence();
+    incidence.setDetectedOn(new Date());
+    incidence.setDetectedBy(DETECTED_BY);
+    incidence.setRiskId(RISK_ID);
+    incidence.setAipId(file.getAipId());
+    incidence.setRepresentationId(file.getRepresentationId());
+    if (file.getPath() != null) {
+      incidence.setFilePath(file.getPath());
+    }
+    incidence.setFileId(file.getId());
+    incidence.setObjectClass(AIP.class.getSimpleName());
+    incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
+    incidence.setSeverity(risk.getPreMitigationSeverityLevel());
+    return incidence;
+  }
+
+  private static String getFileKey(String representationId, List<String> path, String fileId) {
+    StringBuilder key = new StringBuilder(StringUtils.defaultString(representationId));
+    if (path != null) {
+      for (String folder : path) {
+        key.append('/').append(folder);
+      }
+    }
+    return key.append('/').append(fileId).toString();
+  }
+
+  /**
+   * Reads from the stream respecting the global bandwidth limit
+   */
+  private class ThrottledInputStream extends FilterInputStream {
+    ThrottledInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int ret = super.read();
+      if (ret != -1) {
+        acquire(1);
+      }
+      return ret;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int ret = super.read(b, off, len);
+      if (ret > 0) {
+        acquire(ret);
+      }
+      return ret;
+    }
+
+    private void acquire(int bytes) throws IOException {
+      if (closed) {
+        throw new IOException("Fixity audit stopped");
+      }
+      if (rateLimiter != null) {
+        rateLimiter.acquire(bytes);
+      }
+      bytesMeter.mark(bytes);
+    }
+  }
+}
@@ -8,17 +8,15 @@
 package org.roda.core.common.monitor;
 
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
@@ -30,20 +28,44 @@ import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.TransferredResource;
 import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Indexes the transferred resources of the transfer area (or of one of its
+ * folders).
+ *
+ * Without a snapshot every resource is re-indexed and the ones that were not
+ * found (i.e. with an older last scan date) are removed from the index. With a
+ * {@link TransferredResourcesSnapshot} only the resources that are new or
+ * changed since the previous scan are re-indexed and only the ones that
+ * disappeared are removed.
+ */
 public class ReindexTransferredResourcesRunnable implements Runnable {
   private static final Logger LOGGER = LoggerFactory.getLogger(ReindexTransferredResourcesRunnable.class);
 
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
   private Path basePath;
   private Optional<String> folderRelativePath;
   private IndexService index;
+  private int parallelism;
+  private int batchSize;
+  private TransferredResourcesSnapshot snapshot;
 
   public ReindexTransferredResourcesRunnable(IndexService index, Path basePath, Optional<String> folderRelativePath) {
+    this(index, basePath, folderRelativePath, 1, DEFAULT_BATCH_SIZE, null);
+  }
+
+  public ReindexTransferredResourcesRunnable(IndexService index, Path basePath, Optional<String> folderRelativePath,
+    int parallelism, int batchSize, TransferredResourcesSnapshot snapshot) {
     this.basePath = basePath;
     this.index = index;
     this.folderRelativePath = folderRelativePath;
+    this.parallelism = parallelism;
+    this.batchSize = Math.max(1, batchSize);
+    this.snapshot = snapshot;
   }
 
   @Override
@@ -53,7 +75,6 @@ public class ReindexTransferredResourcesRunnable implements Runnable {
     Date lastScanDate = new Date();
     RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, true);
     try {
-      EnumSet<FileVisitOption> opts = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
       Path path;
       if (folderRelativePath.isPresent()) {
         path = basePath.resolve(Paths.get(folderRelativePath.get()));
@@ -61,83 +82,140 @@ public class ReindexTransferredResourcesRunnable implements Runnable {
         path = basePath;
       }
 
-      LOGGER.info("Start indexing transferred resources {}", path);
-      Files.walkFileTree(path, opts, Integer.MAX_VALUE, new FileVisitor<Path>() {
+      TransferredResourcesWalker walker = new TransferredResourcesWalker(basePath, parallelism);
+      Batch batch = new Batch();
 
-        ArrayDeque<BasicFileAttributes> actualDirectoryAttributesStack = new ArrayDeque<>();
-        ArrayDeque<Long> fileSizeStack = new ArrayDeque<>();
-
-        @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-          actualDirectoryAttributesStack.push(attrs);
-          fileSizeStack.push(0L);
-          return FileVisitResult.CONTINUE;
-        }
-
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-          try {
-            long size = Files.size(file);
-            long actualSize = fileSizeStack.pop();
-            fileSizeStack.push(actualSize + size);
-            TransferredResource resource = TransferredResourcesScanner.createTransferredResource(file, attrs, size,
-              basePath, lastScanDate);
-            index.create(TransferredResource.class, resource);
-          } catch (GenericException | RequestNotValidException e) {
-            LOGGER.error("Error adding path to Transferred Resources index", e);
+      if (snapshot == null || !isIncrementalPossible()) {
+        LOGGER.info("Start indexing transferred resources {}", path);
+        Map<String, TransferredResourcesSnapshot.Entry> current = new ConcurrentHashMap<>();
+        walker.walk(path, (resourcePath, attrs, size) -> {
+          if (snapshot != null) {
+            current.put(basePath.relativize(resourcePath).toString(),
+              new TransferredResourcesSnapshot.Entry(attrs, size));
           }
-
-          return FileVisitResult.CONTINUE;
-        }
-
-        @Override
-        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-          return FileVisitResult.CONTINUE;
+          batch.add(TransferredResourcesScanner.createTransferredResource(resourcePath, attrs, size, basePath,
+            lastScanDate));
+        });
+        batch.flush();
+        index.commit(TransferredResource.class);
+        deleteNotScanned(lastScanDate);
+
+        if (snapshot != null) {
+          snapshot.replaceScope(folderRelativePath, current);
         }
-
-        @Override
-        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-          if (!dir.equals(basePath)) {
-            BasicFileAttributes actualDirectoryAttributes = actualDirectoryAttributesStack.pop();
-            long fileSize = fileSizeStack.pop();
-            TransferredResource resource = TransferredResourcesScanner.createTransferredResource(dir,
-              actualDirectoryAttributes, fileSize, basePath, lastScanDate);
-
-            if (!fileSizeStack.isEmpty()) {
-              long actualSize = fileSizeStack.pop();
-              fileSizeStack.push(actualSize + fileSize);
-            }
-
-            try {
-              index.create(TransferredResource.class, resource);
-            } catch (GenericException | RequestNotValidException e) {
-              LOGGER.error("Error adding path to Transferred Resources index", e);
+      } else {
+        LOGGER.info("Start incremental indexing of transferred resources {}", path);
+        NavigableMap<String, TransferredResourcesSnapshot.Entry> previous = snapshot.getScope(folderRelativePath);
+        Map<String, TransferredResourcesSnapshot.Entry> current = new ConcurrentHashMap<>();
+        walker.walk(path, (resourcePath, attrs, size) -> {
+          String relativePath = basePath.relativize(resourcePath).toString();
+          TransferredResourcesSnapshot.Entry entry = new TransferredResourcesSnapshot.Entry(attrs, size);
+          current.put(relativePath, entry);
+          if (entry.isChanged(previous.get(relativePath))) {
+            batch.add(TransferredResourcesScanner.createTransferredResource(resourcePath, attrs, size, basePath,
+              lastScanDate));
+          }
+        });
+        batch.flush();
+
+        List<String> removed = new ArrayList<>();
+        long removedCount = 0;
+        for (String relativePath : previous.keySet()) {
+          if (!current.containsKey(relativePath)) {
+            removedCount++;
+            removed.add(IdUtils.getTransferredResourceUUID(relativePath));
+            if (removed.size() >= batchSize) {
+              index.delete(TransferredResource.class, removed);
+              removed.clear();
             }
           }
-          return FileVisitResult.CONTINUE;
         }
-      });
-
-      index.commit(TransferredResource.class);
+        if (!removed.isEmpty()) {
+          index.delete(TransferredResource.class, removed);
+        }
 
-      Filter filter;
-      String formattedDate = SolrUtils.getLastScanDate(lastScanDate);
-      if (!folderRelativePath.isPresent()) {
-        filter = new Filter(
-          new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE, formattedDate));
-      } else {
-        filter = new Filter(
-          new SimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_ANCESTORS, folderRelativePath.get()),
-          new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE, formattedDate));
+        LOGGER.info("Transferred resources {}: {} new or changed, {} removed, {} unchanged", path, batch.getCount(),
+          removedCount, current.size() - batch.getCount());
+        snapshot.replaceScope(folderRelativePath, current);
       }
 
-      index.delete(TransferredResource.class, filter);
       index.commit(TransferredResource.class);
       LOGGER.info("End indexing Transferred Resources. Time elapsed: {} seconds",
         (System.currentTimeMillis() - start) / 1000);
-      RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, false);
     } catch (IOException | GenericException | RequestNotValidException | RuntimeException e) {
       LOGGER.error("Error reindexing Transferred Resources", e);
+    } finally {
+      RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, false);
+    }
+  }
+
+  /**
+   * The snapshot can only be trusted if it covers the whole transfer area and
+   * the index was not emptied in the meantime
+   */
+  private boolean isIncrementalPossible() throws GenericException, RequestNotValidException {
+    if (!snapshot.isComplete()) {
+      return false;
+    }
+    return snapshot.isEmpty() || index.count(TransferredResource.class, Filter.ALL) > 0;
+  }
+
+  private void deleteNotScanned(Date lastScanDate) throws GenericException, RequestNotValidException {
+    Filter filter;
+    String formattedDate = SolrUtils.getLastScanDate(lastScanDate);
+    if (!folderRelativePath.isPresent()) {
+      filter = new Filter(
+        new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE, formattedDate));
+    } else {
+      filter = new Filter(
+        new SimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_ANCESTORS, folderRelativePath.get()),
+        new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE, formattedDate));
+    }
+
+    index.delete(TransferredResource.class, filter);
+  }
+
+  /**
+   * Thread-safe buffer of resources to index, sent to the index in batches
+   */
+  private class Batch {
+    private List<TransferredResource> resources = new ArrayList<>();
+    private int count = 0;
+
+    public void add(TransferredResource resource) {
+      List<TransferredResource> toIndex = null;
+      synchronized (this) {
+        resources.add(resource);
+        count++;
+        if (resources.size() >= batchSize) {
+          toIndex = resources;
+          resources = new ArrayList<>();
+        }
+      }
+      if (toIndex != null) {
+        index(toIndex);
+      }
+    }
+
+    public void flush() {
+      List<TransferredResource> toIndex;
+      synchronized (this) {
+        toIndex = resources;
+        resources = new ArrayList<>();
+      }
+      index(toIndex);
+    }
+
+    public synchronized int getCount() {
+      return count;
+    }
+
+    private void index(List<TransferredResource> toIndex) {
+      try {
+        index.create(TransferredResource.class, toIndex);
+      } catch (GenericException | RequestNotValidException e) {
+        LOGGER.error("Error adding paths to Transferred Resources index", e);
+      }
     }
   }
-}
\ No newline at end of file
+}
@@ -56,10 +56,26 @@ public class TransferredResourcesScanner {
 
   private final Path basePath;
   private IndexService index;
+  private int parallelism;
+  private int batchSize;
+  private TransferredResourcesSnapshot snapshot;
 
   public TransferredResourcesScanner(Path basePath, IndexService index) {
+    this(basePath, index, 1, ReindexTransferredResourcesRunnable.DEFAULT_BATCH_SIZE, null);
+  }
+
+  /**
+   * @param snapshot
+   *          if not null, scans only re-index what changed since the previous
+   *          scan (incremental mode)
+   */
+  public TransferredResourcesScanner(Path basePath, IndexService index, int parallelism, int batchSize,
+    TransferredResourcesSnapshot snapshot) {
     this.basePath = basePath;
     this.index = index;
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+    this.snapshot = snapshot;
   }
 
   public void commit() throws GenericException {
@@ -211,7 +227,7 @@ public class TransferredResourcesScanner {
     if (!RodaCoreFactory.getTransferredResourcesScannerUpdateStatus(folderRelativePath)) {
       if (index != null) {
         ReindexTransferredResourcesRunnable reindexRunnable = new ReindexTransferredResourcesRunnable(index, basePath,
-          folderRelativePath);
+          folderRelativePath, parallelism, batchSize, snapshot);
 
         if (waitToFinish) {
           reindexRunnable.run();
@@ -0,0 +1,297 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persisted snapshot of the transfer area (relative path -> size, modification
+ * time, creation time and file key, e.g. device and inode), used by the
+ * incremental scanner to find what changed since the previous scan.
+ *
+ * It is stored as a gzipped header line followed by one JSON object per
+ * resource, so paths may contain any character (including tabs and new
+ * lines).
+ *
+ * The snapshot is "complete" once the whole transfer area has been scanned;
+ * while it is not, the scanner also removes from the index the resources that
+ * were not found by the scan (the way the full scanner does).
+ */
+public class TransferredResourcesSnapshot {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesSnapshot.class);
+
+  private static final String HEADER_COMPLETE = "v2 complete";
+  private static final String HEADER_PARTIAL = "v2 partial";
+  private static final String SEPARATOR = FileSystems.getDefault().getSeparator();
+
+  private final Path file;
+  private final NavigableMap<String, Entry> entries = new TreeMap<>();
+  private boolean complete = false;
+  private boolean loaded = false;
+
+  public TransferredResourcesSnapshot(Path file) {
+    this.file = file;
+  }
+
+  public synchronized boolean isComplete() {
+    load();
+    return complete;
+  }
+
+  public synchronized boolean isEmpty() {
+    load();
+    return entries.isEmpty();
+  }
+
+  /**
+   * @return a copy of the entries of a folder (and all its descendants) or of
+   *         the whole transfer area
+   */
+  public synchronized NavigableMap<String, Entry> getScope(Optional<String> folderRelativePath) {
+    load();
+    NavigableMap<String, Entry> ret;
+    if (folderRelativePath.isPresent()) {
+      String folder = folderRelativePath.get();
+      ret = new TreeMap<>(descendants(folder));
+      Entry folderEntry = entries.get(folder);
+      if (folderEntry != null) {
+        ret.put(folder, folderEntry);
+      }
+    } else {
+      ret = new TreeMap<>(entries);
+    }
+    return ret;
+  }
+
+  /**
+   * Replaces the entries of a folder (or of the whole transfer area) and
+   * persists the snapshot
+   */
+  public synchronized void replaceScope(Optional<String> folderRelativePath, Map<String, Entry> newEntries) {
+    load();
+    if (folderRelativePath.isPresent()) {
+      String folder = folderRelativePath.get();
+      descendants(folder).clear();
+      entries.remove(folder);
+    } else {
+      entries.clear();
+      complete = true;
+    }
+    entries.putAll(newEntries);
+    save();
+  }
+
+  /**
+   * @return view over every key starting with "folder/"
+   */
+  private NavigableMap<String, Entry> descendants(String folder) {
+    return entries.subMap(folder + SEPARATOR, true, folder + (char) (SEPARATOR.charAt(0) + 1), false);
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+
+    if (!Files.exists(file)) {
+      return;
+    }
+
+    try (BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+      String header = reader.readLine();
+      if (!HEADER_COMPLETE.equals(header) && !HEADER_PARTIAL.equals(header)) {
+        LOGGER.info("Ignoring transferred resources snapshot with unknown format, a full scan will be done");
+        return;
+      }
+      complete = HEADER_COMPLETE.equals(header);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        SnapshotLine snapshotLine = JsonUtils.getObjectFromJson(line, SnapshotLine.class);
+        entries.put(snapshotLine.getPath(), snapshotLine.toEntry());
+      }
+      LOGGER.info("Loaded transferred resources snapshot with {} entries", entries.size());
+    } catch (IOException | GenericException | RuntimeException e) {
+      LOGGER.error("Error loading transferred resources snapshot, a full scan will be done", e);
+      entries.clear();
+      complete = false;
+    }
+  }
+
+  private void save() {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      try (BufferedWriter writer = new BufferedWriter(
+        new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+        writer.write(complete ? HEADER_COMPLETE : HEADER_PARTIAL);
+        writer.newLine();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+          String line = JsonUtils.getJsonFromObject(new SnapshotLine(entry.getKey(), entry.getValue()));
+          if (line == null) {
+            throw new IOException("Could not serialize snapshot entry " + entry.getKey());
+          }
+          writer.write(line);
+          writer.newLine();
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.error("Error saving transferred resources snapshot", e);
+    }
+  }
+
+  public static class Entry {
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+    private final long creationTime;
+    private final String fileKey;
+
+    public Entry(boolean directory, long size, long lastModified, long creationTime, String fileKey) {
+      this.directory = directory;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.creationTime = creationTime;
+      this.fileKey = fileKey;
+    }
+
+    public Entry(BasicFileAttributes attrs, long size) {
+      this(attrs.isDirectory(), size, attrs.lastModifiedTime().toMillis(), attrs.creationTime().toMillis(),
+        attrs.fileKey() == null ? null : attrs.fileKey().toString());
+    }
+
+    public boolean isDirectory() {
+      return directory;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public long getCreationTime() {
+      return creationTime;
+    }
+
+    public String getFileKey() {
+      return fileKey;
+    }
+
+    /**
+     * @return true if the resource must be re-indexed
+     */
+    public boolean isChanged(Entry previous) {
+      return previous == null || directory != previous.directory || size != previous.size
+        || lastModified != previous.lastModified || !Objects.equals(fileKey, previous.fileKey);
+    }
+  }
+
+  /**
+   * One persisted entry, (de)serialized as a JSON object
+   */
+  public static class SnapshotLine {
+    private String path;
+    private boolean directory;
+    private long size;
+    private long lastModified;
+    private long creationTime;
+    private String fileKey;
+
+    public SnapshotLine() {
+      super();
+    }
+
+    public SnapshotLine(String path, Entry entry) {
+      this.path = path;
+      this.directory = entry.isDirectory();
+      this.size = entry.getSize();
+      this.lastModified = entry.getLastModified();
+      this.creationTime = entry.getCreationTime();
+      this.fileKey = entry.getFileKey();
+    }
+
+    public Entry toEntry() {
+      return new Entry(directory, size, lastModified, creationTime, fileKey);
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public void setPath(String path) {
+      this.path = path;
+    }
+
+    public boolean isDirectory() {
+      return directory;
+    }
+
+    public void setDirectory(boolean directory) {
+      this.directory = directory;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public void setSize(long size) {
+      this.size = size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+      this.lastModified = lastModified;
+    }
+
+    public long getCreationTime() {
+      return creationTime;
+    }
+
+    public void setCreationTime(long creationTime) {
+      this.creationTime = creationTime;
+    }
+
+    public String getFileKey() {
+      return fileKey;
+    }
+
+    public void setFileKey(String fileKey) {
+      this.fileKey = fileKey;
+    }
+  }
+
+}
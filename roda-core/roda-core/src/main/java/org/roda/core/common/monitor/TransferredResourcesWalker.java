@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks the transfer area (or part of it) reporting each file and folder
+ * (except the base folder) with its size. The size of a folder is the sum of
+ * the sizes of all files under it.
+ *
+ * When the parallelism is greater than one, the top-level folders of the
+ * walked folder are walked concurrently (and the sink must be thread-safe).
+ */
+public class TransferredResourcesWalker {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesWalker.class);
+
+  @FunctionalInterface
+  public interface Sink {
+    void accept(Path path, BasicFileAttributes attrs, long size);
+  }
+
+  private final Path basePath;
+  private final int parallelism;
+
+  public TransferredResourcesWalker(Path basePath, int parallelism) {
+    this.basePath = basePath;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  public void walk(Path start, Sink sink) throws IOException {
+    if (parallelism == 1 || !Files.isDirectory(start)) {
+      walkSequentially(start, sink);
+      return;
+    }
+
+    BasicFileAttributes startAttributes = Files.readAttributes(start, BasicFileAttributes.class);
+    List<Path> directories = new ArrayList<>();
+    long size = 0;
+
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(start)) {
+      for (Path child : children) {
+        BasicFileAttributes attrs;
+        try {
+          attrs = Files.readAttributes(child, BasicFileAttributes.class);
+        } catch (IOException e) {
+          LOGGER.debug("Could not read attributes of {}", child, e);
+          continue;
+        }
+        if (attrs.isDirectory()) {
+          directories.add(child);
+        } else {
+          sink.accept(child, attrs, attrs.size());
+          size += attrs.size();
+        }
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, directories.size())),
+      r -> {
+        Thread thread = new Thread(r, "transferred-resources-walker");
+        thread.setDaemon(true);
+        return thread;
+      });
+    try {
+      List<Future<Long>> sizes = new ArrayList<>();
+      for (Path directory : directories) {
+        sizes.add(executor.submit(() -> walkSequentially(directory, sink)));
+      }
+      for (Future<Long> directorySize : sizes) {
+        size += directorySize.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while walking " + start, e);
+    } catch (ExecutionException e) {
+      throw new IOException("Error walking " + start, e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    if (!start.equals(basePath)) {
+      sink.accept(start, startAttributes, size);
+    }
+  }
+
+  /**
+   * @return the size of the walked folder (or file)
+   */
+  private long walkSequentially(Path start, Sink sink) throws IOException {
+    SizeAggregatingVisitor visitor = new SizeAggregatingVisitor(sink);
+    Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
+    return visitor.totalSize;
+  }
+
+  private class SizeAggregatingVisitor implements FileVisitor<Path> {
+    private final Sink sink;
+    private final ArrayDeque<BasicFileAttributes> actualDirectoryAttributesStack = new ArrayDeque<>();
+    private final ArrayDeque<Long> fileSizeStack = new ArrayDeque<>();
+    private long totalSize = 0;
+
+    public SizeAggregatingVisitor(Sink sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+      actualDirectoryAttributesStack.push(attrs);
+      fileSizeStack.push(0L);
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+      long size = attrs.size();
+      if (fileSizeStack.isEmpty()) {
+        totalSize = size;
+      } else {
+        fileSizeStack.push(fileSizeStack.pop() + size);
+      }
+      sink.accept(file, attrs, size);
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+      BasicFileAttributes actualDirectoryAttributes = actualDirectoryAttributesStack.pop();
+      long fileSize = fileSizeStack.pop();
+      if (!fileSizeStack.isEmpty()) {
+        fileSizeStack.push(fileSizeStack.pop() + fileSize);
+      } else {
+        totalSize = fileSize;
+      }
+
+      if (!dir.equals(basePath)) {
+        sink.accept(dir, actualDirectoryAttributes, fileSize);
+      }
+      return FileVisitResult.CONTINUE;
+    }
+  }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.IsStillUpdatingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the transfer area for changes and, once no more changes arrive for
+ * the configured quiet period, asks the scanner to update the top-level
+ * folders where something changed (or the whole transfer area if the change
+ * happened directly in it or if events were lost).
+ *
+ * Every folder of the transfer area is registered in the watch service, so on
+ * Linux the number of folders is limited by fs.inotify.max_user_watches.
+ */
+public class TransferredResourcesWatcher implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesWatcher.class);
+
+  public static final long DEFAULT_QUIET_PERIOD_IN_MILLIS = 5000L;
+
+  private final TransferredResourcesScanner scanner;
+  private final Path basePath;
+  private final long quietPeriodInMillis;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> keys = new HashMap<>();
+  private final Set<String> dirtyFolders = new HashSet<>();
+  private boolean dirtyBase = false;
+  private final Thread watcherThread;
+  private volatile boolean closed = false;
+
+  public TransferredResourcesWatcher(TransferredResourcesScanner scanner, long quietPeriodInMillis)
+    throws IOException {
+    this.scanner = scanner;
+    this.basePath = scanner.getBasePath();
+    this.quietPeriodInMillis = quietPeriodInMillis;
+    this.watchService = basePath.getFileSystem().newWatchService();
+    registerAll(basePath);
+
+    this.watcherThread = new Thread(this::run, "transferred-resources-watcher");
+    this.watcherThread.setDaemon(true);
+    this.watcherThread.start();
+  }
+
+  private void registerAll(Path start) throws IOException {
+    Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        keys.put(key, dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void run() {
+    while (!closed) {
+      try {
+        WatchKey key = watchService.poll(quietPeriodInMillis, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          handle(key);
+        } else if (dirtyBase || !dirtyFolders.isEmpty()) {
+          updateDirty();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ClosedWatchServiceException e) {
+        break;
+      } catch (RuntimeException e) {
+        LOGGER.error("Error watching transferred resources", e);
+      }
+    }
+  }
+
+  private void handle(WatchKey key) {
+    Path dir = keys.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        dirtyBase = true;
+        continue;
+      }
+
+      Path child = dir.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+        try {
+          registerAll(child);
+        } catch (IOException e) {
+          LOGGER.warn("Could not watch transferred resources folder {}", child, e);
+        }
+      }
+
+      Path relative = basePath.relativize(child);
+      if (relative.getNameCount() <= 1) {
+        dirtyBase = true;
+      } else {
+        dirtyFolders.add(relative.getName(0).toString());
+      }
+    }
+
+    if (!key.reset()) {
+      keys.remove(key);
+    }
+  }
+
+  private void updateDirty() {
+    try {
+      if (dirtyBase) {
+        scanner.updateTransferredResources(Optional.empty(), true);
+        dirtyBase = false;
+        dirtyFolders.clear();
+      } else {
+        for (String folder : new HashSet<>(dirtyFolders)) {
+          scanner.updateTransferredResources(Optional.of(folder), true);
+          dirtyFolders.remove(folder);
+        }
+      }
+    } catch (IsStillUpdatingException e) {
+      LOGGER.debug("Transferred resources are still updating, will try again later");
+    } catch (GenericException e) {
+      LOGGER.error("Error updating transferred resources after changes", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      LOGGER.warn("Error closing transferred resources watch service", e);
+    }
+    watcherThread.interrupt();
+  }
+
+}
@@ -0,0 +1,370 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.roda.core.storage.fs.FSUtils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Zip engine that prepares (i.e. compresses) the entries in parallel, in a
+ * bounded pool of threads, and writes them to the output in the order they
+ * were given as soon as they are ready, so the zip starts streaming before all
+ * the entries are read.
+ *
+ * Entries whose content is already compressed (e.g. JPEG, JPEG 2000, MP4 or
+ * other zip files) are stored without compression. The format is guessed from
+ * the file name extension and, when unknown, by compressing a sample of the
+ * content and checking if there is any gain.
+ *
+ * Compressed entries are kept in memory up to a given size and in a temporary
+ * file above that; large stored entries are read again when written, so at
+ * most {@code lookahead * maxBufferedEntrySize} bytes are kept in memory by
+ * each zip being created.
+ */
+public class ParallelZipper {
+  public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+  public static final int DEFAULT_MAX_BUFFERED_ENTRY_SIZE = 4 * 1024 * 1024;
+
+  /** Stored if compressing the sample does not save at least 5% */
+  private static final double MIN_COMPRESSION_GAIN = 0.05;
+  private static final int SAMPLE_SIZE = 65536;
+  private static final int BUFFER_SIZE = 65536;
+  private static final String TEMP_FILE_PREFIX = "zip-entry-";
+
+  private static final Set<String> INCOMPRESSIBLE_EXTENSIONS = new HashSet<>(Arrays.asList(
+    // images
+    "jpg", "jpeg", "jpe", "jp2", "j2k", "jpf", "jpx", "png", "gif", "webp", "heic",
+    // audio and video
+    "mp3", "mp4", "m4a", "m4v", "aac", "ogg", "oga", "ogv", "opus", "flac", "mov", "avi", "mkv", "webm", "wmv", "wma",
+    "mpg", "mpeg", "mxf",
+    // archives and compressed files
+    "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "jar", "war", "epub", "z", "lz", "lzma", "zst",
+    // zip based office documents
+    "docx", "xlsx", "pptx", "odt", "ods", "odp", "odg"));
+
+  private final int threads;
+  private final int lookahead;
+  private final int compressionLevel;
+  private final int maxBufferedEntrySize;
+  private final ThreadPoolExecutor executor;
+
+  public ParallelZipper() {
+    this(Runtime.getRuntime().availableProcessors(), DEFAULT_COMPRESSION_LEVEL, DEFAULT_MAX_BUFFERED_ENTRY_SIZE);
+  }
+
+  public ParallelZipper(int threads, int compressionLevel, int maxBufferedEntrySize) {
+    this(threads, 2 * Math.max(1, threads), compressionLevel, maxBufferedEntrySize);
+  }
+
+  /**
+   * @param threads
+   *          maximum number of threads compressing entries (shared by all the
+   *          zips being created)
+   * @param lookahead
+   *          maximum number of entries of each zip being prepared or waiting
+   *          to be written
+   * @param compressionLevel
+   *          deflate compression level (0-9 or -1 for the default)
+   * @param maxBufferedEntrySize
+   *          size above which prepared entries are kept in a temporary file
+   *          instead of memory
+   */
+  public ParallelZipper(int threads, int lookahead, int compressionLevel, int maxBufferedEntrySize) {
+    this.threads = Math.max(1, threads);
+    this.lookahead = Math.max(1, lookahead);
+    this.compressionLevel = compressionLevel;
+    this.maxBufferedEntrySize = Math.max(0, maxBufferedEntrySize);
+
+    ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("zip-%d").setDaemon(true).build();
+    this.executor = new ThreadPoolExecutor(this.threads, this.threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(), threadFactory);
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Zips the entries into the output stream, which is not closed
+   *
+   * Entries whose name ends with '/' are added as directories.
+   */
+  public void zip(Iterator<ZipEntryInfo> entries, OutputStream out) throws IOException {
+    ZipStreamWriter writer = new ZipStreamWriter(out);
+    Deque<Future<PreparedEntry>> pending = new ArrayDeque<>();
+    AtomicBoolean aborted = new AtomicBoolean(false);
+
+    try {
+      while (entries.hasNext()) {
+        ZipEntryInfo entry = entries.next();
+        pending.add(executor.submit(() -> prepare(entry, aborted)));
+        if (pending.size() >= lookahead) {
+          write(writer, pending.poll());
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        write(writer, pending.poll());
+      }
+
+      writer.finish();
+    } finally {
+      discard(pending, aborted);
+    }
+  }
+
+  /**
+   * Stops accepting new entries, the zips being created are finished
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private void write(ZipStreamWriter writer, Future<PreparedEntry> future) throws IOException {
+    PreparedEntry entry = get(future);
+    try {
+      if (entry.directory) {
+        writer.writeDirectory(entry.name);
+      } else if (entry.hasData()) {
+        try (InputStream data = entry.openData()) {
+          writer.writeEntry(entry.name, entry.method, entry.crc, entry.size, entry.compressedSize, data);
+        }
+      } else {
+        // large stored entry, read again and checked against the prepared CRC
+        try (CheckedInputStream data = new CheckedInputStream(entry.payload.getPayload().createInputStream(),
+          new CRC32())) {
+          writer.writeEntry(entry.name, entry.method, entry.crc, entry.size, entry.compressedSize, data);
+          if (data.getChecksum().getValue() != entry.crc || data.read() != -1) {
+            throw new IOException("Content of zip entry " + entry.name + " changed while creating the zip");
+          }
+        }
+      }
+    } finally {
+      entry.release();
+    }
+  }
+
+  private static PreparedEntry get(Future<PreparedEntry> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while creating zip", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Releases the entries that were not written (e.g. if the client closed the
+   * connection), waiting only for the ones already being prepared
+   */
+  private static void discard(Deque<Future<PreparedEntry>> pending, AtomicBoolean aborted) {
+    aborted.set(true);
+    for (Future<PreparedEntry> future : pending) {
+      try {
+        future.get().release();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        // already failed, nothing to release
+      }
+    }
+  }
+
+  private PreparedEntry prepare(ZipEntryInfo info, AtomicBoolean aborted) throws IOException {
+    PreparedEntry entry = new PreparedEntry(info);
+    if (!entry.directory && !aborted.get()) {
+      try (InputStream inputStream = info.getPayload().createInputStream()) {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int sampleSize = IOUtils.read(inputStream, sample);
+
+        if (isIncompressible(info.getName()) || !compresses(sample, sampleSize)) {
+          store(entry, inputStream, sample, sampleSize);
+        } else {
+          deflate(entry, inputStream, sample, sampleSize);
+        }
+      }
+    }
+    return entry;
+  }
+
+  private static boolean isIncompressible(String name) {
+    return INCOMPRESSIBLE_EXTENSIONS.contains(FilenameUtils.getExtension(name).toLowerCase(Locale.ENGLISH));
+  }
+
+  private boolean compresses(byte[] sample, int sampleSize) {
+    if (sampleSize == 0 || compressionLevel == Deflater.NO_COMPRESSION) {
+      return false;
+    }
+
+    Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      deflater.setInput(sample, 0, sampleSize);
+      deflater.finish();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long compressed = 0;
+      while (!deflater.finished()) {
+        compressed += deflater.deflate(buffer);
+      }
+      return compressed < sampleSize * (1 - MIN_COMPRESSION_GAIN);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void store(PreparedEntry entry, InputStream inputStream, byte[] sample, int sampleSize)
+    throws IOException {
+    CRC32 crc = new CRC32();
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    long size = sampleSize;
+    crc.update(sample, 0, sampleSize);
+    buffer.write(sample, 0, sampleSize);
+
+    byte[] bytes = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = inputStream.read(bytes)) != -1) {
+      crc.update(bytes, 0, read);
+      size += read;
+      if (buffer != null) {
+        if (size <= maxBufferedEntrySize) {
+          buffer.write(bytes, 0, read);
+        } else {
+          // too big to be kept, will be read again when written
+          buffer = null;
+        }
+      }
+    }
+
+    entry.method = ZipStreamWriter.STORED;
+    entry.crc = crc.getValue();
+    entry.size = size;
+    entry.compressedSize = size;
+    entry.data = buffer != null ? buffer.toByteArray() : null;
+  }
+
+  private void deflate(PreparedEntry entry, InputStream inputStream, byte[] sample, int sampleSize)
+    throws IOException {
+    CRC32 crc = new CRC32();
+    Deflater deflater = new Deflater(compressionLevel, true);
+    DeferredFileOutputStream buffer = new DeferredFileOutputStream(maxBufferedEntrySize, TEMP_FILE_PREFIX, null,
+      null);
+    long size = sampleSize;
+
+    try {
+      try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(buffer, deflater, BUFFER_SIZE)) {
+        crc.update(sample, 0, sampleSize);
+        deflaterStream.write(sample, 0, sampleSize);
+
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(bytes)) != -1) {
+          crc.update(bytes, 0, read);
+          deflaterStream.write(bytes, 0, read);
+          size += read;
+        }
+      }
+    } catch (IOException e) {
+      if (!buffer.isInMemory()) {
+        FSUtils.deletePathQuietly(buffer.getFile().toPath());
+      }
+      throw e;
+    } finally {
+      deflater.end();
+    }
+
+    entry.method = ZipStreamWriter.DEFLATED;
+    entry.crc = crc.getValue();
+    entry.size = size;
+    entry.compressedSize = buffer.getByteCount();
+    if (buffer.isInMemory()) {
+      entry.data = buffer.getData();
+    } else {
+      entry.file = buffer.getFile().toPath();
+    }
+  }
+
+  private static final class PreparedEntry {
+    private final ZipEntryInfo payload;
+    private final String name;
+    private final boolean directory;
+    private int method = ZipStreamWriter.STORED;
+    private long crc = 0;
+    private long size = 0;
+    private long compressedSize = 0;
+    private byte[] data = null;
+    private Path file = null;
+
+    private PreparedEntry(ZipEntryInfo info) {
+      this.payload = info;
+      this.name = info.getName();
+      this.directory = info.isDirectory();
+    }
+
+    private boolean hasData() {
+      return data != null || file != null || compressedSize == 0;
+    }
+
+    private InputStream openData() throws IOException {
+      if (file != null) {
+        return Files.newInputStream(file);
+      } else {
+        return new ByteArrayInputStream(data != null ? data : new byte[0]);
+      }
+    }
+
+    private void release() {
+      data = null;
+      if (file != null) {
+        FSUtils.deletePathQuietly(file);
+        file = null;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ParallelZipper [threads=" + threads + ", lookahead=" + lookahead + ", compressionLevel="
+      + compressionLevel + ", maxBufferedEntrySize=" + maxBufferedEntrySize + "]";
+  }
+}
@@ -20,6 +20,8 @@ import org.roda.core.storage.fs.FSPathContentPayload;
  * 
  */
 public class ZipEntryInfo {
+  private static final String DIRECTORY_SUFFIX = "/";
+
   private final String name;
 
   private final ContentPayload payload;
@@ -35,6 +37,16 @@ public class ZipEntryInfo {
     this(name, new FSPathContentPayload(path));
   }
 
+  /**
+   * Create a new zip entry info for a directory
+   * 
+   * @param name
+   *          the name of the directory, to which a '/' is appended if needed
+   */
+  public ZipEntryInfo(String name) {
+    this(name.endsWith(DIRECTORY_SUFFIX) ? name : name + DIRECTORY_SUFFIX, (ContentPayload) null);
+  }
+
   /**
    * Create a new zip entry info
    * 
@@ -59,4 +71,11 @@ public class ZipEntryInfo {
     return payload;
   }
 
+  /**
+   * @return true if the entry is a directory, i.e. its name ends with '/'
+   */
+  public boolean isDirectory() {
+    return name.endsWith(DIRECTORY_SUFFIX);
+  }
+
 }
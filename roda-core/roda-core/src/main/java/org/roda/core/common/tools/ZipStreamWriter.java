@@ -0,0 +1,285 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Writes a zip file to a stream (that does not need to be seekable) from
+ * entries whose CRC and sizes are already known, i.e. entries that were
+ * compressed beforehand (possibly in parallel) or that are stored without
+ * compression.
+ *
+ * As the sizes are known, they are written in the local headers (no data
+ * descriptors are needed) and ZIP64 extensions are used whenever an entry, an
+ * offset or the number of entries exceeds the limits of the original format.
+ */
+public class ZipStreamWriter implements Closeable {
+  public static final int STORED = 0;
+  public static final int DEFLATED = 8;
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private static final long LOCAL_HEADER_SIGNATURE = 0x04034b50L;
+  private static final long CENTRAL_HEADER_SIGNATURE = 0x02014b50L;
+  private static final long ZIP64_END_SIGNATURE = 0x06064b50L;
+  private static final long ZIP64_LOCATOR_SIGNATURE = 0x07064b50L;
+  private static final long END_SIGNATURE = 0x06054b50L;
+
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
+  private static final int VERSION_DEFAULT = 20;
+  private static final int VERSION_ZIP64 = 45;
+  // names are encoded in UTF-8
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int MSDOS_DIRECTORY_ATTRIBUTE = 0x10;
+
+  private final CountingOutputStream out;
+  private final List<CentralEntry> entries = new ArrayList<>();
+  private final Set<String> names = new HashSet<>();
+  private final long dosTime;
+  private boolean finished = false;
+
+  public ZipStreamWriter(OutputStream out) {
+    this.out = new CountingOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    this.dosTime = toDosTime(System.currentTimeMillis());
+  }
+
+  /**
+   * Adds a directory entry
+   *
+   * @param name
+   *          name of the directory (a '/' is appended if needed)
+   */
+  public void writeDirectory(String name) throws IOException {
+    String directoryName = name.endsWith("/") ? name : name + "/";
+    writeEntry(directoryName, STORED, 0, 0, 0, null);
+  }
+
+  /**
+   * Adds an entry with its already compressed (or stored) data
+   *
+   * @param method
+   *          {@link #STORED} or {@link #DEFLATED} (raw deflate data, i.e.
+   *          without zlib header)
+   * @param crc
+   *          CRC-32 of the uncompressed data
+   * @param size
+   *          size of the uncompressed data
+   * @param compressedSize
+   *          size of the data that will be read from the input stream
+   * @param data
+   *          stream from where exactly compressedSize bytes will be read (may
+   *          be null if there is no data)
+   */
+  public void writeEntry(String name, int method, long crc, long size, long compressedSize, InputStream data)
+    throws IOException {
+    if (finished) {
+      throw new IOException("Zip already finished");
+    }
+    if (!names.add(name)) {
+      throw new ZipException("duplicate entry: " + name);
+    }
+
+    CentralEntry entry = new CentralEntry(name.getBytes(StandardCharsets.UTF_8), method, crc, size, compressedSize,
+      out.getByteCount());
+    boolean zip64 = size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+
+    writeInt(LOCAL_HEADER_SIGNATURE);
+    writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+    writeShort(FLAG_UTF8);
+    writeShort(method);
+    writeInt(dosTime);
+    writeInt(crc);
+    writeInt(zip64 ? ZIP64_MAGIC : compressedSize);
+    writeInt(zip64 ? ZIP64_MAGIC : size);
+    writeShort(entry.name.length);
+    writeShort(zip64 ? 20 : 0);
+    out.write(entry.name);
+    if (zip64) {
+      writeShort(ZIP64_EXTRA_ID);
+      writeShort(16);
+      writeLong(size);
+      writeLong(compressedSize);
+    }
+
+    if (compressedSize > 0) {
+      long copied = IOUtils.copyLarge(data, out, 0, compressedSize);
+      if (copied != compressedSize) {
+        throw new IOException("Expected " + compressedSize + " bytes for zip entry " + name + " but got " + copied);
+      }
+    }
+
+    entries.add(entry);
+  }
+
+  /**
+   * Writes the central directory, after which no more entries can be added
+   */
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    finished = true;
+
+    long centralDirectoryOffset = out.getByteCount();
+    for (CentralEntry entry : entries) {
+      writeCentralHeader(entry);
+    }
+    long centralDirectorySize = out.getByteCount() - centralDirectoryOffset;
+
+    boolean zip64 = entries.size() >= ZIP64_MAGIC_SHORT || centralDirectoryOffset >= ZIP64_MAGIC
+      || centralDirectorySize >= ZIP64_MAGIC;
+    if (zip64) {
+      long zip64EndOffset = out.getByteCount();
+      writeInt(ZIP64_END_SIGNATURE);
+      writeLong(44);
+      writeShort(VERSION_ZIP64);
+      writeShort(VERSION_ZIP64);
+      writeInt(0);
+      writeInt(0);
+      writeLong(entries.size());
+      writeLong(entries.size());
+      writeLong(centralDirectorySize);
+      writeLong(centralDirectoryOffset);
+
+      writeInt(ZIP64_LOCATOR_SIGNATURE);
+      writeInt(0);
+      writeLong(zip64EndOffset);
+      writeInt(1);
+    }
+
+    writeInt(END_SIGNATURE);
+    writeShort(0);
+    writeShort(0);
+    writeShort(zip64 ? ZIP64_MAGIC_SHORT : entries.size());
+    writeShort(zip64 ? ZIP64_MAGIC_SHORT : entries.size());
+    writeInt(zip64 ? ZIP64_MAGIC : centralDirectorySize);
+    writeInt(zip64 ? ZIP64_MAGIC : centralDirectoryOffset);
+    writeShort(0);
+    out.flush();
+  }
+
+  /**
+   * Finishes the zip and closes the underlying stream
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeCentralHeader(CentralEntry entry) throws IOException {
+    // the ZIP64 extra field only has the values that do not fit
+    ByteArrayOutputStream extra = new ByteArrayOutputStream();
+    if (entry.size >= ZIP64_MAGIC) {
+      writeLong(extra, entry.size);
+    }
+    if (entry.compressedSize >= ZIP64_MAGIC) {
+      writeLong(extra, entry.compressedSize);
+    }
+    if (entry.offset >= ZIP64_MAGIC) {
+      writeLong(extra, entry.offset);
+    }
+    boolean zip64 = extra.size() > 0;
+    boolean directory = entry.name.length > 0 && entry.name[entry.name.length - 1] == '/';
+
+    writeInt(CENTRAL_HEADER_SIGNATURE);
+    writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+    writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+    writeShort(FLAG_UTF8);
+    writeShort(entry.method);
+    writeInt(dosTime);
+    writeInt(entry.crc);
+    writeInt(Math.min(entry.compressedSize, ZIP64_MAGIC));
+    writeInt(Math.min(entry.size, ZIP64_MAGIC));
+    writeShort(entry.name.length);
+    writeShort(zip64 ? extra.size() + 4 : 0);
+    // comment length, disk number and internal attributes
+    writeShort(0);
+    writeShort(0);
+    writeShort(0);
+    writeInt(directory ? MSDOS_DIRECTORY_ATTRIBUTE : 0);
+    writeInt(Math.min(entry.offset, ZIP64_MAGIC));
+    out.write(entry.name);
+    if (zip64) {
+      writeShort(ZIP64_EXTRA_ID);
+      writeShort(extra.size());
+      extra.writeTo(out);
+    }
+  }
+
+  private void writeShort(int value) throws IOException {
+    out.write(value & 0xFF);
+    out.write((value >>> 8) & 0xFF);
+  }
+
+  private void writeInt(long value) throws IOException {
+    writeShort((int) (value & 0xFFFF));
+    writeShort((int) ((value >>> 16) & 0xFFFF));
+  }
+
+  private void writeLong(long value) throws IOException {
+    writeLong(out, value);
+  }
+
+  private static void writeLong(OutputStream stream, long value) throws IOException {
+    for (int i = 0; i < 8; i++) {
+      stream.write((int) ((value >>> (8 * i)) & 0xFF));
+    }
+  }
+
+  private static long toDosTime(long millis) {
+    LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    if (date.getYear() < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return ((long) (date.getYear() - 1980) << 25) | (date.getMonthValue() << 21) | (date.getDayOfMonth() << 16)
+      | (date.getHour() << 11) | (date.getMinute() << 5) | (date.getSecond() >> 1);
+  }
+
+  private static final class CentralEntry {
+    private final byte[] name;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+    private final long offset;
+
+    private CentralEntry(byte[] name, int method, long crc, long size, long compressedSize, long offset) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.compressedSize = compressedSize;
+      this.offset = offset;
+    }
+  }
+}
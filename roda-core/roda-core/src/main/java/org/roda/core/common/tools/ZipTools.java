@@ -8,11 +8,9 @@
 package org.roda.core.common.tools;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
 
@@ -23,11 +21,26 @@ import org.apache.commons.io.IOUtils;
  * 
  */
 public class ZipTools {
+  private static volatile ParallelZipper zipper = new ParallelZipper();
 
   private ZipTools() {
     // do nothing
   }
 
+  public static ParallelZipper getZipper() {
+    return zipper;
+  }
+
+  /**
+   * Replaces the shared zip engine (e.g. to use the configured number of
+   * threads and compression level)
+   */
+  public static void setZipper(ParallelZipper parallelZipper) {
+    ParallelZipper previous = zipper;
+    zipper = parallelZipper;
+    previous.shutdown();
+  }
+
   /**
    * Zip a list of files into an output stream
    * 
@@ -36,33 +49,22 @@ public class ZipTools {
    * @throws IOException
    */
   public static void zip(List<ZipEntryInfo> files, OutputStream out) throws IOException {
-    ZipOutputStream zos = new ZipOutputStream(out);
-
-    for (ZipEntryInfo file : files) {
-      ZipEntry entry = new ZipEntry(file.getName());
-      zos.putNextEntry(entry);
-      InputStream inputStream = file.getPayload().createInputStream();
-      sendToZip(inputStream, zos);
-      IOUtils.closeQuietly(inputStream);
-      zos.closeEntry();
-    }
-
-    IOUtils.closeQuietly(zos);
-    IOUtils.closeQuietly(out);
+    zip(files.iterator(), out);
   }
 
-  private static void sendToZip(InputStream in, ZipOutputStream zos) throws IOException {
-    byte[] buffer = new byte[4096];
-    int retval;
-
-    do {
-      retval = in.read(buffer, 0, 4096);
-      if (retval != -1) {
-        zos.write(buffer, 0, retval);
-      }
-    } while (retval != -1);
-
-    in.close();
-
+  /**
+   * Zip files into an output stream, starting to send the zip while the files
+   * are still being iterated and compressed
+   * 
+   * @param files
+   * @param out
+   * @throws IOException
+   */
+  public static void zip(Iterator<ZipEntryInfo> files, OutputStream out) throws IOException {
+    try {
+      zipper.zip(files, out);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
   }
 }
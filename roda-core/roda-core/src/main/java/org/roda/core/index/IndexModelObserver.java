@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -20,6 +21,7 @@ import javax.xml.xpath.XPathExpressionException;
 import org.apache.commons.io.IOUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.PremisV3Utils;
@@ -70,7 +72,9 @@ import org.roda.core.data.v2.risks.RiskIncidence;
 import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.data.v2.user.User;
+import org.roda.core.index.utils.AncestryCache;
 import org.roda.core.index.utils.IterableIndexResult;
+import org.roda.core.index.utils.SolrBulkWriter;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
@@ -96,18 +100,71 @@ public class IndexModelObserver implements ModelObserver {
 
   private final SolrClient index;
   private final ModelService model;
+  private final SolrBulkWriter bulkWriter;
+  private final ThreadLocal<Object> indexingSource = new ThreadLocal<>();
+  private final AncestryCache ancestryCache;
 
   public IndexModelObserver(SolrClient index, ModelService model) {
+    this(index, model, null);
+  }
+
+  /**
+   * @param bulkWriter
+   *          if not null, AIP, representation, file, preservation metadata and
+   *          DIP documents are buffered and sent to the index in bulk (see
+   *          {@link #flush()})
+   */
+  public IndexModelObserver(SolrClient index, ModelService model, SolrBulkWriter bulkWriter) {
     super();
     this.index = index;
     this.model = model;
+    this.bulkWriter = bulkWriter;
+    this.ancestryCache = new AncestryCache(RodaCoreFactory.getRodaConfigurationAsInt(
+      AncestryCache.DEFAULT_MAXIMUM_SIZE, "core.index.ancestry_cache.maximum_size"), RodaCoreFactory.getMetrics());
+  }
+
+  public AncestryCache getAncestryCache() {
+    return ancestryCache;
+  }
+
+  /**
+   * Until {@link #endIndexing()}, the errors of the documents buffered by the
+   * current thread are kept for the given source (e.g. a block of a job) and
+   * only returned by the flushes of that thread. Without a source, they are
+   * kept for the thread itself.
+   */
+  public void startIndexing(Object source) {
+    indexingSource.set(source);
+  }
+
+  public void endIndexing() {
+    indexingSource.remove();
+  }
+
+  private Object getIndexingSource() {
+    Object source = indexingSource.get();
+    return source != null ? source : Thread.currentThread();
+  }
+
+  /**
+   * Sends all buffered documents to the index, returning the errors of the
+   * documents of the current source (see {@link #startIndexing(Object)}) that
+   * could not be indexed since its last flush.
+   */
+  public ReturnWithExceptions<Void, ModelObserver> flush() {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    if (bulkWriter != null) {
+      ret.add(bulkWriter.flush(getIndexingSource()).getExceptions());
+    }
+    return ret;
   }
 
   @Override
   public ReturnWithExceptions<Void, ModelObserver> aipCreated(final AIP aip) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    ancestryCache.invalidateIfParentChanged(aip);
     try {
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+      List<String> ancestors = ancestryCache.getAncestors(aip.getParentId(), model);
       indexAIP(aip, ancestors).addTo(ret);
       if (ret.isEmpty()) {
         indexRepresentations(aip, ancestors).addTo(ret);
@@ -133,7 +190,7 @@ public class IndexModelObserver implements ModelObserver {
     try {
       SolrInputDocument aipDoc = SolrUtils.aipToSolrInputDocument(aip, ancestors, model, safemode);
       LOGGER.trace("Adding AIP: {}", aipDoc);
-      SolrUtils.create(index, RodaConstants.INDEX_AIP, aipDoc, (ModelObserver) this).addTo(ret);
+      addDocumentToIndex(RodaConstants.INDEX_AIP, aipDoc).addTo(ret);
     } catch (RequestNotValidException | GenericException | NotFoundException | AuthorizationDeniedException e) {
       ret.add(e);
 
@@ -199,8 +256,7 @@ public class IndexModelObserver implements ModelObserver {
 
       SolrInputDocument premisEventDocument = SolrUtils.premisToSolr(pm.getType(), aip, representationUUID, fileUUID,
         binary);
-      SolrUtils.create(index, RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument, (ModelObserver) this)
-        .addTo(ret);
+      addDocumentToIndex(RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument).addTo(ret);
     } catch (RequestNotValidException | GenericException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error when indexing preservation event {}", pm.getId(), e);
       ret.add(e);
@@ -264,8 +320,7 @@ public class IndexModelObserver implements ModelObserver {
       SolrInputDocument representationDocument = SolrUtils.representationToSolrDocument(aip, representation,
         sizeInBytes, numberOfDataFiles, numberOfDataFolder, numberOfDocumentationFiles, numberOfSchemaFiles, ancestors,
         model, false);
-      SolrUtils.create(index, RodaConstants.INDEX_REPRESENTATION, representationDocument, (ModelObserver) this)
-        .addTo(ret);
+      addDocumentToIndex(RodaConstants.INDEX_REPRESENTATION, representationDocument).addTo(ret);
     } catch (IOException | RequestNotValidException | GenericException | NotFoundException
       | AuthorizationDeniedException e) {
       LOGGER.error("Cannot index representation", e);
@@ -300,7 +355,7 @@ public class IndexModelObserver implements ModelObserver {
       fileDocument.addField(RodaConstants.FILE_FULLTEXT, fulltext);
     }
 
-    SolrUtils.create(index, RodaConstants.INDEX_FILE, fileDocument, (ModelObserver) this).addTo(ret);
+    addDocumentToIndex(RodaConstants.INDEX_FILE, fileDocument).addTo(ret);
 
     if (ret.isEmpty()) {
       if (recursive && file.isDirectory()) {
@@ -360,7 +415,7 @@ public class IndexModelObserver implements ModelObserver {
   @Override
   public ReturnWithExceptions<Void, ModelObserver> aipUpdated(AIP aip) {
     // TODO Is this the best way to update?
-    ReturnWithExceptions<Void, ModelObserver> ret = aipDeleted(aip.getId(), false);
+    ReturnWithExceptions<Void, ModelObserver> ret = deleteAIPFromIndex(aip.getId(), false);
     aipCreated(aip).addTo(ret);
     return ret;
   }
@@ -371,7 +426,7 @@ public class IndexModelObserver implements ModelObserver {
 
     // change AIP
     SolrInputDocument aipDoc = SolrUtils.aipStateUpdateToSolrDocument(aip);
-    SolrUtils.create(index, RodaConstants.INDEX_AIP, aipDoc, (ModelObserver) this).addTo(ret);
+    addDocumentToIndex(RodaConstants.INDEX_AIP, aipDoc).addTo(ret);
     if (ret.isEmpty()) {
       // change Representations, Files & Preservation events
       representationsStateUpdated(aip).addTo(ret);
@@ -396,7 +451,7 @@ public class IndexModelObserver implements ModelObserver {
     try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(representation.getAipId(),
       representation.getId(), true)) {
       SolrInputDocument repDoc = SolrUtils.representationStateUpdateToSolrDocument(representation, aip.getState());
-      SolrUtils.create(index, RodaConstants.INDEX_REPRESENTATION, repDoc, (ModelObserver) this).addTo(ret);
+      addDocumentToIndex(RodaConstants.INDEX_REPRESENTATION, repDoc).addTo(ret);
 
       if (ret.isEmpty()) {
         for (OptionalWithCause<File> file : allFiles) {
@@ -423,7 +478,7 @@ public class IndexModelObserver implements ModelObserver {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
 
     SolrInputDocument fileDoc = SolrUtils.fileStateUpdateToSolrDocument(file, aip.getState());
-    SolrUtils.create(index, RodaConstants.INDEX_FILE, fileDoc, (ModelObserver) this).addTo(ret);
+    addDocumentToIndex(RodaConstants.INDEX_FILE, fileDoc).addTo(ret);
     if (ret.isEmpty()) {
       if (recursive && file.isDirectory()) {
         try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(file, true)) {
@@ -477,7 +532,7 @@ public class IndexModelObserver implements ModelObserver {
     AIPState state) {
     SolrInputDocument premisEventDocument = SolrUtils.preservationEventStateUpdateToSolrDocument(pm.getId(),
       pm.getAipId(), state);
-    return SolrUtils.create(index, RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument, (ModelObserver) this);
+    return addDocumentToIndex(RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument);
   }
 
   @Override
@@ -485,9 +540,10 @@ public class IndexModelObserver implements ModelObserver {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     try {
       LOGGER.debug("Reindexing moved aip {}", aip.getId());
-      List<String> topAncestors = SolrUtils.getAncestors(newParentId, model);
+      ancestryCache.invalidate(aip.getId());
+      List<String> topAncestors = ancestryCache.getAncestors(newParentId, model);
       SolrInputDocument aipDoc = SolrUtils.updateAIPParentId(aip.getId(), newParentId, topAncestors);
-      SolrUtils.create(index, RodaConstants.INDEX_AIP, aipDoc, (ModelObserver) this).addTo(ret);
+      addDocumentToIndex(RodaConstants.INDEX_AIP, aipDoc).addTo(ret);
       if (ret.isEmpty()) {
         updateRepresentationAndFileAncestors(aip, topAncestors).addTo(ret);
 
@@ -505,9 +561,9 @@ public class IndexModelObserver implements ModelObserver {
           SolrInputDocument descendantDoc;
           try {
             LOGGER.debug("Reindexing aip {} descendant {}", aip.getId(), item.getId());
-            List<String> ancestors = SolrUtils.getAncestors(item.getParentID(), model);
+            List<String> ancestors = ancestryCache.getAncestors(item.getParentID(), model);
             descendantDoc = SolrUtils.updateAIPAncestors(item.getId(), ancestors);
-            SolrUtils.create(index, RodaConstants.INDEX_AIP, descendantDoc, (ModelObserver) this).addTo(ret);
+            addDocumentToIndex(RodaConstants.INDEX_AIP, descendantDoc).addTo(ret);
 
             // update representation and file ancestors information
             if (item.getHasRepresentations()) {
@@ -537,8 +593,7 @@ public class IndexModelObserver implements ModelObserver {
       for (Representation representation : aip.getRepresentations()) {
         SolrInputDocument descendantRepresentationDoc = SolrUtils
           .updateRepresentationAncestors(IdUtils.getRepresentationId(representation), ancestors);
-        SolrUtils.create(index, RodaConstants.INDEX_REPRESENTATION, descendantRepresentationDoc, (ModelObserver) this)
-          .addTo(ret);
+        addDocumentToIndex(RodaConstants.INDEX_REPRESENTATION, descendantRepresentationDoc).addTo(ret);
         if (ret.isEmpty()) {
           try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(),
             representation.getId(), true)) {
@@ -546,7 +601,7 @@ public class IndexModelObserver implements ModelObserver {
               if (oFile.isPresent()) {
                 File file = oFile.get();
                 SolrInputDocument descendantFileDoc = SolrUtils.updateFileAncestors(IdUtils.getFileId(file), ancestors);
-                SolrUtils.create(index, RodaConstants.INDEX_FILE, descendantFileDoc, (ModelObserver) this).addTo(ret);
+                addDocumentToIndex(RodaConstants.INDEX_FILE, descendantFileDoc).addTo(ret);
               }
             }
           } catch (RequestNotValidException | GenericException | AuthorizationDeniedException | IOException
@@ -566,6 +621,11 @@ public class IndexModelObserver implements ModelObserver {
 
   @Override
   public ReturnWithExceptions<Void, ModelObserver> aipDeleted(String aipId, boolean deleteIncidences) {
+    ancestryCache.invalidate(aipId);
+    return deleteAIPFromIndex(aipId, deleteIncidences);
+  }
+
+  private ReturnWithExceptions<Void, ModelObserver> deleteAIPFromIndex(String aipId, boolean deleteIncidences) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
 
     deleteDocumentFromIndex(IndexedAIP.class, aipId).addTo(ret);
@@ -585,7 +645,7 @@ public class IndexModelObserver implements ModelObserver {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     try {
       AIP aip = model.retrieveAIP(descriptiveMetadata.getAipId());
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+      List<String> ancestors = ancestryCache.getAncestors(aip.getParentId(), model);
 
       if (descriptiveMetadata.isFromAIP()) {
         indexAIP(aip, ancestors).addTo(ret);
@@ -607,7 +667,7 @@ public class IndexModelObserver implements ModelObserver {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     try {
       AIP aip = model.retrieveAIP(descriptiveMetadata.getAipId());
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+      List<String> ancestors = ancestryCache.getAncestors(aip.getParentId(), model);
 
       if (descriptiveMetadata.isFromAIP()) {
         indexAIP(aip, ancestors).addTo(ret);
@@ -631,7 +691,7 @@ public class IndexModelObserver implements ModelObserver {
     if (representationId == null) {
       try {
         AIP aip = model.retrieveAIP(aipId);
-        List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+        List<String> ancestors = ancestryCache.getAncestors(aip.getParentId(), model);
         indexAIP(aip, ancestors).addTo(ret);
       } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
         LOGGER.error("Error when descriptive metadata deleted on retrieving the full AIP", e);
@@ -647,7 +707,7 @@ public class IndexModelObserver implements ModelObserver {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     try {
       AIP aip = model.retrieveAIP(representation.getAipId());
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+      List<String> ancestors = ancestryCache.getAncestors(aip.getParentId(), model);
 
       indexRepresentation(aip, representation, ancestors).addTo(ret);
       if (ret.isEmpty()) {
@@ -655,7 +715,7 @@ public class IndexModelObserver implements ModelObserver {
 
         if (aip.getRepresentations().size() == 1) {
           SolrInputDocument doc = SolrUtils.updateAIPHasRepresentations(aip.getId(), true);
-          SolrUtils.create(index, RodaConstants.INDEX_AIP, doc, (ModelObserver) this).addTo(ret);
+          addDocumentToIndex(RodaConstants.INDEX_AIP, doc).addTo(ret);
         }
       }
     } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
@@ -694,7 +754,7 @@ public class IndexModelObserver implements ModelObserver {
       AIP aip = model.retrieveAIP(aipId);
       if (aip.getRepresentations().size() == 0) {
         SolrInputDocument doc = SolrUtils.updateAIPHasRepresentations(aipId, false);
-        SolrUtils.create(index, RodaConstants.INDEX_AIP, doc, (ModelObserver) this).addTo(ret);
+        addDocumentToIndex(RodaConstants.INDEX_AIP, doc).addTo(ret);
       }
     } catch (AuthorizationDeniedException | RequestNotValidException | NotFoundException | GenericException e) {
       LOGGER.error("Cannot update hasRepresentations flag on AIP", e);
@@ -709,7 +769,7 @@ public class IndexModelObserver implements ModelObserver {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     try {
       AIP aip = model.retrieveAIP(file.getAipId());
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+      List<String> ancestors = ancestryCache.getAncestors(aip.getParentId(), model);
       indexFile(aip, file, ancestors, true).addTo(ret);
     } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
       LOGGER.error("Error indexing file: {}", file, e);
@@ -748,6 +808,32 @@ public class IndexModelObserver implements ModelObserver {
     return SolrUtils.create(index, RodaConstants.INDEX_ACTION_LOG, logDoc, (ModelObserver) this);
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> logEntriesCreated(List<LogEntry> entries) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    if (bulkWriter != null) {
+      for (LogEntry entry : entries) {
+        addDocumentToIndex(RodaConstants.INDEX_ACTION_LOG, SolrUtils.logEntryToSolrDocument(entry)).addTo(ret);
+      }
+      return ret;
+    }
+
+    List<SolrInputDocument> logDocs = new ArrayList<>();
+    for (LogEntry entry : entries) {
+      logDocs.add(SolrUtils.logEntryToSolrDocument(entry));
+    }
+
+    try {
+      index.add(RodaConstants.INDEX_ACTION_LOG, logDocs);
+    } catch (SolrServerException | IOException | SolrException e) {
+      LOGGER.warn("Error adding {} log entries to index, adding them one by one", entries.size(), e);
+      for (LogEntry entry : entries) {
+        logEntryCreated(entry).addTo(ret);
+      }
+    }
+    return ret;
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> userCreated(User user) {
     return addDocumentToIndex(RODAMember.class, user);
@@ -805,11 +891,9 @@ public class IndexModelObserver implements ModelObserver {
         binary);
       PreservationMetadataType type = pm.getType();
       if (PreservationMetadataType.EVENT.equals(type)) {
-        SolrUtils.create(index, RodaConstants.INDEX_PRESERVATION_EVENTS, premisFileDocument, (ModelObserver) this)
-          .addTo(ret);
+        addDocumentToIndex(RodaConstants.INDEX_PRESERVATION_EVENTS, premisFileDocument).addTo(ret);
       } else if (PreservationMetadataType.AGENT.equals(type)) {
-        SolrUtils.create(index, RodaConstants.INDEX_PRESERVATION_AGENTS, premisFileDocument, (ModelObserver) this)
-          .addTo(ret);
+        addDocumentToIndex(RodaConstants.INDEX_PRESERVATION_AGENTS, premisFileDocument).addTo(ret);
       }
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error when preservation metadata created on retrieving the full AIP", e);
@@ -849,7 +933,7 @@ public class IndexModelObserver implements ModelObserver {
       try {
         SolrInputDocument solrFile = SolrUtils.addOtherPropertiesToIndexedFile("tika_", otherMetadataBinary, model,
           index);
-        SolrUtils.create(index, RodaConstants.INDEX_FILE, solrFile, (ModelObserver) this).addTo(ret);
+        addDocumentToIndex(RodaConstants.INDEX_FILE, solrFile).addTo(ret);
       } catch (SolrServerException | RequestNotValidException | GenericException | NotFoundException
         | AuthorizationDeniedException | XPathExpressionException | ParserConfigurationException | SAXException
         | IOException e) {
@@ -920,6 +1004,34 @@ public class IndexModelObserver implements ModelObserver {
     return SolrUtils.create(index, classToAdd, instance, this, commit);
   }
 
+  private ReturnWithExceptions<Void, ModelObserver> addDocumentToIndex(String collection,
+    SolrInputDocument document) {
+    if (bulkWriter != null) {
+      ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+      ret.add(bulkWriter.add(collection, document, getIndexingSource()).getExceptions());
+      return ret;
+    } else {
+      return SolrUtils.create(index, collection, document, (ModelObserver) this);
+    }
+  }
+
+  /**
+   * Buffered documents must reach the index before deleting, otherwise they
+   * would be re-added by a later flush. The errors of the documents of the
+   * current source are returned with the ones of the delete.
+   */
+  private <T extends IsIndexed> List<Exception> flushBeforeDelete(Class<T> classToDelete) {
+    if (bulkWriter != null) {
+      try {
+        return bulkWriter.flush(getIndexingSource(), SolrUtils.getIndexName(classToDelete).get(0)).getExceptions();
+      } catch (GenericException e) {
+        LOGGER.error("Error flushing documents before deleting from index", e);
+        return Collections.singletonList(e);
+      }
+    }
+    return Collections.emptyList();
+  }
+
   private <T extends IsIndexed> ReturnWithExceptions<Void, ModelObserver> deleteDocumentFromIndex(
     Class<T> classToDelete, String... ids) {
     return deleteDocumentFromIndex(classToDelete, false, ids);
@@ -927,25 +1039,36 @@ public class IndexModelObserver implements ModelObserver {
 
   private <T extends IsIndexed> ReturnWithExceptions<Void, ModelObserver> deleteDocumentFromIndex(
     Class<T> classToDelete, boolean commit, String... ids) {
-    return SolrUtils.delete(index, classToDelete, Arrays.asList(ids), this, commit);
+    List<Exception> flushErrors = flushBeforeDelete(classToDelete);
+    ReturnWithExceptions<Void, ModelObserver> ret = SolrUtils.delete(index, classToDelete, Arrays.asList(ids), this,
+      commit);
+    ret.add(flushErrors);
+    return ret;
   }
 
   private <T extends IsIndexed> ReturnWithExceptions<Void, ModelObserver> deleteDocumentsFromIndex(
     Class<T> classToDelete, String fieldName, String fieldValue) {
-    return SolrUtils.delete(index, classToDelete, new Filter(new SimpleFilterParameter(fieldName, fieldValue)), this);
+    List<Exception> flushErrors = flushBeforeDelete(classToDelete);
+    ReturnWithExceptions<Void, ModelObserver> ret = SolrUtils.delete(index, classToDelete,
+      new Filter(new SimpleFilterParameter(fieldName, fieldValue)), this);
+    ret.add(flushErrors);
+    return ret;
   }
 
   private <T extends IsIndexed> ReturnWithExceptions<Void, ModelObserver> deleteDocumentsFromIndex(
     Class<T> classToDelete, String fieldName, String fieldValue, boolean commit) {
-    return SolrUtils.delete(index, classToDelete, new Filter(new SimpleFilterParameter(fieldName, fieldValue)), this,
-      commit);
+    List<Exception> flushErrors = flushBeforeDelete(classToDelete);
+    ReturnWithExceptions<Void, ModelObserver> ret = SolrUtils.delete(index, classToDelete,
+      new Filter(new SimpleFilterParameter(fieldName, fieldValue)), this, commit);
+    ret.add(flushErrors);
+    return ret;
   }
 
   @Override
   public ReturnWithExceptions<Void, ModelObserver> jobReportCreatedOrUpdated(Report jobReport, Job job) {
     SolrInputDocument jobReportDoc = SolrUtils.jobReportToSolrDocument(jobReport, job, index);
 
-    return SolrUtils.create(index, RodaConstants.INDEX_JOB_REPORT, jobReportDoc, this);
+    return addDocumentToIndex(RodaConstants.INDEX_JOB_REPORT, jobReportDoc);
   }
 
   @Override
@@ -959,7 +1082,7 @@ public class IndexModelObserver implements ModelObserver {
 
     // change AIP
     SolrInputDocument aipDoc = SolrUtils.aipPermissionsUpdateToSolrDocument(aip);
-    SolrUtils.create(index, RodaConstants.INDEX_AIP, aipDoc, (ModelObserver) this).addTo(ret);
+    addDocumentToIndex(RodaConstants.INDEX_AIP, aipDoc).addTo(ret);
 
     if (ret.isEmpty()) {
       // change Representations, Files and Preservation events
@@ -973,7 +1096,7 @@ public class IndexModelObserver implements ModelObserver {
   @Override
   public ReturnWithExceptions<Void, ModelObserver> dipPermissionsUpdated(DIP dip) {
     SolrInputDocument dipDoc = SolrUtils.dipPermissionsUpdateToSolrDocument(dip);
-    return SolrUtils.create(index, RodaConstants.INDEX_DIP, dipDoc, (ModelObserver) this);
+    return addDocumentToIndex(RodaConstants.INDEX_DIP, dipDoc);
   }
 
   private ReturnWithExceptions<Void, ModelObserver> representationsPermissionsUpdated(final AIP aip) {
@@ -992,7 +1115,7 @@ public class IndexModelObserver implements ModelObserver {
       representation.getId(), true)) {
       SolrInputDocument repDoc = SolrUtils.representationPermissionsUpdateToSolrDocument(representation,
         aip.getPermissions());
-      SolrUtils.create(index, RodaConstants.INDEX_REPRESENTATION, repDoc, (ModelObserver) this).addTo(ret);
+      addDocumentToIndex(RodaConstants.INDEX_REPRESENTATION, repDoc).addTo(ret);
 
       if (ret.isEmpty()) {
         for (OptionalWithCause<File> file : allFiles) {
@@ -1016,7 +1139,7 @@ public class IndexModelObserver implements ModelObserver {
   private ReturnWithExceptions<Void, ModelObserver> filePermissionsUpdated(AIP aip, File file, boolean recursive) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     SolrInputDocument fileDoc = SolrUtils.filePermissionsUpdateToSolrDocument(file, aip.getPermissions());
-    SolrUtils.create(index, RodaConstants.INDEX_FILE, fileDoc, (ModelObserver) this).addTo(ret);
+    addDocumentToIndex(RodaConstants.INDEX_FILE, fileDoc).addTo(ret);
 
     if (ret.isEmpty() && recursive && file.isDirectory()) {
       try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(file, true)) {
@@ -1067,7 +1190,7 @@ public class IndexModelObserver implements ModelObserver {
     Permissions permissions, AIPState state) {
     SolrInputDocument premisEventDocument = SolrUtils.preservationEventPermissionsUpdateToSolrDocument(pm.getId(),
       pm.getAipId(), permissions, state);
-    return SolrUtils.create(index, RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument, (ModelObserver) this);
+    return addDocumentToIndex(RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument);
   }
 
   @Override
@@ -1135,7 +1258,7 @@ public class IndexModelObserver implements ModelObserver {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     SolrInputDocument dipDocument = SolrUtils.dipToSolrDocument(dip);
 
-    SolrUtils.create(index, RodaConstants.INDEX_DIP, dipDocument, (ModelObserver) this).addTo(ret);
+    addDocumentToIndex(RodaConstants.INDEX_DIP, dipDocument).addTo(ret);
 
     if (ret.isEmpty()) {
       // index DIP Files
@@ -1150,6 +1273,7 @@ public class IndexModelObserver implements ModelObserver {
         }
 
         if (commit) {
+          flush().addTo(ret);
           try {
             SolrUtils.commit(index, IndexedDIP.class);
             SolrUtils.commit(index, DIPFile.class);
@@ -1187,7 +1311,7 @@ public class IndexModelObserver implements ModelObserver {
   private ReturnWithExceptions<Void, ModelObserver> indexDIPFile(DIP dip, DIPFile file, boolean recursive) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     SolrInputDocument dipFileDocument = SolrUtils.dipFileToSolrDocument(dip, file);
-    SolrUtils.create(index, RodaConstants.INDEX_DIP_FILE, dipFileDocument, (ModelObserver) this).addTo(ret);
+    addDocumentToIndex(RodaConstants.INDEX_DIP_FILE, dipFileDocument).addTo(ret);
 
     if (recursive && file.isDirectory() && ret.isEmpty()) {
       try (CloseableIterable<OptionalWithCause<DIPFile>> allFiles = model.listDIPFilesUnder(file, true)) {
@@ -72,7 +72,10 @@ import org.roda.core.data.v2.risks.IndexedRisk;
 import org.roda.core.data.v2.risks.Risk;
 import org.roda.core.data.v2.risks.RiskIncidence;
 import org.roda.core.data.v2.user.User;
+import org.roda.core.index.utils.AncestryCache;
 import org.roda.core.index.utils.IterableIndexResult;
+import org.roda.core.index.utils.ShadowIndexManager;
+import org.roda.core.index.utils.SolrBulkWriter;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
@@ -91,16 +94,58 @@ public class IndexService {
   private final SolrClient solrClient;
   private final ModelService model;
   private final IndexModelObserver observer;
+  private ShadowIndexManager shadowIndexManager = null;
 
   public IndexService(SolrClient index, ModelService model) {
+    this(index, model, null);
+  }
+
+  public IndexService(SolrClient index, ModelService model, SolrBulkWriter bulkWriter) {
     super();
     this.solrClient = index;
     this.model = model;
 
-    observer = new IndexModelObserver(this.getSolrClient(), this.model);
+    observer = new IndexModelObserver(this.getSolrClient(), this.model, bulkWriter);
     model.addModelObserver(observer);
   }
 
+  /**
+   * Flush barrier: sends all documents buffered by the index observer to the
+   * index and returns the errors of the documents that could not be indexed.
+   */
+  public ReturnWithExceptions<Void, ModelObserver> flush() {
+    return observer.flush();
+  }
+
+  /**
+   * Keeps the errors of the documents buffered by the current thread for the
+   * given source (e.g. a block of a job), so {@link #flush()} returns only
+   * them, until {@link #endIndexing()}.
+   */
+  public void startIndexing(Object source) {
+    observer.startIndexing(source);
+  }
+
+  public void endIndexing() {
+    observer.endIndexing();
+  }
+
+  public void setShadowIndexManager(ShadowIndexManager shadowIndexManager) {
+    this.shadowIndexManager = shadowIndexManager;
+  }
+
+  /**
+   * @return true if indexes can be rebuilt into shadow indexes while the live
+   *         ones are kept available
+   */
+  public boolean isShadowIndexSupported() {
+    return shadowIndexManager != null;
+  }
+
+  public AncestryCache getAncestryCache() {
+    return observer.getAncestryCache();
+  }
+
   public IndexedAIP getParent(IndexedAIP aip, List<String> fieldsToReturn)
     throws NotFoundException, GenericException, RequestNotValidException {
     return SolrUtils.retrieve(getSolrClient(), IndexedAIP.class, aip.getParentID(), fieldsToReturn);
@@ -154,34 +199,69 @@ public class IndexService {
       fieldsToReturn);
   }
 
+  /**
+   * Iterates over all results using a Solr cursor (sorted by uuid), thus with
+   * constant memory usage independently of the number of results.
+   */
   public <T extends IsIndexed> IterableIndexResult<T> findAll(final Class<T> returnClass, final Filter filter,
     final List<String> fieldsToReturn) {
-    return findAll(returnClass, filter, new Sorter(new SortParameter(RodaConstants.INDEX_UUID, true)), null, true,
-      fieldsToReturn);
+    return findAll(returnClass, filter, true, fieldsToReturn);
   }
 
+  /**
+   * Iterates over all results using a Solr cursor (sorted by uuid), thus with
+   * constant memory usage independently of the number of results.
+   */
   public <T extends IsIndexed> IterableIndexResult<T> findAll(final Class<T> returnClass, final Filter filter,
     final boolean justActive, final List<String> fieldsToReturn) {
-    return findAll(returnClass, filter, new Sorter(new SortParameter(RodaConstants.INDEX_UUID, true)), null, justActive,
-      fieldsToReturn);
-  }
-
+    return findAllWithCursor(returnClass, filter, Sorter.NONE, null, justActive, fieldsToReturn,
+      IterableIndexResult.getCursorPageSize(),
+      IterableIndexResult.isCursorPrefetchEnabled());
+  }
+
+  /**
+   * Iterates over all results using a Solr cursor. Results are sorted by the
+   * provided sorter followed by uuid.
+   * 
+   * @param pageSize
+   *          number of objects obtained per request to the index
+   * @param prefetch
+   *          if true, the next page is obtained in background
+   */
+  public <T extends IsIndexed> IterableIndexResult<T> findAllWithCursor(final Class<T> returnClass,
+    final Filter filter, final Sorter sorter, final User user, final boolean justActive,
+    final List<String> fieldsToReturn, final int pageSize, final boolean prefetch) {
+    return new IterableIndexResult<>(getSolrClient(), returnClass, filter, sorter, user, justActive, fieldsToReturn,
+      pageSize, prefetch);
+  }
+
+  /**
+   * Iterates over all results using a Solr cursor. Results are sorted by the
+   * provided sorter followed by uuid.
+   */
   public <T extends IsIndexed> IterableIndexResult<T> findAll(final Class<T> returnClass, final Filter filter,
     final Sorter sorter, final List<String> fieldsToReturn) {
     return findAll(returnClass, filter, sorter, null, true, fieldsToReturn);
   }
 
+  /**
+   * Iterates over all results using a Solr cursor. Results are sorted by the
+   * provided sorter followed by uuid.
+   */
   public <T extends IsIndexed> IterableIndexResult<T> findAll(final Class<T> returnClass, final Filter filter,
     final Sorter sorter, final User user, final boolean justActive, final List<String> fieldsToReturn) {
-    return new IterableIndexResult<>(getSolrClient(), returnClass, filter, sorter, Facets.NONE, user, justActive, true,
-      fieldsToReturn);
+    return findAll(returnClass, filter, sorter, Facets.NONE, user, justActive, fieldsToReturn);
   }
 
+  /**
+   * Iterates over all results using a Solr cursor. Results are sorted by the
+   * provided sorter followed by uuid.
+   */
   public <T extends IsIndexed> IterableIndexResult<T> findAll(final Class<T> returnClass, final Filter filter,
     final Sorter sorter, final Facets facets, final User user, final boolean justActive,
     final List<String> fieldsToReturn) {
-    return new IterableIndexResult<>(getSolrClient(), returnClass, filter, sorter, facets, user, justActive, true,
-      fieldsToReturn);
+    return new IterableIndexResult<>(getSolrClient(), returnClass, filter, sorter, facets, user, justActive,
+      fieldsToReturn, IterableIndexResult.getCursorPageSize(), IterableIndexResult.isCursorPrefetchEnabled());
   }
 
   public <T extends IsIndexed> Long count(Class<T> returnClass, Filter filter, User user, boolean justActive)
@@ -464,6 +544,7 @@ public class IndexService {
   }
 
   public void clearIndex(String indexName) throws GenericException {
+    flush();
     try {
       getSolrClient().deleteByQuery(indexName, "*:*");
       getSolrClient().commit(indexName);
@@ -479,6 +560,81 @@ public class IndexService {
     }
   }
 
+  /**
+   * Creates empty shadow indexes where the indexes will be rebuilt, while the
+   * live ones remain available and keep receiving updates
+   */
+  public void createShadowIndexes(List<String> indexNames) throws GenericException {
+    if (shadowIndexManager == null) {
+      throw new GenericException("Shadow indexes are not supported");
+    }
+
+    List<String> created = new ArrayList<>();
+    try {
+      for (String indexName : indexNames) {
+        shadowIndexManager.create(indexName);
+        created.add(indexName);
+      }
+    } catch (GenericException e) {
+      abortShadowIndexes(created);
+      throw e;
+    }
+  }
+
+  /**
+   * Replaces the live indexes that have shadow indexes with them, if all the
+   * shadow indexes are valid. Otherwise all the shadow indexes are removed, so
+   * that related indexes (e.g. of AIPs, representations and files) are either
+   * all replaced or all kept.
+   */
+  public void swapShadowIndexes(List<String> indexNames) throws GenericException {
+    if (shadowIndexManager == null) {
+      throw new GenericException("Shadow indexes are not supported");
+    }
+
+    model.flushLogEntries();
+    ReturnWithExceptions<Void, ModelObserver> flushed = flush();
+    if (!flushed.isEmpty()) {
+      abortShadowIndexes(indexNames);
+      throw new GenericException("Error flushing documents to index before replacing it: " + flushed.getExceptions());
+    }
+
+    try {
+      for (String indexName : indexNames) {
+        if (shadowIndexManager.hasShadow(indexName)) {
+          shadowIndexManager.validate(indexName);
+        }
+      }
+    } catch (GenericException e) {
+      abortShadowIndexes(indexNames);
+      throw e;
+    }
+
+    GenericException exception = null;
+    for (String indexName : indexNames) {
+      try {
+        if (shadowIndexManager.hasShadow(indexName)) {
+          shadowIndexManager.swap(indexName);
+        }
+      } catch (GenericException e) {
+        LOGGER.error("Error replacing index {} with its shadow index", indexName, e);
+        exception = e;
+      }
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  public void abortShadowIndexes(List<String> indexNames) {
+    if (shadowIndexManager != null) {
+      for (String indexName : indexNames) {
+        shadowIndexManager.abort(indexName);
+      }
+    }
+  }
+
   public void clearRepositoryEventIndex() throws GenericException {
     String indexName = RodaConstants.INDEX_PRESERVATION_EVENTS;
     try {
@@ -519,6 +675,11 @@ public class IndexService {
 
   @SafeVarargs
   public final void commit(Class<? extends IsIndexed>... classToCommit) throws GenericException {
+    model.flushLogEntries();
+    ReturnWithExceptions<Void, ModelObserver> flushed = flush();
+    if (!flushed.isEmpty()) {
+      LOGGER.error("Error flushing documents to index before commit: {}", flushed.getExceptions());
+    }
     SolrUtils.commit(getSolrClient(), classToCommit);
   }
 
@@ -561,6 +722,11 @@ public class IndexService {
     SolrUtils.create(getSolrClient(), classToCreate, instance, this);
   }
 
+  public <T extends IsIndexed> void create(Class<T> classToCreate, List<T> instances)
+    throws GenericException, RequestNotValidException {
+    SolrUtils.create(getSolrClient(), classToCreate, instances, this);
+  }
+
   public SolrClient getSolrClient() {
     return solrClient;
   }
@@ -0,0 +1,196 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+
+/**
+ * Bounded cache of AIP ancestries (parent id -> [parent id, grand parent id,
+ * ...]), the same list returned by
+ * {@link SolrUtils#getAncestors(String, ModelService)}.
+ *
+ * Entries are invalidated by the index model observer when an AIP that is part
+ * of a cached ancestry is moved, updated with a different parent or deleted.
+ * The number of cached ancestries each AIP is part of is kept, so updates of
+ * the other AIPs (e.g. the ones created by an ingest) do not look at the cache.
+ * Lists computed while an AIP was created or changed, or that could not reach
+ * the top of the hierarchy (missing ancestor), are not cached.
+ */
+public class AncestryCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AncestryCache.class);
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  private final Cache<String, List<String>> cache;
+  private final Map<String, Integer> ancestryCounts = new ConcurrentHashMap<>();
+  private final Object invalidationLock = new Object();
+  private long generation = 0;
+  private final Counter hits;
+  private final Counter misses;
+
+  public AncestryCache(long maximumSize, MetricRegistry metrics) {
+    RemovalListener<String, List<String>> listener = removal -> removeAncestryCounts(removal.getValue());
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).removalListener(listener).build();
+    if (metrics != null) {
+      this.hits = metrics.counter(MetricRegistry.name(AncestryCache.class, "hits"));
+      this.misses = metrics.counter(MetricRegistry.name(AncestryCache.class, "misses"));
+    } else {
+      this.hits = new Counter();
+      this.misses = new Counter();
+    }
+  }
+
+  public List<String> getAncestors(String parentId, ModelService model)
+    throws RequestNotValidException, GenericException, AuthorizationDeniedException {
+    List<String> ancestors = new ArrayList<>();
+    if (parentId == null) {
+      return ancestors;
+    }
+
+    List<String> cached = cache.getIfPresent(parentId);
+    if (cached != null) {
+      hits.inc();
+      ancestors.addAll(cached);
+      return ancestors;
+    }
+
+    misses.inc();
+    long startGeneration = getGeneration();
+    boolean complete = true;
+    String nextAncestorId = parentId;
+    while (nextAncestorId != null) {
+      List<String> cachedAncestors = cache.getIfPresent(nextAncestorId);
+      if (cachedAncestors != null) {
+        // reuse the already known upper part of the hierarchy
+        for (String ancestorId : cachedAncestors) {
+          if (ancestors.contains(ancestorId)) {
+            break;
+          }
+          ancestors.add(ancestorId);
+        }
+        nextAncestorId = null;
+      } else {
+        try {
+          AIP nextAncestor = model.retrieveAIP(nextAncestorId);
+          if (ancestors.contains(nextAncestorId)) {
+            break;
+          }
+          ancestors.add(nextAncestorId);
+          nextAncestorId = nextAncestor.getParentId();
+        } catch (NotFoundException e) {
+          LOGGER.warn("Could not find one AIP ancestor. Ancestor id: {}", nextAncestorId);
+          complete = false;
+          nextAncestorId = null;
+        }
+      }
+    }
+
+    if (complete) {
+      // an invalidation that ran meanwhile may have seen the previous hierarchy
+      synchronized (invalidationLock) {
+        if (startGeneration == generation) {
+          List<String> cachedAncestors = Collections.unmodifiableList(new ArrayList<>(ancestors));
+          cachedAncestors.forEach(ancestorId -> ancestryCounts.merge(ancestorId, 1, Integer::sum));
+          cache.put(parentId, cachedAncestors);
+        }
+      }
+    }
+
+    return ancestors;
+  }
+
+  /**
+   * Invalidates every ancestry that goes through the provided AIP
+   */
+  public void invalidate(String aipId) {
+    synchronized (invalidationLock) {
+      generation++;
+      cache.asMap().entrySet().removeIf(entry -> entry.getValue().contains(aipId));
+    }
+  }
+
+  /**
+   * Invalidates the ancestries that go through the provided AIP if its cached
+   * parent is not its current one. The AIP itself may have been evicted while
+   * ancestries of its descendants are still cached, so these are looked at if
+   * needed.
+   */
+  public void invalidateIfParentChanged(AIP aip) {
+    String aipId = aip.getId();
+    synchronized (invalidationLock) {
+      if (!ancestryCounts.containsKey(aipId)) {
+        // nothing cached goes through the AIP, only ancestries being computed
+        // (which may have seen its previous parent) must not be cached
+        generation++;
+        return;
+      }
+    }
+
+    List<String> ancestors = cache.getIfPresent(aipId);
+    if (ancestors == null) {
+      ancestors = cache.asMap().values().stream().filter(cached -> cached.contains(aipId)).findFirst().orElse(null);
+    }
+
+    if (ancestors != null) {
+      int index = ancestors.indexOf(aipId);
+      String cachedParentId = index + 1 < ancestors.size() ? ancestors.get(index + 1) : null;
+      if (!Objects.equals(cachedParentId, aip.getParentId())) {
+        invalidate(aipId);
+      }
+    }
+  }
+
+  private void removeAncestryCounts(List<String> ancestors) {
+    if (ancestors != null) {
+      ancestors.forEach(
+        ancestorId -> ancestryCounts.computeIfPresent(ancestorId, (id, count) -> count > 1 ? count - 1 : null));
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (invalidationLock) {
+      generation++;
+      cache.invalidateAll();
+    }
+  }
+
+  private long getGeneration() {
+    synchronized (invalidationLock) {
+      return generation;
+    }
+  }
+
+  public long getHits() {
+    return hits.getCount();
+  }
+
+  public long getMisses() {
+    return misses.getCount();
+  }
+
+}
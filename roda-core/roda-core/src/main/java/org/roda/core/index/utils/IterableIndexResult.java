@@ -14,11 +14,20 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.iterables.CloseableIterable;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.common.Pair;
 import org.roda.core.data.v2.index.IndexResult;
 import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.facet.FacetFieldResult;
@@ -32,17 +41,27 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Does search in the index, using the Solr.find() method, and if configured
- * removes duplicate objects (via uuid comparison) thus providing iterator
+ * removes duplicate objects (via uuid comparison) thus providing iterator.
+ * 
+ * When created in cursor mode, pages are obtained with a Solr cursor mark
+ * instead (see
+ * {@link SolrUtils#findWithCursor(SolrClient, Class, Filter, Sorter, Facets, int, String, User, boolean, List)}),
+ * so there are no duplicates to remove, memory usage does not depend on the
+ * number of results and, optionally, the next page is obtained in background
+ * while the current one is being consumed. Closing it cancels the page being
+ * obtained in background, if any, and ends the iteration.
  * 
  * @author Hélder Silva <hsilva@keep.pt>
  */
 
-public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
+public class IterableIndexResult<T extends IsIndexed> implements CloseableIterable<T> {
 
   private final class IteratorIndexResult implements Iterator<T> {
     @Override
     public boolean hasNext() {
-      return indexResult != null && currentObject < totalObjects;
+      // pages may come back shorter than expected if results were removed
+      return indexResult != null && currentObject < totalObjects
+        && currentObjectInPartialList < indexResultObjects.size();
     }
 
     @Override
@@ -70,8 +89,40 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
     }
   }
 
+  private final class CursorIteratorIndexResult implements Iterator<T> {
+    @Override
+    public boolean hasNext() {
+      while (indexResultObjects != null && currentObjectInPartialList >= indexResultObjects.size()
+        && !cursorExhausted) {
+        getNextCursorResults();
+        currentObjectInPartialList = 0;
+      }
+      return indexResultObjects != null && currentObjectInPartialList < indexResultObjects.size();
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final T t = indexResultObjects.get(currentObjectInPartialList);
+      currentObject += 1;
+      currentObjectInPartialList += 1;
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace("({} of {}) Returning object of class '{}' with id '{}'", currentObject, totalObjects,
+          returnClass.getSimpleName(), t.getUUID());
+      }
+      return t;
+    }
+  }
+
   private static final Logger LOGGER = LoggerFactory.getLogger(IterableIndexResult.class);
   private static final int PAGE_SIZE = RodaConstants.DEFAULT_PAGINATION_VALUE;
+  private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "index-result-prefetch");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   private SolrClient solrClient;
   private Class<T> returnClass;
@@ -91,6 +142,13 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
   private int currentObjectInPartialList = 0;
   private long totalObjects = -1;
 
+  private boolean useCursor = false;
+  private int pageSize = PAGE_SIZE;
+  private boolean prefetch = false;
+  private String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+  private boolean cursorExhausted = false;
+  private Future<Pair<IndexResult<T>, String>> prefetchedResults = null;
+
   public IterableIndexResult(final SolrClient solrClient, final Class<T> returnClass, final Filter filter,
     final Sorter sorter, final Facets facets, final boolean removeDuplicates, final List<String> fieldsToReturn) {
     this(solrClient, returnClass, filter, sorter, facets, null, true, removeDuplicates, fieldsToReturn);
@@ -114,6 +172,94 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
     getResults(this.sublist);
   }
 
+  /**
+   * Cursor mode constructor: results are sorted by the provided sorter
+   * followed by uuid and never contain duplicates.
+   * 
+   * @param pageSize
+   *          number of objects obtained per request to the index
+   * @param prefetch
+   *          if true, the next page is obtained in background
+   */
+  public IterableIndexResult(final SolrClient solrClient, final Class<T> returnClass, final Filter filter,
+    final Sorter sorter, final User user, final boolean justActive, final List<String> fieldsToReturn,
+    final int pageSize, final boolean prefetch) {
+    this(solrClient, returnClass, filter, sorter, Facets.NONE, user, justActive, fieldsToReturn, pageSize, prefetch);
+  }
+
+  /**
+   * Cursor mode constructor that also obtains facets (see
+   * {@link #getFacetResults()}).
+   */
+  public IterableIndexResult(final SolrClient solrClient, final Class<T> returnClass, final Filter filter,
+    final Sorter sorter, final Facets facets, final User user, final boolean justActive,
+    final List<String> fieldsToReturn, final int pageSize, final boolean prefetch) {
+    this.solrClient = solrClient;
+    this.returnClass = returnClass;
+    this.filter = filter;
+    this.sorter = sorter;
+    this.facets = facets;
+    this.user = user;
+    this.justActive = justActive;
+    this.removeDuplicates = false;
+    this.fieldsToReturn = fieldsToReturn;
+    this.useCursor = true;
+    this.pageSize = pageSize > 0 ? pageSize : PAGE_SIZE;
+    this.prefetch = prefetch;
+    this.sublist = new Sublist(0, this.pageSize);
+    getNextCursorResults();
+  }
+
+  private Pair<IndexResult<T>, String> findWithCursor(String mark) throws GenericException, RequestNotValidException {
+    return SolrUtils.findWithCursor(solrClient, returnClass, filter, sorter, facets, pageSize, mark, user,
+      justActive, fieldsToReturn);
+  }
+
+  private void getNextCursorResults() {
+    try {
+      Pair<IndexResult<T>, String> page;
+      if (prefetchedResults != null) {
+        page = prefetchedResults.get();
+        prefetchedResults = null;
+      } else {
+        page = findWithCursor(cursorMark);
+      }
+
+      indexResult = page.getFirst();
+      indexResultObjects = indexResult.getResults();
+      if (totalObjects == -1) {
+        totalObjects = indexResult.getTotalCount();
+      }
+
+      String nextCursorMark = page.getSecond();
+      cursorExhausted = nextCursorMark == null || nextCursorMark.equals(cursorMark)
+        || indexResultObjects.size() < pageSize;
+      cursorMark = nextCursorMark;
+
+      if (prefetch && !cursorExhausted) {
+        final String mark = cursorMark;
+        prefetchedResults = PREFETCH_EXECUTOR.submit(() -> findWithCursor(mark));
+      }
+    } catch (GenericException | RequestNotValidException | ExecutionException e) {
+      // just set index result to null & let iterator return proper values
+      indexResult = null;
+      indexResultObjects = null;
+      cursorExhausted = true;
+      LOGGER.error("Error while retrieving partial list of results", e);
+    } catch (CancellationException e) {
+      // closed meanwhile
+      indexResult = null;
+      indexResultObjects = null;
+      cursorExhausted = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      indexResult = null;
+      indexResultObjects = null;
+      cursorExhausted = true;
+      LOGGER.error("Interrupted while retrieving partial list of results", e);
+    }
+  }
+
   private void getResults(final Sublist sublist) {
     try {
       indexResult = SolrUtils.find(solrClient, returnClass, filter, sorter, sublist, facets, user, justActive,
@@ -148,11 +294,37 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
 
   @Override
   public Iterator<T> iterator() {
-    return new IteratorIndexResult();
+    return useCursor ? new CursorIteratorIndexResult() : new IteratorIndexResult();
   }
 
   public long getTotalObjects() {
     return totalObjects;
   }
 
+  @Override
+  public void close() {
+    Future<Pair<IndexResult<T>, String>> pending = prefetchedResults;
+    prefetchedResults = null;
+    if (pending != null) {
+      pending.cancel(true);
+    }
+    indexResultObjects = Collections.emptyList();
+    cursorExhausted = true;
+  }
+
+  /**
+   * @return the configured page size to be used in cursor mode
+   */
+  public static int getCursorPageSize() {
+    return RodaCoreFactory.getRodaConfigurationAsInt(PAGE_SIZE, "core.index.cursor.page_size");
+  }
+
+  /**
+   * @return true if, in cursor mode, the next page should be obtained in
+   *         background
+   */
+  public static boolean isCursorPrefetchEnabled() {
+    return RodaCoreFactory.getRodaConfiguration().getBoolean("core.index.cursor.prefetch", false);
+  }
+
 }
@@ -0,0 +1,463 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.response.CollectionAdminResponse;
+import org.apache.solr.client.solrj.response.CoreAdminResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.Aliases;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.CoreAdminParams.CoreAdminAction;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds indexes without taking them offline (blue/green reindex).
+ *
+ * A shadow index is created alongside the live one and, while it is rebuilt,
+ * every update of the live index is also sent to it (see
+ * {@link ShadowIndexSolrClient}). When the rebuild ends both indexes are
+ * committed and the shadow index is valid if no update failed to be copied to
+ * it and it has the same number of documents as the live one, give or take
+ * the documents deleted during the rebuild. A valid shadow index replaces the
+ * live index atomically: with a core swap in standalone Solr (embedded or
+ * HTTP) or by pointing an alias to it in Solr Cloud. The old index is then
+ * removed.
+ *
+ * In Solr Cloud the indexes are aliases to generation collections from the
+ * start (see {@link #getGenerationName(String)}), so no collection has to be
+ * removed for an alias to take its name. Collections created before that are
+ * not aliases and are not rebuilt with shadow indexes.
+ *
+ * In standalone Solr the shadow core is created with a copy of the
+ * configuration of the live core and its own data directory, next to the live
+ * one. As the embedded Solr configuration may be recreated on every start,
+ * the data directory in use for each index is recorded in a generations file
+ * (see {@link #getDataFolder(Path, String)}).
+ */
+public class ShadowIndexManager {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShadowIndexManager.class);
+
+  public static final String GENERATIONS_FILE = "generations.properties";
+
+  private static final String SEPARATOR = "_";
+  private static final Pattern SHADOW_PATTERN = Pattern.compile("(.+)" + SEPARATOR + "(\\d+)");
+  private static final String CONF_FOLDER = "conf";
+
+  private final ShadowIndexSolrClient client;
+  private final SolrClient solr;
+  private final Path generationsFile;
+
+  /**
+   * @param generationsFile
+   *          file where the data directory of each index is recorded, when
+   *          the data directories are managed by RODA (embedded Solr), or null
+   */
+  public ShadowIndexManager(ShadowIndexSolrClient client, Path generationsFile) {
+    this.client = client;
+    this.solr = client.getDelegate();
+    this.generationsFile = generationsFile;
+  }
+
+  /**
+   * @return a new name for a collection or core of an index, which is the name
+   *         of the index followed by a generation number
+   */
+  public static String getGenerationName(String indexName) {
+    return indexName + SEPARATOR + System.currentTimeMillis();
+  }
+
+  public boolean isCloud() {
+    return solr instanceof CloudSolrClient;
+  }
+
+  /**
+   * Creates an empty shadow index and starts copying the live updates to it
+   */
+  public synchronized void create(String indexName) throws GenericException {
+    if (client.getShadow(indexName) != null) {
+      throw new GenericException("Index " + indexName + " is already being rebuilt");
+    }
+
+    String shadowName = getGenerationName(indexName);
+    LOGGER.info("Creating shadow index {} for index {}", shadowName, indexName);
+    try {
+      if (isCloud()) {
+        createCollection(indexName, shadowName);
+      } else {
+        createCore(indexName, shadowName);
+      }
+    } catch (SolrServerException | SolrException | IOException e) {
+      throw new GenericException("Error creating shadow index for index " + indexName, e);
+    }
+
+    client.addShadow(indexName, shadowName);
+  }
+
+  public boolean hasShadow(String indexName) {
+    return client.getShadow(indexName) != null;
+  }
+
+  /**
+   * Commits the live and the shadow indexes and checks that the shadow index
+   * can replace the live one: no update failed to be copied to it and both
+   * have the same number of documents, except for the ones deleted during the
+   * rebuild (e.g. a document deleted from the live index before being added to
+   * the shadow one by the rebuild).
+   */
+  public synchronized void validate(String indexName) throws GenericException {
+    String shadowName = client.getShadow(indexName);
+    if (shadowName == null) {
+      throw new GenericException("Index " + indexName + " is not being rebuilt");
+    }
+
+    try {
+      solr.commit(indexName);
+      solr.commit(shadowName);
+
+      long failures = client.getShadowFailures(indexName);
+      if (failures > 0) {
+        throw new GenericException(failures + " updates could not be copied to shadow index " + shadowName);
+      }
+
+      long liveCount = count(indexName);
+      long shadowCount = count(shadowName);
+      long deletes = client.getShadowDeletes(indexName);
+      if (Math.abs(liveCount - shadowCount) > deletes) {
+        throw new GenericException("Shadow index " + shadowName + " has " + shadowCount + " documents but index "
+          + indexName + " has " + liveCount + " (" + deletes + " deleted during the rebuild)");
+      }
+      LOGGER.info("Shadow index {} ({} documents) can replace index {} ({} documents, {} deleted during the rebuild)",
+        shadowName, shadowCount, indexName, liveCount, deletes);
+    } catch (SolrServerException | SolrException | IOException e) {
+      throw new GenericException("Error validating shadow index " + shadowName, e);
+    }
+  }
+
+  /**
+   * Validates the shadow index and, if it is valid, makes it the live index. If
+   * it is not valid it is removed and the live index is kept.
+   */
+  public synchronized void swap(String indexName) throws GenericException {
+    try {
+      validate(indexName);
+    } catch (GenericException e) {
+      abort(indexName);
+      throw e;
+    }
+
+    String shadowName = client.getShadow(indexName);
+    try {
+      if (isCloud()) {
+        swapCollection(indexName, shadowName);
+      } else {
+        swapCore(indexName, shadowName);
+      }
+    } catch (SolrServerException | SolrException | IOException e) {
+      // only removes the shadow index if it did not replace the live one
+      abort(indexName);
+      throw new GenericException("Error replacing index " + indexName + " with shadow index " + shadowName, e);
+    }
+  }
+
+  /**
+   * Stops copying the live updates to the shadow index and removes it
+   */
+  public synchronized void abort(String indexName) {
+    String shadowName = client.getShadow(indexName);
+    if (shadowName != null) {
+      client.removeShadow(indexName);
+      try {
+        drop(shadowName);
+      } catch (SolrServerException | SolrException | IOException e) {
+        LOGGER.error("Error removing shadow index {}", shadowName, e);
+      }
+    }
+  }
+
+  /**
+   * Removes the shadow indexes left by rebuilds that did not finish (e.g.
+   * because RODA was stopped).
+   */
+  public synchronized void cleanup() {
+    try {
+      if (isCloud()) {
+        cleanupCollections();
+      } else {
+        cleanupCores();
+      }
+    } catch (SolrServerException | SolrException | IOException e) {
+      LOGGER.error("Error removing stale shadow indexes", e);
+    }
+  }
+
+  private long count(String collection) throws SolrServerException, IOException {
+    SolrQuery query = new SolrQuery("*:*");
+    query.setRows(0);
+    return solr.query(collection, query).getResults().getNumFound();
+  }
+
+  private void drop(String shadowName) throws SolrServerException, IOException {
+    if (isCloud()) {
+      CollectionAdminRequest.Delete delete = new CollectionAdminRequest.Delete();
+      delete.setCollectionName(shadowName);
+      delete.process(solr);
+    } else {
+      NamedList<Object> status = getCoreStatus(shadowName);
+      unloadCore(shadowName, (String) status.get("instanceDir"));
+    }
+  }
+
+  // standalone
+
+  private NamedList<Object> getCoreStatus(String coreName) throws SolrServerException, IOException {
+    CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, solr);
+    NamedList<Object> status = response.getCoreStatus(coreName);
+    if (status == null || status.get("instanceDir") == null) {
+      throw new SolrException(SolrException.ErrorCode.NOT_FOUND, "Could not find core " + coreName);
+    }
+    return status;
+  }
+
+  private void createCore(String indexName, String shadowName) throws SolrServerException, IOException {
+    NamedList<Object> status = getCoreStatus(indexName);
+    Path instanceDir = Paths.get((String) status.get("instanceDir"));
+    Path dataDir = Paths.get((String) status.get("dataDir"));
+
+    Path conf = instanceDir.resolve(CONF_FOLDER);
+    if (!Files.isDirectory(conf)) {
+      throw new IOException("The configuration of index " + indexName + " is not available at " + conf);
+    }
+
+    Path shadowInstanceDir = instanceDir.resolveSibling(shadowName);
+    FileUtils.copyDirectory(conf.toFile(), shadowInstanceDir.resolve(CONF_FOLDER).toFile());
+    Path shadowDataDir = dataDir
+      .resolveSibling(getBaseName(dataDir.getFileName().toString()) + SEPARATOR + getGeneration(shadowName));
+
+    CoreAdminRequest.Create create = new CoreAdminRequest.Create();
+    create.setCoreName(shadowName);
+    create.setInstanceDir(shadowInstanceDir.toString());
+    create.setDataDir(shadowDataDir.toString());
+    create.process(solr);
+  }
+
+  private void swapCore(String indexName, String shadowName) throws SolrServerException, IOException {
+    String oldInstanceDir = (String) getCoreStatus(indexName).get("instanceDir");
+    String newDataDir = (String) getCoreStatus(shadowName).get("dataDir");
+
+    CoreAdminRequest swap = new CoreAdminRequest();
+    swap.setAction(CoreAdminAction.SWAP);
+    swap.setCoreName(indexName);
+    swap.setOtherCoreName(shadowName);
+    swap.process(solr);
+
+    // the shadow name now refers to the old core
+    client.removeShadow(indexName);
+    recordGeneration(Paths.get(newDataDir));
+    unloadCore(shadowName, oldInstanceDir);
+  }
+
+  private void unloadCore(String coreName, String instanceDir) throws SolrServerException, IOException {
+    CoreAdminRequest.Unload unload = new CoreAdminRequest.Unload(true);
+    unload.setCoreName(coreName);
+    unload.setDeleteDataDir(true);
+    // the original configuration of the index is kept
+    unload.setDeleteInstanceDir(instanceDir != null && isShadowName(Paths.get(instanceDir).getFileName().toString()));
+    unload.process(solr);
+  }
+
+  private void cleanupCores() throws SolrServerException, IOException {
+    CoreAdminResponse response = CoreAdminRequest.getStatus(null, solr);
+    NamedList<NamedList<Object>> cores = response.getCoreStatus();
+    Set<String> dataFolders = new HashSet<>();
+    for (int i = 0; i < cores.size(); i++) {
+      String coreName = cores.getName(i);
+      NamedList<Object> status = cores.getVal(i);
+      if (isShadowName(coreName)) {
+        LOGGER.info("Removing stale shadow index {}", coreName);
+        unloadCore(coreName, (String) status.get("instanceDir"));
+      } else if (status.get("dataDir") != null) {
+        dataFolders.add(Paths.get((String) status.get("dataDir")).getFileName().toString());
+      }
+    }
+
+    // data directories of shadow cores that were not loaded
+    if (generationsFile != null && Files.isDirectory(generationsFile.getParent())) {
+      List<Path> stale = new ArrayList<>();
+      try (Stream<Path> paths = Files.list(generationsFile.getParent())) {
+        paths.filter(p -> Files.isDirectory(p) && isShadowName(p.getFileName().toString())
+          && !dataFolders.contains(p.getFileName().toString())).forEach(stale::add);
+      }
+      for (Path path : stale) {
+        LOGGER.info("Removing stale shadow index data {}", path);
+        FSUtils.deletePathQuietly(path);
+      }
+    }
+  }
+
+  // cloud
+
+  private ZkStateReader getZkStateReader() {
+    return ((CloudSolrClient) solr).getZkStateReader();
+  }
+
+  private String getAliasedCollection(String indexName) {
+    Aliases aliases = getZkStateReader().getAliases();
+    return aliases != null ? aliases.getCollectionAlias(indexName) : null;
+  }
+
+  private void createCollection(String indexName, String shadowName) throws SolrServerException, IOException {
+    String liveName = getAliasedCollection(indexName);
+    if (liveName == null) {
+      throw new IOException("Collection " + indexName
+        + " is not an alias, it was created before indexes could be rebuilt with shadow indexes");
+    }
+    DocCollection live = getZkStateReader().getClusterState().getCollection(liveName);
+
+    Collection<Slice> slices = live.getSlices();
+    int replicationFactor = 1;
+    for (Slice slice : slices) {
+      replicationFactor = Math.max(replicationFactor, slice.getReplicas().size());
+    }
+
+    // the configuration was uploaded with the name of the index
+    CollectionAdminRequest.Create create = new CollectionAdminRequest.Create();
+    create.setCollectionName(shadowName).setConfigName(indexName);
+    create.setNumShards(slices.size());
+    create.setReplicationFactor(replicationFactor);
+    create.setMaxShardsPerNode(live.getMaxShardsPerNode());
+    CollectionAdminResponse response = create.process(solr);
+    if (!response.isSuccess()) {
+      throw new IOException("Could not create collection " + shadowName + ": " + response.getErrorMessages());
+    }
+  }
+
+  private void swapCollection(String indexName, String shadowName) throws SolrServerException, IOException {
+    String oldCollection = getAliasedCollection(indexName);
+    if (oldCollection == null) {
+      throw new IOException("Collection " + indexName + " is not an alias");
+    }
+
+    CollectionAdminRequest.CreateAlias alias = new CollectionAdminRequest.CreateAlias();
+    alias.setAliasName(indexName);
+    alias.setAliasedCollections(shadowName);
+    alias.process(solr);
+
+    client.removeShadow(indexName);
+    CollectionAdminRequest.Delete delete = new CollectionAdminRequest.Delete();
+    delete.setCollectionName(oldCollection);
+    delete.process(solr);
+  }
+
+  private void cleanupCollections() throws SolrServerException, IOException {
+    Aliases aliases = getZkStateReader().getAliases();
+    Map<String, String> aliasMap = aliases != null ? aliases.getCollectionAliasMap() : null;
+    Set<String> aliased = new HashSet<>();
+    if (aliasMap != null) {
+      aliased.addAll(aliasMap.values());
+    }
+
+    Set<String> collections = getZkStateReader().getClusterState().getCollections();
+    for (String collection : collections) {
+      // the collections of the indexes are generations too, but aliased
+      if (isShadowName(collection) && !aliased.contains(collection)) {
+        LOGGER.info("Removing stale shadow index {}", collection);
+        CollectionAdminRequest.Delete delete = new CollectionAdminRequest.Delete();
+        delete.setCollectionName(collection);
+        delete.process(solr);
+      }
+    }
+  }
+
+  // generations
+
+  private static boolean isShadowName(String name) {
+    return SHADOW_PATTERN.matcher(name).matches();
+  }
+
+  private static String getBaseName(String name) {
+    Matcher matcher = SHADOW_PATTERN.matcher(name);
+    return matcher.matches() ? matcher.group(1) : name;
+  }
+
+  private static String getGeneration(String name) {
+    Matcher matcher = SHADOW_PATTERN.matcher(name);
+    return matcher.matches() ? matcher.group(2) : "";
+  }
+
+  private void recordGeneration(Path dataDir) throws IOException {
+    if (generationsFile == null || !dataDir.getParent().equals(generationsFile.getParent())) {
+      return;
+    }
+
+    Properties generations = readGenerations(generationsFile);
+    String folder = dataDir.getFileName().toString();
+    generations.setProperty(getBaseName(folder), folder);
+
+    Path temp = generationsFile.resolveSibling(generationsFile.getFileName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      generations.store(writer, "Data folder of each index");
+    }
+    Files.move(temp, generationsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static Properties readGenerations(Path generationsFile) throws IOException {
+    Properties generations = new Properties();
+    if (Files.exists(generationsFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(generationsFile, StandardCharsets.UTF_8)) {
+        generations.load(reader);
+      }
+    }
+    return generations;
+  }
+
+  /**
+   * @return the data folder in use by an index, which is the original folder
+   *         until the index is rebuilt with a shadow index
+   */
+  public static Path getDataFolder(Path indexDataPath, String folder) {
+    String current = folder;
+    try {
+      current = readGenerations(indexDataPath.resolve(GENERATIONS_FILE)).getProperty(folder, folder);
+    } catch (IOException e) {
+      LOGGER.error("Error reading index generations, using original data folder of {}", folder, e);
+    }
+    return indexDataPath.resolve(current);
+  }
+}
@@ -0,0 +1,213 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.data.common.RodaConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Solr client that, besides sending every request to the wrapped client,
+ * copies the updates (added documents and deletions) of a collection to its
+ * shadow collection, if it has one. This way the writes that arrive while a
+ * shadow collection is being rebuilt are not lost when it replaces the live
+ * one.
+ *
+ * Commits (explicit or with commit within) are never copied, as the shadow
+ * collection is only committed before being validated and swapped. Errors
+ * writing to a shadow collection do not affect the live one, they are only
+ * counted so that the shadow collection is not swapped. The documents deleted
+ * while a shadow collection is rebuilt are counted too, as the live and the
+ * shadow collections may differ by them when the rebuild ends.
+ */
+public class ShadowIndexSolrClient extends SolrClient {
+  private static final long serialVersionUID = -4410328004476127542L;
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShadowIndexSolrClient.class);
+  private static final int COUNT_IDS_PER_QUERY = 1000;
+  private static final String IDS_SEPARATOR = "\n";
+
+  private final SolrClient delegate;
+  private final transient Map<String, Shadow> shadows = new ConcurrentHashMap<>();
+
+  public ShadowIndexSolrClient(SolrClient delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return the wrapped client, to send requests that must not be copied (e.g.
+   *         administrative requests)
+   */
+  public SolrClient getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Starts copying the updates of a collection to a shadow collection
+   */
+  public void addShadow(String collection, String shadowCollection) {
+    shadows.put(collection, new Shadow(shadowCollection));
+  }
+
+  /**
+   * Stops copying the updates of a collection to its shadow collection
+   */
+  public void removeShadow(String collection) {
+    shadows.remove(collection);
+  }
+
+  /**
+   * @return the shadow collection of a collection or null if it has none
+   */
+  public String getShadow(String collection) {
+    Shadow shadow = shadows.get(collection);
+    return shadow != null ? shadow.collection : null;
+  }
+
+  /**
+   * @return the number of updates that could not be copied to the shadow
+   *         collection of a collection
+   */
+  public long getShadowFailures(String collection) {
+    Shadow shadow = shadows.get(collection);
+    return shadow != null ? shadow.failures.get() : 0;
+  }
+
+  /**
+   * @return the number of documents deleted from a collection since its shadow
+   *         collection was created
+   */
+  public long getShadowDeletes(String collection) {
+    Shadow shadow = shadows.get(collection);
+    return shadow != null ? shadow.deletes.get() : 0;
+  }
+
+  @Override
+  public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+    Shadow shadow = null;
+    if (collection != null && request instanceof UpdateRequest) {
+      shadow = shadows.get(collection);
+      if (shadow != null) {
+        // the documents deleted by query must be counted before they are gone
+        shadow.countDeletes((UpdateRequest) request, collection);
+      }
+    }
+
+    NamedList<Object> ret = delegate.request(request, collection);
+
+    if (shadow != null) {
+      shadow.update((UpdateRequest) request);
+    }
+
+    return ret;
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+
+  @Deprecated
+  public void shutdown() {
+    try {
+      close();
+    } catch (IOException e) {
+      LOGGER.error("Error closing Solr client", e);
+    }
+  }
+
+  private class Shadow {
+    private final String collection;
+    private final AtomicLong failures = new AtomicLong(0);
+    private final AtomicLong deletes = new AtomicLong(0);
+
+    public Shadow(String collection) {
+      this.collection = collection;
+    }
+
+    public void countDeletes(UpdateRequest request, String liveCollection) {
+      // only the ids of documents that exist delete something
+      List<String> ids = request.getDeleteById();
+      if (ids != null) {
+        for (List<String> someIds : Lists.partition(ids, COUNT_IDS_PER_QUERY)) {
+          SolrQuery countQuery = new SolrQuery(
+            "{!terms f=" + RodaConstants.INDEX_UUID + " separator=$deleteSeparator v=$deleteIds}");
+          countQuery.set("deleteSeparator", IDS_SEPARATOR);
+          countQuery.set("deleteIds", String.join(IDS_SEPARATOR, someIds));
+          countDeletes(liveCollection, countQuery, someIds.size() + " ids");
+        }
+      }
+
+      List<String> queries = request.getDeleteQuery();
+      if (queries != null) {
+        for (String query : queries) {
+          countDeletes(liveCollection, new SolrQuery(query), query);
+        }
+      }
+    }
+
+    private void countDeletes(String liveCollection, SolrQuery countQuery, String deleted) {
+      try {
+        countQuery.setRows(0);
+        deletes.addAndGet(delegate.query(liveCollection, countQuery).getResults().getNumFound());
+      } catch (SolrServerException | IOException | SolrException e) {
+        // not counting them only makes the validation stricter
+        LOGGER.warn("Error counting documents deleted from {} by {}", liveCollection, deleted, e);
+      }
+    }
+
+    public void update(UpdateRequest request) {
+      UpdateRequest shadowRequest = new UpdateRequest();
+      boolean empty = true;
+
+      List<SolrInputDocument> documents = request.getDocuments();
+      if (documents != null && !documents.isEmpty()) {
+        shadowRequest.add(documents);
+        empty = false;
+      }
+
+      List<String> ids = request.getDeleteById();
+      if (ids != null && !ids.isEmpty()) {
+        shadowRequest.deleteById(ids);
+        empty = false;
+      }
+
+      List<String> queries = request.getDeleteQuery();
+      if (queries != null) {
+        for (String query : queries) {
+          shadowRequest.deleteByQuery(query);
+          empty = false;
+        }
+      }
+
+      if (!empty) {
+        try {
+          delegate.request(shadowRequest, collection);
+        } catch (SolrServerException | IOException | SolrException e) {
+          failures.incrementAndGet();
+          LOGGER.error("Error copying update to shadow index {}", collection, e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers documents per collection and sends them to Solr in bulk.
+ *
+ * A collection buffer is flushed when it reaches the maximum number of
+ * documents, the maximum (estimated) size in bytes or when its oldest document
+ * is older than the maximum delay. Producers are blocked when the total number
+ * of pending documents reaches its limit (back-pressure).
+ *
+ * When a bulk request fails, the documents are re-sent one by one so that the
+ * errors can be attributed to the documents that caused them. Each error is
+ * then kept for the source that added the failing document, whichever thread or
+ * timer triggered the flush, and is returned to that source by its next
+ * {@link #add(String, SolrInputDocument, Object)} or {@link #flush(Object)}
+ * (the flush barrier). Sources are compared by identity and should be as
+ * narrow as the unit of work that checks them (e.g. a block of a job), as
+ * errors of a shared source are returned to whichever caller flushes first.
+ */
+public class SolrBulkWriter implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SolrBulkWriter.class);
+
+  public static final int DEFAULT_MAX_DOCUMENTS = 500;
+  public static final long DEFAULT_MAX_BYTES = 10485760L;
+  public static final long DEFAULT_MAX_DELAY_IN_MILLIS = 1000L;
+  public static final int DEFAULT_MAX_PENDING_DOCUMENTS = 5000;
+
+  private final SolrClient index;
+  private final int maxDocuments;
+  private final long maxBytes;
+  private final long maxDelayInMillis;
+  private final Semaphore pendingDocuments;
+
+  private final Map<String, CollectionBuffer> buffers = new ConcurrentHashMap<>();
+  private final Map<Object, List<Exception>> errorsBySource = new IdentityHashMap<>();
+  private final ScheduledExecutorService scheduler;
+
+  public SolrBulkWriter(SolrClient index) {
+    this(index, DEFAULT_MAX_DOCUMENTS, DEFAULT_MAX_BYTES, DEFAULT_MAX_DELAY_IN_MILLIS, DEFAULT_MAX_PENDING_DOCUMENTS);
+  }
+
+  public SolrBulkWriter(SolrClient index, int maxDocuments, long maxBytes, long maxDelayInMillis,
+    int maxPendingDocuments) {
+    this.index = index;
+    this.maxDocuments = Math.max(1, maxDocuments);
+    this.maxBytes = maxBytes;
+    this.maxDelayInMillis = maxDelayInMillis;
+    this.pendingDocuments = new Semaphore(Math.max(this.maxDocuments, maxPendingDocuments));
+
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "solr-bulk-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(100L, maxDelayInMillis / 2);
+    this.scheduler.scheduleWithFixedDelay(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Adds a document to the collection buffer, blocking if there are too many
+   * pending documents. If the buffer becomes full it is flushed by the calling
+   * thread. Only the errors of documents added by the same source are returned,
+   * the errors of other sources are kept for them.
+   */
+  public <S> ReturnWithExceptions<Void, S> add(String collection, SolrInputDocument document, S source) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    if (document == null) {
+      return ret;
+    }
+
+    try {
+      pendingDocuments.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      ret.add(new GenericException("Interrupted while waiting to add document to index " + collection, e));
+      return ret;
+    }
+
+    CollectionBuffer buffer = buffers.computeIfAbsent(collection, CollectionBuffer::new);
+    if (buffer.add(document, source)) {
+      flush(buffer);
+      ret.add(takeErrors(source));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Flush barrier: sends every buffered document and returns the errors of the
+   * documents added by the source that were not yet returned to it.
+   */
+  public <S> ReturnWithExceptions<Void, S> flush(S source) {
+    return flush(source, buffers.keySet());
+  }
+
+  /**
+   * Flush barrier restricted to some collections.
+   */
+  public <S> ReturnWithExceptions<Void, S> flush(S source, String... collections) {
+    return flush(source, Arrays.asList(collections));
+  }
+
+  private <S> ReturnWithExceptions<Void, S> flush(S source, Collection<String> collections) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    for (String collection : new ArrayList<>(collections)) {
+      CollectionBuffer buffer = buffers.get(collection);
+      if (buffer != null) {
+        flush(buffer);
+      }
+    }
+
+    ret.add(takeErrors(source));
+    return ret;
+  }
+
+  private void flushExpired() {
+    long now = System.currentTimeMillis();
+    for (CollectionBuffer buffer : buffers.values()) {
+      if (buffer.isExpired(now)) {
+        flush(buffer);
+      }
+    }
+  }
+
+  private void flush(CollectionBuffer buffer) {
+    // keeps the order of the documents of a collection between flushes
+    buffer.flushLock.lock();
+    try {
+      List<PendingDocument> pending = buffer.drain();
+      if (pending.isEmpty()) {
+        return;
+      }
+
+      List<SolrInputDocument> documents = new ArrayList<>(pending.size());
+      for (PendingDocument document : pending) {
+        documents.add(document.document);
+      }
+
+      try {
+        index.add(buffer.collection, documents);
+      } catch (SolrServerException | IOException | SolrException e) {
+        LOGGER.warn("Error adding {} documents to index {}, adding them one by one", documents.size(),
+          buffer.collection, e);
+        for (PendingDocument document : pending) {
+          try {
+            index.add(buffer.collection, document.document);
+          } catch (SolrServerException | IOException | SolrException e1) {
+            LOGGER.error("Error adding document to index", e1);
+            addError(document.source, new GenericException("Error adding document "
+              + document.document.getFieldValue(RodaConstants.INDEX_UUID) + " to index " + buffer.collection, e1));
+          }
+        }
+      } finally {
+        pendingDocuments.release(documents.size());
+      }
+    } finally {
+      buffer.flushLock.unlock();
+    }
+  }
+
+  private void addError(Object source, Exception error) {
+    synchronized (errorsBySource) {
+      errorsBySource.computeIfAbsent(source, s -> new ArrayList<>()).add(error);
+    }
+  }
+
+  private List<Exception> takeErrors(Object source) {
+    synchronized (errorsBySource) {
+      List<Exception> errors = errorsBySource.remove(source);
+      return errors == null ? Collections.emptyList() : errors;
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdown();
+    flush(this);
+    synchronized (errorsBySource) {
+      for (Entry<Object, List<Exception>> entry : errorsBySource.entrySet()) {
+        LOGGER.error("Errors flushing documents of {} to index that were never collected: {}", entry.getKey(),
+          entry.getValue());
+      }
+      errorsBySource.clear();
+    }
+  }
+
+  private static long estimateSize(SolrInputDocument document) {
+    long size = 0;
+    for (SolrInputField field : document) {
+      size += field.getName().length();
+      for (Object value : field) {
+        size += value == null ? 0 : value.toString().length();
+      }
+    }
+    return size;
+  }
+
+  private static class PendingDocument {
+    private final SolrInputDocument document;
+    private final Object source;
+
+    public PendingDocument(SolrInputDocument document, Object source) {
+      this.document = document;
+      this.source = source;
+    }
+  }
+
+  private class CollectionBuffer {
+    private final String collection;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private List<PendingDocument> documents = new ArrayList<>();
+    private long bytes = 0;
+    private long oldest = 0;
+
+    public CollectionBuffer(String collection) {
+      this.collection = collection;
+    }
+
+    /**
+     * @return true if the buffer should be flushed
+     */
+    public synchronized boolean add(SolrInputDocument document, Object source) {
+      if (documents.isEmpty()) {
+        oldest = System.currentTimeMillis();
+      }
+      documents.add(new PendingDocument(document, source));
+      bytes += estimateSize(document);
+      return documents.size() >= maxDocuments || bytes >= maxBytes;
+    }
+
+    public synchronized boolean isExpired(long now) {
+      return !documents.isEmpty() && now - oldest >= maxDelayInMillis;
+    }
+
+    public synchronized List<PendingDocument> drain() {
+      List<PendingDocument> ret = documents;
+      documents = new ArrayList<>();
+      bytes = 0;
+      return ret;
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler that builds a {@link SolrInputDocument} from a Solr XML
+ * document, i.e. {@code <doc><field name="...">value</field>...</doc>}, as
+ * produced by the crosswalks, without serializing and parsing it again.
+ *
+ * Follows the semantics of Solr's XMLLoader (field values are not trimmed and
+ * the boost, update and null attributes are supported, with the update fields
+ * with the same name merged into a single map of operations added at the end
+ * of the document). When there are several documents the last one is kept.
+ */
+public class SolrInputDocumentHandler extends DefaultHandler {
+  private static final String DOC = "doc";
+  private static final String FIELD = "field";
+
+  private SolrInputDocument document = null;
+  private SolrInputDocument currentDocument = null;
+
+  private String fieldName = null;
+  private float fieldBoost = 1.0f;
+  private String fieldUpdate = null;
+  private boolean fieldIsNull = false;
+  private final StringBuilder fieldValue = new StringBuilder();
+
+  private final Map<String, Map<String, Object>> updateMap = new LinkedHashMap<>();
+
+  /**
+   * @return the parsed document or null if there was none
+   */
+  public SolrInputDocument getDocument() {
+    return document;
+  }
+
+  @Override
+  public void startDocument() {
+    document = null;
+    currentDocument = null;
+    fieldName = null;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) {
+    String name = getName(localName, qName);
+    if (currentDocument == null && DOC.equals(name)) {
+      currentDocument = new SolrInputDocument();
+      updateMap.clear();
+      String boost = attributes.getValue("boost");
+      if (boost != null) {
+        currentDocument.setDocumentBoost(Float.parseFloat(boost));
+      }
+    } else if (currentDocument != null && fieldName == null && FIELD.equals(name)) {
+      fieldName = attributes.getValue("name");
+      String boost = attributes.getValue("boost");
+      fieldBoost = boost != null ? Float.parseFloat(boost) : 1.0f;
+      fieldUpdate = attributes.getValue("update");
+      fieldIsNull = Boolean.parseBoolean(attributes.getValue("null"));
+      fieldValue.setLength(0);
+    }
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    if (fieldName != null) {
+      fieldValue.append(ch, start, length);
+    }
+  }
+
+  @Override
+  public void ignorableWhitespace(char[] ch, int start, int length) {
+    characters(ch, start, length);
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    String name = getName(localName, qName);
+    if (fieldName != null && FIELD.equals(name)) {
+      Object value = fieldIsNull ? null : fieldValue.toString();
+      if (fieldUpdate != null) {
+        addUpdate(fieldName, fieldUpdate, value);
+      } else if (!fieldIsNull) {
+        currentDocument.addField(fieldName, value, fieldBoost);
+      }
+      fieldName = null;
+    } else if (currentDocument != null && fieldName == null && DOC.equals(name)) {
+      for (Entry<String, Map<String, Object>> update : updateMap.entrySet()) {
+        currentDocument.addField(update.getKey(), update.getValue(), 1.0f);
+      }
+      updateMap.clear();
+      document = currentDocument;
+      currentDocument = null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void addUpdate(String name, String update, Object value) {
+    Map<String, Object> operations = updateMap.computeIfAbsent(name, k -> new LinkedHashMap<>());
+    Object existing = operations.get(update);
+    if (existing != null) {
+      List<Object> values;
+      if (existing instanceof List) {
+        values = (List<Object>) existing;
+      } else {
+        values = new ArrayList<>();
+        values.add(existing);
+        operations.put(update, values);
+      }
+      values.add(value);
+    } else {
+      operations.put(update, value);
+    }
+  }
+
+  private static String getName(String localName, String qName) {
+    return localName == null || localName.isEmpty() ? qName : localName;
+  }
+
+}
@@ -8,7 +8,6 @@
 package org.roda.core.index.utils;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -27,14 +26,8 @@ import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathExpressionException;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -49,10 +42,11 @@ import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.FacetParams;
 import org.apache.solr.common.util.DateUtil;
-import org.apache.solr.handler.loader.XMLLoader;
 import org.roda.core.common.MetadataFileUtils;
+import org.roda.core.common.MetricsUtils;
 import org.roda.core.common.PremisV3Utils;
 import org.roda.core.common.RodaUtils;
 import org.roda.core.common.dips.DIPUtils;
@@ -68,6 +62,7 @@ import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.LiteRODAObject;
 import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.common.Pair;
 import org.roda.core.data.v2.formats.Format;
 import org.roda.core.data.v2.index.IndexResult;
 import org.roda.core.data.v2.index.IndexRunnable;
@@ -153,6 +148,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import com.codahale.metrics.Timer;
+
 /**
  * Utilities class related to Apache Solr
  * 
@@ -247,8 +244,9 @@ public class SolrUtils {
     }
     parseAndConfigureFacets(facets, query);
 
-    try {
-      QueryResponse response = index.query(getIndexName(classToRetrieve).get(0), query);
+    String indexName = getIndexName(classToRetrieve).get(0);
+    try (Timer.Context context = MetricsUtils.timer(SolrUtils.class, "find", indexName).time()) {
+      QueryResponse response = index.query(indexName, query);
       ret = queryResponseToIndexResult(response, classToRetrieve, facets, fieldsToReturn);
     } catch (SolrServerException | IOException e) {
       throw new GenericException("Could not query index", e);
@@ -293,8 +291,9 @@ public class SolrUtils {
       query.addFilterQuery(getFilterQueries(user, justActive, classToRetrieve));
     }
 
-    try {
-      QueryResponse response = index.query(getIndexName(classToRetrieve).get(0), query);
+    String indexName = getIndexName(classToRetrieve).get(0);
+    try (Timer.Context context = MetricsUtils.timer(SolrUtils.class, "find", indexName).time()) {
+      QueryResponse response = index.query(indexName, query);
       ret = queryResponseToIndexResult(response, classToRetrieve, facets, fieldsToReturn);
     } catch (SolrServerException | IOException e) {
       throw new GenericException("Could not query index", e);
@@ -307,6 +306,62 @@ public class SolrUtils {
     return ret;
   }
 
+  /**
+   * Deep paging using a Solr cursor. The results are always sorted by the
+   * provided sorter followed by uuid (required by Solr to have a stable order
+   * between pages).
+   * 
+   * @param cursorMark
+   *          {@link CursorMarkParams#CURSOR_MARK_START} for the first page or
+   *          the cursor mark returned by the previous page
+   * @return the page of results and the cursor mark for the next page (equal
+   *         to the provided one if there are no more results)
+   */
+  public static <T extends IsIndexed> Pair<IndexResult<T>, String> findWithCursor(SolrClient index,
+    Class<T> classToRetrieve, Filter filter, Sorter sorter, int pageSize, String cursorMark, User user,
+    boolean justActive, List<String> fieldsToReturn) throws GenericException, RequestNotValidException {
+    return findWithCursor(index, classToRetrieve, filter, sorter, Facets.NONE, pageSize, cursorMark, user, justActive,
+      fieldsToReturn);
+  }
+
+  /**
+   * Deep paging using a Solr cursor that also obtains the provided facets
+   * (which do not depend on the page).
+   */
+  public static <T extends IsIndexed> Pair<IndexResult<T>, String> findWithCursor(SolrClient index,
+    Class<T> classToRetrieve, Filter filter, Sorter sorter, Facets facets, int pageSize, String cursorMark, User user,
+    boolean justActive, List<String> fieldsToReturn) throws GenericException, RequestNotValidException {
+    Pair<IndexResult<T>, String> ret;
+    SolrQuery query = new SolrQuery();
+    query.setParam("q.op", DEFAULT_QUERY_PARSER_OPERATOR);
+    query.setQuery(parseFilter(filter));
+    query.setSorts(parseCursorSorter(sorter));
+    query.setRows(pageSize);
+    query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+    if (!fieldsToReturn.isEmpty()) {
+      query.setFields(fieldsToReturn.toArray(new String[fieldsToReturn.size()]));
+    }
+    parseAndConfigureFacets(facets, query);
+    if (hasPermissionFilters(classToRetrieve)) {
+      query.addFilterQuery(getFilterQueries(user, justActive, classToRetrieve));
+    }
+
+    String indexName = getIndexName(classToRetrieve).get(0);
+    try (Timer.Context context = MetricsUtils.timer(SolrUtils.class, "find", indexName).time()) {
+      QueryResponse response = index.query(indexName, query);
+      ret = Pair.of(queryResponseToIndexResult(response, classToRetrieve, facets, fieldsToReturn),
+        response.getNextCursorMark());
+    } catch (SolrServerException | IOException e) {
+      throw new GenericException("Could not query index", e);
+    } catch (SolrException e) {
+      throw new RequestNotValidException(e);
+    } catch (RuntimeException e) {
+      throw new GenericException("Unexpected exception while querying index", e);
+    }
+
+    return ret;
+  }
+
   /*
    * "Internal" helper methods
    * ____________________________________________________________________________________________________________________
@@ -698,35 +753,13 @@ public class SolrUtils {
 
   public static SolrInputDocument getDescriptiveMetadataFields(Binary binary, String metadataType,
     String metadataVersion) throws GenericException {
-    SolrInputDocument doc;
-
     Map<String, String> parameters = new HashMap<>();
     parameters.put("prefix", RodaConstants.INDEX_OTHER_DESCRIPTIVE_DATA_PREFIX);
 
-    try (Reader transformationResult = RodaUtils.applyMetadataStylesheet(binary, RodaConstants.CORE_CROSSWALKS_INGEST,
-      metadataType, metadataVersion, parameters)) {
-      XMLLoader loader = new XMLLoader();
-      XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(transformationResult);
-
-      boolean parsing = true;
-      doc = null;
-      while (parsing) {
-        int event = parser.next();
-
-        if (event == XMLStreamConstants.END_DOCUMENT) {
-          parser.close();
-          parsing = false;
-        } else if (event == XMLStreamConstants.START_ELEMENT) {
-          String currTag = parser.getLocalName();
-          if ("doc".equals(currTag)) {
-            doc = loader.readDoc(parser);
-          }
-        }
-      }
-
-    } catch (XMLStreamException | FactoryConfigurationError | IOException e) {
-      throw new GenericException("Could not process descriptive metadata binary " + binary.getStoragePath(), e);
-    }
+    SolrInputDocumentHandler handler = new SolrInputDocumentHandler();
+    RodaUtils.applyMetadataStylesheet(binary, RodaConstants.CORE_CROSSWALKS_INGEST, metadataType, metadataVersion,
+      parameters, handler);
+    SolrInputDocument doc = handler.getDocument();
 
     return doc == null ? new SolrInputDocument() : validateDescriptiveMetadataFields(doc);
   }
@@ -1055,6 +1088,22 @@ public class SolrUtils {
     return ret;
   }
 
+  private static List<SortClause> parseCursorSorter(Sorter sorter) {
+    List<SortClause> ret = parseSorter(sorter);
+    boolean sortedByUUID = false;
+    for (SortClause sortClause : ret) {
+      if (RodaConstants.INDEX_UUID.equals(sortClause.getItem())) {
+        sortedByUUID = true;
+        break;
+      }
+    }
+
+    if (!sortedByUUID) {
+      ret.add(new SortClause(RodaConstants.INDEX_UUID, ORDER.asc));
+    }
+    return ret;
+  }
+
   /*
    * Roda Facets > Apache Solr Facets
    * ____________________________________________________________________________________________________________________
@@ -1164,7 +1213,7 @@ public class SolrUtils {
     boolean softCommit = true;
 
     for (String collection : collections) {
-      try {
+      try (Timer.Context context = MetricsUtils.timer(SolrUtils.class, "commit", collection).time()) {
         index.commit(collection, waitFlush, waitSearcher, softCommit);
       } catch (SolrServerException | IOException | SolrException e) {
         LOGGER.error("Error commiting into collection: {}", collection, e);
@@ -1191,7 +1240,7 @@ public class SolrUtils {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
 
     if (instance != null) {
-      try {
+      try (Timer.Context context = MetricsUtils.timer(SolrUtils.class, "create", classToCreate).time()) {
         index.add(classToCreate, instance);
       } catch (SolrServerException | IOException | SolrException e) {
         LOGGER.error("Error adding document to index", e);
@@ -1206,7 +1255,10 @@ public class SolrUtils {
     Class<T> classToCreate, SolrInputDocument instance, S source, boolean commit) {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
     try {
-      index.add(getIndexName(classToCreate).get(0), instance);
+      String indexName = getIndexName(classToCreate).get(0);
+      try (Timer.Context context = MetricsUtils.timer(SolrUtils.class, "create", indexName).time()) {
+        index.add(indexName, instance);
+      }
       if (commit) {
         commit(index, classToCreate);
       }
@@ -1242,6 +1294,42 @@ public class SolrUtils {
     return ret;
   }
 
+  /**
+   * Adds several instances to the index with a single request (falling back to
+   * one request per document if the batch is rejected)
+   */
+  public static <T extends IsIndexed, S extends Object> ReturnWithExceptions<Void, S> create(SolrClient index,
+    Class<T> classToCreate, List<T> instances, S source) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    if (instances.isEmpty()) {
+      return ret;
+    }
+
+    try {
+      String indexName = getIndexName(classToCreate).get(0);
+      List<SolrInputDocument> docs = new ArrayList<>();
+      for (T instance : instances) {
+        toSolrDocument(classToCreate, instance).ifPresent(docs::add);
+      }
+
+      if (!docs.isEmpty()) {
+        try (Timer.Context context = MetricsUtils.timer(SolrUtils.class, "create", indexName).time()) {
+          index.add(indexName, docs);
+        } catch (SolrServerException | IOException | SolrException e) {
+          LOGGER.warn("Error adding {} documents to index, adding them one by one", docs.size(), e);
+          for (SolrInputDocument doc : docs) {
+            create(index, indexName, doc, source).addTo(ret);
+          }
+        }
+      }
+    } catch (NotSupportedException | GenericException e) {
+      LOGGER.error("Error adding documents to index", e);
+      ret.add(e);
+    }
+
+    return ret;
+  }
+
   /*
    * Crosswalks: RODA Objects <-> Apache Solr documents
    * ____________________________________________________________________________________________________________________
@@ -2826,34 +2914,10 @@ public class SolrUtils {
       }
     }
 
-    Reader reader = null;
-
-    try {
-      reader = RodaUtils.applyMetadataStylesheet(binary, RodaConstants.CORE_CROSSWALKS_INGEST_OTHER,
-        RodaConstants.PREMIS_METADATA_TYPE, RodaConstants.PREMIS_METADATA_VERSION, stylesheetOpt);
-
-      XMLLoader loader = new XMLLoader();
-      XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(reader);
-
-      boolean parsing = true;
-      doc = null;
-      while (parsing) {
-        int event = parser.next();
-
-        if (event == XMLStreamConstants.END_DOCUMENT) {
-          parser.close();
-          parsing = false;
-        } else if (event == XMLStreamConstants.START_ELEMENT && "doc".equals(parser.getLocalName())) {
-          doc = loader.readDoc(parser);
-        }
-
-      }
-
-    } catch (XMLStreamException | FactoryConfigurationError e) {
-      throw new GenericException("Could not process PREMIS " + binary.getStoragePath(), e);
-    } finally {
-      IOUtils.closeQuietly(reader);
-    }
+    SolrInputDocumentHandler handler = new SolrInputDocumentHandler();
+    RodaUtils.applyMetadataStylesheet(binary, RodaConstants.CORE_CROSSWALKS_INGEST_OTHER,
+      RodaConstants.PREMIS_METADATA_TYPE, RodaConstants.PREMIS_METADATA_VERSION, stylesheetOpt, handler);
+    doc = handler.getDocument();
 
     if (preservationMetadataType == PreservationMetadataType.EVENT && doc != null) {
       try {
@@ -2932,10 +2996,10 @@ public class SolrUtils {
 
     User user = null;
     boolean justActive = false;
-    boolean removeDuplicates = true;
 
     IterableIndexResult<T> iterableIndexResult = new IterableIndexResult<>(index, classToRetrieve, filter, Sorter.NONE,
-      Facets.NONE, user, justActive, removeDuplicates, fieldsToReturn);
+      user, justActive, fieldsToReturn, IterableIndexResult.getCursorPageSize(),
+      IterableIndexResult.isCursorPrefetchEnabled());
 
     if (iterableIndexResult.getTotalObjects() > 0) {
       iterableIndexResult.forEach(target -> {
@@ -0,0 +1,589 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Job report store that avoids the read-modify-write of the whole job report
+ * (JSON in storage + index) for every report step.
+ *
+ * Each change is appended as a record to a per-job segment log and folded in
+ * memory into the respective {@link Report}. Dirty reports are written to
+ * storage and index in batches (periodically, on job state changes and when
+ * the job ends), which is also when the segments are checkpointed (i.e.
+ * rotated and deleted). Segments left behind by an abrupt shutdown are
+ * replayed on startup ({@link #recover()}).
+ *
+ * Replaying does not depend on what was already written to storage: the first
+ * record of a report in each segment is either a snapshot of the whole report
+ * or carries the base report, and records are numbered so that a record is
+ * never applied twice. Reports written by a flush whose segments were not yet
+ * deleted are thus rebuilt to the same content.
+ */
+public class JobReportStore implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobReportStore.class);
+
+  public static final long DEFAULT_FLUSH_INTERVAL_IN_MILLIS = 5000L;
+  public static final int DEFAULT_MAX_CACHED_REPORTS = 10000;
+
+  private static final String SEGMENT_EXTENSION = ".log";
+
+  public enum Operation {
+    CREATE, ITEM, STATE
+  }
+
+  private final ModelService model;
+  private final Path logDirectory;
+  private final boolean syncLog;
+
+  private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+  private final Cache<String, Report> cleanReports;
+  private final ScheduledExecutorService scheduler;
+
+  public JobReportStore(ModelService model, Path logDirectory, long flushIntervalInMillis, int maxCachedReports,
+    boolean syncLog) {
+    this.model = model;
+    this.logDirectory = logDirectory;
+    this.syncLog = syncLog;
+    this.cleanReports = CacheBuilder.newBuilder().maximumSize(maxCachedReports).build();
+
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "job-report-store");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (flushIntervalInMillis > 0) {
+      scheduler.scheduleWithFixedDelay(this::flushAll, flushIntervalInMillis, flushIntervalInMillis,
+        TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Replaces the whole report
+   */
+  public void createOrUpdate(Report report, Job job) throws GenericException {
+    Record jobRecord = new Record();
+    jobRecord.setOperation(Operation.CREATE);
+    jobRecord.setReport(report);
+    append(report.getJobId(), report.getId(), jobRecord, job);
+  }
+
+  /**
+   * Adds a report item (step) to a report, using the base report if the report
+   * does not exist yet
+   */
+  public void appendReportItem(Report baseReport, Report reportItem, boolean replaceLastReportItemIfTheSame, Job job)
+    throws GenericException {
+    Record jobRecord = new Record();
+    jobRecord.setOperation(Operation.ITEM);
+    jobRecord.setReport(baseReport);
+    jobRecord.setItem(reportItem);
+    jobRecord.setReplaceLast(replaceLastReportItemIfTheSame);
+    append(baseReport.getJobId(), baseReport.getId(), jobRecord, job);
+  }
+
+  public void updateOutcomeObjectState(String jobId, String reportId, AIPState outcomeObjectState)
+    throws GenericException {
+    Record jobRecord = new Record();
+    jobRecord.setOperation(Operation.STATE);
+    jobRecord.setOutcomeObjectState(outcomeObjectState);
+    append(jobId, reportId, jobRecord, null);
+  }
+
+  /**
+   * @return a copy of the current report (folded with the changes not yet
+   *         written to storage) or null if the report is not known by the store
+   */
+  public Report retrieve(String jobId, String reportId) throws GenericException {
+    JobState state = jobs.get(jobId);
+    Report ret = null;
+    if (state != null) {
+      synchronized (state) {
+        ret = state.dirty.get(reportId);
+      }
+    }
+    if (ret == null) {
+      ret = cleanReports.getIfPresent(getCacheKey(jobId, reportId));
+    }
+    return ret == null ? null : copy(ret);
+  }
+
+  /**
+   * Writes every dirty report of the job and checkpoints its log. When the job
+   * has ended, the log and every in memory information are also discarded.
+   */
+  public void flush(String jobId, boolean jobEnded) {
+    JobState state = jobs.get(jobId);
+    if (state != null) {
+      synchronized (state) {
+        flush(state);
+        if (jobEnded && state.dirty.isEmpty()) {
+          closeSegment(state);
+          FSUtils.deletePathQuietly(state.directory);
+          jobs.remove(jobId);
+          cleanReports.asMap().keySet().removeIf(key -> key.startsWith(getCacheKey(jobId, "")));
+        }
+      }
+    }
+  }
+
+  /**
+   * Forgets the changes of a report that is going to be deleted
+   */
+  public void discard(String jobId, String reportId) {
+    JobState state = jobs.get(jobId);
+    if (state != null) {
+      synchronized (state) {
+        state.dirty.remove(reportId);
+      }
+    }
+    cleanReports.invalidate(getCacheKey(jobId, reportId));
+  }
+
+  public void flushAll() {
+    for (String jobId : new ArrayList<>(jobs.keySet())) {
+      flush(jobId, false);
+    }
+  }
+
+  /**
+   * Replays the logs left behind by jobs that were running when RODA stopped
+   */
+  public void recover() {
+    if (!Files.isDirectory(logDirectory)) {
+      return;
+    }
+
+    try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(logDirectory)) {
+      for (Path jobDirectory : jobDirectories) {
+        String jobId = jobDirectory.getFileName().toString();
+        try {
+          Job job = model.retrieveJob(jobId);
+          JobState state = getJobState(jobId, job);
+          synchronized (state) {
+            int records = 0;
+            for (Path segment : listSegments(jobDirectory)) {
+              records += replay(state, segment);
+            }
+            LOGGER.info("Replayed {} job report records of job {}", records, jobId);
+          }
+          flush(jobId, true);
+        } catch (NotFoundException e) {
+          LOGGER.warn("Discarding job report log of a job that no longer exists: {}", jobId);
+          FSUtils.deletePathQuietly(jobDirectory);
+        } catch (RequestNotValidException | GenericException | AuthorizationDeniedException | IOException e) {
+          LOGGER.error("Error replaying job report log of job {}", jobId, e);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.error("Error listing job report logs", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdown();
+    flushAll();
+    for (JobState state : jobs.values()) {
+      synchronized (state) {
+        closeSegment(state);
+      }
+    }
+  }
+
+  private void append(String jobId, String reportId, Record jobRecord, Job job) throws GenericException {
+    jobRecord.setReportId(reportId);
+    String line = JsonUtils.getJsonFromObject(jobRecord);
+    if (line == null) {
+      throw new GenericException("Error serializing job report record of report " + reportId);
+    }
+
+    // a copy of the record is applied so that later changes to the objects
+    // given by the caller do not affect the store
+    Record copy = JsonUtils.getObjectFromJson(line, Record.class);
+    JobState state = getJobState(jobId, job);
+    synchronized (state) {
+      try {
+        if (state.channel == null) {
+          openSegment(state);
+        }
+
+        if (copy.getOperation() != Operation.CREATE && !state.segmentReports.contains(reportId)) {
+          // the segment must not depend on the previous ones nor on storage
+          Report current = getCurrent(state, reportId);
+          if (current != null) {
+            Record snapshot = new Record();
+            snapshot.setOperation(Operation.CREATE);
+            snapshot.setReportId(reportId);
+            snapshot.setReport(current);
+            write(state, snapshot);
+          }
+        }
+
+        write(state, copy);
+        if (syncLog) {
+          state.channel.force(false);
+        }
+      } catch (IOException e) {
+        throw new GenericException("Error appending to job report log of job " + jobId, e);
+      }
+
+      state.segmentReports.add(reportId);
+      apply(state, copy, false);
+    }
+  }
+
+  private void write(JobState state, Record jobRecord) throws IOException, GenericException {
+    jobRecord.setSequence(++state.lastSequence);
+    String line = JsonUtils.getJsonFromObject(jobRecord);
+    if (line == null) {
+      throw new GenericException("Error serializing job report record of report " + jobRecord.getReportId());
+    }
+    ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      state.channel.write(buffer);
+    }
+  }
+
+  /**
+   * @param replaying
+   *          if true, the current report is only looked for in the records
+   *          already replayed
+   */
+  private void apply(JobState state, Record jobRecord, boolean replaying) {
+    String reportId = jobRecord.getReportId();
+    Report report;
+    switch (jobRecord.getOperation()) {
+      case CREATE:
+        report = jobRecord.getReport();
+        break;
+      case ITEM:
+        report = replaying ? state.dirty.get(reportId) : getCurrent(state, reportId);
+        Report item = jobRecord.getItem();
+        if (report == null) {
+          report = jobRecord.getReport();
+          report.addReport(item);
+        } else if (!jobRecord.isReplaceLast()) {
+          report.addReport(item);
+        } else {
+          List<Report> reportItems = report.getReports();
+          Report last = reportItems.isEmpty() ? null : reportItems.get(reportItems.size() - 1);
+          if (last != null && last.getPlugin().equalsIgnoreCase(item.getPlugin())) {
+            reportItems.remove(reportItems.size() - 1);
+            report.setStepsCompleted(report.getStepsCompleted() - 1);
+            report.addReport(item);
+          }
+        }
+        break;
+      case STATE:
+        report = replaying ? state.dirty.get(reportId) : getCurrent(state, reportId);
+        if (report == null) {
+          LOGGER.error("Error while updating Job Report: report {} does not exist", reportId);
+          return;
+        }
+        report.setOutcomeObjectState(jobRecord.getOutcomeObjectState());
+        break;
+      default:
+        return;
+    }
+
+    report.injectLineSeparator(System.lineSeparator());
+    cleanReports.invalidate(getCacheKey(state.jobId, reportId));
+    state.dirty.put(reportId, report);
+  }
+
+  private Report getCurrent(JobState state, String reportId) {
+    Report ret = state.dirty.get(reportId);
+    if (ret == null) {
+      ret = cleanReports.getIfPresent(getCacheKey(state.jobId, reportId));
+    }
+    if (ret == null) {
+      try {
+        ret = model.retrieveStoredJobReport(state.jobId, reportId);
+        cleanReports.put(getCacheKey(state.jobId, reportId), ret);
+      } catch (NotFoundException e) {
+        // new report
+      } catch (RequestNotValidException | GenericException | AuthorizationDeniedException e) {
+        LOGGER.error("Error retrieving job report {}", reportId, e);
+      }
+    }
+    return ret;
+  }
+
+  private void flush(JobState state) {
+    if (state.dirty.isEmpty()) {
+      return;
+    }
+
+    // checkpoint: new records go to a new segment and the previous ones can be
+    // deleted once the reports are in storage
+    List<Path> segments = closeSegment(state);
+
+    boolean success = true;
+    for (Report report : state.dirty.values()) {
+      try {
+        model.writeJobReport(report, state.job);
+        cleanReports.put(getCacheKey(state.jobId, report.getId()), report);
+      } catch (GenericException e) {
+        LOGGER.error("Error writing job report {}", report.getId(), e);
+        success = false;
+      }
+    }
+
+    if (success) {
+      state.dirty.clear();
+      segments.forEach(FSUtils::deletePathQuietly);
+    } else {
+      // keep the segments until a future flush succeeds
+      state.closedSegments.addAll(0, segments);
+    }
+  }
+
+  private int replay(JobState state, Path segment) throws IOException, GenericException {
+    int records = 0;
+    try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          Record jobRecord = JsonUtils.getObjectFromJson(line, Record.class);
+          if (jobRecord.getSequence() > state.lastSequence) {
+            apply(state, jobRecord, true);
+            state.lastSequence = jobRecord.getSequence();
+            records++;
+          }
+        } catch (GenericException e) {
+          // the last record may be incomplete
+          LOGGER.warn("Ignoring invalid job report record in {}", segment, e);
+        }
+      }
+    }
+    state.closedSegments.add(segment);
+    return records;
+  }
+
+  private JobState getJobState(String jobId, Job job) throws GenericException {
+    JobState state = jobs.get(jobId);
+    if (state == null) {
+      Job cachedJob = job;
+      if (cachedJob == null) {
+        try {
+          cachedJob = model.retrieveJob(jobId);
+        } catch (RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
+          throw new GenericException("Error retrieving job " + jobId, e);
+        }
+      }
+      JobState newState = new JobState(jobId, cachedJob, logDirectory.resolve(jobId));
+      state = jobs.putIfAbsent(jobId, newState);
+      if (state == null) {
+        state = newState;
+      }
+    }
+    return state;
+  }
+
+  private void openSegment(JobState state) throws IOException {
+    Files.createDirectories(state.directory);
+    List<Path> existing = listSegments(state.directory);
+    long next = existing.isEmpty() ? 0
+      : Long.parseLong(existing.get(existing.size() - 1).getFileName().toString().replace(SEGMENT_EXTENSION, "")) + 1;
+    if (state.lastSequence == 0 && !existing.isEmpty()) {
+      // segments that were not replayed, new records must be numbered after them
+      state.lastSequence = readLastSequence(existing.get(existing.size() - 1));
+    }
+    state.segment = state.directory.resolve(String.format("%010d%s", next, SEGMENT_EXTENSION));
+    state.channel = FileChannel.open(state.segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.APPEND);
+    state.segmentReports.clear();
+  }
+
+  /**
+   * @return the segments that only contain records already folded in memory
+   */
+  private List<Path> closeSegment(JobState state) {
+    if (state.channel != null) {
+      try {
+        state.channel.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing job report log segment {}", state.segment, e);
+      }
+      state.closedSegments.add(state.segment);
+      state.channel = null;
+      state.segment = null;
+    }
+    List<Path> ret = new ArrayList<>(state.closedSegments);
+    state.closedSegments.clear();
+    return ret;
+  }
+
+  private static long readLastSequence(Path segment) throws IOException {
+    long ret = 0;
+    try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          ret = Math.max(ret, JsonUtils.getObjectFromJson(line, Record.class).getSequence());
+        } catch (GenericException e) {
+          // incomplete record
+        }
+      }
+    }
+    return ret;
+  }
+
+  private static List<Path> listSegments(Path directory) throws IOException {
+    List<Path> ret = new ArrayList<>();
+    if (Files.isDirectory(directory)) {
+      try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+        segments.forEach(ret::add);
+      }
+    }
+    Collections.sort(ret);
+    return ret;
+  }
+
+  private static String getCacheKey(String jobId, String reportId) {
+    return jobId + "/" + reportId;
+  }
+
+  private static Report copy(Report report) throws GenericException {
+    Report ret = JsonUtils.getObjectFromJson(JsonUtils.getJsonFromObject(report), Report.class);
+    ret.injectLineSeparator(System.lineSeparator());
+    return ret;
+  }
+
+  private static class JobState {
+    private final String jobId;
+    private final Job job;
+    private final Path directory;
+    private final Map<String, Report> dirty = new LinkedHashMap<>();
+    private final List<Path> closedSegments = new ArrayList<>();
+    private final Set<String> segmentReports = new HashSet<>();
+    private long lastSequence = 0;
+    private Path segment = null;
+    private FileChannel channel = null;
+
+    public JobState(String jobId, Job job, Path directory) {
+      this.jobId = jobId;
+      this.job = job;
+      this.directory = directory;
+    }
+  }
+
+  /**
+   * One entry of the job report log
+   */
+  public static class Record {
+    private long sequence;
+    private Operation operation;
+    private String reportId;
+    private Report report;
+    private Report item;
+    private boolean replaceLast = false;
+    private AIPState outcomeObjectState;
+
+    public Record() {
+      super();
+    }
+
+    /**
+     * @return the number of the record in the log of the job, starting at 1
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    public void setSequence(long sequence) {
+      this.sequence = sequence;
+    }
+
+    public Operation getOperation() {
+      return operation;
+    }
+
+    public void setOperation(Operation operation) {
+      this.operation = operation;
+    }
+
+    public String getReportId() {
+      return reportId;
+    }
+
+    public void setReportId(String reportId) {
+      this.reportId = reportId;
+    }
+
+    public Report getReport() {
+      return report;
+    }
+
+    public void setReport(Report report) {
+      this.report = report;
+    }
+
+    public Report getItem() {
+      return item;
+    }
+
+    public void setItem(Report item) {
+      this.item = item;
+    }
+
+    public boolean isReplaceLast() {
+      return replaceLast;
+    }
+
+    public void setReplaceLast(boolean replaceLast) {
+      this.replaceLast = replaceLast;
+    }
+
+    public AIPState getOutcomeObjectState() {
+      return outcomeObjectState;
+    }
+
+    public void setOutcomeObjectState(AIPState outcomeObjectState) {
+      this.outcomeObjectState = outcomeObjectState;
+    }
+  }
+
+}
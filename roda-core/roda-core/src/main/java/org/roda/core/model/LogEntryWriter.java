@@ -0,0 +1,356 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.log.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Asynchronous action log writer.
+ *
+ * Request threads publish log entries into a bounded lock-free ring buffer
+ * (multiple producers, single consumer). A single writer thread drains it and
+ * group-commits each batch to the daily log file (with one write and,
+ * depending on the {@link FsyncPolicy}, one fsync) and then sends the whole
+ * batch to the index.
+ *
+ * When the ring buffer is full the {@link OverflowPolicy} decides what happens
+ * to new entries: BLOCK makes the request thread wait for free space (no
+ * entry is lost) and DROP discards the entry (counted in the "dropped" metric
+ * and logged).
+ *
+ * Daily file rotation keeps the semantics of
+ * {@link ModelService#findOldLogsAndMoveThemToStorage(Path, Path)}: when the
+ * file of the current day does not exist yet, older files are moved to
+ * storage before creating it.
+ */
+public class LogEntryWriter implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogEntryWriter.class);
+
+  public static final int DEFAULT_QUEUE_SIZE = 8192;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+  public static final long DEFAULT_FSYNC_INTERVAL_IN_MILLIS = 1000L;
+
+  private static final long IDLE_WAIT_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long FULL_WAIT_IN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  public enum OverflowPolicy {
+    BLOCK, DROP
+  }
+
+  public enum FsyncPolicy {
+    /** never calls fsync (the operating system decides) */
+    NEVER,
+    /** calls fsync after each group commit */
+    BATCH,
+    /** calls fsync at most once per interval */
+    INTERVAL
+  }
+
+  private final ModelService model;
+  private final Path logDirectory;
+  private final OverflowPolicy overflowPolicy;
+  private final FsyncPolicy fsyncPolicy;
+  private final long fsyncIntervalInMillis;
+  private final int maxBatchSize;
+
+  // ring buffer
+  private final AtomicReferenceArray<PendingEntry> slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head = 0;
+
+  // group commit state (only used by the writer thread, or under fileLock)
+  private final Object fileLock = new Object();
+  private Path currentLogFile = null;
+  private FileChannel channel = null;
+  private long lastFsync = 0;
+
+  private final Object committedLock = new Object();
+  private volatile long committed = 0;
+
+  private final Thread writerThread;
+  private volatile boolean writerWaiting = false;
+  private volatile boolean closed = false;
+
+  private final Counter dropped;
+  private final Counter written;
+  private final Histogram batchSizes;
+
+  public LogEntryWriter(ModelService model, Path logDirectory, int queueSize, OverflowPolicy overflowPolicy,
+    FsyncPolicy fsyncPolicy, long fsyncIntervalInMillis, int maxBatchSize, MetricRegistry metrics) {
+    this.model = model;
+    this.logDirectory = logDirectory;
+    this.overflowPolicy = overflowPolicy;
+    this.fsyncPolicy = fsyncPolicy;
+    this.fsyncIntervalInMillis = fsyncIntervalInMillis;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+
+    int capacity = Integer.highestOneBit(Math.max(2, queueSize - 1)) << 1;
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+
+    MetricRegistry registry = metrics != null ? metrics : new MetricRegistry();
+    this.dropped = registry.counter(MetricRegistry.name(LogEntryWriter.class, "dropped"));
+    this.written = registry.counter(MetricRegistry.name(LogEntryWriter.class, "written"));
+    this.batchSizes = registry.histogram(MetricRegistry.name(LogEntryWriter.class, "batchSize"));
+
+    this.writerThread = new Thread(this::run, "log-entry-writer");
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  /**
+   * Publishes a log entry to be written (and, if notify is true, indexed)
+   * asynchronously.
+   *
+   * @return false if the entry was not accepted by this writer (closed writer or
+   *         other log directory) and therefore must be written by the caller
+   */
+  public boolean submit(LogEntry logEntry, Path directory, boolean notify) {
+    if (closed || !logDirectory.equals(directory)) {
+      return false;
+    }
+
+    PendingEntry pending = new PendingEntry(logEntry, notify);
+    while (true) {
+      long claimed = tail.get();
+      if (claimed - head >= slots.length()) {
+        if (overflowPolicy == OverflowPolicy.DROP) {
+          dropped.inc();
+          LOGGER.warn("Action log queue is full, dropping log entry {}", logEntry.getId());
+          return true;
+        }
+        wakeUpWriter();
+        LockSupport.parkNanos(FULL_WAIT_IN_NANOS);
+        if (closed) {
+          return false;
+        }
+      } else if (tail.compareAndSet(claimed, claimed + 1)) {
+        slots.lazySet((int) (claimed & mask), pending);
+        if (writerWaiting) {
+          wakeUpWriter();
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Flush barrier: waits until every entry published before this call has been
+   * written and sent to the index.
+   */
+  public void flush() {
+    long target = tail.get();
+    synchronized (committedLock) {
+      while (committed < target && writerThread.isAlive()) {
+        wakeUpWriter();
+        try {
+          committedLock.wait(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves old log files to storage without racing with the writer thread
+   */
+  public void moveOldLogsToStorage(Path currentLogFile)
+    throws RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    flush();
+    synchronized (fileLock) {
+      closeChannel();
+      model.moveOldLogsToStorage(logDirectory, currentLogFile);
+    }
+  }
+
+  public Path getLogDirectory() {
+    return logDirectory;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    wakeUpWriter();
+    try {
+      writerThread.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (fileLock) {
+      closeChannel();
+    }
+  }
+
+  private void wakeUpWriter() {
+    LockSupport.unpark(writerThread);
+  }
+
+  private void run() {
+    List<PendingEntry> batch = new ArrayList<>(maxBatchSize);
+    while (true) {
+      drain(batch);
+      if (!batch.isEmpty()) {
+        commit(batch);
+        batch.clear();
+      } else if (closed && head == tail.get()) {
+        // every claimed slot was published and written
+        break;
+      } else {
+        writerWaiting = true;
+        if (head == tail.get()) {
+          LockSupport.parkNanos(IDLE_WAIT_IN_NANOS);
+        }
+        writerWaiting = false;
+      }
+    }
+  }
+
+  private void drain(List<PendingEntry> batch) {
+    long current = head;
+    while (batch.size() < maxBatchSize && current < tail.get()) {
+      int index = (int) (current & mask);
+      PendingEntry pending = slots.get(index);
+      if (pending == null) {
+        // slot claimed but not yet published
+        break;
+      }
+      slots.lazySet(index, null);
+      batch.add(pending);
+      current++;
+      head = current;
+    }
+  }
+
+  private void commit(List<PendingEntry> batch) {
+    List<LogEntry> toNotify = new ArrayList<>();
+    StringBuilder lines = new StringBuilder();
+    for (PendingEntry pending : batch) {
+      String json = JsonUtils.getJsonFromObject(pending.entry);
+      if (json != null) {
+        lines.append(json).append('\n');
+      }
+      if (pending.notify) {
+        toNotify.add(pending.entry);
+      }
+    }
+
+    synchronized (fileLock) {
+      try {
+        ensureLogFile();
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        fsyncIfNeeded();
+        written.inc(batch.size());
+        batchSizes.update(batch.size());
+      } catch (IOException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
+        LOGGER.error("Error writing {} action log entries to {}", batch.size(), currentLogFile, e);
+        closeChannel();
+      }
+    }
+
+    if (!toNotify.isEmpty()) {
+      try {
+        model.notifyLogEntriesCreated(toNotify).failOnError();
+      } catch (GenericException e) {
+        LOGGER.error("Error indexing {} action log entries", toNotify.size(), e);
+      }
+    }
+
+    synchronized (committedLock) {
+      committed += batch.size();
+      committedLock.notifyAll();
+    }
+  }
+
+  private void ensureLogFile() throws IOException, RequestNotValidException, AuthorizationDeniedException,
+    NotFoundException {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+    Path logFile = logDirectory.resolve(sdf.format(new Date()) + ".log");
+
+    if (!logFile.equals(currentLogFile) || !Files.exists(logFile)) {
+      closeChannel();
+      if (!Files.exists(logFile)) {
+        model.moveOldLogsToStorage(logDirectory, logFile);
+      }
+      channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+      currentLogFile = logFile;
+    }
+  }
+
+  private void fsyncIfNeeded() throws IOException {
+    if (fsyncPolicy == FsyncPolicy.BATCH) {
+      channel.force(false);
+    } else if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+      long now = System.currentTimeMillis();
+      if (now - lastFsync >= fsyncIntervalInMillis) {
+        channel.force(false);
+        lastFsync = now;
+      }
+    }
+  }
+
+  private void closeChannel() {
+    if (channel != null) {
+      try {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+          channel.force(false);
+        }
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing action log file {}", currentLogFile, e);
+      }
+      channel = null;
+      currentLogFile = null;
+    }
+  }
+
+  private static class PendingEntry {
+    private final LogEntry entry;
+    private final boolean notify;
+
+    public PendingEntry(LogEntry entry, boolean notify) {
+      this.entry = entry;
+      this.notify = notify;
+    }
+  }
+
+}
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
+import org.roda.core.common.MetricsUtils;
 import org.roda.core.common.ReturnWithExceptionsWrapper;
 import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.v2.formats.Format;
@@ -33,6 +34,8 @@ import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.User;
 import org.slf4j.Logger;
 
+import com.codahale.metrics.Timer;
+
 public abstract class ModelObservable {
   private final List<ModelObserver> observers;
   private Logger logger;
@@ -54,7 +57,8 @@ public abstract class ModelObservable {
   private ReturnWithExceptionsWrapper notifyObserversSafely(Function<ModelObserver, ReturnWithExceptions<?, ?>> func) {
     ReturnWithExceptionsWrapper wrapper = new ReturnWithExceptionsWrapper();
     for (ModelObserver observer : observers) {
-      try {
+      try (Timer.Context context = MetricsUtils
+        .timer(ModelObservable.class, "notifications", observer.getClass().getSimpleName()).time()) {
         wrapper.addToList(func.apply(observer));
       } catch (Exception e) {
         logger.error("Error invoking method in observer {}", observer.getClass().getSimpleName(), e);
@@ -128,6 +132,10 @@ public abstract class ModelObservable {
     return notifyObserversSafely(observer -> observer.logEntryCreated(entry));
   }
 
+  public ReturnWithExceptionsWrapper notifyLogEntriesCreated(List<LogEntry> entries) {
+    return notifyObserversSafely(observer -> observer.logEntriesCreated(entries));
+  }
+
   public ReturnWithExceptionsWrapper notifyUserCreated(User user) {
     return notifyObserversSafely(observer -> observer.userCreated(user));
   }
@@ -66,6 +66,19 @@ public interface ModelObserver {
 
   public ReturnWithExceptions<Void, ModelObserver> logEntryCreated(LogEntry entry);
 
+  /**
+   * Notifies several log entries written together. Observers that can handle
+   * them at once should override this, by default each entry is notified with
+   * {@link #logEntryCreated(LogEntry)}.
+   */
+  public default ReturnWithExceptions<Void, ModelObserver> logEntriesCreated(List<LogEntry> entries) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    for (LogEntry entry : entries) {
+      logEntryCreated(entry).addTo(ret);
+    }
+    return ret;
+  }
+
   public ReturnWithExceptions<Void, ModelObserver> userCreated(User user);
 
   public ReturnWithExceptions<Void, ModelObserver> userUpdated(User user);
@@ -106,6 +106,7 @@ import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.Directory;
 import org.roda.core.storage.EmptyClosableIterable;
 import org.roda.core.storage.Entity;
+import org.roda.core.storage.JsonObjectContentPayload;
 import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.StringContentPayload;
@@ -130,6 +131,8 @@ public class ModelService extends ModelObservable {
   private static final boolean FAIL_IF_NO_DESCRIPTIVE_METADATA_SCHEMA = false;
   private final StorageService storage;
   private Object logFileLock = new Object();
+  private JobReportStore jobReportStore = null;
+  private LogEntryWriter logEntryWriter = null;
 
   public ModelService(StorageService storage) {
     super(LOGGER);
@@ -198,11 +201,10 @@ public class ModelService extends ModelObservable {
 
   private void createAIPMetadata(AIP aip, StoragePath storagePath) throws RequestNotValidException, GenericException,
     AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
-    String json = JsonUtils.getJsonFromObject(aip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     boolean asReference = false;
-    storage.createBinary(metadataStoragePath, new StringContentPayload(json), asReference);
+    storage.createBinary(metadataStoragePath, new JsonObjectContentPayload(aip), asReference);
   }
 
   private void updateAIPMetadata(AIP aip)
@@ -212,12 +214,11 @@ public class ModelService extends ModelObservable {
 
   private void updateAIPMetadata(AIP aip, StoragePath storagePath)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
-    String json = JsonUtils.getJsonFromObject(aip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     boolean asReference = false;
     boolean createIfNotExists = true;
-    storage.updateBinaryContent(metadataStoragePath, new StringContentPayload(json), asReference, createIfNotExists);
+    storage.updateBinaryContent(metadataStoragePath, new JsonObjectContentPayload(aip), asReference, createIfNotExists);
   }
 
   private void updateDIPMetadata(DIP dip)
@@ -1069,6 +1070,27 @@ public class ModelService extends ModelObservable {
     return file;
   }
 
+  /**
+   * Creates a file with the content of a binary of the given storage, copied
+   * by the storage (so an unchanged binary may share its content with the
+   * source, e.g. as a reflink or hard link).
+   */
+  public File createFile(String aipId, String representationId, List<String> directoryPath, String fileId,
+    StorageService sourceStorage, StoragePath sourcePath, boolean notify) throws RequestNotValidException,
+    GenericException, AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
+    StoragePath filePath = ModelUtils.getFileStoragePath(aipId, representationId, directoryPath, fileId);
+
+    storage.copy(sourceStorage, sourcePath, filePath);
+    final Binary createdBinary = storage.getBinary(filePath);
+    File file = ResourceParseUtils.convertResourceToFile(createdBinary);
+
+    if (notify) {
+      notifyFileCreated(file).failOnError();
+    }
+
+    return file;
+  }
+
   public File createFile(String aipId, String representationId, List<String> directoryPath, String fileId,
     String dirName, boolean notify) throws RequestNotValidException, GenericException, AlreadyExistsException,
     AuthorizationDeniedException, NotFoundException {
@@ -1660,6 +1682,11 @@ public class ModelService extends ModelObservable {
   /*****************************************************/
   public void addLogEntry(LogEntry logEntry, Path logDirectory, boolean notify)
     throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    if (logEntryWriter != null && logEntryWriter.submit(logEntry, logDirectory, notify)) {
+      // written (and indexed) asynchronously
+      return;
+    }
+
     SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
     String datePlusExtension = sdf.format(new Date()) + ".log";
     Path logFile = logDirectory.resolve(datePlusExtension);
@@ -1693,7 +1720,16 @@ public class ModelService extends ModelObservable {
     addLogEntry(logEntry, logDirectory, true);
   }
 
-  public synchronized void findOldLogsAndMoveThemToStorage(Path logDirectory, Path currentLogFile)
+  public void findOldLogsAndMoveThemToStorage(Path logDirectory, Path currentLogFile)
+    throws RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    if (logEntryWriter != null && logEntryWriter.getLogDirectory().equals(logDirectory)) {
+      logEntryWriter.moveOldLogsToStorage(currentLogFile);
+    } else {
+      moveOldLogsToStorage(logDirectory, currentLogFile);
+    }
+  }
+
+  synchronized void moveOldLogsToStorage(Path logDirectory, Path currentLogFile)
     throws RequestNotValidException, AuthorizationDeniedException, NotFoundException {
     try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(logDirectory)) {
 
@@ -1713,6 +1749,24 @@ public class ModelService extends ModelObservable {
     }
   }
 
+  /**
+   * Waits until the log entries being written asynchronously are written and
+   * indexed
+   */
+  public void flushLogEntries() {
+    if (logEntryWriter != null) {
+      logEntryWriter.flush();
+    }
+  }
+
+  public LogEntryWriter getLogEntryWriter() {
+    return logEntryWriter;
+  }
+
+  public void setLogEntryWriter(LogEntryWriter logEntryWriter) {
+    this.logEntryWriter = logEntryWriter;
+  }
+
   /***************** Users/Groups related *****************/
   /********************************************************/
 
@@ -1930,9 +1984,8 @@ public class ModelService extends ModelObservable {
   public void createOrUpdateJob(Job job)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
     // create or update job in storage
-    String jobAsJson = JsonUtils.getJsonFromObject(job);
     StoragePath jobPath = ModelUtils.getJobStoragePath(job.getId());
-    storage.updateBinaryContent(jobPath, new StringContentPayload(jobAsJson), false, true);
+    storage.updateBinaryContent(jobPath, new JsonObjectContentPayload(job), false, true);
 
     // index it
     notifyJobCreatedOrUpdated(job, false).failOnError();
@@ -1973,7 +2026,20 @@ public class ModelService extends ModelObservable {
     if (generateId) {
       id = IdUtils.getJobReportId(jobId, givenId);
     }
-    StoragePath jobReportPath = ModelUtils.getJobReportStoragePath(jobId, id);
+
+    if (jobReportStore != null) {
+      Report ret = jobReportStore.retrieve(jobId, id);
+      if (ret != null) {
+        return ret;
+      }
+    }
+
+    return retrieveStoredJobReport(jobId, id);
+  }
+
+  Report retrieveStoredJobReport(String jobId, String jobReportId)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    StoragePath jobReportPath = ModelUtils.getJobReportStoragePath(jobId, jobReportId);
     Binary binary = storage.getBinary(jobReportPath);
     Report ret;
     InputStream inputStream = null;
@@ -1989,11 +2055,86 @@ public class ModelService extends ModelObservable {
   }
 
   public void createOrUpdateJobReport(Report jobReport, Job job) throws GenericException {
+    if (jobReportStore != null) {
+      jobReportStore.createOrUpdate(jobReport, job);
+    } else {
+      writeJobReport(jobReport, job);
+    }
+  }
+
+  /**
+   * Creates or updates a job report, reusing the job cached by the job report
+   * store (if there is one)
+   */
+  public void createOrUpdateJobReport(Report jobReport)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    if (jobReportStore != null) {
+      jobReportStore.createOrUpdate(jobReport, null);
+    } else {
+      writeJobReport(jobReport, retrieveJob(jobReport.getJobId()));
+    }
+  }
+
+  /**
+   * Adds a report item (i.e. a step) to a job report. The base report is used
+   * when the job report does not exist yet.
+   */
+  public void appendJobReportItem(Report baseReport, Report reportItem, boolean replaceLastReportItemIfTheSame,
+    Job job) throws GenericException, RequestNotValidException, AuthorizationDeniedException {
+    if (jobReportStore != null) {
+      jobReportStore.appendReportItem(baseReport, reportItem, replaceLastReportItemIfTheSame, job);
+      return;
+    }
+
+    Report jobReport;
+    try {
+      jobReport = retrieveStoredJobReport(baseReport.getJobId(), baseReport.getId());
+
+      if (!replaceLastReportItemIfTheSame) {
+        jobReport.addReport(reportItem);
+      } else {
+        List<Report> reportItems = jobReport.getReports();
+        Report report = reportItems.get(reportItems.size() - 1);
+        if (report.getPlugin().equalsIgnoreCase(reportItem.getPlugin())) {
+          reportItems.remove(reportItems.size() - 1);
+          jobReport.setStepsCompleted(jobReport.getStepsCompleted() - 1);
+          jobReport.addReport(reportItem);
+        }
+      }
+    } catch (NotFoundException e) {
+      jobReport = baseReport;
+      jobReport.addReport(reportItem);
+    }
+
+    writeJobReport(jobReport, job);
+  }
+
+  public void updateJobReportOutcomeObjectState(String jobId, String jobReportId, AIPState outcomeObjectState)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    if (jobReportStore != null) {
+      jobReportStore.updateOutcomeObjectState(jobId, jobReportId, outcomeObjectState);
+    } else {
+      Report jobReport = retrieveStoredJobReport(jobId, jobReportId);
+      jobReport.setOutcomeObjectState(outcomeObjectState);
+      writeJobReport(jobReport, retrieveJob(jobId));
+    }
+  }
+
+  /**
+   * Writes the job reports of a job that are only in the job report store
+   * (which also happens periodically)
+   */
+  public void flushJobReports(String jobId, boolean jobEnded) {
+    if (jobReportStore != null && jobId != null) {
+      jobReportStore.flush(jobId, jobEnded);
+    }
+  }
+
+  void writeJobReport(Report jobReport, Job job) throws GenericException {
     // create job report in storage
     try {
-      String jobReportAsJson = JsonUtils.getJsonFromObject(jobReport);
       StoragePath jobReportPath = ModelUtils.getJobReportStoragePath(jobReport.getJobId(), jobReport.getId());
-      storage.updateBinaryContent(jobReportPath, new StringContentPayload(jobReportAsJson), false, true);
+      storage.updateBinaryContent(jobReportPath, new JsonObjectContentPayload(jobReport), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error creating/updating job report in storage", e);
     }
@@ -2002,9 +2143,20 @@ public class ModelService extends ModelObservable {
     notifyJobReportCreatedOrUpdated(jobReport, job).failOnError();
   }
 
+  public JobReportStore getJobReportStore() {
+    return jobReportStore;
+  }
+
+  public void setJobReportStore(JobReportStore jobReportStore) {
+    this.jobReportStore = jobReportStore;
+  }
+
   public void deleteJobReport(String jobId, String jobReportId)
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
     StoragePath jobReportPath = ModelUtils.getJobReportStoragePath(jobId, jobReportId);
+    if (jobReportStore != null) {
+      jobReportStore.discard(jobId, jobReportId);
+    }
 
     // remove it from storage
     storage.deleteResource(jobReportPath);
@@ -2045,9 +2197,8 @@ public class ModelService extends ModelObservable {
       risk.setCreatedOn(new Date());
       risk.setUpdatedOn(new Date());
 
-      String riskAsJson = JsonUtils.getJsonFromObject(risk);
       StoragePath riskPath = ModelUtils.getRiskStoragePath(risk.getId());
-      storage.createBinary(riskPath, new StringContentPayload(riskAsJson), false);
+      storage.createBinary(riskPath, new JsonObjectContentPayload(risk), false);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
       | AlreadyExistsException e) {
       LOGGER.error("Error creating risk in storage", e);
@@ -2061,7 +2212,6 @@ public class ModelService extends ModelObservable {
     throws GenericException {
     try {
       risk.setUpdatedOn(new Date());
-      String riskAsJson = JsonUtils.getJsonFromObject(risk);
       StoragePath riskPath = ModelUtils.getRiskStoragePath(risk.getId());
 
       // Create version snapshot
@@ -2069,7 +2219,7 @@ public class ModelService extends ModelObservable {
         storage.createBinaryVersion(riskPath, properties);
       }
 
-      storage.updateBinaryContent(riskPath, new StringContentPayload(riskAsJson), false, true);
+      storage.updateBinaryContent(riskPath, new JsonObjectContentPayload(risk), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error updating risk in storage", e);
     }
@@ -2136,9 +2286,8 @@ public class ModelService extends ModelObservable {
       riskIncidence.setId(IdUtils.createUUID());
       riskIncidence.setDetectedOn(new Date());
 
-      String riskIncidenceAsJson = JsonUtils.getJsonFromObject(riskIncidence);
       StoragePath riskIncidencePath = ModelUtils.getRiskIncidenceStoragePath(riskIncidence.getId());
-      storage.createBinary(riskIncidencePath, new StringContentPayload(riskIncidenceAsJson), false);
+      storage.createBinary(riskIncidencePath, new JsonObjectContentPayload(riskIncidence), false);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
       | AlreadyExistsException e) {
       LOGGER.error("Error creating risk incidence in storage", e);
@@ -2151,9 +2300,8 @@ public class ModelService extends ModelObservable {
   public RiskIncidence updateRiskIncidence(RiskIncidence riskIncidence, boolean commit) throws GenericException {
     try {
       riskIncidence.setRiskId(riskIncidence.getRiskId());
-      String riskIncidenceAsJson = JsonUtils.getJsonFromObject(riskIncidence);
       StoragePath riskIncidencePath = ModelUtils.getRiskIncidenceStoragePath(riskIncidence.getId());
-      storage.updateBinaryContent(riskIncidencePath, new StringContentPayload(riskIncidenceAsJson), false, true);
+      storage.updateBinaryContent(riskIncidencePath, new JsonObjectContentPayload(riskIncidence), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error updating risk incidence in storage", e);
     }
@@ -2200,9 +2348,8 @@ public class ModelService extends ModelObservable {
     }
 
     try {
-      String notificationAsJson = JsonUtils.getJsonFromObject(notification);
       StoragePath notificationPath = ModelUtils.getNotificationStoragePath(notification.getId());
-      storage.createBinary(notificationPath, new StringContentPayload(notificationAsJson), false);
+      storage.createBinary(notificationPath, new JsonObjectContentPayload(notification), false);
       notifyNotificationCreatedOrUpdated(notification).failOnError();
     } catch (NotFoundException | RequestNotValidException | AlreadyExistsException e) {
       LOGGER.error("Error creating notification in storage", e);
@@ -2215,9 +2362,8 @@ public class ModelService extends ModelObservable {
   public Notification updateNotification(Notification notification)
     throws GenericException, NotFoundException, AuthorizationDeniedException {
     try {
-      String notificationAsJson = JsonUtils.getJsonFromObject(notification);
       StoragePath notificationPath = ModelUtils.getNotificationStoragePath(notification.getId());
-      storage.updateBinaryContent(notificationPath, new StringContentPayload(notificationAsJson), false, true);
+      storage.updateBinaryContent(notificationPath, new JsonObjectContentPayload(notification), false, true);
     } catch (GenericException | RequestNotValidException e) {
       LOGGER.error("Error updating notification in storage", e);
       throw new GenericException(e);
@@ -2316,21 +2462,19 @@ public class ModelService extends ModelObservable {
 
   private void createDIPMetadata(DIP dip, StoragePath storagePath) throws RequestNotValidException, GenericException,
     AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
-    String json = JsonUtils.getJsonFromObject(dip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_DIP_METADATA_FILENAME);
     boolean asReference = false;
-    storage.createBinary(metadataStoragePath, new StringContentPayload(json), asReference);
+    storage.createBinary(metadataStoragePath, new JsonObjectContentPayload(dip), asReference);
   }
 
   private void updateDIPMetadata(DIP dip, StoragePath storagePath)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
-    String json = JsonUtils.getJsonFromObject(dip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_DIP_METADATA_FILENAME);
     boolean asReference = false;
     boolean createIfNotExists = true;
-    storage.updateBinaryContent(metadataStoragePath, new StringContentPayload(json), asReference, createIfNotExists);
+    storage.updateBinaryContent(metadataStoragePath, new JsonObjectContentPayload(dip), asReference, createIfNotExists);
   }
 
   public DIP createDIP(DIP dip, boolean notify) throws GenericException, AuthorizationDeniedException {
@@ -2727,6 +2871,7 @@ public class ModelService extends ModelObservable {
   }
 
   public CloseableIterable<OptionalWithCause<LogEntry>> listLogEntries(int daysToIndex) {
+    flushLogEntries();
     boolean recursive = false;
     CloseableIterable<OptionalWithCause<LogEntry>> inStorage = null;
     CloseableIterable<OptionalWithCause<LogEntry>> notStorage = null;
@@ -2919,9 +3064,8 @@ public class ModelService extends ModelObservable {
   public Format createFormat(Format format, boolean commit) throws GenericException {
     try {
       format.setId(IdUtils.createUUID());
-      String formatAsJson = JsonUtils.getJsonFromObject(format);
       StoragePath formatPath = ModelUtils.getFormatStoragePath(format.getId());
-      storage.createBinary(formatPath, new StringContentPayload(formatAsJson), false);
+      storage.createBinary(formatPath, new JsonObjectContentPayload(format), false);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
       | AlreadyExistsException e) {
       LOGGER.error("Error creating format in storage", e);
@@ -2933,9 +3077,8 @@ public class ModelService extends ModelObservable {
 
   public Format updateFormat(Format format, boolean commit) throws GenericException {
     try {
-      String formatAsJson = JsonUtils.getJsonFromObject(format);
       StoragePath formatPath = ModelUtils.getFormatStoragePath(format.getId());
-      storage.updateBinaryContent(formatPath, new StringContentPayload(formatAsJson), false, true);
+      storage.updateBinaryContent(formatPath, new JsonObjectContentPayload(format), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error updating format in storage", e);
     }
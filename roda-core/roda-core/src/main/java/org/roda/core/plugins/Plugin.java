@@ -200,6 +200,28 @@ public interface Plugin<T extends IsRODAObject> {
    */
   public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) throws PluginException;
 
+  /**
+   * Hint for the {@link PluginOrchestrator} about the number of objects that
+   * should be sent to each {@link #execute(IndexService, ModelService, StorageService, List)}
+   * call. When positive it overrides the configured (or adaptive) block size.
+   * 
+   * @return the preferred block size or 0 to let the orchestrator decide
+   */
+  public default int getBlockSizeHint() {
+    return 0;
+  }
+
+  /**
+   * Hint for the {@link PluginOrchestrator} about the maximum number of workers
+   * that should execute this plugin in parallel (e.g. for plugins bound by an
+   * external service).
+   * 
+   * @return the max number of workers or 0 to let the orchestrator decide
+   */
+  public default int getMaxWorkersHint() {
+    return 0;
+  }
+
   /**
    * Stops all {@link Plugin} activity. This is the last method to be called by
    * {@link PluginManager} on the {@link Plugin}.
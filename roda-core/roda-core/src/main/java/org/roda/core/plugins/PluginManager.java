@@ -8,10 +8,12 @@
 package org.roda.core.plugins;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
@@ -21,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -30,6 +33,14 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -37,6 +48,7 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.io.IOUtils;
 import org.reflections.Reflections;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
@@ -59,9 +71,12 @@ import org.roda.core.data.v2.risks.Risk;
 import org.roda.core.storage.fs.FSUtils;
 import org.roda.core.util.ClassLoaderUtility;
 import org.roda.core.util.CompoundClassLoader;
+import org.roda.core.util.PluginIndexProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * This is the RODA plugin manager. It is responsible for loading {@link Plugin}
  * s.
@@ -97,6 +112,11 @@ public class PluginManager {
    */
   private static PluginManager defaultPluginManager = null;
 
+  /**
+   * The internal plugins being loaded in background, if any.
+   */
+  private static CompletableFuture<List<Plugin<? extends IsRODAObject>>> internalPluginsPreload = null;
+
   /**
    * Constructs a new {@link PluginManager}.
    * 
@@ -449,6 +469,18 @@ public class PluginManager {
     List<Path> pluginProperties) {
     List<URL> jarClasspath = new ArrayList<>(classpath);
 
+    JarPlugins cached = jarPluginCache.get(jarPath);
+    if (cached != null) {
+      try {
+        if (Files.getLastModifiedTime(jarPath).toMillis() == cached.lastModified) {
+          LOGGER.trace("{} is already loaded", jarPath.getFileName());
+          return;
+        }
+      } catch (IOException e) {
+        LOGGER.trace("Could not get modification date of {}", jarPath.getFileName(), e);
+      }
+    }
+
     try (JarFile jar = new JarFile(jarPath.toFile())) {
       // add own jar to classpath
       jarClasspath.add(jarPath.toUri().toURL());
@@ -600,31 +632,164 @@ public class PluginManager {
     }
   }
 
-  @SuppressWarnings("rawtypes")
+  /**
+   * Starts, in background, the instantiation and initialization of the
+   * internal plugins (which are only registered when the plugin manager is
+   * instantiated). This is only done if there's a build-time plugin index as,
+   * otherwise, the classpath would need to be scanned concurrently with the
+   * rest of the startup.
+   */
+  public static synchronized void preloadInternalPlugins() {
+    if (internalPluginsPreload == null && defaultPluginManager == null && isInternalPluginIndexAvailable()) {
+      ExecutorService executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("plugin-preload-%d").setDaemon(true).build());
+      internalPluginsPreload = CompletableFuture.supplyAsync(
+        () -> createInternalPlugins(getInternalPluginClassNames(),
+          RodaCoreFactory.getRodaConfigurationAsList("core", "plugins", "blacklist")),
+        executor);
+      executor.shutdown();
+    }
+  }
+
   private void loadInternalPlugins() {
-    Reflections reflections = new Reflections(
-      RodaCoreFactory.getRodaConfigurationAsString("core", "plugins", "internal", "package"));
-    Set<Class<? extends AbstractPlugin>> plugins = reflections.getSubTypesOf(AbstractPlugin.class);
-    plugins.addAll(reflections.getSubTypesOf(AbstractAIPComponentsPlugin.class));
-
-    for (Class<? extends AbstractPlugin> plugin : plugins) {
-      String name = plugin.getName();
-      if (!Modifier.isAbstract(plugin.getModifiers()) && !blacklistedPlugins.contains(name)) {
-        LOGGER.debug("Loading internal plugin '{}'", name);
-        try {
-          Plugin<? extends IsRODAObject> p = (Plugin<?>) ClassLoaderUtility.createObject(plugin.getName());
-          p.init();
-          internalPluginChache.put(plugin.getName(), p);
-          processAndCachePluginInformation(p);
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | PluginException
-          | RuntimeException e) {
-          LOGGER.error("Unable to instantiate plugin '{}'", plugin.getName(), e);
-        }
+    List<Plugin<? extends IsRODAObject>> plugins = null;
+    if (internalPluginsPreload != null) {
+      try {
+        plugins = internalPluginsPreload.join();
+      } catch (CompletionException | CancellationException e) {
+        LOGGER.warn("Could not preload internal plugins, loading them now", e);
+      }
+      internalPluginsPreload = null;
+    }
+
+    if (plugins == null) {
+      plugins = createInternalPlugins(getInternalPluginClassNames(), blacklistedPlugins);
+    }
+
+    for (Plugin<? extends IsRODAObject> plugin : plugins) {
+      if (!blacklistedPlugins.contains(plugin.getClass().getName())) {
+        internalPluginChache.put(plugin.getClass().getName(), plugin);
+        processAndCachePluginInformation(plugin);
       }
     }
     internalPluginStarted = true;
   }
 
+  private static boolean isInternalPluginIndexAvailable() {
+    return RodaCoreFactory.getRodaConfiguration().getBoolean("core.plugins.internal.use_index", true)
+      && PluginManager.class.getClassLoader().getResource(PluginIndexProcessor.PLUGIN_INDEX) != null;
+  }
+
+  /**
+   * Gets the names of the internal plugins, from the plugin index generated at
+   * build time (see {@link PluginIndexProcessor}) or, if there's none, by
+   * scanning the classpath.
+   */
+  private static Set<String> getInternalPluginClassNames() {
+    String internalPackage = RodaCoreFactory.getRodaConfigurationAsString("core", "plugins", "internal", "package");
+    Set<String> classNames = new TreeSet<>();
+
+    if (isInternalPluginIndexAvailable()) {
+      ClassLoader classLoader = PluginManager.class.getClassLoader();
+      try {
+        Enumeration<URL> indexes = classLoader.getResources(PluginIndexProcessor.PLUGIN_INDEX);
+        while (indexes.hasMoreElements()) {
+          URL index = indexes.nextElement();
+          try (InputStream inputStream = index.openStream()) {
+            for (String line : IOUtils.readLines(inputStream, StandardCharsets.UTF_8)) {
+              String className = line.trim();
+              if (!className.isEmpty() && !className.startsWith("#") && className.startsWith(internalPackage)
+                && isInternalPluginClass(className, classLoader)) {
+                classNames.add(className);
+              }
+            }
+          }
+        }
+        LOGGER.debug("Found {} internal plugins in the plugin index", classNames.size());
+      } catch (IOException e) {
+        LOGGER.error("Error reading the plugin index, scanning the classpath instead", e);
+        classNames.clear();
+      }
+    }
+
+    if (classNames.isEmpty()) {
+      Reflections reflections = new Reflections(internalPackage);
+      Set<Class<? extends AbstractPlugin>> plugins = reflections.getSubTypesOf(AbstractPlugin.class);
+      plugins.addAll(reflections.getSubTypesOf(AbstractAIPComponentsPlugin.class));
+      for (Class<? extends AbstractPlugin> plugin : plugins) {
+        if (!Modifier.isAbstract(plugin.getModifiers())) {
+          classNames.add(plugin.getName());
+        }
+      }
+    }
+
+    return classNames;
+  }
+
+  private static boolean isInternalPluginClass(String className, ClassLoader classLoader) {
+    try {
+      Class<?> klass = Class.forName(className, false, classLoader);
+      return AbstractPlugin.class.isAssignableFrom(klass) && !Modifier.isAbstract(klass.getModifiers());
+    } catch (ClassNotFoundException | LinkageError e) {
+      LOGGER.warn("Plugin '{}' in the plugin index could not be loaded", className, e);
+      return false;
+    }
+  }
+
+  /**
+   * Instantiates and initializes, in parallel, the given plugins, as most of
+   * the time is spent in {@link Plugin#init()} (e.g. getting the version of a
+   * tool).
+   * 
+   * @return the plugins that could be initialized, in the same order as the
+   *         given class names
+   */
+  private static List<Plugin<? extends IsRODAObject>> createInternalPlugins(Set<String> classNames,
+    List<String> blacklist) {
+    int threads = RodaCoreFactory.getRodaConfigurationAsInt(Runtime.getRuntime().availableProcessors(), "core",
+      "plugins", "internal", "init_threads");
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+      new ThreadFactoryBuilder().setNameFormat("plugin-init-%d").setDaemon(true).build());
+
+    try {
+      List<Future<Plugin<? extends IsRODAObject>>> futures = new ArrayList<>();
+      for (String className : classNames) {
+        if (!blacklist.contains(className)) {
+          futures.add(executor.submit(() -> createInternalPlugin(className)));
+        }
+      }
+
+      List<Plugin<? extends IsRODAObject>> plugins = new ArrayList<>();
+      for (Future<Plugin<? extends IsRODAObject>> future : futures) {
+        Plugin<? extends IsRODAObject> plugin = future.get();
+        if (plugin != null) {
+          plugins.add(plugin);
+        }
+      }
+      return plugins;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading internal plugins", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error loading internal plugins", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Plugin<? extends IsRODAObject> createInternalPlugin(String className) {
+    LOGGER.debug("Loading internal plugin '{}'", className);
+    try {
+      Plugin<? extends IsRODAObject> plugin = (Plugin<?>) ClassLoaderUtility.createObject(className);
+      plugin.init();
+      return plugin;
+    } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | PluginException
+      | RuntimeException e) {
+      LOGGER.error("Unable to instantiate plugin '{}'", className, e);
+      return null;
+    }
+  }
+
   private <T extends IsRODAObject> void processAndCachePluginInformation(Plugin<T> plugin) {
 
     // cache plugin > objectClasses
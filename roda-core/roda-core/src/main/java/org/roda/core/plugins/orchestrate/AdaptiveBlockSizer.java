@@ -0,0 +1,101 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Decides the number of objects of the next block of a job.
+ *
+ * When adaptive, the block size is tuned towards a target block duration using
+ * an exponentially weighted moving average of the measured time per object.
+ * To avoid oscillations each decision can at most halve or double the previous
+ * block size, and the result is always kept between the configured minimum and
+ * maximum. When not adaptive the block size is always the initial one.
+ *
+ * Not thread-safe (used from within the job state actor).
+ */
+public class AdaptiveBlockSizer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBlockSizer.class);
+
+  private static final double WEIGHT_OF_LATEST_MEASURE = 0.3;
+
+  private final boolean adaptive;
+  private final int minBlockSize;
+  private final int maxBlockSize;
+  private final long targetBlockDurationInMillis;
+  private int blockSize;
+  private double millisPerObject = -1;
+
+  private final Histogram blockSizes;
+  private final Histogram blockDurations;
+
+  public AdaptiveBlockSizer(int initialBlockSize, MetricRegistry metrics) {
+    this(false, initialBlockSize, initialBlockSize, initialBlockSize, 0, metrics);
+  }
+
+  public AdaptiveBlockSizer(boolean adaptive, int initialBlockSize, int minBlockSize, int maxBlockSize,
+    long targetBlockDurationInMillis, MetricRegistry metrics) {
+    this.adaptive = adaptive && targetBlockDurationInMillis > 0;
+    this.minBlockSize = Math.max(1, Math.min(minBlockSize, maxBlockSize));
+    this.maxBlockSize = Math.max(this.minBlockSize, maxBlockSize);
+    this.targetBlockDurationInMillis = targetBlockDurationInMillis;
+    this.blockSize = this.adaptive ? clamp(initialBlockSize) : Math.max(1, initialBlockSize);
+
+    MetricRegistry registry = metrics != null ? metrics : new MetricRegistry();
+    this.blockSizes = registry.histogram(MetricRegistry.name(AdaptiveBlockSizer.class, "blockSize"));
+    this.blockDurations = registry.histogram(MetricRegistry.name(AdaptiveBlockSizer.class, "blockDurationInMillis"));
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public boolean isAdaptive() {
+    return adaptive;
+  }
+
+  /**
+   * Feeds the duration of a block that was processed
+   */
+  public void blockDone(int objectsCount, long durationInMillis) {
+    if (objectsCount <= 0 || durationInMillis < 0) {
+      return;
+    }
+
+    blockSizes.update(objectsCount);
+    blockDurations.update(durationInMillis);
+
+    if (adaptive) {
+      double latest = Math.max(durationInMillis, 1L) / (double) objectsCount;
+      if (millisPerObject < 0) {
+        millisPerObject = latest;
+      } else {
+        millisPerObject = WEIGHT_OF_LATEST_MEASURE * latest + (1 - WEIGHT_OF_LATEST_MEASURE) * millisPerObject;
+      }
+
+      long ideal = Math.round(targetBlockDurationInMillis / millisPerObject);
+      int next = (int) Math.max(blockSize / 2, Math.min(ideal, 2L * blockSize));
+      next = clamp(next);
+      if (next != blockSize) {
+        LOGGER.debug("Changing block size from {} to {} ({} ms per object, target block duration {} ms)", blockSize,
+          next, millisPerObject, targetBlockDurationInMillis);
+        blockSize = next;
+      }
+    }
+  }
+
+  private int clamp(int value) {
+    return Math.max(minBlockSize, Math.min(maxBlockSize, value));
+  }
+
+}
@@ -7,6 +7,7 @@
  */
 package org.roda.core.plugins.orchestrate;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -37,12 +38,12 @@ import org.roda.core.data.v2.common.OptionalWithCause;
 import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.select.SelectedItemsList;
-import org.roda.core.data.v2.index.sort.SortParameter;
 import org.roda.core.data.v2.index.sort.Sorter;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.data.v2.jobs.PluginType;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.LiteRODAObjectFactory;
 import org.roda.core.model.ModelService;
@@ -52,6 +53,7 @@ import org.roda.core.plugins.PluginException;
 import org.roda.core.plugins.PluginOrchestrator;
 import org.roda.core.plugins.orchestrate.akka.AkkaJobsManager;
 import org.roda.core.plugins.orchestrate.akka.DeadLetterActor;
+import org.roda.core.plugins.orchestrate.akka.JobBlockProducer;
 import org.roda.core.plugins.orchestrate.akka.Messages;
 import org.roda.core.plugins.orchestrate.akka.Messages.JobPartialUpdate;
 import org.roda.core.plugins.orchestrate.akka.Messages.JobStateUpdated;
@@ -169,36 +171,19 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       LOGGER.info("Starting {} (which will be done asynchronously)", plugin.getName());
       ActorRef jobActor = (ActorRef) context;
       ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      int blockSize = JobsHelper.getBlockSize();
-      Plugin<T> innerPlugin;
       Class<T> modelClassToActOn = (Class<T>) ModelUtils.giveRespectiveModelClass(classToActOn);
 
       jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
 
+      // the cursor (sorted by uuid) neither skips nor repeats objects when the
+      // job itself changes the objects that match the filter
       List<String> liteFields = SolrUtils.getClassLiteFields(classToActOn);
-      Iterator<T1> findAllIterator = index
-        .findAll(classToActOn, filter, new Sorter(new SortParameter(RodaConstants.INDEX_UUID, true)), liteFields)
-        .iterator();
-
-      List<T1> indexObjects = new ArrayList<>();
-      while (findAllIterator.hasNext()) {
-        if (indexObjects.size() == blockSize) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn, blockSize, jobActor);
-          jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-            LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects)), jobActor);
-          indexObjects = new ArrayList<>();
-        }
-        indexObjects.add(findAllIterator.next());
-      }
+      IterableIndexResult<T1> findAllResult = index.findAllWithCursor(classToActOn, filter, Sorter.NONE, null, true,
+        liteFields, IterableIndexResult.getCursorPageSize(), IterableIndexResult.isCursorPrefetchEnabled());
 
-      if (!indexObjects.isEmpty()) {
-        innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn, indexObjects.size(),
-          jobActor);
-        jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-          LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects)), jobActor);
-      }
-
-      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
+      jobStateInfoActor.tell(new Messages.JobBlocksAreReady(new BlockProducer<>(plugin, modelClassToActOn, jobActor,
+        findAllResult.iterator(), findAllResult, (int) Math.max(0, findAllResult.getTotalObjects()),
+        indexObjects -> LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects))), jobActor);
 
     } catch (JobIsStoppingException | JobInErrorException e) {
       // do nothing
@@ -216,31 +201,14 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       LOGGER.info("Starting {} (which will be done asynchronously)", plugin.getName());
       ActorRef jobActor = (ActorRef) context;
       ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      int blockSize = JobsHelper.getBlockSize();
-      List<T> objects = JobsHelper.getObjectsFromUUID(model, index, objectClass, uuids);
-      Iterator<T> iter = objects.iterator();
-      Plugin<T> innerPlugin;
 
       jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
 
-      List<T> block = new ArrayList<>();
-      while (iter.hasNext()) {
-        if (block.size() == blockSize) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, blockSize, jobActor);
-          jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-            LiteRODAObjectFactory.transformIntoLiteWithCause(model, block)), jobActor);
-          block = new ArrayList<>();
-        }
-        block.add(iter.next());
-      }
-
-      if (!block.isEmpty()) {
-        innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, block.size(), jobActor);
-        jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-          LiteRODAObjectFactory.transformIntoLiteWithCause(model, block)), jobActor);
-      }
-
-      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
+      // objects are only retrieved when their block is produced
+      jobStateInfoActor.tell(new Messages.JobBlocksAreReady(new BlockProducer<>(plugin, objectClass, jobActor,
+        uuids.iterator(), null, uuids.size(), blockUUIDs -> LiteRODAObjectFactory.transformIntoLiteWithCause(model,
+          JobsHelper.getObjectsFromUUID(model, index, objectClass, blockUUIDs)))),
+        jobActor);
 
     } catch (JobIsStoppingException | JobInErrorException e) {
       // do nothing
@@ -257,39 +225,23 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       LOGGER.info("Starting {} (which will be done asynchronously)", plugin.getName());
       ActorRef jobActor = (ActorRef) context;
       ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      int blockSize = JobsHelper.getBlockSize();
-      CloseableIterable<OptionalWithCause<LiteRODAObject>> objects = model.listLite(objectClass);
-      Iterator<OptionalWithCause<LiteRODAObject>> iter = objects.iterator();
-      Plugin<T> innerPlugin;
 
       jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
 
-      List<LiteOptionalWithCause> block = new ArrayList<>();
-      while (iter.hasNext()) {
-        if (block.size() == blockSize) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, blockSize, jobActor);
-          jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin, block), jobActor);
-          block = new ArrayList<>();
-        }
-
-        OptionalWithCause<LiteRODAObject> nextObject = iter.next();
-        if (nextObject.isPresent()) {
-          block.add(LiteOptionalWithCause.of(nextObject.get()));
-        } else {
-          LOGGER.error("Cannot process object", nextObject.getCause());
-        }
-      }
-
-      if (!block.isEmpty()) {
-        innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, block.size(), jobActor);
-        jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin, block), jobActor);
-      }
-
-      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
-      IOUtils.closeQuietly(objects);
+      CloseableIterable<OptionalWithCause<LiteRODAObject>> objects = model.listLite(objectClass);
+      jobStateInfoActor.tell(new Messages.JobBlocksAreReady(
+        new BlockProducer<>(plugin, objectClass, jobActor, objects.iterator(), objects, 0, nextObjects -> {
+          List<LiteOptionalWithCause> block = new ArrayList<>();
+          for (OptionalWithCause<LiteRODAObject> nextObject : nextObjects) {
+            if (nextObject.isPresent()) {
+              block.add(LiteOptionalWithCause.of(nextObject.get()));
+            } else {
+              LOGGER.error("Cannot process object", nextObject.getCause());
+            }
+          }
+          return block;
+        })), jobActor);
 
-    } catch (JobIsStoppingException | JobInErrorException e) {
-      // do nothing
     } catch (Exception e) {
       LOGGER.error("Error running plugin on all objects", e);
       JobsHelper.updateJobStateAsync(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
@@ -367,15 +319,9 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       }
 
       ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      if (PluginType.INGEST == plugin.getType()) {
-        IngestJobPluginInfo jobPluginInfo = new IngestJobPluginInfo();
-        initJobPluginInfo(innerPlugin, jobActor, jobStateInfoActor, jobPluginInfo, objectsCount);
-        innerPlugin.injectJobPluginInfo(jobPluginInfo);
-      } else {
-        SimpleJobPluginInfo jobPluginInfo = new SimpleJobPluginInfo();
-        initJobPluginInfo(innerPlugin, jobActor, jobStateInfoActor, jobPluginInfo, objectsCount);
-        innerPlugin.injectJobPluginInfo(jobPluginInfo);
-      }
+      JobPluginInfo jobPluginInfo = newJobPluginInfo(plugin);
+      initJobPluginInfo(innerPlugin, jobActor, jobStateInfoActor, jobPluginInfo, objectsCount);
+      innerPlugin.injectJobPluginInfo(jobPluginInfo);
     } else {
       LOGGER.error("Error while trying to init plugin. Cause: unable to find out job id");
     }
@@ -384,6 +330,10 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
 
   }
 
+  private static <T extends IsRODAObject> JobPluginInfo newJobPluginInfo(Plugin<T> plugin) {
+    return PluginType.INGEST == plugin.getType() ? new IngestJobPluginInfo() : new SimpleJobPluginInfo();
+  }
+
   private <T extends IsRODAObject> void initJobPluginInfo(Plugin<T> innerPlugin, ActorRef jobActor,
     ActorRef jobStateInfoActor, JobPluginInfo jobPluginInfo, int objectsCount) {
     jobPluginInfo.setSourceObjectsCount(objectsCount);
@@ -391,6 +341,94 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
     jobStateInfoActor.tell(new Messages.JobInfoUpdated(innerPlugin, jobPluginInfo), jobActor);
   }
 
+  @FunctionalInterface
+  private interface BlockTransformer<S> {
+    List<LiteOptionalWithCause> apply(List<S> items) throws Exception;
+  }
+
+  /**
+   * Produces the blocks of a job from a source iterator, reading at most one
+   * block (of the size decided by the job state actor) from it each time the
+   * job state actor asks for one.
+   * 
+   * As blocks are only produced on demand, the objects of the job that are not
+   * in a block yet (if their number is known) are reported as the objects of a
+   * plugin instance that is never executed, so the job total is right from the
+   * start.
+   */
+  private class BlockProducer<T extends IsRODAObject, S> implements JobBlockProducer {
+    private final Plugin<T> plugin;
+    private final Class<T> pluginClass;
+    private final ActorRef jobActor;
+    private final Iterator<S> iterator;
+    private final Closeable source;
+    private final BlockTransformer<S> transformer;
+    private final Plugin<T> pendingObjectsPlugin;
+    private int pendingObjectsCount;
+
+    /**
+     * @param objectsCount
+     *          number of objects of the source iterator, or 0 if unknown
+     */
+    public BlockProducer(Plugin<T> plugin, Class<T> pluginClass, ActorRef jobActor, Iterator<S> iterator,
+      Closeable source, int objectsCount, BlockTransformer<S> transformer)
+      throws InvalidParameterException, PluginException, JobIsStoppingException, JobInErrorException {
+      this.plugin = plugin;
+      this.pluginClass = pluginClass;
+      this.jobActor = jobActor;
+      this.iterator = iterator;
+      this.source = source;
+      this.transformer = transformer;
+      this.pendingObjectsCount = objectsCount;
+      this.pendingObjectsPlugin = objectsCount > 0
+        ? getNewPluginInstanceAndInitJobPluginInfo(plugin, pluginClass, objectsCount, jobActor)
+        : null;
+    }
+
+    @Override
+    public Messages.PluginExecuteIsReady<T> next(int blockSize) throws Exception {
+      while (iterator.hasNext()) {
+        List<S> items = new ArrayList<>(blockSize);
+        while (items.size() < blockSize && iterator.hasNext()) {
+          items.add(iterator.next());
+        }
+
+        List<LiteOptionalWithCause> block = transformer.apply(items);
+        if (!block.isEmpty()) {
+          Plugin<T> innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, pluginClass, block.size(),
+            jobActor);
+          updatePendingObjects(items.size());
+          return new Messages.PluginExecuteIsReady<>(innerPlugin, block);
+        }
+        updatePendingObjects(items.size());
+      }
+      if (pendingObjectsCount > 0) {
+        updatePendingObjects(0);
+      }
+      return null;
+    }
+
+    private void updatePendingObjects(int objectsRead) {
+      ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
+      if (pendingObjectsPlugin != null && jobStateInfoActor != null) {
+        // objects that could not be retrieved are no longer part of the job
+        pendingObjectsCount = iterator.hasNext() ? Math.max(0, pendingObjectsCount - objectsRead) : 0;
+        initJobPluginInfo(pendingObjectsPlugin, jobActor, jobStateInfoActor, newJobPluginInfo(plugin),
+          pendingObjectsCount);
+      }
+    }
+
+    @Override
+    public void close() {
+      IOUtils.closeQuietly(source);
+    }
+
+    @Override
+    public String toString() {
+      return "BlockProducer [plugin=" + plugin.getName() + "]";
+    }
+  }
+
   @Override
   public void executeJob(Job job, boolean async) throws JobAlreadyStartedException {
     LOGGER.info("Adding job '{}' ({}) to be executed", job.getName(), job.getId());
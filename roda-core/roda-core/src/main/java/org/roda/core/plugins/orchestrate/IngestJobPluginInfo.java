@@ -225,8 +225,7 @@ public class IngestJobPluginInfo extends JobPluginInfo {
         report.setPluginState(PluginState.FAILURE);
 
         try {
-          Job job = model.retrieveJob(report.getJobId());
-          model.createOrUpdateJobReport(report, job);
+          model.createOrUpdateJobReport(report);
         } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
           LOGGER.error("Error updating last job report indicating other AIP failure.");
         }
@@ -17,8 +17,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import org.apache.commons.configuration.Configuration;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.NodeType;
@@ -53,14 +55,26 @@ import org.roda.core.storage.fs.FSUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 public final class JobsHelper {
   private static final Logger LOGGER = LoggerFactory.getLogger(JobsHelper.class);
 
+  private static final Map<String, JobStats> LIVE_JOB_STATS = new ConcurrentHashMap<>();
+
   private static final String NUMBER_OF_JOB_WORKERS_PROPERTY = "core.orchestrator.nr_of_jobs_workers";
   private static final String BLOCK_SIZE_PROPERTY = "core.orchestrator.block_size";
   private static final int DEFAULT_BLOCK_SIZE = 100;
   private static final String SYNC_TIMEOUT_PROPERTY = "core.orchestrator.sync_timeout";
   private static final int DEFAULT_SYNC_TIMEOUT = 600;
+  private static final String JOB_PROGRESS_PERSIST_INTERVAL_PROPERTY = "core.orchestrator.job_progress_persist_interval_ms";
+  private static final long DEFAULT_JOB_PROGRESS_PERSIST_INTERVAL = 5000L;
+  private static final String MAX_BLOCKS_IN_FLIGHT_PROPERTY = "core.orchestrator.max_blocks_in_flight";
+  private static final String ADAPTIVE_BLOCK_SIZE_PROPERTY = "core.orchestrator.adaptive_block_size";
+  private static final int DEFAULT_MAX_ADAPTIVE_BLOCK_SIZE = 1000;
+  private static final long DEFAULT_TARGET_BLOCK_DURATION = 30000L;
+  private static final String WORKERS_AUTOSCALE_PROPERTY = "core.orchestrator.workers_autoscale";
+  private static final double DEFAULT_MAX_LOAD_PER_CPU = 1.0;
   private static final String MAX_JOBS_IN_PARALLEL_PROPERTY = "core.orchestrator.max_jobs_in_parallel";
 
   private JobsHelper() {
@@ -87,6 +101,57 @@ public final class JobsHelper {
     return RodaCoreFactory.getRodaConfiguration().getInt(BLOCK_SIZE_PROPERTY, DEFAULT_BLOCK_SIZE);
   }
 
+  /**
+   * Max number of blocks of a job sent to the workers and not yet done,
+   * defaulting to twice the current number of workers
+   */
+  public static int getMaxBlocksInFlight(int numberOfJobsWorkers) {
+    int defaultMaxBlocksInFlight = 2 * numberOfJobsWorkers;
+    return Math.max(1,
+      RodaCoreFactory.getRodaConfiguration().getInt(MAX_BLOCKS_IN_FLIGHT_PROPERTY, defaultMaxBlocksInFlight));
+  }
+
+  /**
+   * Creates the block sizer of a job: fixed if the plugin has a block size hint
+   * or adaptive block size is disabled, adaptive otherwise
+   */
+  public static AdaptiveBlockSizer createBlockSizer(Plugin<?> plugin, MetricRegistry metrics) {
+    if (plugin.getBlockSizeHint() > 0) {
+      return new AdaptiveBlockSizer(plugin.getBlockSizeHint(), metrics);
+    }
+
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    if (configuration.getBoolean(ADAPTIVE_BLOCK_SIZE_PROPERTY + ".enabled", false)) {
+      return new AdaptiveBlockSizer(true, getBlockSize(),
+        configuration.getInt(ADAPTIVE_BLOCK_SIZE_PROPERTY + ".min", 1),
+        configuration.getInt(ADAPTIVE_BLOCK_SIZE_PROPERTY + ".max", DEFAULT_MAX_ADAPTIVE_BLOCK_SIZE),
+        configuration.getLong(ADAPTIVE_BLOCK_SIZE_PROPERTY + ".target_block_duration_ms",
+          DEFAULT_TARGET_BLOCK_DURATION),
+        metrics);
+    } else {
+      return new AdaptiveBlockSizer(getBlockSize(), metrics);
+    }
+  }
+
+  public static boolean isWorkersAutoscaleEnabled() {
+    return RodaCoreFactory.getRodaConfiguration().getBoolean(WORKERS_AUTOSCALE_PROPERTY + ".enabled", false);
+  }
+
+  /**
+   * Max number of workers of a job when autoscaling, defaulting to four times
+   * the number of processors
+   */
+  public static int getMaxNumberOfJobsWorkers() {
+    int defaultMaxNumberOfJobsWorkers = 4 * Runtime.getRuntime().availableProcessors();
+    return Math.max(getNumberOfJobsWorkers(), RodaCoreFactory.getRodaConfiguration()
+      .getInt(WORKERS_AUTOSCALE_PROPERTY + ".max_workers", defaultMaxNumberOfJobsWorkers));
+  }
+
+  public static double getWorkersAutoscaleMaxLoadPerProcessor() {
+    return RodaCoreFactory.getRodaConfiguration().getDouble(WORKERS_AUTOSCALE_PROPERTY + ".max_load_per_cpu",
+      DEFAULT_MAX_LOAD_PER_CPU);
+  }
+
   public static void setBlockSize(int blockSize) {
     RodaCoreFactory.getRodaConfiguration().setProperty(BLOCK_SIZE_PROPERTY, blockSize);
   }
@@ -99,6 +164,11 @@ public final class JobsHelper {
     RodaCoreFactory.getRodaConfiguration().setProperty(SYNC_TIMEOUT_PROPERTY, syncTimeout);
   }
 
+  public static long getJobProgressPersistInterval() {
+    return RodaCoreFactory.getRodaConfiguration().getLong(JOB_PROGRESS_PERSIST_INTERVAL_PROPERTY,
+      DEFAULT_JOB_PROGRESS_PERSIST_INTERVAL);
+  }
+
   public static <T extends IsRODAObject> void updateJobState(Plugin<T> plugin, ModelService model, JOB_STATE state,
     Optional<String> stateDetails) {
     try {
@@ -111,6 +181,9 @@ public final class JobsHelper {
         job.setEndDate(new Date());
       }
 
+      // job reports must be written before the job state changes
+      model.flushJobReports(job.getId(), job.isInFinalState());
+
       model.createOrUpdateJob(job);
     } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
       LOGGER.error("Unable to get or update Job from model", e);
@@ -128,6 +201,9 @@ public final class JobsHelper {
         jobFromModel.setEndDate(new Date());
       }
 
+      // job reports must be written before the job state changes
+      model.flushJobReports(jobFromModel.getId(), jobFromModel.isInFinalState());
+
       model.createOrUpdateJob(jobFromModel);
     } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
       LOGGER.error("Unable to get or update Job from model", e);
@@ -163,8 +239,11 @@ public final class JobsHelper {
   }
 
   private static Job setJobCounters(Job job, JobPluginInfo jobPluginInfo) {
-    JobStats jobStats = job.getJobStats();
+    setJobCounters(job.getJobStats(), jobPluginInfo);
+    return job;
+  }
 
+  private static JobStats setJobCounters(JobStats jobStats, JobPluginInfo jobPluginInfo) {
     jobStats.setCompletionPercentage(jobPluginInfo.getCompletionPercentage());
     jobStats.setSourceObjectsCount(jobPluginInfo.getSourceObjectsCount());
     jobStats.setSourceObjectsBeingProcessed(jobPluginInfo.getSourceObjectsBeingProcessed());
@@ -174,6 +253,39 @@ public final class JobsHelper {
       .setSourceObjectsWaitingToBeProcessed(jobStats.getSourceObjectsCount() - jobStats.getSourceObjectsBeingProcessed()
         - jobStats.getSourceObjectsProcessedWithFailure() - jobStats.getSourceObjectsProcessedWithSuccess());
     jobStats.setOutcomeObjectsWithManualIntervention(jobPluginInfo.getOutcomeObjectsWithManualIntervention());
+    return jobStats;
+  }
+
+  /**
+   * Keeps in memory the most recent counters of a running job (which may not
+   * yet be persisted)
+   */
+  public static void setLiveJobStats(String jobId, JobPluginInfo jobPluginInfo) {
+    LIVE_JOB_STATS.put(jobId, setJobCounters(new JobStats(), jobPluginInfo));
+  }
+
+  public static void removeLiveJobStats(String jobId) {
+    LIVE_JOB_STATS.remove(jobId);
+  }
+
+  public static Optional<JobStats> getLiveJobStats(String jobId) {
+    return Optional.ofNullable(LIVE_JOB_STATS.get(jobId));
+  }
+
+  /**
+   * Replaces the counters of a job retrieved from the model or the index by the
+   * live ones, if the job is running in this node
+   */
+  public static Job applyLiveJobStats(Job job) {
+    if (job != null && !job.isInFinalState()) {
+      getLiveJobStats(job.getId()).ifPresent(live -> job.getJobStats()
+        .setCompletionPercentage(live.getCompletionPercentage()).setSourceObjectsCount(live.getSourceObjectsCount())
+        .setSourceObjectsBeingProcessed(live.getSourceObjectsBeingProcessed())
+        .setSourceObjectsWaitingToBeProcessed(live.getSourceObjectsWaitingToBeProcessed())
+        .setSourceObjectsProcessedWithSuccess(live.getSourceObjectsProcessedWithSuccess())
+        .setSourceObjectsProcessedWithFailure(live.getSourceObjectsProcessedWithFailure())
+        .setOutcomeObjectsWithManualIntervention(live.getOutcomeObjectsWithManualIntervention()));
+    }
     return job;
   }
 
@@ -9,9 +9,13 @@ package org.roda.core.plugins.orchestrate.akka;
 
 import java.util.ArrayList;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.JobInErrorException;
+import org.roda.core.data.exceptions.JobIsStoppingException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.IsRODAObject;
@@ -22,6 +26,7 @@ import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.index.IndexService;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginException;
+import org.roda.core.plugins.orchestrate.AdaptiveBlockSizer;
 import org.roda.core.plugins.orchestrate.JobInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.orchestrate.JobsHelper;
@@ -32,11 +37,18 @@ import org.slf4j.LoggerFactory;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Iterables;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.actor.Terminated;
+import akka.dispatch.Dispatchers;
+import akka.routing.DefaultOptimalSizeExploringResizer;
 import akka.routing.RoundRobinPool;
+import scala.concurrent.ExecutionContextExecutor;
+import scala.concurrent.duration.Duration;
 
 public class AkkaJobStateInfoActor extends AkkaBaseActor {
   private static final Logger LOGGER = LoggerFactory.getLogger(AkkaJobStateInfoActor.class);
@@ -50,6 +62,24 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
   boolean errorDuringBeforeAll = false;
   private String jobId;
 
+  // job progress coalescing: only the most recent counters are persisted
+  private final long progressPersistInterval;
+  private Cancellable progressPersistTask = null;
+  private Plugin<?> pendingProgressPlugin = null;
+  private JobPluginInfo pendingProgress = null;
+  private long lastProgressPersist = 0;
+
+  // demand-driven block dispatch
+  private static final String BLOCK_PRODUCTION_DISPATCHER = "job-blocks-dispatcher";
+  private final int workers;
+  private SaturationAwareResizer workersResizer = null;
+  private final AdaptiveBlockSizer blockSizer;
+  private final ExecutionContextExecutor blockProductionExecutor;
+  private JobBlockProducer blockProducer = null;
+  private boolean producingBlock = false;
+  private int blocksInFlight = 0;
+  private boolean indexingFailed = false;
+
   // metrics
   // private Map<String, Histogram> stateMessagesMetrics;
   private Histogram stateMessagesMetricsHistogram;
@@ -63,14 +93,49 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     this.jobsManager = jobsManager;
     this.jobId = jobId;
 
-    LOGGER.debug("Starting AkkaJobStateInfoActor router with {} actors", numberOfJobsWorkers);
-    Props workersProps = new RoundRobinPool(numberOfJobsWorkers).props(Props.create(AkkaWorkerActor.class));
+    int workers = numberOfJobsWorkers;
+    int maxWorkers = JobsHelper.isWorkersAutoscaleEnabled() ? JobsHelper.getMaxNumberOfJobsWorkers() : workers;
+    if (plugin.getMaxWorkersHint() > 0) {
+      workers = Math.min(workers, plugin.getMaxWorkersHint());
+      maxWorkers = Math.min(maxWorkers, plugin.getMaxWorkersHint());
+    }
+
+    RoundRobinPool pool = new RoundRobinPool(workers);
+    if (maxWorkers > workers) {
+      LOGGER.debug("Starting AkkaJobStateInfoActor router with {} actors (autoscaling up to {})", workers, maxWorkers);
+      Config resizerConfig = ConfigFactory.parseString("lower-bound = 1\nupper-bound = " + maxWorkers)
+        .withFallback(getContext().system().settings().config()
+          .getConfig("akka.actor.deployment.default.optimal-size-exploring-resizer"));
+      workersResizer = new SaturationAwareResizer(DefaultOptimalSizeExploringResizer.apply(resizerConfig),
+        JobsHelper.getWorkersAutoscaleMaxLoadPerProcessor(), workers, getMetricRegistry());
+      pool = pool.withResizer(workersResizer);
+    } else {
+      LOGGER.debug("Starting AkkaJobStateInfoActor router with {} actors", workers);
+    }
+    Props workersProps = pool.props(Props.create(AkkaWorkerActor.class));
     workersRouter = getContext().actorOf(workersProps, "WorkersRouter");
     // 20160914 hsilva: watch child events, so when they stop we can react
     getContext().watch(workersRouter);
 
+    this.workers = workers;
     JobsHelper.createJobWorkingDirectory(jobId);
 
+    blockSizer = JobsHelper.createBlockSizer(plugin, getMetricRegistry());
+    // blocks are read from the index/storage outside this actor so that it
+    // keeps handling the messages of the workers in the meantime
+    Dispatchers dispatchers = getContext().system().dispatchers();
+    blockProductionExecutor = dispatchers.hasDispatcher(BLOCK_PRODUCTION_DISPATCHER)
+      ? dispatchers.lookup(BLOCK_PRODUCTION_DISPATCHER)
+      : getContext().system().dispatcher();
+    progressPersistInterval = JobsHelper.getJobProgressPersistInterval();
+    if (progressPersistInterval > 0) {
+      ActorRef self = getSelf();
+      progressPersistTask = getContext().system().scheduler().schedule(
+        Duration.create(progressPersistInterval, TimeUnit.MILLISECONDS),
+        Duration.create(progressPersistInterval, TimeUnit.MILLISECONDS),
+        () -> self.tell(new Messages.JobProgressPersist(), ActorRef.noSender()), getContext().system().dispatcher());
+    }
+
     String className = AkkaJobStateInfoActor.class.getSimpleName();
     // stateMessagesMetrics = new HashMap<>();
     stateMessagesMetricsHistogram = getMetricRegistry()
@@ -86,12 +151,18 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
       handleJobSourceObjectsUpdated(msg);
     } else if (msg instanceof Messages.JobInfoUpdated) {
       handleJobInfoUpdated(msg);
+    } else if (msg instanceof Messages.JobProgressPersist) {
+      handleJobProgressPersist(msg);
     } else if (msg instanceof Messages.JobStop) {
       handleJobStop(msg);
     } else if (msg instanceof Terminated) {
       handleTerminated(msg);
     } else if (msg instanceof Messages.PluginExecuteIsReady) {
       handleExecuteIsReady(msg);
+    } else if (msg instanceof Messages.JobBlocksAreReady) {
+      handleJobBlocksAreReady(msg);
+    } else if (msg instanceof Messages.JobBlockProduced) {
+      handleJobBlockProduced(msg);
     } else if (msg instanceof Messages.JobInitEnded) {
       handleJobInitEnded(msg);
     } else if (msg instanceof Messages.PluginBeforeAllExecuteIsReady) {
@@ -119,8 +190,11 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     } catch (NotFoundException | GenericException | RequestNotValidException e) {
       LOGGER.warn("Unable to get Job from index to log its state change. Reason: {}", e.getMessage());
     }
+    // counters must be durable before any state transition
+    persistJobProgress();
     JobsHelper.updateJobState(p, getModel(), message.getState(), message.getStateDatails());
     if (Job.isFinalState(message.getState())) {
+      JobsHelper.removeLiveJobStats(jobId);
       // 20160817 hsilva: the following instruction is needed for the "sync"
       // execution of a job (i.e. for testing purposes)
       jobCreator.tell("Done", getSelf());
@@ -163,15 +237,49 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     jobInfo.put(message.getPlugin(), message.getJobPluginInfo());
     JobPluginInfo infoUpdated = message.getJobPluginInfo().processJobPluginInformation(message.getPlugin(), jobInfo);
     jobInfo.setObjectsCount(infoUpdated.getSourceObjectsCount());
-    JobsHelper.updateJobInformation(message.getPlugin(), getModel(), infoUpdated);
+    JobsHelper.setLiveJobStats(jobId, infoUpdated);
+    pendingProgressPlugin = message.getPlugin();
+    pendingProgress = infoUpdated;
+    if (System.currentTimeMillis() - lastProgressPersist >= progressPersistInterval) {
+      persistJobProgress();
+    }
     markMessageProcessingAsEnded(message);
   }
 
+  private void handleJobProgressPersist(Object msg) {
+    Messages.JobProgressPersist message = (Messages.JobProgressPersist) msg;
+    markMessageProcessingAsStarted(message);
+    persistJobProgress();
+    markMessageProcessingAsEnded(message);
+  }
+
+  private void persistJobProgress() {
+    if (pendingProgress != null) {
+      JobsHelper.updateJobInformation(pendingProgressPlugin, getModel(), pendingProgress);
+      pendingProgress = null;
+      pendingProgressPlugin = null;
+      lastProgressPersist = System.currentTimeMillis();
+    }
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    // e.g. during shutdown, counters not yet persisted must not be lost
+    if (progressPersistTask != null) {
+      progressPersistTask.cancel();
+    }
+    closeBlockProducer();
+    persistJobProgress();
+    JobsHelper.removeLiveJobStats(jobId);
+    super.postStop();
+  }
+
   private void handleJobStop(Object msg) {
     Messages.JobStop message = (Messages.JobStop) msg;
     markMessageProcessingAsStarted(message);
     getSelf().tell(new Messages.JobStateUpdated(plugin, JOB_STATE.STOPPING), getSelf());
     stopping = true;
+    closeBlockProducer();
     getContext().getChildren().forEach(e -> getContext().stop(e));
     markMessageProcessingAsEnded(message);
   }
@@ -204,15 +312,140 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
   private void handleJobInitEnded(Object msg) {
     Messages.JobInitEnded message = (Messages.JobInitEnded) msg;
     markMessageProcessingAsStarted(message);
+    initEnded();
+    markMessageProcessingAsEnded(message);
+  }
+
+  private void initEnded() {
     jobInfo.setInitEnded(true);
     // INFO 20160630 hsilva: the following test is needed because messages can
     // be out of order and a plugin might already arrived to the end
     if (jobInfo.isDone()) {
       workersRouter.tell(new Messages.PluginAfterAllExecuteIsReady(plugin), getSelf());
     }
+  }
+
+  private void handleJobBlocksAreReady(Object msg) {
+    Messages.JobBlocksAreReady message = (Messages.JobBlocksAreReady) msg;
+    markMessageProcessingAsStarted(message);
+    if (errorDuringBeforeAll || stopping) {
+      message.getProducer().close();
+    } else {
+      blockProducer = new SerialBlockProducer(message.getProducer());
+      dispatchBlocks();
+    }
+    markMessageProcessingAsEnded(message);
+  }
+
+  /**
+   * Asks the producer, in background, for the next block if the in-flight
+   * window is not full (only one block is produced at a time, and producing
+   * null means that the job init has ended)
+   */
+  private void dispatchBlocks() {
+    if (blockProducer == null || producingBlock || blocksInFlight >= getMaxBlocksInFlight()) {
+      return;
+    }
+
+    producingBlock = true;
+    JobBlockProducer producer = blockProducer;
+    int blockSize = blockSizer.getBlockSize();
+    ActorRef self = getSelf();
+    blockProductionExecutor.execute(() -> {
+      Messages.JobBlockProduced produced;
+      try {
+        produced = new Messages.JobBlockProduced(producer, producer.next(blockSize), null);
+      } catch (Throwable e) {
+        produced = new Messages.JobBlockProduced(producer, null, e);
+      }
+      self.tell(produced, ActorRef.noSender());
+    });
+  }
+
+  /**
+   * @return the size of the window of blocks in flight for the current number
+   *         of workers (which changes when the workers pool is autoscaled)
+   */
+  private int getMaxBlocksInFlight() {
+    return JobsHelper.getMaxBlocksInFlight(workersResizer != null ? workersResizer.getPoolSize() : workers);
+  }
+
+  private void handleJobBlockProduced(Object msg) {
+    Messages.JobBlockProduced message = (Messages.JobBlockProduced) msg;
+    markMessageProcessingAsStarted(message);
+    // blocks produced after the producer was closed (e.g. job stopping) are
+    // discarded
+    if (message.getProducer() == blockProducer) {
+      producingBlock = false;
+      Throwable error = message.getError();
+      Messages.PluginExecuteIsReady<?> block = message.getBlock();
+      if (error instanceof JobIsStoppingException || error instanceof JobInErrorException) {
+        closeBlockProducer();
+      } else if (error != null) {
+        LOGGER.error("Error producing the blocks of job {}", jobId, error);
+        closeBlockProducer();
+        JobsHelper.updateJobStateAsync(plugin, JOB_STATE.FAILED_TO_COMPLETE, error);
+      } else if (block == null) {
+        closeBlockProducer();
+        initEnded();
+      } else if (errorDuringBeforeAll) {
+        closeBlockProducer();
+      } else {
+        blocksInFlight++;
+        jobInfo.setStarted(block.getPlugin());
+        block.setHasBeenForwarded();
+        workersRouter.tell(block, getSelf());
+        dispatchBlocks();
+      }
+    }
     markMessageProcessingAsEnded(message);
   }
 
+  private void closeBlockProducer() {
+    if (blockProducer != null) {
+      JobBlockProducer producer = blockProducer;
+      blockProducer = null;
+      producingBlock = false;
+      // waits (in background) for the block being produced, if any
+      try {
+        blockProductionExecutor.execute(producer::close);
+      } catch (RejectedExecutionException e) {
+        producer.close();
+      }
+    }
+  }
+
+  /**
+   * Serializes the calls to a producer, which is not thread-safe, made from the
+   * block production threads and ignores the ones made after it is closed
+   */
+  private static final class SerialBlockProducer implements JobBlockProducer {
+    private final JobBlockProducer producer;
+    private boolean closed = false;
+
+    SerialBlockProducer(JobBlockProducer producer) {
+      this.producer = producer;
+    }
+
+    @Override
+    public synchronized Messages.PluginExecuteIsReady<?> next(int blockSize) throws Exception {
+      return closed ? null : producer.next(blockSize);
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        producer.close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return producer.toString();
+    }
+  }
+
   private void handleBeforeAllExecuteIsReady(Object msg) throws PluginException {
     Messages.PluginBeforeAllExecuteIsReady message = (Messages.PluginBeforeAllExecuteIsReady) msg;
     markMessageProcessingAsStarted(message);
@@ -238,7 +471,17 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     Messages.PluginExecuteIsDone message = (Messages.PluginExecuteIsDone) msg;
     markMessageProcessingAsStarted(message);
     jobInfo.setDone(message.getPlugin());
-    if (jobInfo.isDone() && jobInfo.isInitEnded()) {
+    if (message.isIndexingFailed()) {
+      indexingFailed = true;
+    }
+    blockSizer.blockDone(message.getObjectsCount(), message.getDurationInMillis());
+    if (blocksInFlight > 0) {
+      blocksInFlight--;
+    }
+    if (blockProducer != null) {
+      // when there are no more blocks this also ends the job init
+      dispatchBlocks();
+    } else if (jobInfo.isDone() && jobInfo.isInitEnded()) {
       workersRouter.tell(new Messages.PluginAfterAllExecuteIsReady(plugin), getSelf());
     }
     markMessageProcessingAsEnded(message);
@@ -248,9 +491,14 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     Messages.PluginAfterAllExecuteIsDone message = (Messages.PluginAfterAllExecuteIsDone) msg;
     markMessageProcessingAsStarted(message);
     getSelf().tell(new Messages.JobCleanup(), getSelf());
-    getSelf().tell(
-      new Messages.JobStateUpdated(plugin, message.isWithError() ? JOB_STATE.FAILED_TO_COMPLETE : JOB_STATE.COMPLETED),
-      getSelf());
+    if (message.isWithError()) {
+      getSelf().tell(new Messages.JobStateUpdated(plugin, JOB_STATE.FAILED_TO_COMPLETE), getSelf());
+    } else if (indexingFailed) {
+      getSelf().tell(new Messages.JobStateUpdated(plugin, JOB_STATE.FAILED_TO_COMPLETE,
+        Optional.of("Documents of some blocks of the job could not be indexed")), getSelf());
+    } else {
+      getSelf().tell(new Messages.JobStateUpdated(plugin, JOB_STATE.COMPLETED), getSelf());
+    }
     markMessageProcessingAsEnded(message);
   }
 
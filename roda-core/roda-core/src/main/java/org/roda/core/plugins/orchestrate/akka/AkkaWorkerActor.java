@@ -9,15 +9,21 @@ package org.roda.core.plugins.orchestrate.akka;
 
 import java.util.List;
 
+import org.roda.core.common.MetricsUtils;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.LiteOptionalWithCause;
 import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Timer;
+
 public class AkkaWorkerActor extends AkkaBaseActor {
   private static final Logger LOGGER = LoggerFactory.getLogger(AkkaWorkerActor.class);
 
@@ -50,15 +56,26 @@ public class AkkaWorkerActor extends AkkaBaseActor {
     List<LiteOptionalWithCause> objectsToBeProcessed = message.getList();
     message.logProcessingStarted();
     Plugin<IsRODAObject> messagePlugin = message.getPlugin();
+    long start = System.currentTimeMillis();
+    // only the indexing errors of this block are returned by its flushes
+    index.startIndexing(message);
     try {
-      messagePlugin.execute(index, model, storage, objectsToBeProcessed);
-      getSender().tell(new Messages.PluginExecuteIsDone(messagePlugin, false), getSelf());
+      MetricsUtils.histogram(messagePlugin.getClass(), "blockSize").update(objectsToBeProcessed.size());
+      try (Timer.Context context = MetricsUtils.timer(messagePlugin.getClass(), "execute").time()) {
+        messagePlugin.execute(index, model, storage, objectsToBeProcessed);
+      }
+      boolean indexed = flushIndex();
+      getSender().tell(new Messages.PluginExecuteIsDone(messagePlugin, false, !indexed, objectsToBeProcessed.size(),
+        System.currentTimeMillis() - start), getSelf());
     } catch (Throwable e) {
       // 20170120 hsilva: it is required to catch Throwable as there are some
       // linking errors that only will happen during the execution (e.g.
       // java.lang.NoSuchMethodError)
       LOGGER.error("Error executing plugin.execute()", e);
+      flushIndex();
       getSender().tell(new Messages.PluginExecuteIsDone(messagePlugin, true), getSelf());
+    } finally {
+      index.endIndexing();
     }
     message.logProcessingEnded();
   }
@@ -67,17 +84,42 @@ public class AkkaWorkerActor extends AkkaBaseActor {
     Messages.PluginAfterAllExecuteIsReady message = (Messages.PluginAfterAllExecuteIsReady) msg;
     message.logProcessingStarted();
     Plugin<?> plugin = message.getPlugin();
+    index.startIndexing(message);
     try {
-      plugin.afterAllExecute(index, model, storage);
-      getSender().tell(new Messages.PluginAfterAllExecuteIsDone(plugin, false), getSelf());
+      // after all execute may look for the job reports (e.g. in the index)
+      model.flushJobReports(PluginHelper.getJobId(plugin), false);
+      boolean indexed = flushIndex();
+      try (Timer.Context context = MetricsUtils.timer(plugin.getClass(), "afterAllExecute").time()) {
+        plugin.afterAllExecute(index, model, storage);
+      }
+      indexed = flushIndex() && indexed;
+      getSender().tell(new Messages.PluginAfterAllExecuteIsDone(plugin, !indexed), getSelf());
     } catch (Throwable e) {
       // 20170120 hsilva: it is required to catch Throwable as there are some
       // linking errors that only will happen during the execution (e.g.
       // java.lang.NoSuchMethodError)
       LOGGER.error("Error executing plugin.afterAllExecute()", e);
+      flushIndex();
       getSender().tell(new Messages.PluginAfterAllExecuteIsDone(plugin, true), getSelf());
+    } finally {
+      index.endIndexing();
     }
     message.logProcessingEnded();
   }
 
+  /**
+   * Block/job boundary: documents buffered by the index must be sent before
+   * reporting that the work is done
+   * 
+   * @return true if all the documents of the block/job were indexed
+   */
+  private boolean flushIndex() {
+    ReturnWithExceptions<Void, ModelObserver> ret = index.flush();
+    if (!ret.isEmpty()) {
+      LOGGER.error("Error indexing documents: {}", ret.getExceptions());
+      return false;
+    }
+    return true;
+  }
+
 }
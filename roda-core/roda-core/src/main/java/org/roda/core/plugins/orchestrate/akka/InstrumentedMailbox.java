@@ -0,0 +1,121 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.RodaCoreFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.typesafe.config.Config;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import scala.Option;
+
+/**
+ * Unbounded mailbox that keeps track of the number of messages waiting in the
+ * mailboxes of a group of actors (e.g. all the job workers), exposed by the
+ * gauge {@code org.roda.core.plugins.orchestrate.akka.InstrumentedMailbox.<group>.queueDepth},
+ * and of the rate at which messages arrive, exposed by the meter
+ * {@code ...<group>.enqueued}.
+ *
+ * The group is given by the {@code metric-name} setting of the mailbox
+ * configuration, e.g.
+ *
+ * <pre>
+ * workers-mailbox {
+ *   mailbox-type = "org.roda.core.plugins.orchestrate.akka.InstrumentedMailbox"
+ *   metric-name = "workers"
+ * }
+ * </pre>
+ */
+public class InstrumentedMailbox implements MailboxType, ProducesMessageQueue<InstrumentedMailbox.InstrumentedQueue> {
+  private static final String METRIC_NAME_SETTING = "metric-name";
+  private static final String DEFAULT_METRIC_NAME = "default";
+
+  // one depth per group, shared by all the mailboxes of the group
+  private static final ConcurrentHashMap<String, AtomicLong> DEPTHS = new ConcurrentHashMap<>();
+
+  private final AtomicLong depth;
+  private final Meter enqueued;
+
+  public InstrumentedMailbox(ActorSystem.Settings settings, Config config) {
+    String group = config.hasPath(METRIC_NAME_SETTING) ? config.getString(METRIC_NAME_SETTING) : DEFAULT_METRIC_NAME;
+    this.depth = DEPTHS.computeIfAbsent(group, g -> new AtomicLong(0));
+
+    MetricRegistry registry = RodaCoreFactory.getMetrics();
+    if (registry != null) {
+      registry.gauge(MetricRegistry.name(InstrumentedMailbox.class, group, "queueDepth"),
+        () -> (Gauge<Long>) depth::get);
+      this.enqueued = registry.meter(MetricRegistry.name(InstrumentedMailbox.class, group, "enqueued"));
+    } else {
+      this.enqueued = new Meter();
+    }
+  }
+
+  @Override
+  public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+    return new InstrumentedQueue(depth, enqueued);
+  }
+
+  public static class InstrumentedQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+    private final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong depth;
+    private final Meter enqueued;
+
+    public InstrumentedQueue(AtomicLong depth, Meter enqueued) {
+      this.depth = depth;
+      this.enqueued = enqueued;
+    }
+
+    @Override
+    public void enqueue(ActorRef receiver, Envelope handle) {
+      queue.offer(handle);
+      depth.incrementAndGet();
+      enqueued.mark();
+    }
+
+    @Override
+    public Envelope dequeue() {
+      Envelope handle = queue.poll();
+      if (handle != null) {
+        depth.decrementAndGet();
+      }
+      return handle;
+    }
+
+    @Override
+    public int numberOfMessages() {
+      return queue.size();
+    }
+
+    @Override
+    public boolean hasMessages() {
+      return !queue.isEmpty();
+    }
+
+    @Override
+    public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+      Envelope handle;
+      while ((handle = dequeue()) != null) {
+        deadLetters.enqueue(owner, handle);
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka;
+
+import java.io.Closeable;
+
+import org.roda.core.data.exceptions.JobInErrorException;
+import org.roda.core.data.exceptions.JobIsStoppingException;
+
+/**
+ * Lazily produces the blocks of objects of a job. The job state actor pulls a
+ * new block only when a worker finishes one, keeping a bounded number of blocks
+ * in flight, so the memory used does not depend on the size of the job.
+ *
+ * Blocks are produced outside the job state actor, in the threads of the
+ * "job-blocks-dispatcher", but never by more than one thread at a time.
+ */
+public interface JobBlockProducer extends Closeable {
+
+  /**
+   * @param blockSize
+   *          max number of objects of the block
+   * @return the next block ready to be sent to the workers or null if there are
+   *         no more blocks
+   * @throws JobIsStoppingException
+   *           if the job is stopping (no more blocks will be produced)
+   * @throws JobInErrorException
+   *           if the job is in error (no more blocks will be produced)
+   * @throws Exception
+   *           if an error occurs while producing the block (the job fails)
+   */
+  Messages.PluginExecuteIsReady<?> next(int blockSize) throws JobIsStoppingException, JobInErrorException, Exception;
+
+  @Override
+  void close();
+
+}
@@ -127,6 +127,19 @@ public class Messages {
     }
   }
 
+  public static final class JobProgressPersist extends AbstractMessage {
+    private static final long serialVersionUID = 2381496510373617244L;
+
+    public JobProgressPersist() {
+      super();
+    }
+
+    @Override
+    public String toString() {
+      return "JobProgressPersist []";
+    }
+  }
+
   public static abstract class JobPartialUpdate extends AbstractMessage {
     private static final long serialVersionUID = 4722216970884172260L;
 
@@ -196,6 +209,65 @@ public class Messages {
     }
   }
 
+  public static final class JobBlocksAreReady extends AbstractMessage {
+    private static final long serialVersionUID = -3271547905482936310L;
+
+    // producers hold open iterators and are only used by the embedded
+    // orchestrator
+    private final transient JobBlockProducer producer;
+
+    public JobBlocksAreReady(JobBlockProducer producer) {
+      super();
+      this.producer = producer;
+    }
+
+    public JobBlockProducer getProducer() {
+      return producer;
+    }
+
+    @Override
+    public String toString() {
+      return "JobBlocksAreReady [producer=" + producer + "]";
+    }
+  }
+
+  public static final class JobBlockProduced extends AbstractMessage {
+    private static final long serialVersionUID = 2964735113476154361L;
+
+    // blocks are produced in background and handed back to the job state actor
+    private final transient JobBlockProducer producer;
+    private final transient PluginExecuteIsReady<?> block;
+    private final transient Throwable error;
+
+    public JobBlockProduced(JobBlockProducer producer, PluginExecuteIsReady<?> block, Throwable error) {
+      super();
+      this.producer = producer;
+      this.block = block;
+      this.error = error;
+    }
+
+    public JobBlockProducer getProducer() {
+      return producer;
+    }
+
+    /**
+     * @return the block produced or null if there are no more blocks (or an
+     *         error occurred)
+     */
+    public PluginExecuteIsReady<?> getBlock() {
+      return block;
+    }
+
+    public Throwable getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return "JobBlockProduced [producer=" + producer + ", block=" + block + ", error=" + error + "]";
+    }
+  }
+
   public static final class JobInitEnded extends AbstractMessage {
     private static final long serialVersionUID = 5040958276243865900L;
 
@@ -338,13 +410,47 @@ public class Messages {
   public static class PluginExecuteIsDone extends PluginMethodIsDone {
     private static final long serialVersionUID = -5136014936634139026L;
 
+    private int objectsCount;
+    private long durationInMillis;
+    private boolean indexingFailed;
+
     public PluginExecuteIsDone(Plugin<?> plugin, boolean withError) {
+      this(plugin, withError, 0, -1);
+    }
+
+    public PluginExecuteIsDone(Plugin<?> plugin, boolean withError, int objectsCount, long durationInMillis) {
+      this(plugin, withError, false, objectsCount, durationInMillis);
+    }
+
+    /**
+     * @param indexingFailed
+     *          if documents of the block could not be indexed
+     */
+    public PluginExecuteIsDone(Plugin<?> plugin, boolean withError, boolean indexingFailed, int objectsCount,
+      long durationInMillis) {
       super(plugin, withError);
+      this.indexingFailed = indexingFailed;
+      this.objectsCount = objectsCount;
+      this.durationInMillis = durationInMillis;
+    }
+
+    public int getObjectsCount() {
+      return objectsCount;
+    }
+
+    public long getDurationInMillis() {
+      return durationInMillis;
+    }
+
+    public boolean isIndexingFailed() {
+      return indexingFailed;
     }
 
     @Override
     public String toString() {
-      return "PluginExecuteIsDone [getPlugin()=" + getPlugin() + ", isWithError()=" + isWithError() + "]";
+      return "PluginExecuteIsDone [getPlugin()=" + getPlugin() + ", isWithError()=" + isWithError()
+        + ", indexingFailed=" + indexingFailed + ", objectsCount=" + objectsCount + ", durationInMillis="
+        + durationInMillis + "]";
     }
   }
 
@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+import akka.routing.OptimalSizeExploringResizer;
+import akka.routing.Routee;
+import scala.collection.immutable.IndexedSeq;
+
+/**
+ * Job workers pool resizer that grows or shrinks the pool based on the
+ * measured throughput (delegating to Akka's optimal size exploring resizer)
+ * but refuses to grow it while the machine is saturated, i.e. while the system
+ * load average per processor (which on Linux includes the processes waiting
+ * for IO) is above the configured maximum.
+ *
+ * Also keeps track of the current size of the pool, so that the job state actor
+ * can size its window of blocks in flight accordingly.
+ */
+public class SaturationAwareResizer implements OptimalSizeExploringResizer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SaturationAwareResizer.class);
+
+  private final OptimalSizeExploringResizer delegate;
+  private final double maxLoadPerProcessor;
+  private final OperatingSystemMXBean operatingSystem;
+  private final AtomicInteger poolSize;
+
+  private final Counter grown;
+  private final Counter shrunk;
+  private final Counter refused;
+  private final Histogram poolSizes;
+
+  public SaturationAwareResizer(OptimalSizeExploringResizer delegate, double maxLoadPerProcessor,
+    int initialPoolSize, MetricRegistry metrics) {
+    this.delegate = delegate;
+    this.maxLoadPerProcessor = maxLoadPerProcessor;
+    this.operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+    this.poolSize = new AtomicInteger(initialPoolSize);
+
+    MetricRegistry registry = metrics != null ? metrics : new MetricRegistry();
+    this.grown = registry.counter(MetricRegistry.name(SaturationAwareResizer.class, "grown"));
+    this.shrunk = registry.counter(MetricRegistry.name(SaturationAwareResizer.class, "shrunk"));
+    this.refused = registry.counter(MetricRegistry.name(SaturationAwareResizer.class, "refusedBySaturation"));
+    this.poolSizes = registry.histogram(MetricRegistry.name(SaturationAwareResizer.class, "poolSize"));
+  }
+
+  @Override
+  public boolean isTimeForResize(long messageCounter) {
+    return delegate.isTimeForResize(messageCounter);
+  }
+
+  @Override
+  public void reportMessageCount(IndexedSeq<Routee> currentRoutees, long messageCounter) {
+    delegate.reportMessageCount(currentRoutees, messageCounter);
+  }
+
+  @Override
+  public int resize(IndexedSeq<Routee> currentRoutees) {
+    int delta = delegate.resize(currentRoutees);
+    if (delta > 0 && isSaturated()) {
+      LOGGER.debug("Not adding {} job workers because the system is saturated", delta);
+      refused.inc();
+      delta = 0;
+    } else if (delta > 0) {
+      grown.inc();
+    } else if (delta < 0) {
+      shrunk.inc();
+    }
+
+    if (delta != 0) {
+      LOGGER.debug("Resizing job workers pool from {} to {}", currentRoutees.size(), currentRoutees.size() + delta);
+    }
+    poolSize.set(currentRoutees.size() + delta);
+    poolSizes.update(currentRoutees.size() + delta);
+    return delta;
+  }
+
+  /**
+   * @return the size of the pool after the last resize (or the initial size if
+   *         it was never resized)
+   */
+  public int getPoolSize() {
+    return poolSize.get();
+  }
+
+  private boolean isSaturated() {
+    double loadAverage = operatingSystem.getSystemLoadAverage();
+    // negative when not available (e.g. on Windows)
+    return loadAverage >= 0 && loadAverage / operatingSystem.getAvailableProcessors() > maxLoadPerProcessor;
+  }
+
+}
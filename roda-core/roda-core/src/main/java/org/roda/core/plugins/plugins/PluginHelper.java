@@ -324,8 +324,7 @@ public final class PluginHelper {
     report.addReport(reportItem);
 
     try {
-      Job job = model.retrieveJob(jobId);
-      model.createOrUpdateJobReport(report, job);
+      model.createOrUpdateJobReport(report);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error creating Job Report", e);
     }
@@ -335,10 +334,7 @@ public final class PluginHelper {
     AIPState newState) {
     try {
       String jobId = getJobId(plugin);
-      Report jobReport = model.retrieveJobReport(jobId, aipId, true);
-      jobReport.setOutcomeObjectState(newState);
-      Job job = model.retrieveJob(jobId);
-      model.createOrUpdateJobReport(jobReport, job);
+      model.updateJobReportOutcomeObjectState(jobId, IdUtils.getJobReportId(jobId, aipId), newState);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error while updating Job Report", e);
     }
@@ -346,34 +342,14 @@ public final class PluginHelper {
 
   public static <T extends IsRODAObject> void updatePartialJobReport(Plugin<T> plugin, ModelService model,
     Report reportItem, boolean replaceLastReportItemIfTheSame, Job cachedJob) {
-    String jobId = getJobId(plugin);
     try {
-      Report jobReport;
-      try {
-        jobReport = model.retrieveJobReport(jobId, reportItem.getOutcomeObjectId(), true);
-
-        if (!replaceLastReportItemIfTheSame) {
-          jobReport.addReport(reportItem);
-        } else {
-          List<Report> reportItems = jobReport.getReports();
-          Report report = reportItems.get(reportItems.size() - 1);
-          if (report.getPlugin().equalsIgnoreCase(reportItem.getPlugin())) {
-            reportItems.remove(reportItems.size() - 1);
-            jobReport.setStepsCompleted(jobReport.getStepsCompleted() - 1);
-            jobReport.addReport(reportItem);
-          }
-        }
-      } catch (NotFoundException e) {
-        jobReport = initPluginReportItem(plugin, reportItem.getOutcomeObjectId(), reportItem.getSourceObjectId())
-          .setSourceObjectClass(reportItem.getSourceObjectClass())
-          .setOutcomeObjectClass(reportItem.getOutcomeObjectClass());
+      Report baseReport = initPluginReportItem(plugin, reportItem.getOutcomeObjectId(), reportItem.getSourceObjectId())
+        .setSourceObjectClass(reportItem.getSourceObjectClass())
+        .setOutcomeObjectClass(reportItem.getOutcomeObjectClass());
+      baseReport.setId(reportItem.getId());
+      baseReport.setDateCreated(reportItem.getDateCreated());
 
-        jobReport.setId(reportItem.getId());
-        jobReport.setDateCreated(reportItem.getDateCreated());
-        jobReport.addReport(reportItem);
-      }
-
-      model.createOrUpdateJobReport(jobReport, cachedJob);
+      model.appendJobReportItem(baseReport, reportItem, replaceLastReportItemIfTheSame, cachedJob);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
       LOGGER.error("Error while updating Job Report", e);
     }
@@ -381,8 +357,7 @@ public final class PluginHelper {
 
   private static void updateJobReport(ModelService model, Report report) {
     try {
-      Job job = model.retrieveJob(report.getJobId());
-      model.createOrUpdateJobReport(report, job);
+      model.createOrUpdateJobReport(report);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error while updating Job Report", e);
     }
@@ -587,9 +562,10 @@ public final class PluginHelper {
 
       try {
         for (String ancestor : ancestors) {
-          Optional<String> computedAncestorId = getAncestorById(ancestor, parent, index, RodaConstants.INGEST_SIP_IDS);
+          Optional<String> computedAncestorId = getAncestorById(ancestor, parent, model, index,
+            RodaConstants.INGEST_SIP_IDS);
           if (!computedAncestorId.isPresent()) {
-            computedAncestorId = getAncestorById(ancestor, parent, index, RodaConstants.INDEX_UUID);
+            computedAncestorId = getAncestorById(ancestor, parent, model, index, RodaConstants.INDEX_UUID);
           }
 
           if (computedAncestorId.isPresent()) {
@@ -625,7 +601,7 @@ public final class PluginHelper {
   }
 
   private static Optional<String> getAncestorById(String ancestor, Optional<String> computedSearchScope,
-    IndexService index, String aipField) {
+    ModelService model, IndexService index, String aipField) {
     if (ancestor.equalsIgnoreCase(computedSearchScope.orElse(null))) {
       return computedSearchScope;
     }
@@ -634,10 +610,13 @@ public final class PluginHelper {
     Filter ancestorFilter = new Filter(new SimpleFilterParameter(aipField, ancestor));
     if (computedSearchScope.isPresent()) {
       try {
-        IndexedAIP computedParent = index.retrieve(IndexedAIP.class, computedSearchScope.get(),
-          Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_ANCESTORS));
-        ancestorFilter.add(new SimpleFilterParameter(RodaConstants.AIP_ANCESTORS, computedParent.getId()));
-      } catch (NotFoundException | GenericException e) {
+        // the ancestry cache knows if the computed parent exists without
+        // querying the index
+        List<String> computedParentAncestry = index.getAncestryCache().getAncestors(computedSearchScope.get(), model);
+        if (!computedParentAncestry.isEmpty()) {
+          ancestorFilter.add(new SimpleFilterParameter(RodaConstants.AIP_ANCESTORS, computedSearchScope.get()));
+        }
+      } catch (RequestNotValidException | GenericException | AuthorizationDeniedException e) {
         // Do nothing
       }
     }
@@ -0,0 +1,550 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.characterization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.plugins.PluginException;
+import org.roda.core.util.Base64;
+import org.roda.core.util.CommandException;
+import org.roda.core.util.CommandUtility;
+import org.roda.core.util.ProcessExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Siegfried characterization runtime, shared by all job workers.
+ *
+ * The tool version (and signature file) is obtained once and cached.
+ * Identifications run on a bounded pool of workers, depending on the mode:
+ * <ul>
+ * <li>standalone: one sf process per identification, at most pool_size at the
+ * same time</li>
+ * <li>server: HTTP requests to an external Siegfried server, at most pool_size
+ * at the same time</li>
+ * <li>managed: pool_size long-lived local "sf -serve" processes started on
+ * demand (and restarted if they die)</li>
+ * </ul>
+ * In all modes the JSON output is streamed and handed over file by file.
+ */
+public class SiegfriedRuntime {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SiegfriedRuntime.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final int CONNECT_TIMEOUT_IN_MILLIS = 10000;
+  private static final long DEFAULT_STARTUP_TIMEOUT_IN_MILLIS = 10000L;
+  private static final int DEFAULT_READ_TIMEOUT_IN_MILLIS = 600000;
+  private static final int MAX_MANAGED_START_ATTEMPTS = 5;
+
+  // ports of the running managed servers, so that two of them never get the
+  // same port
+  private static final Set<Integer> MANAGED_PORTS = new HashSet<>();
+
+  private static SiegfriedRuntime instance = null;
+
+  public enum Mode {
+    STANDALONE, SERVER, MANAGED
+  }
+
+  private final Mode mode;
+  private final String binary;
+  private final long startupTimeoutInMillis;
+  private final int readTimeoutInMillis;
+
+  // standalone mode
+  private final Semaphore processPermits;
+  // server & managed modes
+  private final BlockingQueue<Worker> workers;
+  private final List<Worker> allWorkers = new ArrayList<>();
+
+  private String version = null;
+  private volatile boolean versionRetrieved = false;
+
+  public static synchronized SiegfriedRuntime getInstance() {
+    if (instance == null) {
+      instance = new SiegfriedRuntime();
+    }
+    return instance;
+  }
+
+  public static synchronized void shutdownInstance() {
+    if (instance != null) {
+      instance.shutdown();
+      instance = null;
+    }
+  }
+
+  private SiegfriedRuntime() {
+    String modeValue = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", "siegfried", "mode");
+    if ("server".equalsIgnoreCase(modeValue)) {
+      mode = Mode.SERVER;
+    } else if ("managed".equalsIgnoreCase(modeValue)) {
+      mode = Mode.MANAGED;
+    } else {
+      mode = Mode.STANDALONE;
+    }
+
+    binary = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", "siegfried", "binary");
+    startupTimeoutInMillis = RodaCoreFactory.getRodaConfiguration()
+      .getLong("core.tools.siegfried.managed.startup_timeout_ms", DEFAULT_STARTUP_TIMEOUT_IN_MILLIS);
+    readTimeoutInMillis = RodaCoreFactory.getRodaConfiguration().getInt("core.tools.siegfried.read_timeout_ms",
+      DEFAULT_READ_TIMEOUT_IN_MILLIS);
+    int poolSize = Math.max(1, RodaCoreFactory.getRodaConfigurationAsInt(
+      Runtime.getRuntime().availableProcessors(), "core", "tools", "siegfried", "pool_size"));
+
+    processPermits = new Semaphore(poolSize, true);
+    workers = new ArrayBlockingQueue<>(poolSize, true);
+    String server = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", "siegfried", "server");
+    for (int i = 0; i < poolSize; i++) {
+      Worker worker = new Worker(mode == Mode.SERVER ? server : null);
+      allWorkers.add(worker);
+      workers.add(worker);
+    }
+
+    LOGGER.info("Siegfried runtime started in {} mode with a pool of {}", mode, poolSize);
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * @return the version of Siegfried and of its signature file (e.g.
+   *         "1.7.8 w/ DROID_SignatureFile_V93"), obtained only once, or null
+   *         if it could not be obtained (which is not retried either, e.g. if
+   *         the tool is not installed)
+   */
+  public String getVersion() {
+    if (!versionRetrieved) {
+      synchronized (this) {
+        if (!versionRetrieved) {
+          version = retrieveVersion();
+          versionRetrieved = true;
+        }
+      }
+    }
+    return version;
+  }
+
+  private String retrieveVersion() {
+    try {
+      List<String> command = new ArrayList<>(Arrays.asList(binary, "--version"));
+      String siegfriedOutput = CommandUtility.execute(command);
+      StringBuilder result = new StringBuilder("");
+
+      if (siegfriedOutput.contains("\n")) {
+        result.append(siegfriedOutput.split("\\n")[0].split(" ")[1]);
+      }
+
+      if (siegfriedOutput.contains("DROID_SignatureFile_")) {
+        result.append(" w/ ");
+
+        Pattern pattern = Pattern.compile("DROID_SignatureFile_V[0-9]+");
+        Matcher matcher = pattern.matcher(siegfriedOutput);
+        if (matcher.find()) {
+          result.append(matcher.group(0));
+        }
+      }
+
+      return result.toString();
+    } catch (CommandException ce) {
+      LOGGER.error("Error getting Siegfried version: " + ce.getMessage(), ce);
+    }
+    return null;
+  }
+
+  /**
+   * Identifies all files under a path. The returned iterable streams the
+   * elements of the "files" JSON array and holds one worker of the pool until
+   * it is closed, so it must always be closed.
+   *
+   * Errors while reading the output are thrown as {@link UncheckedIOException}
+   * during the iteration.
+   */
+  public CloseableIterable<JsonNode> identify(Path path) throws PluginException {
+    try {
+      if (mode == Mode.STANDALONE) {
+        return identifyWithProcess(path);
+      } else {
+        return identifyWithServer(path);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PluginException("Interrupted while waiting for Siegfried", e);
+    }
+  }
+
+  private CloseableIterable<JsonNode> identifyWithProcess(Path path) throws InterruptedException, PluginException {
+    processPermits.acquire();
+    ProcessExecutor.Permit executorPermit = null;
+    Process process = null;
+    try {
+      // also counts towards the limits of the shared process executor
+      executorPermit = CommandUtility.getProcessExecutor().acquire(ProcessExecutor.getTool(Arrays.asList(binary)));
+      ProcessExecutor.Permit startedPermit = executorPermit;
+      LOGGER.debug("Running Siegfried on standalone mode");
+      ProcessBuilder processBuilder = new ProcessBuilder(binary, "-json=true", "-z=false",
+        path.toFile().getAbsolutePath());
+      processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+      Process startedProcess = processBuilder.start();
+      process = startedProcess;
+      return new FilesIterable(startedProcess.getInputStream(), () -> {
+        if (startedProcess.isAlive()) {
+          startedProcess.destroy();
+        }
+        startedPermit.close();
+        processPermits.release();
+      }, () -> {
+        try {
+          int exitValue = startedProcess.waitFor();
+          if (exitValue != 0) {
+            throw new UncheckedIOException(
+              new IOException("Siegfried terminated with error code " + exitValue + " on " + path));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new UncheckedIOException(new IOException("Interrupted while waiting for Siegfried", e));
+        }
+      });
+    } catch (IOException | InterruptedException e) {
+      if (process != null) {
+        process.destroy();
+      }
+      if (executorPermit != null) {
+        executorPermit.close();
+      }
+      processPermits.release();
+      if (e instanceof InterruptedException) {
+        throw (InterruptedException) e;
+      }
+      throw new PluginException("Error while executing Siegfried: " + e.getMessage(), e);
+    }
+  }
+
+  private CloseableIterable<JsonNode> identifyWithServer(Path path) throws InterruptedException, PluginException {
+    Worker worker = workers.take();
+    HttpURLConnection connection = null;
+    try {
+      LOGGER.debug("Running Siegfried on {} mode", mode);
+      String endpoint = String.format("%s/identify/%s?base64=true&format=json", worker.getEndpoint(),
+        new String(Base64.encode(path.toString().getBytes())));
+      connection = (HttpURLConnection) new URL(endpoint).openConnection();
+      connection.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLIS);
+      // a hung server must not hold the worker (and the job) forever
+      connection.setReadTimeout(readTimeoutInMillis);
+      int responseCode = connection.getResponseCode();
+      if (responseCode != 200) {
+        throw new IOException("Unable to connect to server, response code: " + responseCode);
+      }
+
+      HttpURLConnection openConnection = connection;
+      return new FilesIterable(connection.getInputStream(), () -> {
+        openConnection.disconnect();
+        workers.add(worker);
+      }, null);
+    } catch (IOException e) {
+      if (connection != null) {
+        connection.disconnect();
+      }
+      worker.failed();
+      workers.add(worker);
+      throw new PluginException("Error while executing Siegfried: " + e.getMessage(), e);
+    }
+  }
+
+  public void shutdown() {
+    for (Worker worker : allWorkers) {
+      worker.stop();
+    }
+  }
+
+  /**
+   * One slot of the pool: an external server or a managed "sf -serve" process
+   */
+  private class Worker {
+    private final String externalEndpoint;
+    private Process process = null;
+    private String endpoint = null;
+    private int port = -1;
+
+    public Worker(String externalEndpoint) {
+      this.externalEndpoint = externalEndpoint;
+    }
+
+    public synchronized String getEndpoint() throws IOException {
+      if (externalEndpoint != null) {
+        return externalEndpoint;
+      }
+
+      if (process == null || !process.isAlive()) {
+        start();
+      }
+      return endpoint;
+    }
+
+    private void start() throws IOException {
+      stop();
+      // the free port is only known to be free until it is closed, so another
+      // process may take it before sf binds it (and then sf exits)
+      IOException lastError = null;
+      for (int attempt = 1; attempt <= MAX_MANAGED_START_ATTEMPTS; attempt++) {
+        try {
+          start(reservePort());
+          return;
+        } catch (ManagedServerExitedException e) {
+          LOGGER.warn("Managed Siegfried server exited while starting (attempt {} of {})", attempt,
+            MAX_MANAGED_START_ATTEMPTS);
+          lastError = e;
+        }
+      }
+      throw lastError;
+    }
+
+    private void start(int port) throws IOException {
+      String address = "localhost:" + port;
+      LOGGER.info("Starting managed Siegfried server on {}", address);
+      ProcessBuilder processBuilder = new ProcessBuilder(binary, "-serve", address);
+      processBuilder.redirectErrorStream(true);
+      processBuilder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+      this.port = port;
+      try {
+        process = processBuilder.start();
+      } catch (IOException e) {
+        stop();
+        throw e;
+      }
+
+      long deadline = System.currentTimeMillis() + startupTimeoutInMillis;
+      while (true) {
+        try (Socket socket = new Socket()) {
+          socket.connect(new InetSocketAddress("localhost", port), CONNECT_TIMEOUT_IN_MILLIS);
+          // someone else may be listening on the port if sf failed to bind it
+          if (!process.isAlive()) {
+            stop();
+            throw new ManagedServerExitedException("Managed Siegfried server exited while starting on " + address);
+          }
+          break;
+        } catch (ManagedServerExitedException e) {
+          throw e;
+        } catch (IOException e) {
+          if (!process.isAlive()) {
+            stop();
+            throw new ManagedServerExitedException("Managed Siegfried server exited while starting on " + address);
+          }
+          if (System.currentTimeMillis() > deadline) {
+            stop();
+            throw new IOException("Managed Siegfried server did not start on " + address, e);
+          }
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            stop();
+            throw new IOException("Interrupted while starting managed Siegfried server", ie);
+          }
+        }
+      }
+      endpoint = "http://" + address;
+    }
+
+    /**
+     * Restarts managed servers on the next request
+     */
+    public void failed() {
+      if (externalEndpoint == null) {
+        stop();
+      }
+    }
+
+    public synchronized void stop() {
+      if (process != null) {
+        process.destroy();
+        try {
+          if (!process.waitFor(5, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          process.destroyForcibly();
+        }
+        process = null;
+        endpoint = null;
+      }
+      if (port != -1) {
+        releasePort(port);
+        port = -1;
+      }
+    }
+  }
+
+  /**
+   * @return a free local port that is not used by any other managed server
+   */
+  private static int reservePort() throws IOException {
+    synchronized (MANAGED_PORTS) {
+      while (true) {
+        try (ServerSocket socket = new ServerSocket(0)) {
+          int port = socket.getLocalPort();
+          if (MANAGED_PORTS.add(port)) {
+            return port;
+          }
+        }
+      }
+    }
+  }
+
+  private static void releasePort(int port) {
+    synchronized (MANAGED_PORTS) {
+      MANAGED_PORTS.remove(port);
+    }
+  }
+
+  private static class ManagedServerExitedException extends IOException {
+    private static final long serialVersionUID = -4018337402766593262L;
+
+    public ManagedServerExitedException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Streams the elements of the "files" array of the Siegfried JSON output
+   */
+  static class FilesIterable implements CloseableIterable<JsonNode> {
+    private final InputStream inputStream;
+    private final Closeable onClose;
+    private final Runnable onEnd;
+    private JsonParser parser = null;
+    private boolean closed = false;
+
+    FilesIterable(InputStream inputStream, Closeable onClose, Runnable onEnd) {
+      this.inputStream = inputStream;
+      this.onClose = onClose;
+      this.onEnd = onEnd;
+    }
+
+    @Override
+    public Iterator<JsonNode> iterator() {
+      return new Iterator<JsonNode>() {
+        private JsonNode next = null;
+        private boolean ended = false;
+
+        @Override
+        public boolean hasNext() {
+          if (next == null && !ended) {
+            try {
+              next = readNext();
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            if (next == null) {
+              ended = true;
+              if (onEnd != null) {
+                onEnd.run();
+              }
+            }
+          }
+          return next != null;
+        }
+
+        @Override
+        public JsonNode next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          JsonNode ret = next;
+          next = null;
+          return ret;
+        }
+      };
+    }
+
+    private JsonNode readNext() throws IOException {
+      if (closed) {
+        return null;
+      }
+
+      if (parser == null) {
+        parser = MAPPER.getFactory().createParser(inputStream);
+        if (!moveToFiles()) {
+          return null;
+        }
+      }
+
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_OBJECT) {
+        return MAPPER.readTree(parser);
+      }
+      return null;
+    }
+
+    private boolean moveToFiles() throws IOException {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return false;
+      }
+
+      JsonToken token;
+      while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        token = parser.nextToken();
+        if ("files".equals(field) && token == JsonToken.START_ARRAY) {
+          return true;
+        }
+        parser.skipChildren();
+      }
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        try {
+          if (parser != null) {
+            parser.close();
+          }
+          IOUtils.closeQuietly(inputStream);
+        } finally {
+          onClose.close();
+        }
+      }
+    }
+  }
+
+}
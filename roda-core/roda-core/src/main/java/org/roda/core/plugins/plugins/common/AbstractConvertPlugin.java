@@ -18,7 +18,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.xmlbeans.XmlException;
 import org.roda.core.RodaCoreFactory;
@@ -61,6 +60,7 @@ import org.roda.core.plugins.PluginException;
 import org.roda.core.plugins.orchestrate.SimpleJobPluginInfo;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.plugins.plugins.characterization.PremisSkeletonPluginUtils;
+import org.roda.core.plugins.plugins.common.ConversionPipeline.Conversion;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.ContentPayload;
 import org.roda.core.storage.DirectResourceAccess;
@@ -74,6 +74,8 @@ import org.slf4j.LoggerFactory;
 public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends AbstractAIPComponentsPlugin<T> {
   private static final Logger LOGGER = LoggerFactory.getLogger(AbstractConvertPlugin.class);
 
+  private static final int DEFAULT_SCRATCH_MIN_FREE_MB = 1024;
+
   private String inputFormat;
   private String outputFormat;
   private boolean ignoreFiles = true;
@@ -260,118 +262,98 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
           reportItem.setOutcomeObjectClass(DIP.class.getName());
         }
 
-        try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(),
-          representation.getId(), true)) {
+        try {
           LOGGER.debug("Processing representation {}", representation);
+          List<File> files = listFiles(model, aip.getId(), representation.getId());
+          Map<String, IndexedFile> indexedFiles = retrieveIndexedFiles(index, files);
+          List<Conversion> conversions = new ArrayList<>();
 
-          for (OptionalWithCause<File> oFile : allFiles) {
-            if (oFile.isPresent()) {
-              File file = oFile.get();
-              LOGGER.debug("Processing file {}", file);
-
-              if (!file.isDirectory()) {
-                IndexedFile ifile = index.retrieve(IndexedFile.class, IdUtils.getFileId(file),
-                  RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN);
-                String fileMimetype = ifile.getFileFormat().getMimeType();
-                String filePronom = ifile.getFileFormat().getPronom();
-                String fileFormat = ifile.getId().substring(ifile.getId().lastIndexOf('.') + 1, ifile.getId().length());
-                List<String> applicableTo = getApplicableTo();
-                List<String> convertableTo = getConvertableTo();
-                Map<String, List<String>> pronomToExtension = getPronomToExtension();
-                Map<String, List<String>> mimetypeToExtension = getMimetypeToExtension();
-
-                if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo,
-                  pronomToExtension, mimetypeToExtension)) {
-
-                  fileFormat = getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo, pronomToExtension,
-                    mimetypeToExtension);
-
-                  StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
-                  DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath);
-
-                  LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
-                  try {
-                    Path pluginResult = Files.createTempFile(getWorkingDirectory(), "converted",
-                      "." + getOutputFormat());
-                    String result = executePlugin(directAccess.getPath(), pluginResult, fileFormat);
-
-                    String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
-                    ContentPayload payload = new FSPathContentPayload(pluginResult);
-
-                    if (createDIP) {
-                      FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
-                        file.getId());
-                      List<FileLink> links = new ArrayList<>();
-                      links.add(fileLink);
-
-                      DIP dip = new DIP();
-                      dip.setId(IdUtils.createUUID());
-                      dip.setFileIds(links);
-                      dip.setPermissions(aip.getPermissions());
-                      dip.setTitle(dipTitle);
-                      dip.setDescription(dipDescription);
-                      dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
-                      dip = model.createDIP(dip, true);
-                      newRepresentationID = dip.getId();
-
-                      DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
-                        directAccess.getPath().toFile().length(), payload, notify);
-                      newDIPFiles.add(f);
-                    } else {
-                      // create a new representation if it does not exist
-                      if (!newRepresentations.contains(newRepresentationID)) {
-                        LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aip.getId());
-                        boolean original = false;
-                        newRepresentations.add(newRepresentationID);
-                        String newRepresentationType = representation.getType();
-
-                        if (StringUtils.isNotBlank(representationType)) {
-                          newRepresentationType = representationType;
-                        }
-
-                        model.createRepresentation(aip.getId(), newRepresentationID, original, newRepresentationType,
-                          notify, job.getUsername());
-                        reportItem.setOutcomeObjectId(
-                          IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
-                      }
-
-                      File f = model.createFile(aip.getId(), newRepresentationID, file.getPath(), newFileId, payload,
-                        notify);
-                      newFiles.add(f);
-                    }
+          for (File file : files) {
+            LOGGER.debug("Processing file {}", file);
+            String fileFormat = getConversionFileFormat(getIndexedFile(indexedFiles, file));
 
-                    alteredFiles.add(file);
-                    IOUtils.closeQuietly(directAccess);
+            if (fileFormat != null) {
+              conversions.add(new Conversion(file, fileFormat));
+            } else {
+              unchangedFiles.add(file);
 
-                    Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
-                      AIPState.ACTIVE);
-                    fileReportItem.setPluginState(pluginResultState).setPluginDetails(result);
-                    reportItem.addReport(fileReportItem);
+              if (ignoreFiles) {
+                validationReport.addIssue(new ValidationIssue(ModelUtils.getFileStoragePath(file).toString()));
+              } else {
+                pluginResultState = PluginState.FAILURE;
+                reportState = pluginResultState;
+                hasUnacceptedFormatFiles = true;
+              }
+            }
+          }
 
-                  } catch (CommandException e) {
-                    pluginResultState = PluginState.PARTIAL_SUCCESS;
-                    reportState = pluginResultState;
-                    reportItem.setPluginState(pluginResultState)
-                      .addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
+          try (ConversionPipeline pipeline = newConversionPipeline(storage, conversions)) {
+            for (Conversion conversion = pipeline.next(); conversion != null; conversion = pipeline.next()) {
+              File file = conversion.getFile();
+
+              if (conversion.getError() == null) {
+                String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
+                ContentPayload payload = new FSPathContentPayload(conversion.getOutput());
+
+                if (createDIP) {
+                  FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
+                    file.getId());
+                  List<FileLink> links = new ArrayList<>();
+                  links.add(fileLink);
+
+                  DIP dip = new DIP();
+                  dip.setId(IdUtils.createUUID());
+                  dip.setFileIds(links);
+                  dip.setPermissions(aip.getPermissions());
+                  dip.setTitle(dipTitle);
+                  dip.setDescription(dipDescription);
+                  dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
+                  dip = model.createDIP(dip, true);
+                  newRepresentationID = dip.getId();
+
+                  DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
+                    conversion.getSourceSize(), payload, notify);
+                  newDIPFiles.add(f);
+                } else {
+                  // create a new representation if it does not exist
+                  if (!newRepresentations.contains(newRepresentationID)) {
+                    LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aip.getId());
+                    boolean original = false;
+                    newRepresentations.add(newRepresentationID);
+                    String newRepresentationType = representation.getType();
 
-                    LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}", fileFormat,
-                      outputFormat, file.getId(), representation.getId(), aip.getId());
-                  }
+                    if (StringUtils.isNotBlank(representationType)) {
+                      newRepresentationType = representationType;
+                    }
 
-                } else {
-                  unchangedFiles.add(file);
-
-                  if (ignoreFiles) {
-                    validationReport.addIssue(new ValidationIssue(ModelUtils.getFileStoragePath(file).toString()));
-                  } else {
-                    pluginResultState = PluginState.FAILURE;
-                    reportState = pluginResultState;
-                    hasUnacceptedFormatFiles = true;
+                    model.createRepresentation(aip.getId(), newRepresentationID, original, newRepresentationType,
+                      notify, job.getUsername());
+                    reportItem.setOutcomeObjectId(
+                      IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
                   }
+
+                  File f = model.createFile(aip.getId(), newRepresentationID, file.getPath(), newFileId, payload,
+                    notify);
+                  newFiles.add(f);
                 }
+
+                alteredFiles.add(file);
+
+                Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
+                  AIPState.ACTIVE);
+                fileReportItem.setPluginState(pluginResultState).setPluginDetails(conversion.getResult());
+                reportItem.addReport(fileReportItem);
+
+              } else {
+                CommandException e = conversion.getError();
+                pluginResultState = PluginState.PARTIAL_SUCCESS;
+                reportState = pluginResultState;
+                reportItem.setPluginState(pluginResultState)
+                  .addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
+
+                LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}",
+                  conversion.getFileFormat(), outputFormat, file.getId(), representation.getId(), aip.getId());
               }
-            } else {
-              LOGGER.error("Cannot process AIP representation file", oFile.getCause());
             }
           }
 
@@ -458,117 +440,101 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
       ValidationReport validationReport = new ValidationReport();
       boolean hasNonPdfFiles = false;
 
-      try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(representation.getAipId(),
-        representation.getId(), true)) {
+      try {
         LOGGER.debug("Processing representation {}", representation);
+        List<File> files = listFiles(model, representation.getAipId(), representation.getId());
+        Map<String, IndexedFile> indexedFiles = retrieveIndexedFiles(index, files);
+        List<Conversion> conversions = new ArrayList<>();
 
-        for (OptionalWithCause<File> oFile : allFiles) {
-          if (oFile.isPresent()) {
-            File file = oFile.get();
-            LOGGER.debug("Processing file {}", file);
-
-            if (!file.isDirectory()) {
-              IndexedFile ifile = index.retrieve(IndexedFile.class, IdUtils.getFileId(file),
-                RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN);
-              String fileMimetype = ifile.getFileFormat().getMimeType();
-              String filePronom = ifile.getFileFormat().getPronom();
-              String fileFormat = ifile.getId().substring(ifile.getId().lastIndexOf('.') + 1);
-              List<String> applicableTo = getApplicableTo();
-              List<String> convertableTo = getConvertableTo();
-              Map<String, List<String>> pronomToExtension = getPronomToExtension();
-              Map<String, List<String>> mimetypeToExtension = getMimetypeToExtension();
-
-              if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo, pronomToExtension,
-                mimetypeToExtension)) {
+        for (File file : files) {
+          LOGGER.debug("Processing file {}", file);
+          String fileFormat = getConversionFileFormat(getIndexedFile(indexedFiles, file));
 
-                fileFormat = getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo, pronomToExtension,
-                  mimetypeToExtension);
-
-                StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
-                DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath);
+          if (fileFormat != null) {
+            conversions.add(new Conversion(file, fileFormat));
+          } else {
+            unchangedFiles.add(file);
 
-                LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
-                try {
-                  Path pluginResult = Files.createTempFile(getWorkingDirectory(), "converted", "." + getOutputFormat());
-                  String result = executePlugin(directAccess.getPath(), pluginResult, fileFormat);
-                  ContentPayload payload = new FSPathContentPayload(pluginResult);
+            if (ignoreFiles) {
+              validationReport.addIssue(new ValidationIssue(file.getId()));
+            } else {
+              reportState = PluginState.FAILURE;
+              hasNonPdfFiles = true;
+            }
+          }
+        }
 
-                  if (!newRepresentations.contains(newRepresentationID)) {
-                    LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aipId);
-                    boolean original = false;
-                    newRepresentations.add(newRepresentationID);
+        try (ConversionPipeline pipeline = newConversionPipeline(storage, conversions)) {
+          for (Conversion conversion = pipeline.next(); conversion != null; conversion = pipeline.next()) {
+            File file = conversion.getFile();
+
+            if (conversion.getError() == null) {
+              ContentPayload payload = new FSPathContentPayload(conversion.getOutput());
+
+              if (!newRepresentations.contains(newRepresentationID)) {
+                LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aipId);
+                boolean original = false;
+                newRepresentations.add(newRepresentationID);
+
+                if (createDIP) {
+                  FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
+                    file.getId());
+                  List<FileLink> links = new ArrayList<>();
+                  links.add(fileLink);
+
+                  AIP aip = model.retrieveAIP(aipId);
+
+                  DIP dip = new DIP();
+                  dip.setId(IdUtils.createUUID());
+                  dip.setFileIds(links);
+                  dip.setPermissions(aip.getPermissions());
+                  dip.setTitle(dipTitle);
+                  dip.setDescription(dipDescription);
+                  dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
+                  dip = model.createDIP(dip, true);
+                  newRepresentationID = dip.getId();
+                } else {
+                  // INFO will be a parameter
+                  String newRepresentationType = RodaConstants.REPRESENTATION_TYPE_MIXED;
 
-                    if (createDIP) {
-                      FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
-                        file.getId());
-                      List<FileLink> links = new ArrayList<>();
-                      links.add(fileLink);
-
-                      AIP aip = model.retrieveAIP(aipId);
-
-                      DIP dip = new DIP();
-                      dip.setId(IdUtils.createUUID());
-                      dip.setFileIds(links);
-                      dip.setPermissions(aip.getPermissions());
-                      dip.setTitle(dipTitle);
-                      dip.setDescription(dipDescription);
-                      dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
-                      dip = model.createDIP(dip, true);
-                      newRepresentationID = dip.getId();
-                    } else {
-                      // INFO will be a parameter
-                      String newRepresentationType = RodaConstants.REPRESENTATION_TYPE_MIXED;
-
-                      if (StringUtils.isNotBlank(representationType)) {
-                        newRepresentationType = representationType;
-                      }
-
-                      model.createRepresentation(aipId, newRepresentationID, original, newRepresentationType, notify,
-                        job.getUsername());
-                      reportItem.setOutcomeObjectId(
-                        IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
-                    }
+                  if (StringUtils.isNotBlank(representationType)) {
+                    newRepresentationType = representationType;
                   }
 
-                  String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
-                  if (createDIP) {
-                    DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
-                      directAccess.getPath().toFile().length(), payload, notify);
-                    newDIPFiles.add(f);
-                  } else {
-                    File newFile = model.createFile(aipId, newRepresentationID, file.getPath(), newFileId, payload,
-                      notify);
-                    newFiles.add(newFile);
-                  }
+                  model.createRepresentation(aipId, newRepresentationID, original, newRepresentationType, notify,
+                    job.getUsername());
+                  reportItem.setOutcomeObjectId(
+                    IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
+                }
+              }
 
-                  alteredFiles.add(file);
-                  IOUtils.closeQuietly(directAccess);
+              String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
+              if (createDIP) {
+                DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
+                  conversion.getSourceSize(), payload, notify);
+                newDIPFiles.add(f);
+              } else {
+                File newFile = model.createFile(aipId, newRepresentationID, file.getPath(), newFileId, payload,
+                  notify);
+                newFiles.add(newFile);
+              }
 
-                  Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
-                    AIPState.ACTIVE);
-                  fileReportItem.setPluginState(PluginState.SUCCESS).setPluginDetails(result);
-                  reportItem.addReport(fileReportItem);
+              alteredFiles.add(file);
 
-                } catch (CommandException e) {
-                  reportState = PluginState.PARTIAL_SUCCESS;
-                  reportItem.setPluginState(reportState).addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
+              Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
+                AIPState.ACTIVE);
+              fileReportItem.setPluginState(PluginState.SUCCESS).setPluginDetails(conversion.getResult());
+              reportItem.addReport(fileReportItem);
 
-                  LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}", fileFormat,
-                    outputFormat, file.getId(), representation.getId(), representation.getAipId());
-                }
-              } else {
-                unchangedFiles.add(file);
+            } else {
+              CommandException e = conversion.getError();
+              reportState = PluginState.PARTIAL_SUCCESS;
+              reportItem.setPluginState(reportState).addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
 
-                if (ignoreFiles) {
-                  validationReport.addIssue(new ValidationIssue(file.getId()));
-                } else {
-                  reportState = PluginState.FAILURE;
-                  hasNonPdfFiles = true;
-                }
-              }
+              LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}",
+                conversion.getFileFormat(), outputFormat, file.getId(), representation.getId(),
+                representation.getAipId());
             }
-          } else {
-            LOGGER.error("Cannot process AIP representation file", oFile.getCause());
           }
         }
 
@@ -795,9 +761,98 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
     return report;
   }
 
+  /**
+   * Converts a file. When converting representations or AIPs, it is called
+   * concurrently for the files of a representation (see
+   * {@link #getConversionThreads()}).
+   */
   public abstract String executePlugin(Path inputPath, Path outputPath, String fileFormat)
     throws UnsupportedOperationException, IOException, CommandException;
 
+  /**
+   * @return the number of files of a representation converted at the same
+   *         time (1 unless configured otherwise), plugins whose conversion is
+   *         not thread safe should always return 1
+   */
+  protected int getConversionThreads() {
+    return RodaCoreFactory.getRodaConfigurationAsInt(1, "core", "tools", "convert", "allplugins", "threads");
+  }
+
+  private ConversionPipeline newConversionPipeline(StorageService storage, List<Conversion> conversions)
+    throws IOException {
+    String scratchDirectory = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", "convert", "allplugins",
+      "scratch_directory");
+    Path scratchBaseDirectory = StringUtils.isNotBlank(scratchDirectory) ? Paths.get(scratchDirectory)
+      : getWorkingDirectory();
+    long minFreeSpace = RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_SCRATCH_MIN_FREE_MB, "core", "tools",
+      "convert", "allplugins", "scratch_min_free_mb") * 1024L * 1024L;
+    return new ConversionPipeline(this, storage, conversions, getConversionThreads(), scratchBaseDirectory,
+      minFreeSpace);
+  }
+
+  private List<File> listFiles(ModelService model, String aipId, String representationId)
+    throws NotFoundException, GenericException, RequestNotValidException, AuthorizationDeniedException, IOException {
+    List<File> files = new ArrayList<>();
+    try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aipId, representationId, true)) {
+      for (OptionalWithCause<File> oFile : allFiles) {
+        if (oFile.isPresent()) {
+          if (!oFile.get().isDirectory()) {
+            files.add(oFile.get());
+          }
+        } else {
+          LOGGER.error("Cannot process AIP representation file", oFile.getCause());
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Retrieves the formats of the files with a single (batched) index request
+   * instead of one request per file.
+   */
+  private Map<String, IndexedFile> retrieveIndexedFiles(IndexService index, List<File> files)
+    throws NotFoundException, GenericException {
+    Map<String, IndexedFile> indexedFiles = new HashMap<>();
+    if (!files.isEmpty()) {
+      List<String> fileIds = files.stream().map(IdUtils::getFileId).collect(Collectors.toList());
+      for (IndexedFile ifile : index.retrieve(IndexedFile.class, fileIds, RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN)) {
+        indexedFiles.put(ifile.getUUID(), ifile);
+      }
+    }
+    return indexedFiles;
+  }
+
+  private IndexedFile getIndexedFile(Map<String, IndexedFile> indexedFiles, File file) throws NotFoundException {
+    IndexedFile ifile = indexedFiles.get(IdUtils.getFileId(file));
+    if (ifile == null) {
+      throw new NotFoundException("Could not find file in index: " + IdUtils.getFileId(file));
+    }
+    return ifile;
+  }
+
+  /**
+   * @return the format of the file to give to the conversion, or null if the
+   *         file should not be converted
+   */
+  private String getConversionFileFormat(IndexedFile ifile) {
+    String fileMimetype = ifile.getFileFormat().getMimeType();
+    String filePronom = ifile.getFileFormat().getPronom();
+    String fileFormat = ifile.getId().substring(ifile.getId().lastIndexOf('.') + 1);
+    List<String> applicableTo = getApplicableTo();
+    List<String> convertableTo = getConvertableTo();
+    Map<String, List<String>> pronomToExtension = getPronomToExtension();
+    Map<String, List<String>> mimetypeToExtension = getMimetypeToExtension();
+
+    if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo, pronomToExtension,
+      mimetypeToExtension)) {
+      return getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo, pronomToExtension,
+        mimetypeToExtension);
+    } else {
+      return null;
+    }
+  }
+
   private void createPremisSkeletonOnRepresentation(ModelService model, String aipId, Representation representation)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
     ValidationException, IOException, XmlException {
@@ -890,11 +945,9 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
     String newRepresentationID, boolean notify) throws RequestNotValidException, GenericException, NotFoundException,
     AuthorizationDeniedException, UnsupportedOperationException, IOException, AlreadyExistsException {
     for (File f : unchangedFiles) {
+      // let the storage copy it, so the content may be shared with the original
       StoragePath fileStoragePath = ModelUtils.getFileStoragePath(f);
-      Binary binary = storage.getBinary(fileStoragePath);
-      Path uriPath = Paths.get(binary.getContent().getURI());
-      ContentPayload payload = new FSPathContentPayload(uriPath);
-      model.createFile(f.getAipId(), newRepresentationID, f.getPath(), f.getId(), payload, notify);
+      model.createFile(f.getAipId(), newRepresentationID, f.getPath(), f.getId(), storage, fileStoragePath, notify);
     }
   }
 
@@ -0,0 +1,259 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.CommandException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts the files of a representation concurrently, with a bounded number
+ * of conversions (and of converted files in the scratch directory) at a time,
+ * and hands the results over in the order of the files, so the new files,
+ * reports and PREMIS events are the same as the ones of a sequential
+ * conversion.
+ *
+ * Conversions only start if the scratch directory keeps the minimum free space
+ * after storing a converted file (estimated with the size of its source). The
+ * converted file of a conversion is removed when the next one is requested or
+ * when the pipeline is closed.
+ */
+class ConversionPipeline implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConversionPipeline.class);
+
+  private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
+  private final AbstractConvertPlugin<?> plugin;
+  private final StorageService storage;
+  private final Iterator<Conversion> pending;
+  private final Deque<Conversion> running = new ArrayDeque<>();
+  private final int maxRunning;
+  private final long minFreeSpace;
+  private final Path scratchDirectory;
+  private final FileStore scratchStore;
+  private final ExecutorService executor;
+  private Conversion waiting = null;
+  private Conversion last = null;
+
+  /**
+   * @param threads
+   *          number of files converted at the same time
+   * @param scratchBaseDirectory
+   *          where the converted files are written (in a new directory,
+   *          removed on close)
+   * @param minFreeSpace
+   *          bytes that must remain free in the scratch directory
+   */
+  ConversionPipeline(AbstractConvertPlugin<?> plugin, StorageService storage, List<Conversion> conversions,
+    int threads, Path scratchBaseDirectory, long minFreeSpace) throws IOException {
+    this.plugin = plugin;
+    this.storage = storage;
+    this.pending = conversions.iterator();
+    this.maxRunning = 2 * Math.max(1, threads);
+    this.minFreeSpace = minFreeSpace;
+
+    Files.createDirectories(scratchBaseDirectory);
+    this.scratchDirectory = Files.createTempDirectory(scratchBaseDirectory, "convert");
+    this.scratchStore = Files.getFileStore(scratchDirectory);
+    this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, conversions.size())), r -> {
+      Thread thread = new Thread(r, "convert-" + plugin.getClass().getSimpleName());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @return the next finished conversion (in the order given), or null if there
+   *         are no more conversions
+   */
+  Conversion next() throws GenericException, IOException {
+    removeOutput(last);
+    last = null;
+
+    while ((waiting != null || pending.hasNext()) && running.size() < maxRunning) {
+      if (waiting == null) {
+        waiting = pending.next();
+        waiting.sourceSize = getSourceSize(waiting);
+      }
+
+      if (!hasSpaceFor(waiting)) {
+        if (running.isEmpty()) {
+          throw new GenericException("Not enough free space in " + scratchDirectory + " to convert "
+            + waiting.getFile().getId() + " (" + waiting.sourceSize + " bytes)");
+        }
+        // hand over the running conversions first, which frees their space
+        break;
+      }
+
+      final Conversion conversion = waiting;
+      conversion.future = executor.submit(() -> {
+        convert(conversion);
+        return null;
+      });
+      running.addLast(conversion);
+      waiting = null;
+    }
+
+    if (running.isEmpty()) {
+      return null;
+    }
+
+    last = running.removeFirst();
+    waitFor(last);
+    return last;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOGGER.warn("Conversions still running after {} seconds in {}", TERMINATION_TIMEOUT_SECONDS, scratchDirectory);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    FSUtils.deletePathQuietly(scratchDirectory);
+  }
+
+  private void convert(Conversion conversion) throws RODAException, IOException {
+    StoragePath fileStoragePath = ModelUtils.getFileStoragePath(conversion.getFile());
+    try (DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath)) {
+      conversion.output = Files.createTempFile(scratchDirectory, "converted", "." + plugin.getOutputFormat());
+      LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", conversion.getFileFormat(), plugin.getOutputFormat(),
+        conversion.getFile().getId());
+      try {
+        conversion.result = plugin.executePlugin(directAccess.getPath(), conversion.output,
+          conversion.getFileFormat());
+      } catch (CommandException e) {
+        conversion.error = e;
+      }
+    }
+  }
+
+  private void waitFor(Conversion conversion) throws GenericException, IOException {
+    try {
+      conversion.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while converting " + conversion.getFile().getId(), e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new GenericException("Could not convert " + conversion.getFile().getId(), cause);
+      }
+    }
+  }
+
+  private long getSourceSize(Conversion conversion) throws GenericException {
+    try {
+      return storage.getBinary(ModelUtils.getFileStoragePath(conversion.getFile())).getSizeInBytes();
+    } catch (RODAException e) {
+      throw new GenericException("Could not get the size of " + conversion.getFile().getId(), e);
+    }
+  }
+
+  /**
+   * @return true if the scratch directory keeps the minimum free space after
+   *         the running conversions (and the given one) store their output
+   */
+  private boolean hasSpaceFor(Conversion conversion) throws IOException {
+    long needed = minFreeSpace + conversion.sourceSize;
+    for (Conversion runningConversion : running) {
+      if (!runningConversion.future.isDone()) {
+        needed += runningConversion.sourceSize;
+      }
+    }
+    return scratchStore.getUsableSpace() >= needed;
+  }
+
+  private void removeOutput(Conversion conversion) {
+    if (conversion != null && conversion.output != null) {
+      try {
+        Files.deleteIfExists(conversion.output);
+      } catch (IOException e) {
+        LOGGER.warn("Could not remove converted file {}", conversion.output, e);
+      }
+    }
+  }
+
+  /**
+   * A file to convert and, once converted, the result of its conversion.
+   */
+  static class Conversion {
+    private final File file;
+    private final String fileFormat;
+    private long sourceSize;
+    private Future<?> future;
+    private Path output;
+    private String result;
+    private CommandException error;
+
+    Conversion(File file, String fileFormat) {
+      this.file = file;
+      this.fileFormat = fileFormat;
+    }
+
+    File getFile() {
+      return file;
+    }
+
+    String getFileFormat() {
+      return fileFormat;
+    }
+
+    long getSourceSize() {
+      return sourceSize;
+    }
+
+    /**
+     * @return the converted file, valid until the next conversion is requested
+     */
+    Path getOutput() {
+      return output;
+    }
+
+    String getResult() {
+      return result;
+    }
+
+    /**
+     * @return the error of the conversion command, or null if it succeeded
+     */
+    CommandException getError() {
+      return error;
+    }
+  }
+}
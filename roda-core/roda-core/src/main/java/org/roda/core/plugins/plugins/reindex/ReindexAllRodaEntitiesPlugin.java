@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
 import org.roda.core.data.exceptions.NotFoundException;
@@ -136,6 +137,9 @@ public class ReindexAllRodaEntitiesPlugin extends AbstractPlugin<Void> {
 
     Map<String, String> pluginParameters = new HashMap<>();
     pluginParameters.put(RodaConstants.PLUGIN_PARAMS_CLEAR_INDEXES, "true");
+    // indexes are cleared only if they cannot be rebuilt in shadow indexes
+    pluginParameters.put(RodaConstants.PLUGIN_PARAMS_SHADOW_INDEXES,
+      Boolean.toString(RodaCoreFactory.getRodaConfiguration().getBoolean("core.index.shadow.reindex_all", false)));
     job.setPluginParameters(pluginParameters);
     job.setPluginType(PluginType.MISC);
     job.setUsername(username);
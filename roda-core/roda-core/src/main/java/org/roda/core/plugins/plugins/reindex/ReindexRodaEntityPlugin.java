@@ -23,10 +23,13 @@ import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.LiteOptionalWithCause;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.index.select.SelectedItems;
 import org.roda.core.data.v2.index.select.SelectedItemsAll;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.jobs.IndexedReport;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.PluginParameter;
 import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
@@ -51,6 +54,7 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
   private static final Logger LOGGER = LoggerFactory.getLogger(ReindexRodaEntityPlugin.class);
   private boolean clearIndexes = false;
   private boolean optimizeIndexes = false;
+  private boolean shadowIndexes = false;
 
   private static Map<String, PluginParameter> pluginParameters = new HashMap<>();
   static {
@@ -61,6 +65,11 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
     pluginParameters.put(RodaConstants.PLUGIN_PARAMS_OPTIMIZE_INDEXES,
       new PluginParameter(RodaConstants.PLUGIN_PARAMS_OPTIMIZE_INDEXES, "Optimize indexes", PluginParameterType.BOOLEAN,
         "true", false, false, "Optimize indexes after reindexing them."));
+
+    pluginParameters.put(RodaConstants.PLUGIN_PARAMS_SHADOW_INDEXES,
+      new PluginParameter(RodaConstants.PLUGIN_PARAMS_SHADOW_INDEXES, "Rebuild in shadow indexes",
+        PluginParameterType.BOOLEAN, "false", false, false,
+        "Rebuild the indexes into new indexes that replace them at the end, keeping them available meanwhile."));
   }
 
   @Override
@@ -91,6 +100,7 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
     ArrayList<PluginParameter> parameters = new ArrayList<>();
     parameters.add(pluginParameters.get(RodaConstants.PLUGIN_PARAMS_CLEAR_INDEXES));
     parameters.add(pluginParameters.get(RodaConstants.PLUGIN_PARAMS_OPTIMIZE_INDEXES));
+    parameters.add(pluginParameters.get(RodaConstants.PLUGIN_PARAMS_SHADOW_INDEXES));
     return parameters;
   }
 
@@ -104,6 +114,10 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
     if (parameters != null && parameters.containsKey(RodaConstants.PLUGIN_PARAMS_OPTIMIZE_INDEXES)) {
       optimizeIndexes = Boolean.parseBoolean(parameters.get(RodaConstants.PLUGIN_PARAMS_OPTIMIZE_INDEXES));
     }
+
+    if (parameters != null && parameters.containsKey(RodaConstants.PLUGIN_PARAMS_SHADOW_INDEXES)) {
+      shadowIndexes = Boolean.parseBoolean(parameters.get(RodaConstants.PLUGIN_PARAMS_SHADOW_INDEXES));
+    }
   }
 
   @Override
@@ -161,23 +175,34 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
   @Override
   public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage)
     throws PluginException {
-    if (clearIndexes) {
-      LOGGER.debug("Clearing indexes");
-      try {
-        Job job = PluginHelper.getJob(this, index);
-        if (job.getSourceObjects() instanceof SelectedItemsAll) {
-          Class selectedClass = Class.forName(job.getSourceObjects().getSelectedClass());
+    try {
+      Job job = PluginHelper.getJob(this, index);
+      if (job.getSourceObjects() instanceof SelectedItemsAll) {
+        Class selectedClass = Class.forName(job.getSourceObjects().getSelectedClass());
+
+        boolean shadowed = false;
+        if (shadowIndexes && index.isShadowIndexSupported()) {
+          LOGGER.debug("Creating shadow indexes");
+          try {
+            index.createShadowIndexes(SolrUtils.getIndexName(selectedClass));
+            shadowed = true;
+          } catch (GenericException e) {
+            LOGGER.error("Could not create shadow indexes, reindexing the live indexes", e);
+          }
+        }
+
+        if (!shadowed && clearIndexes) {
+          LOGGER.debug("Clearing indexes");
           index.clearIndexes(SolrUtils.getIndexName(selectedClass));
           if (selectedClass.equals(AIP.class) || selectedClass.equals(IndexedAIP.class)) {
             index.clearAIPEventIndex();
           }
+        } else if (!shadowed) {
+          LOGGER.debug("Skipping clear indexes");
         }
-      } catch (GenericException | NotFoundException | ClassNotFoundException | RequestNotValidException e) {
-        throw new PluginException("Error clearing index", e);
       }
-
-    } else {
-      LOGGER.debug("Skipping clear indexes");
+    } catch (GenericException | NotFoundException | ClassNotFoundException | RequestNotValidException e) {
+      throw new PluginException("Error clearing index", e);
     }
 
     return new Report();
@@ -185,6 +210,29 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
 
   @Override
   public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) throws PluginException {
+    if (shadowIndexes && index.isShadowIndexSupported()) {
+      List<String> indexNames = new ArrayList<>();
+      try {
+        Job job = PluginHelper.getJob(this, index);
+        Class selectedClass = Class.forName(job.getSourceObjects().getSelectedClass());
+        indexNames = SolrUtils.getIndexName(selectedClass);
+
+        long failures = countFailures(index, job);
+        if (failures > 0) {
+          // the shadow indexes are missing the objects that failed
+          index.abortShadowIndexes(indexNames);
+          throw new PluginException(
+            "Indexes were not replaced with shadow indexes because " + failures + " objects failed to be reindexed");
+        }
+
+        LOGGER.debug("Replacing indexes with shadow indexes");
+        index.swapShadowIndexes(indexNames);
+      } catch (GenericException | NotFoundException | ClassNotFoundException | RequestNotValidException e) {
+        index.abortShadowIndexes(indexNames);
+        throw new PluginException("Error replacing indexes with shadow indexes", e);
+      }
+    }
+
     LOGGER.debug("Optimizing indexes");
     if (optimizeIndexes) {
       try {
@@ -199,6 +247,16 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
     return new Report();
   }
 
+  private long countFailures(IndexService index, Job job) throws GenericException, RequestNotValidException {
+    // the job reports were flushed to the index before this, the job stats may
+    // not be updated yet
+    index.commit(IndexedReport.class);
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.JOB_REPORT_JOB_ID, job.getId()),
+      new SimpleFilterParameter(RodaConstants.JOB_REPORT_PLUGIN_STATE, PluginState.FAILURE.toString()));
+    long failedReports = index.count(IndexedReport.class, filter);
+    return Math.max(failedReports, job.getJobStats().getSourceObjectsProcessedWithFailure());
+  }
+
   public abstract void clearSpecificIndexes(IndexService index, List<String> ids)
     throws GenericException, RequestNotValidException;
 
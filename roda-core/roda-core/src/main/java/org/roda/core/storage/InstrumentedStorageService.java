@@ -0,0 +1,268 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage;
+
+import java.util.Map;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.StoragePath;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Storage service that records the time taken by each operation of another
+ * storage service in a timer named after the operation (e.g.
+ * {@code org.roda.core.storage.StorageService.createBinary}).
+ *
+ * Only the operation itself is timed, not the iteration over the returned
+ * iterables nor the reading of the returned binaries.
+ */
+public class InstrumentedStorageService implements StorageService {
+  private final StorageService storage;
+  private final MetricRegistry metrics;
+
+  public InstrumentedStorageService(StorageService storage, MetricRegistry metrics) {
+    this.storage = storage;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the storage service whose operations are timed
+   */
+  public StorageService getStorageService() {
+    return storage;
+  }
+
+  private Timer.Context time(String operation) {
+    return metrics.timer(MetricRegistry.name(StorageService.class, operation)).time();
+  }
+
+  @Override
+  public CloseableIterable<Container> listContainers()
+    throws GenericException, AuthorizationDeniedException, RequestNotValidException, NotFoundException {
+    try (Timer.Context context = time("listContainers")) {
+      return storage.listContainers();
+    }
+  }
+
+  @Override
+  public Container createContainer(StoragePath storagePath)
+    throws GenericException, AlreadyExistsException, AuthorizationDeniedException, RequestNotValidException {
+    try (Timer.Context context = time("createContainer")) {
+      return storage.createContainer(storagePath);
+    }
+  }
+
+  @Override
+  public Container getContainer(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    try (Timer.Context context = time("getContainer")) {
+      return storage.getContainer(storagePath);
+    }
+  }
+
+  @Override
+  public void deleteContainer(StoragePath storagePath)
+    throws NotFoundException, GenericException, AuthorizationDeniedException {
+    try (Timer.Context context = time("deleteContainer")) {
+      storage.deleteContainer(storagePath);
+    }
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    try (Timer.Context context = time("listResourcesUnderContainer")) {
+      return storage.listResourcesUnderContainer(storagePath, recursive);
+    }
+  }
+
+  @Override
+  public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws AuthorizationDeniedException, RequestNotValidException, NotFoundException, GenericException {
+    try (Timer.Context context = time("countResourcesUnderContainer")) {
+      return storage.countResourcesUnderContainer(storagePath, recursive);
+    }
+  }
+
+  @Override
+  public Directory createDirectory(StoragePath storagePath)
+    throws AlreadyExistsException, GenericException, AuthorizationDeniedException {
+    try (Timer.Context context = time("createDirectory")) {
+      return storage.createDirectory(storagePath);
+    }
+  }
+
+  @Override
+  public Directory createRandomDirectory(StoragePath parentStoragePath) throws RequestNotValidException,
+    GenericException, NotFoundException, AlreadyExistsException, AuthorizationDeniedException {
+    try (Timer.Context context = time("createRandomDirectory")) {
+      return storage.createRandomDirectory(parentStoragePath);
+    }
+  }
+
+  @Override
+  public Directory getDirectory(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
+    try (Timer.Context context = time("getDirectory")) {
+      return storage.getDirectory(storagePath);
+    }
+  }
+
+  @Override
+  public boolean hasDirectory(StoragePath storagePath) {
+    try (Timer.Context context = time("hasDirectory")) {
+      return storage.hasDirectory(storagePath);
+    }
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    try (Timer.Context context = time("listResourcesUnderDirectory")) {
+      return storage.listResourcesUnderDirectory(storagePath, recursive);
+    }
+  }
+
+  @Override
+  public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    try (Timer.Context context = time("countResourcesUnderDirectory")) {
+      return storage.countResourcesUnderDirectory(storagePath, recursive);
+    }
+  }
+
+  @Override
+  public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
+    throws GenericException, AlreadyExistsException, RequestNotValidException, AuthorizationDeniedException,
+    NotFoundException {
+    try (Timer.Context context = time("createBinary")) {
+      return storage.createBinary(storagePath, payload, asReference);
+    }
+  }
+
+  @Override
+  public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    try (Timer.Context context = time("createRandomBinary")) {
+      return storage.createRandomBinary(parentStoragePath, payload, asReference);
+    }
+  }
+
+  @Override
+  public Binary getBinary(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    try (Timer.Context context = time("getBinary")) {
+      return storage.getBinary(storagePath);
+    }
+  }
+
+  @Override
+  public boolean hasBinary(StoragePath storagePath) {
+    try (Timer.Context context = time("hasBinary")) {
+      return storage.hasBinary(storagePath);
+    }
+  }
+
+  @Override
+  public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+    boolean createIfNotExists)
+    throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
+    try (Timer.Context context = time("updateBinaryContent")) {
+      return storage.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    }
+  }
+
+  @Override
+  public void deleteResource(StoragePath storagePath)
+    throws NotFoundException, GenericException, AuthorizationDeniedException {
+    try (Timer.Context context = time("deleteResource")) {
+      storage.deleteResource(storagePath);
+    }
+  }
+
+  @Override
+  public Class<? extends Entity> getEntity(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    try (Timer.Context context = time("getEntity")) {
+      return storage.getEntity(storagePath);
+    }
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    try (Timer.Context context = time("copy")) {
+      storage.copy(StorageServiceUtils.unwrap(fromService), fromStoragePath, toStoragePath);
+    }
+  }
+
+  @Override
+  public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    try (Timer.Context context = time("move")) {
+      storage.move(StorageServiceUtils.unwrap(fromService), fromStoragePath, toStoragePath);
+    }
+  }
+
+  @Override
+  public DirectResourceAccess getDirectAccess(StoragePath storagePath) {
+    try (Timer.Context context = time("getDirectAccess")) {
+      return storage.getDirectAccess(storagePath);
+    }
+  }
+
+  @Override
+  public CloseableIterable<BinaryVersion> listBinaryVersions(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    try (Timer.Context context = time("listBinaryVersions")) {
+      return storage.listBinaryVersions(storagePath);
+    }
+  }
+
+  @Override
+  public BinaryVersion getBinaryVersion(StoragePath storagePath, String version)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    try (Timer.Context context = time("getBinaryVersion")) {
+      return storage.getBinaryVersion(storagePath, version);
+    }
+  }
+
+  @Override
+  public BinaryVersion createBinaryVersion(StoragePath storagePath, Map<String, String> properties)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    try (Timer.Context context = time("createBinaryVersion")) {
+      return storage.createBinaryVersion(storagePath, properties);
+    }
+  }
+
+  @Override
+  public void revertBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, RequestNotValidException, GenericException {
+    try (Timer.Context context = time("revertBinaryVersion")) {
+      storage.revertBinaryVersion(storagePath, version);
+    }
+  }
+
+  @Override
+  public void deleteBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, GenericException, RequestNotValidException {
+    try (Timer.Context context = time("deleteBinaryVersion")) {
+      storage.deleteBinaryVersion(storagePath, version);
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.roda.core.data.utils.JsonUtils;
+
+/**
+ * Content payload of an object serialized as json, which is written directly
+ * to the destination (without creating an intermediate string).
+ */
+public class JsonObjectContentPayload implements ContentPayload {
+  private final Object object;
+  private final Class<?> mixin;
+
+  public JsonObjectContentPayload(Object object) {
+    this(object, null);
+  }
+
+  public JsonObjectContentPayload(Object object, Class<?> mixin) {
+    this.object = object;
+    this.mixin = mixin;
+  }
+
+  @Override
+  public InputStream createInputStream() throws IOException {
+    byte[] json = JsonUtils.getJsonBytesFromObject(object, mixin);
+    if (json == null) {
+      throw new IOException("Error transforming object '" + object + "' to json");
+    }
+    return new ByteArrayInputStream(json);
+  }
+
+  /**
+   * Streams the json to the path, which the storage already writes atomically
+   */
+  @Override
+  public void writeToPath(Path path) throws IOException {
+    try (OutputStream outputStream = Files.newOutputStream(path)) {
+      JsonUtils.writeObjectToStream(object, mixin, outputStream);
+    }
+  }
+
+  /**
+   * Not supported, as there is no file to point to (and a temporary one would
+   * never be deleted)
+   */
+  @Override
+  public URI getURI() throws IOException, UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String toString() {
+    return JsonUtils.getJsonFromObject(object, mixin);
+  }
+}
@@ -35,6 +35,24 @@ public final class StorageServiceUtils {
 
   }
 
+  /**
+   * Gets the storage service behind an instrumented storage service, so that
+   * storage services can recognize each other (e.g. to copy or move resources
+   * without going through the storage service API)
+   *
+   * @param storage
+   *          storage service
+   * @return the wrapped storage service or the given one if it does not wrap
+   *         another
+   */
+  public static StorageService unwrap(StorageService storage) {
+    StorageService ret = storage;
+    while (ret instanceof InstrumentedStorageService) {
+      ret = ((InstrumentedStorageService) ret).getStorageService();
+    }
+    return ret;
+  }
+
   /**
    * Move resources from a given storage service/storage path to another storage
    * service/storage path
@@ -487,8 +487,9 @@ public class FedoraStorageService implements StorageService {
 
     Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
 
-    if (fromService instanceof FedoraStorageService
-      && ((FedoraStorageService) fromService).getFedoraURL().equalsIgnoreCase(getFedoraURL())) {
+    StorageService sourceService = StorageServiceUtils.unwrap(fromService);
+    if (sourceService instanceof FedoraStorageService
+      && ((FedoraStorageService) sourceService).getFedoraURL().equalsIgnoreCase(getFedoraURL())) {
       copyInsideFedora(fromStoragePath, toStoragePath, rootEntity);
     } else {
       StorageServiceUtils.copyBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
@@ -529,8 +530,9 @@ public class FedoraStorageService implements StorageService {
 
     Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
 
-    if (fromService instanceof FedoraStorageService
-      && ((FedoraStorageService) fromService).getFedoraURL().equalsIgnoreCase(getFedoraURL())) {
+    StorageService sourceService = StorageServiceUtils.unwrap(fromService);
+    if (sourceService instanceof FedoraStorageService
+      && ((FedoraStorageService) sourceService).getFedoraURL().equalsIgnoreCase(getFedoraURL())) {
       moveInsideFedora(fromStoragePath, toStoragePath, rootEntity);
     } else {
       StorageServiceUtils.moveBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
@@ -0,0 +1,141 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of the file attributes (size, modification time, if it is a
+ * directory and if it references a blob) used by {@link FileStorageService} to
+ * build resources, so repeated accesses to the same binary do not stat it again.
+ *
+ * Entries are invalidated by the storage write methods. Entries also expire, as
+ * the storage may be changed by others (e.g. through direct access). Attributes
+ * read while an invalidation was happening are not cached.
+ *
+ * Changes made by other processes (e.g. other RODA instances sharing the
+ * storage) are only seen when the entries expire, so the cache is disabled by
+ * default and should only be enabled when the storage is not shared.
+ */
+public class FSAttributeCache {
+  public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+  public static final long DEFAULT_EXPIRE_SECONDS = 60;
+
+  private final Cache<Path, FSAttributes> cache;
+  private final AtomicLong generation = new AtomicLong();
+
+  public FSAttributeCache(long maximumSize, long expireSeconds) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+      .build();
+  }
+
+  /**
+   * @throws java.nio.file.NoSuchFileException
+   *           if there's nothing at the path (which is not cached)
+   */
+  public FSAttributes get(Path path) throws IOException {
+    FSAttributes attributes = cache.getIfPresent(path);
+    if (attributes == null) {
+      long startGeneration = generation.get();
+      attributes = FSAttributes.read(path);
+      cache.put(path, attributes);
+      if (generation.get() != startGeneration) {
+        // the path may have changed after it was read
+        cache.invalidate(path);
+      }
+    }
+    return attributes;
+  }
+
+  /**
+   * Invalidates the attributes of a file (or of a directory, but not of its
+   * descendants).
+   */
+  public void invalidate(Path path) {
+    generation.incrementAndGet();
+    cache.invalidate(path);
+  }
+
+  /**
+   * Invalidates the attributes of a path and of everything under it.
+   */
+  public void invalidateTree(Path path) {
+    generation.incrementAndGet();
+    cache.asMap().keySet().removeIf(cached -> cached.startsWith(path));
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * The attributes of a file or directory, read with a single stat when the
+   * file system supports the "unix" attribute view.
+   */
+  public static final class FSAttributes {
+    private static final String UNIX_ATTRIBUTES = "unix:isDirectory,size,lastModifiedTime,nlink,mode";
+
+    private final boolean directory;
+    private final long size;
+    private final FileTime lastModifiedTime;
+    private final boolean reference;
+
+    private FSAttributes(boolean directory, long size, FileTime lastModifiedTime, boolean reference) {
+      this.directory = directory;
+      this.size = size;
+      this.lastModifiedTime = lastModifiedTime;
+      this.reference = reference;
+    }
+
+    public static FSAttributes read(Path path) throws IOException {
+      try {
+        Map<String, Object> attributes = Files.readAttributes(path, UNIX_ATTRIBUTES);
+        return new FSAttributes((Boolean) attributes.get("isDirectory"), (Long) attributes.get("size"),
+          (FileTime) attributes.get("lastModifiedTime"),
+          FSBlobStore.isReference((Integer) attributes.get("nlink"), (Integer) attributes.get("mode")));
+      } catch (UnsupportedOperationException | IllegalArgumentException e) {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new FSAttributes(attributes.isDirectory(), attributes.size(), attributes.lastModifiedTime(), false);
+      }
+    }
+
+    public boolean isDirectory() {
+      return directory;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public FileTime getLastModifiedTime() {
+      return lastModifiedTime;
+    }
+
+    /**
+     * @see FSBlobStore#isReference(Path)
+     */
+    public boolean isReference() {
+      return reference;
+    }
+  }
+}
@@ -0,0 +1,341 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.utils.ContentDigester;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content addressed store of immutable blobs, used by
+ * {@link FileStorageService} to keep each content only once on disk.
+ *
+ * <p>
+ * Blobs are kept in {@code <blobs>/sha256/ab/cd/abcd...} (named by the SHA-256
+ * of their content) and the storage resources that reference them are hard
+ * links to the same inode, so the file system link count is the reference
+ * count, reads need no indirection and a resource keeps its content even if
+ * its blob is removed. Blobs (and therefore the resources that reference them)
+ * are made read-only: the storage service always replaces a resource with a
+ * new file instead of writing into it.
+ * </p>
+ *
+ * <p>
+ * A blob whose only link is its own entry in the store is garbage and is
+ * removed by {@link #collectGarbage()}. This is safe to run concurrently with
+ * writes: a writer that loses the race links the new resource to its own copy
+ * of the content and adds it again to the store.
+ * </p>
+ */
+public class FSBlobStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FSBlobStore.class);
+
+  private static final String BLOBS_FOLDER = "sha256";
+  private static final String TEMP_FOLDER = "tmp";
+  private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+  private static final int OWNER_WRITE_MODE = 0200;
+  private static final int MAX_LINK_ATTEMPTS = 3;
+  private static final long TEMP_FILE_MAX_AGE_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+  private static final Set<PosixFilePermission> READ_ONLY = Collections
+    .unmodifiableSet(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.GROUP_READ));
+
+  private final Path blobsPath;
+  private final Path tempPath;
+
+  public FSBlobStore(Path storePath) {
+    this.blobsPath = storePath.resolve(BLOBS_FOLDER);
+    this.tempPath = storePath.resolve(TEMP_FOLDER);
+  }
+
+  /**
+   * @return true if the file system of the given path supports hard links and
+   *         the link count attribute
+   */
+  public static boolean isSupported(Path path) {
+    try {
+      return Files.getFileStore(path).supportsFileAttributeView("unix");
+    } catch (IOException e) {
+      LOGGER.debug("Could not get the file store of {}", path, e);
+      return false;
+    }
+  }
+
+  /**
+   * Checks, with a probe file, that read-only files of the given directory
+   * cannot be written. The content shared by hard links is only protected by
+   * being read-only, which the superuser (e.g. RODA running as root) and some
+   * file systems ignore.
+   *
+   * @return true if a read-only file of the directory could not be opened for
+   *         writing
+   */
+  public static boolean isWriteProtectionEnforced(Path directory) {
+    Path probe = null;
+    try {
+      probe = Files.createTempFile(directory, ".write-protection", ".tmp");
+      Files.setPosixFilePermissions(probe, READ_ONLY);
+      try {
+        Files.newOutputStream(probe, StandardOpenOption.APPEND).close();
+        return false;
+      } catch (AccessDeniedException e) {
+        return true;
+      }
+    } catch (IOException | UnsupportedOperationException e) {
+      LOGGER.debug("Could not check if read-only files of {} can be written", directory, e);
+      return false;
+    } finally {
+      if (probe != null) {
+        FSUtils.deletePathQuietly(probe);
+      }
+    }
+  }
+
+  public Path getBlobPath(String sha256) {
+    return blobsPath.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+  }
+
+  /**
+   * @return the number of storage resources (and versions) that reference the
+   *         blob, or 0 if there's no such blob
+   */
+  public int getReferenceCount(String sha256) throws IOException {
+    try {
+      return getLinkCount(getBlobPath(sha256)) - 1;
+    } catch (NoSuchFileException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Writes the payload to the store (unless there's already a blob with the
+   * same content) and links the target to it.
+   *
+   * @return the SHA-256 of the content
+   */
+  public String link(ContentPayload payload, Path target, boolean replaceExisting) throws IOException {
+    Path temp = createTempFile();
+    try {
+      payload.writeToPath(temp);
+      FSUtils.fsync(temp);
+      return addAndLink(temp, target, replaceExisting);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Links the target to the blob with the content of the source file. A source
+   * that is already referenced by the store is linked directly, without
+   * reading it. Otherwise, when the source may be adopted (i.e. it's a file of
+   * the storage this store belongs to), it becomes the blob (and read-only),
+   * so its content is read once but never written again. Foreign sources are
+   * copied to the store only if their content is not already there.
+   *
+   * @return the SHA-256 of the content, or null if the source was already
+   *         referenced by the store
+   */
+  public String link(Path source, Path target, boolean adoptSource, boolean replaceExisting) throws IOException {
+    if (isReference(source)) {
+      createLink(source, target, replaceExisting);
+      return null;
+    }
+
+    if (adoptSource) {
+      return addAndLink(source, target, replaceExisting);
+    }
+
+    String sha256 = digest(source);
+    Path blob = getBlobPath(sha256);
+    try {
+      createLink(blob, target, replaceExisting);
+    } catch (NoSuchFileException e) {
+      Path temp = createTempFile();
+      try {
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        addAndLink(temp, sha256, target, replaceExisting);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+    return sha256;
+  }
+
+  /**
+   * Links every file under the source directory to the same relative path
+   * under the target, creating the needed directories.
+   */
+  public void linkTree(final Path source, final Path target, final boolean adoptSource) throws IOException {
+    Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(target.resolve(source.relativize(dir)));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        link(file, target.resolve(source.relativize(file)), adoptSource, false);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * @return true if the file is (very likely) linked to a blob: it's read-only
+   *         and has other links. Always false if the file system does not
+   *         support the link count attribute.
+   */
+  public static boolean isReference(Path file) throws IOException {
+    try {
+      Map<String, Object> attributes = Files.readAttributes(file, LINK_COUNT_ATTRIBUTE + ",mode");
+      return isReference((Integer) attributes.get("nlink"), (Integer) attributes.get("mode"));
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  static boolean isReference(int linkCount, int mode) {
+    return linkCount > 1 && (mode & OWNER_WRITE_MODE) == 0;
+  }
+
+  /**
+   * Removes the blobs that are no longer referenced and the temporary files
+   * left behind by interrupted writes.
+   *
+   * @return the number of bytes freed
+   */
+  public long collectGarbage() throws IOException {
+    final AtomicLong freed = new AtomicLong(0);
+    final AtomicLong removed = new AtomicLong(0);
+
+    if (Files.isDirectory(blobsPath)) {
+      Files.walkFileTree(blobsPath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          try {
+            if (getLinkCount(file) == 1) {
+              Files.delete(file);
+              freed.addAndGet(attrs.size());
+              removed.incrementAndGet();
+            }
+          } catch (NoSuchFileException e) {
+            // already removed
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+
+    if (Files.isDirectory(tempPath)) {
+      long now = System.currentTimeMillis();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempPath)) {
+        for (Path temp : stream) {
+          FileTime lastModified = Files.getLastModifiedTime(temp);
+          if (now - lastModified.toMillis() > TEMP_FILE_MAX_AGE_IN_MILLIS) {
+            freed.addAndGet(Files.size(temp));
+            Files.deleteIfExists(temp);
+          }
+        }
+      }
+    }
+
+    LOGGER.info("Removed {} unreferenced blobs from {}, {} bytes freed", removed.get(), blobsPath.getParent(),
+      freed.get());
+    return freed.get();
+  }
+
+  private String addAndLink(Path file, Path target, boolean replaceExisting) throws IOException {
+    String sha256 = digest(file);
+    addAndLink(file, sha256, target, replaceExisting);
+    return sha256;
+  }
+
+  private void addAndLink(Path file, String sha256, Path target, boolean replaceExisting) throws IOException {
+    Path blob = getBlobPath(sha256);
+    for (int attempt = 1;; attempt++) {
+      try {
+        createLink(blob, target, replaceExisting);
+        return;
+      } catch (NoSuchFileException e) {
+        // the blob does not exist (or has just been garbage collected)
+        if (attempt >= MAX_LINK_ATTEMPTS) {
+          throw e;
+        }
+        Files.createDirectories(blob.getParent());
+        Files.setPosixFilePermissions(file, READ_ONLY);
+        try {
+          Files.createLink(blob, file);
+        } catch (FileAlreadyExistsException e1) {
+          // concurrently added by someone else
+        }
+      }
+    }
+  }
+
+  private void createLink(Path existing, Path target, boolean replaceExisting) throws IOException {
+    if (!Files.exists(existing)) {
+      throw new NoSuchFileException(existing.toString());
+    }
+    Files.createDirectories(target.getParent());
+
+    if (replaceExisting) {
+      // link with a temporary name and atomically replace the target
+      Path tempTarget = target.resolveSibling(target.getFileName() + ".temp" + System.nanoTime());
+      try {
+        Files.createLink(tempTarget, existing);
+        Files.move(tempTarget, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tempTarget);
+      }
+    } else {
+      Files.createLink(target, existing);
+    }
+  }
+
+  private Path createTempFile() throws IOException {
+    Files.createDirectories(tempPath);
+    return Files.createFile(tempPath.resolve(IdUtils.createUUID()));
+  }
+
+  private static int getLinkCount(Path file) throws IOException {
+    return (Integer) Files.getAttribute(file, LINK_COUNT_ATTRIBUTE);
+  }
+
+  private static String digest(Path file) throws IOException {
+    try {
+      return ContentDigester.digest(file, Collections.singletonList(RodaConstants.SHA256)).get(RodaConstants.SHA256);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Could not compute the digest of " + file, e);
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.roda.core.util.CommandException;
+import org.roda.core.util.CommandUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies files using the cheapest strategy the file system supports:
+ *
+ * <ol>
+ * <li>a reflink (copy-on-write clone, e.g. on btrfs or xfs), made with
+ * {@code cp --reflink=always} as the JVM has no access to the FICLONE ioctl.
+ * Only tried for files big enough to pay for the process. Lack of support is
+ * remembered per file store, so file systems without reflinks are only probed
+ * once;</li>
+ * <li>a hard link, only if enabled and the source is immutable (i.e. read-only,
+ * like the content of the content addressed store), which is safe because the
+ * storage always replaces files instead of writing into them;</li>
+ * <li>a stream copy.</li>
+ * </ol>
+ *
+ * Reflinks and hard links are only tried if source and target are in the same
+ * file store, so copies across devices go directly to the stream copy.
+ */
+public class FSCopier {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FSCopier.class);
+
+  public enum Strategy {
+    REFLINK, HARDLINK, STREAM
+  }
+
+  public static final long DEFAULT_REFLINK_MIN_SIZE = 1048576L;
+  private static final int OWNER_WRITE_MODE = 0200;
+  // cp errors that mean that no file of the file store can be reflinked
+  private static final List<String> REFLINK_UNSUPPORTED_ERRORS = Arrays.asList("not supported",
+    "inappropriate ioctl", "cross-device", "unrecognized option", "invalid option", "illegal option");
+
+  /**
+   * Copier used by default: reflinks (when supported) or stream copies, which
+   * are always safe to give away (e.g. exports).
+   */
+  public static final FSCopier DEFAULT = new FSCopier(true, false);
+
+  private final boolean reflinks;
+  private final boolean hardlinks;
+  private final long reflinkMinSize;
+  private final Map<FileStore, Boolean> reflinkSupport;
+
+  public FSCopier(boolean reflinks, boolean hardlinks) {
+    this(reflinks, hardlinks, DEFAULT_REFLINK_MIN_SIZE);
+  }
+
+  public FSCopier(boolean reflinks, boolean hardlinks, long reflinkMinSize) {
+    this(reflinks && SystemUtils.IS_OS_LINUX, hardlinks, reflinkMinSize, new ConcurrentHashMap<>());
+  }
+
+  private FSCopier(boolean reflinks, boolean hardlinks, long reflinkMinSize, Map<FileStore, Boolean> reflinkSupport) {
+    this.reflinks = reflinks;
+    this.hardlinks = hardlinks;
+    this.reflinkMinSize = reflinkMinSize;
+    this.reflinkSupport = reflinkSupport;
+  }
+
+  /**
+   * @return true if read-only files may be copied as hard links
+   */
+  public boolean isHardlinks() {
+    return hardlinks;
+  }
+
+  /**
+   * @return a copier with the same settings (and knowledge of the file stores)
+   *         that never creates hard links
+   */
+  public FSCopier withoutHardlinks() {
+    if (!hardlinks) {
+      return this;
+    }
+    return new FSCopier(reflinks, false, reflinkMinSize, reflinkSupport);
+  }
+
+  /**
+   * Copies a file (not a directory).
+   *
+   * @return the strategy used to copy the file
+   */
+  public Strategy copy(Path source, Path target, boolean replaceExisting) throws IOException {
+    if (!replaceExisting && Files.exists(target)) {
+      throw new FileAlreadyExistsException(target.toString());
+    }
+
+    FileStore store = Files.getFileStore(source);
+    boolean sameStore = store.equals(Files.getFileStore(target.getParent()));
+
+    if (sameStore && reflinks && Files.size(source) >= reflinkMinSize
+      && reflinkSupport.getOrDefault(store, Boolean.TRUE) && reflink(source, target, replaceExisting, store)) {
+      return Strategy.REFLINK;
+    }
+
+    if (sameStore && hardlinks && isImmutable(source) && hardlink(source, target, replaceExisting)) {
+      return Strategy.HARDLINK;
+    }
+
+    if (replaceExisting) {
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      Files.copy(source, target);
+    }
+    return Strategy.STREAM;
+  }
+
+  /**
+   * @return true if the file store is known to support reflinks, false if it is
+   *         known not to support them and null if that is not known yet
+   */
+  public Boolean isReflinkSupported(FileStore store) {
+    return reflinkSupport.get(store);
+  }
+
+  /**
+   * @return true if the file is read-only for its owner, so its content is
+   *         never changed in place
+   */
+  public static boolean isImmutable(Path file) throws IOException {
+    try {
+      return ((Integer) Files.getAttribute(file, "unix:mode") & OWNER_WRITE_MODE) == 0;
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private boolean reflink(Path source, Path target, boolean replaceExisting, FileStore store) throws IOException {
+    // clone to a new file and move it into place, as cp would otherwise write
+    // into an existing target (which may be linked to other resources)
+    Path tempTarget = getTempSibling(target);
+    try {
+      CommandUtility.execute("cp", "--reflink=always", "-T", source.toString(), tempTarget.toString());
+      reflinkSupport.putIfAbsent(store, Boolean.TRUE);
+      moveIntoPlace(tempTarget, target, replaceExisting);
+      return true;
+    } catch (CommandException e) {
+      if (Thread.currentThread().isInterrupted()) {
+        InterruptedIOException interrupted = new InterruptedIOException("Interrupted while copying " + source);
+        interrupted.initCause(e);
+        throw interrupted;
+      }
+
+      // only failures that will happen again for any file of the file store
+      // are remembered, not the ones of this file (e.g. no space left)
+      if (isReflinkUnsupported(e) && reflinkSupport.put(store, Boolean.FALSE) == null) {
+        LOGGER.info("File store {} does not support reflinks, using other copy strategies", store);
+      }
+      LOGGER.debug("Could not reflink {}: {} {}", source, e.getMessage(), e.getOutput());
+      return false;
+    } finally {
+      Files.deleteIfExists(tempTarget);
+    }
+  }
+
+  /**
+   * @return true if the reflink failed because the file store (or cp) does not
+   *         support reflinks, e.g. EOPNOTSUPP, ENOTTY or EXDEV, as opposed to
+   *         failures of a single copy (e.g. ENOSPC or a source that vanished)
+   */
+  static boolean isReflinkUnsupported(CommandException e) {
+    if (e.getCause() instanceof InterruptedException) {
+      return false;
+    } else if (e.getCause() instanceof IOException) {
+      // cp could not be run
+      return true;
+    }
+
+    String error = (e.getMessage() + "\n" + StringUtils.defaultString(e.getOutput())).toLowerCase(Locale.ENGLISH);
+    for (String unsupported : REFLINK_UNSUPPORTED_ERRORS) {
+      if (error.contains(unsupported)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean hardlink(Path source, Path target, boolean replaceExisting) throws IOException {
+    Path tempTarget = getTempSibling(target);
+    try {
+      Files.createLink(tempTarget, source);
+      moveIntoPlace(tempTarget, target, replaceExisting);
+      return true;
+    } catch (FileAlreadyExistsException e) {
+      throw e;
+    } catch (FileSystemException | UnsupportedOperationException e) {
+      LOGGER.debug("Could not hard link {}", source, e);
+      return false;
+    } finally {
+      Files.deleteIfExists(tempTarget);
+    }
+  }
+
+  private static void moveIntoPlace(Path tempTarget, Path target, boolean replaceExisting) throws IOException {
+    if (replaceExisting) {
+      Files.move(tempTarget, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } else {
+      Files.move(tempTarget, target);
+    }
+  }
+
+  private static Path getTempSibling(Path target) {
+    return target.resolveSibling(target.getFileName() + ".temp" + System.nanoTime());
+  }
+}
@@ -12,7 +12,6 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 
 import org.roda.core.storage.ContentPayload;
 
@@ -36,7 +35,7 @@ public class FSPathContentPayload implements ContentPayload {
 
   @Override
   public void writeToPath(Path outPath) throws IOException {
-    Files.copy(path, outPath, StandardCopyOption.REPLACE_EXISTING);
+    FSCopier.DEFAULT.copy(path, outPath, true);
   }
 
   @Override
@@ -44,4 +43,8 @@ public class FSPathContentPayload implements ContentPayload {
     return path.toUri();
   }
 
+  public Path getPath() {
+    return path;
+  }
+
 }
@@ -9,7 +9,6 @@ package org.roda.core.storage.fs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryNotEmptyException;
@@ -22,10 +21,11 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -54,6 +54,8 @@ import org.roda.core.storage.DefaultContainer;
 import org.roda.core.storage.DefaultDirectory;
 import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.Resource;
+import org.roda.core.storage.fs.FSAttributeCache.FSAttributes;
+import org.roda.core.storage.utils.ContentDigester;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -109,6 +111,109 @@ public final class FSUtils {
     }
   }
 
+  /**
+   * Method that safely updates a file, given a content payload, by writing it
+   * to a temporary file next to the final location, flushing it to disk and
+   * then moving it into the final location (doing an atomic move). So, even if
+   * the write fails or the system crashes, the file has either its previous or
+   * its new content, never a partial one.
+   * 
+   * @param payload
+   *          the new content of the file
+   * @param toPath
+   *          location of the file being created or updated
+   * 
+   * @throws IOException
+   *           if an error occurs while writing/moving
+   */
+  public static void safeUpdate(ContentPayload payload, Path toPath) throws IOException {
+    safeUpdate(payload, toPath, null);
+  }
+
+  /**
+   * Same as {@link #safeUpdate(ContentPayload, Path)}, but the temporary file
+   * is written to the given directory, so a crash leaves it there instead of
+   * next to the final location. The directory must be in the same file system
+   * as the final location (so the file can be atomically moved).
+   * 
+   * @param payload
+   *          the new content of the file
+   * @param toPath
+   *          location of the file being created or updated
+   * @param tempDirectory
+   *          directory of the temporary file, or null to write it next to the
+   *          final location
+   * 
+   * @throws IOException
+   *           if an error occurs while writing/moving
+   */
+  public static void safeUpdate(ContentPayload payload, Path toPath, Path tempDirectory) throws IOException {
+    Path tempToPath;
+    if (tempDirectory == null) {
+      tempToPath = toPath.getParent().resolve(toPath.getFileName().toString() + ".temp" + System.nanoTime());
+    } else {
+      Files.createDirectories(tempDirectory);
+      tempToPath = tempDirectory.resolve(IdUtils.createUUID());
+    }
+
+    try {
+      payload.writeToPath(tempToPath);
+      fsync(tempToPath);
+      Files.move(tempToPath, toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempToPath);
+    }
+    fsyncDirectory(toPath.getParent());
+  }
+
+  /**
+   * Removes the files of a temporary directory (see
+   * {@link #safeUpdate(ContentPayload, Path, Path)}) not modified for the given
+   * time, i.e. left behind by writes that were interrupted.
+   * 
+   * @return the number of files removed
+   */
+  public static int deleteStaleTemporaryFiles(Path tempDirectory, long maxAgeInMillis) throws IOException {
+    int removed = 0;
+    if (Files.isDirectory(tempDirectory)) {
+      long now = System.currentTimeMillis();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempDirectory)) {
+        for (Path temp : stream) {
+          try {
+            if (now - Files.getLastModifiedTime(temp).toMillis() > maxAgeInMillis && Files.deleteIfExists(temp)) {
+              removed++;
+            }
+          } catch (NoSuchFileException e) {
+            // already moved into place or removed
+          }
+        }
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Flushes the content of a file to disk.
+   */
+  public static void fsync(Path path) throws IOException {
+    // a read channel is enough (and works with read-only files)
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Flushes a directory to disk, so the entries created, moved or removed in it
+   * are durable. Not all platforms allow it, so failures are only logged.
+   */
+  public static void fsyncDirectory(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      LOGGER.trace("Could not flush directory {}", path, e);
+    }
+  }
+
   /**
    * Moves a directory/file from one path to another
    * 
@@ -223,6 +328,27 @@ public final class FSUtils {
    */
   public static void copy(final Path sourcePath, final Path targetPath, boolean replaceExisting)
     throws AlreadyExistsException, GenericException {
+    copy(sourcePath, targetPath, replaceExisting, FSCopier.DEFAULT);
+  }
+
+  /**
+   * Copies a directory/file from one path to another, copying each file with
+   * the given copier (i.e. as a reflink or hard link when possible)
+   * 
+   * @param sourcePath
+   *          source path
+   * @param targetPath
+   *          target path
+   * @param replaceExisting
+   *          true if the target directory/file should be replaced if it already
+   *          exists; false otherwise
+   * @param copier
+   *          the copier used for each file
+   * @throws AlreadyExistsException
+   * @throws GenericException
+   */
+  public static void copy(final Path sourcePath, final Path targetPath, boolean replaceExisting,
+    final FSCopier copier) throws AlreadyExistsException, GenericException {
 
     // check if we can replace existing
     if (!replaceExisting && FSUtils.exists(targetPath)) {
@@ -249,7 +375,7 @@ public final class FSUtils {
 
           @Override
           public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-            Files.copy(file, targetPath.resolve(sourcePath.relativize(file)));
+            copier.copy(file, targetPath.resolve(sourcePath.relativize(file)), false);
             return FileVisitResult.CONTINUE;
           }
         });
@@ -258,10 +384,7 @@ public final class FSUtils {
       }
     } else {
       try {
-
-        CopyOption[] copyOptions = replaceExisting ? new CopyOption[] {StandardCopyOption.REPLACE_EXISTING}
-          : new CopyOption[] {};
-        Files.copy(sourcePath, targetPath, copyOptions);
+        copier.copy(sourcePath, targetPath, replaceExisting);
       } catch (IOException e) {
         throw new GenericException("Error while copying one file into another", e);
       }
@@ -615,30 +738,34 @@ public final class FSUtils {
    */
   public static Resource convertPathToResource(Path basePath, Path path)
     throws RequestNotValidException, NotFoundException, GenericException {
-    Resource resource;
-
-    // TODO support binary reference
-
-    if (!FSUtils.exists(path)) {
+    FSAttributes attributes;
+    try {
+      attributes = FSAttributes.read(path);
+    } catch (NoSuchFileException e) {
       throw new NotFoundException("Cannot find file or directory at " + path);
+    } catch (IOException e) {
+      throw new GenericException("Could not get file attributes", e);
     }
 
+    return convertPathToResource(basePath, path, attributes);
+  }
+
+  public static Resource convertPathToResource(Path basePath, Path path, FSAttributes attributes)
+    throws RequestNotValidException, GenericException {
+    Resource resource;
+
     // storage path
     StoragePath storagePath = FSUtils.getStoragePath(basePath, path);
 
     // construct
-    if (FSUtils.isDirectory(path)) {
+    if (attributes.isDirectory()) {
       resource = new DefaultDirectory(storagePath);
     } else {
       ContentPayload content = new FSPathContentPayload(path);
-      long sizeInBytes;
-      try {
-        sizeInBytes = Files.size(path);
-        Map<String, String> contentDigest = null;
-        resource = new DefaultBinary(storagePath, content, sizeInBytes, false, contentDigest);
-      } catch (IOException e) {
-        throw new GenericException("Could not get file size", e);
-      }
+      long sizeInBytes = attributes.getSize();
+      boolean isReference = attributes.isReference();
+      Map<String, String> contentDigest = null;
+      resource = new DefaultBinary(storagePath, content, sizeInBytes, isReference, contentDigest);
     }
     return resource;
   }
@@ -724,57 +851,24 @@ public final class FSUtils {
   }
 
   public static String computeContentDigest(Path path, String algorithm) throws GenericException {
-    try (FileChannel fc = FileChannel.open(path)) {
-      final int bufferSize = 1073741824;
-      final long size = fc.size();
-      final MessageDigest hash = MessageDigest.getInstance(algorithm);
-      long position = 0;
-      while (position < size) {
-        final MappedByteBuffer data = fc.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, bufferSize));
-        if (!data.isLoaded()) {
-          data.load();
-        }
-        hash.update(data);
-        position += data.limit();
-        if (position >= size) {
-          break;
-        }
-      }
-
-      byte[] mdbytes = hash.digest();
-      StringBuilder hexString = new StringBuilder();
-
-      for (int i = 0; i < mdbytes.length; i++) {
-        String hexInt = Integer.toHexString((0xFF & mdbytes[i]));
-        if (hexInt.length() == 1) {
-          hexString.append('0');
-        }
-        hexString.append(hexInt);
-      }
-
-      return hexString.toString();
-
-    } catch (NoSuchAlgorithmException | IOException e) {
-      throw new GenericException("Cannot compute content digest for " + path + " using algorithm " + algorithm);
-    }
+    return generateContentDigest(path, algorithm).get(algorithm);
   }
 
   /**
-   * Method for computing one or more file content digests (a.k.a. hash's)
+   * Method for computing one or more file content digests (a.k.a. hash's). The
+   * file is read only once, independently of the number of algorithms.
    * 
    * @param path
    *          file which digests will be computed
    * @throws GenericException
    */
   public static Map<String, String> generateContentDigest(Path path, String... algorithms) throws GenericException {
-    Map<String, String> digests = new HashMap<>();
-
-    for (String algorithm : algorithms) {
-      String digest = computeContentDigest(path, algorithm);
-      digests.put(algorithm, digest);
+    try {
+      return ContentDigester.digest(path, Arrays.asList(algorithms));
+    } catch (NoSuchAlgorithmException | IOException e) {
+      throw new GenericException(
+        "Cannot compute content digest for " + path + " using algorithms " + Arrays.toString(algorithms), e);
     }
-
-    return digests;
   }
 
   public static Path createDirectory(Path parent, String name) throws IOException {
@@ -13,10 +13,11 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
 import org.roda.core.common.iterables.CloseableIterable;
@@ -55,6 +56,23 @@ import org.slf4j.LoggerFactory;
  * delete methods would not effectively delete files/folders but instead move
  * them to a 'trash' folder with the same folder structure
  * </p>
+ * 
+ * <p>
+ * Binaries created as reference are kept only once on disk in a content
+ * addressed store (see {@link FSBlobStore}) next to the storage folder. With
+ * deduplication enabled, copies and binary versions also reference the same
+ * content instead of duplicating it.
+ * </p>
+ *
+ * <p>
+ * Binary content is always written to a temporary file, flushed to disk and
+ * atomically moved into place, so a failed write (or a crash) never leaves a
+ * partially written binary. Temporary files are written next to the binary
+ * or, for RODA's own storage, to a temporary folder in the same file system,
+ * whose stale files are removed when the storage service is created. The
+ * attributes of binaries and directories may be cached (see
+ * {@link FSAttributeCache}) and invalidated by the write methods.
+ * </p>
  *
  * @author Luis Faria <lfaria@keep.pt>
  * @author Hélder Silva <hsilva@keep.pt>
@@ -64,8 +82,11 @@ public class FileStorageService implements StorageService {
   private static final Logger LOGGER = LoggerFactory.getLogger(FileStorageService.class);
 
   public static final String HISTORY_SUFFIX = "-history";
+  public static final String BLOBS_SUFFIX = "-blobs";
+  public static final String TEMP_SUFFIX = "-tmp";
   private static final String HISTORY_DATA_FOLDER = "data";
   private static final String HISTORY_METADATA_FOLDER = "metadata";
+  private static final long TEMP_FILE_MAX_AGE_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
 
   private final Path rodaDataPath;
   private final Path basePath;
@@ -73,10 +94,70 @@ public class FileStorageService implements StorageService {
   private final Path historyDataPath;
   private final Path historyMetadataPath;
   private final Path trashPath;
+  private final Path tempPath;
+  private final FSBlobStore blobStore;
+  private final boolean deduplicate;
+  private final FSCopier copier;
+  private final FSCopier foreignCopier;
+  private final FSAttributeCache attributeCache;
 
   public FileStorageService(Path basePath, boolean createTrash, String trashDirName, boolean createHistory)
     throws GenericException {
+    this(basePath, createTrash, trashDirName, createHistory, false);
+  }
+
+  /**
+   * @param deduplicate
+   *          if copies and binary versions should reference the content of
+   *          their source instead of copying it (only if the file system
+   *          supports hard links and read-only files cannot be written, which
+   *          is not the case when running as root)
+   */
+  public FileStorageService(Path basePath, boolean createTrash, String trashDirName, boolean createHistory,
+    boolean deduplicate) throws GenericException {
+    this(basePath, createTrash, trashDirName, createHistory, deduplicate,
+      deduplicate ? new FSCopier(true, true) : FSCopier.DEFAULT);
+  }
+
+  /**
+   * @param copier
+   *          how files of this storage are copied (i.e. as reflinks or hard
+   *          links to read-only content, when the file system supports them).
+   *          Files of other storages are never hard linked, nor are any files
+   *          if read-only files can be written (e.g. when running as root),
+   *          which is only checked if hard links or deduplication are
+   *          requested.
+   */
+  public FileStorageService(Path basePath, boolean createTrash, String trashDirName, boolean createHistory,
+    boolean deduplicate, FSCopier copier) throws GenericException {
+    this(basePath, createTrash, trashDirName, createHistory, deduplicate, copier, null);
+  }
+
+  /**
+   * @param attributeCache
+   *          cache of the file attributes used to get binaries and
+   *          directories, or null to always read them from the file system.
+   *          Only changes made through this storage service invalidate it, so
+   *          it must not be used when the storage is shared (e.g. by several
+   *          RODA instances) or changed by other means.
+   */
+  public FileStorageService(Path basePath, boolean createTrash, String trashDirName, boolean createHistory,
+    boolean deduplicate, FSCopier copier, FSAttributeCache attributeCache) throws GenericException {
+    this(basePath, createTrash, trashDirName, createHistory, deduplicate, copier, attributeCache, null);
+  }
+
+  /**
+   * @param tempPath
+   *          folder, in the same file system as the storage, where binaries are
+   *          written before being moved into place (its stale files are
+   *          removed), or null to write them next to the binaries. Only RODA's
+   *          own storage should have one, as it is created next to the storage
+   *          folder (e.g. not in transferred resources or exports).
+   */
+  public FileStorageService(Path basePath, boolean createTrash, String trashDirName, boolean createHistory,
+    boolean deduplicate, FSCopier copier, FSAttributeCache attributeCache, Path tempPath) throws GenericException {
     this.basePath = basePath;
+    this.attributeCache = attributeCache;
     rodaDataPath = this.basePath.getParent();
     historyPath = rodaDataPath.resolve(basePath.getFileName() + HISTORY_SUFFIX);
     historyDataPath = historyPath.resolve(HISTORY_DATA_FOLDER);
@@ -84,6 +165,7 @@ public class FileStorageService implements StorageService {
     trashPath = rodaDataPath.resolve(trashDirName == null ? "trash" : trashDirName);
 
     initialize(basePath);
+    this.tempPath = tempPath == null ? null : initializeTemp(tempPath);
     if (createHistory) {
       initialize(historyPath);
       initialize(historyDataPath.resolve(RodaConstants.STORAGE_CONTAINER_AIP));
@@ -93,6 +175,26 @@ public class FileStorageService implements StorageService {
       initialize(trashPath);
     }
 
+    // hard links share content that is only protected by being read-only (the
+    // probe writes a file to the storage, so it only runs if needed)
+    boolean writeProtected = (deduplicate || copier.isHardlinks()) && FSBlobStore.isWriteProtectionEnforced(basePath);
+    this.copier = writeProtected ? copier : copier.withoutHardlinks();
+    this.foreignCopier = copier.withoutHardlinks();
+
+    if (FSBlobStore.isSupported(basePath)) {
+      blobStore = new FSBlobStore(rodaDataPath.resolve(basePath.getFileName() + BLOBS_SUFFIX));
+      this.deduplicate = deduplicate && writeProtected;
+      if (deduplicate && !writeProtected) {
+        LOGGER.warn("Deduplication disabled, read-only files of {} can be written (e.g. when running as root)",
+          basePath);
+      }
+    } else {
+      blobStore = null;
+      this.deduplicate = false;
+      if (deduplicate) {
+        LOGGER.warn("Deduplication is not supported by the file system of {}", basePath);
+      }
+    }
   }
 
   public FileStorageService(Path basePath, String trashDirName) throws GenericException {
@@ -103,6 +205,26 @@ public class FileStorageService implements StorageService {
     this(basePath, null);
   }
 
+  private Path initializeTemp(Path path) throws GenericException {
+    initialize(path);
+    try {
+      if (!Files.getFileStore(path).equals(Files.getFileStore(basePath))) {
+        // temporary files must be atomically moved into the storage
+        LOGGER.warn("{} is not in the file system of {}, temporary files will be written next to the binaries", path,
+          basePath);
+        return null;
+      }
+
+      int removed = FSUtils.deleteStaleTemporaryFiles(path, TEMP_FILE_MAX_AGE_IN_MILLIS);
+      if (removed > 0) {
+        LOGGER.info("Removed {} temporary files left behind by interrupted writes from {}", removed, path);
+      }
+    } catch (IOException e) {
+      throw new GenericException("Could not initialize temporary folder " + path, e);
+    }
+    return path;
+  }
+
   private void initialize(Path path) throws GenericException {
     if (!FSUtils.exists(path)) {
       try {
@@ -175,7 +297,11 @@ public class FileStorageService implements StorageService {
   @Override
   public void deleteContainer(StoragePath storagePath) throws NotFoundException, GenericException {
     Path containerPath = FSUtils.getEntityPath(basePath, storagePath);
-    trash(containerPath);
+    try {
+      trash(containerPath);
+    } finally {
+      invalidateTree(containerPath);
+    }
 
     // cleanup history
     deleteAllBinaryVersionsUnder(storagePath);
@@ -281,7 +407,7 @@ public class FileStorageService implements StorageService {
       throw new RequestNotValidException("Invalid storage path for a directory: " + storagePath);
     }
     Path directoryPath = FSUtils.getEntityPath(basePath, storagePath);
-    Resource resource = FSUtils.convertPathToResource(basePath, directoryPath);
+    Resource resource = getResource(directoryPath);
     if (resource instanceof Directory) {
       return (Directory) resource;
     } else {
@@ -316,7 +442,16 @@ public class FileStorageService implements StorageService {
   public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
     throws GenericException, AlreadyExistsException {
     if (asReference) {
-      throw new GenericException("Method not yet implemented");
+      Path binPath = FSUtils.getEntityPath(basePath, storagePath);
+      if (FSUtils.exists(binPath)) {
+        throw new AlreadyExistsException("Binary already exists: " + binPath);
+      }
+
+      try {
+        return createReference(storagePath, binPath, payload, false);
+      } catch (FileAlreadyExistsException e) {
+        throw new AlreadyExistsException("Binary already exists: " + binPath);
+      }
     } else {
       Path binPath = FSUtils.getEntityPath(basePath, storagePath);
       if (FSUtils.exists(binPath)) {
@@ -331,7 +466,7 @@ public class FileStorageService implements StorageService {
           }
 
           // writing file
-          payload.writeToPath(binPath);
+          FSUtils.safeUpdate(payload, binPath, tempPath);
           ContentPayload newPayload = new FSPathContentPayload(binPath);
           Long sizeInBytes = Files.size(binPath);
           boolean isReference = false;
@@ -342,6 +477,8 @@ public class FileStorageService implements StorageService {
           throw new AlreadyExistsException("Binary already exists: " + binPath);
         } catch (IOException e) {
           throw new GenericException("Could not create binary", e);
+        } finally {
+          invalidate(binPath);
         }
       }
     }
@@ -351,9 +488,17 @@ public class FileStorageService implements StorageService {
   public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
     throws GenericException, RequestNotValidException {
     if (asReference) {
-      throw new GenericException("Method not yet implemented");
+      Path parent = FSUtils.getEntityPath(basePath, parentStoragePath);
+      try {
+        Path binPath = parent.resolve(IdUtils.createUUID());
+        return createReference(FSUtils.getStoragePath(basePath, binPath), binPath, payload, false);
+      } catch (FileAlreadyExistsException e) {
+        throw new GenericException("Random binary id collided", e);
+      }
     } else {
       Path parent = FSUtils.getEntityPath(basePath, parentStoragePath);
+      Path binPath = null;
+      boolean written = false;
       try {
         // ensure parent exists
         if (!FSUtils.exists(parent)) {
@@ -361,10 +506,11 @@ public class FileStorageService implements StorageService {
         }
 
         // create file
-        Path binPath = FSUtils.createRandomFile(parent);
+        binPath = FSUtils.createRandomFile(parent);
 
         // writing file
-        payload.writeToPath(binPath);
+        FSUtils.safeUpdate(payload, binPath, tempPath);
+        written = true;
         StoragePath storagePath = FSUtils.getStoragePath(basePath, binPath);
         ContentPayload newPayload = new FSPathContentPayload(binPath);
         Long sizeInBytes = Files.size(binPath);
@@ -374,6 +520,11 @@ public class FileStorageService implements StorageService {
         return new DefaultBinary(storagePath, newPayload, sizeInBytes, isReference, contentDigest);
       } catch (IOException e) {
         throw new GenericException("Could not create binary", e);
+      } finally {
+        // do not leave an empty binary behind
+        if (binPath != null && !written) {
+          FSUtils.deletePathQuietly(binPath);
+        }
       }
     }
   }
@@ -381,26 +532,34 @@ public class FileStorageService implements StorageService {
   @Override
   public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
     boolean createIfNotExists) throws GenericException, NotFoundException, RequestNotValidException {
-    if (asReference) {
-      throw new GenericException("Method not yet implemented");
-    } else {
+    Path binaryPath = FSUtils.getEntityPath(basePath, storagePath);
+    boolean fileExists = FSUtils.exists(binaryPath);
 
-      Path binaryPath = FSUtils.getEntityPath(basePath, storagePath);
-      boolean fileExists = FSUtils.exists(binaryPath);
+    if (!fileExists && !createIfNotExists) {
+      throw new NotFoundException("Binary does not exist: " + binaryPath);
+    } else if (fileExists && !FSUtils.isFile(binaryPath)) {
+      throw new GenericException("Looking for a binary but found something else");
+    }
 
-      if (!fileExists && !createIfNotExists) {
-        throw new NotFoundException("Binary does not exist: " + binaryPath);
-      } else if (fileExists && !FSUtils.isFile(binaryPath)) {
-        throw new GenericException("Looking for a binary but found something else");
-      } else {
-        try {
-          payload.writeToPath(binaryPath);
-        } catch (IOException e) {
-          throw new GenericException("Could not update binary content", e);
-        }
+    if (asReference) {
+      try {
+        return createReference(storagePath, binaryPath, payload, true);
+      } catch (FileAlreadyExistsException e) {
+        throw new GenericException("Could not update binary content", e);
+      }
+    } else {
+      try {
+        // the new content is written to a temporary file and moved into place,
+        // so the binary is never partially written and content shared with a
+        // blob (which is read-only) is never written in place
+        FSUtils.safeUpdate(payload, binaryPath, tempPath);
+      } catch (IOException e) {
+        throw new GenericException("Could not update binary content", e);
+      } finally {
+        invalidate(binaryPath);
       }
 
-      Resource resource = FSUtils.convertPathToResource(basePath, binaryPath);
+      Resource resource = getResource(binaryPath);
       if (resource instanceof Binary) {
         return (DefaultBinary) resource;
       } else {
@@ -413,7 +572,7 @@ public class FileStorageService implements StorageService {
   public Binary getBinary(StoragePath storagePath)
     throws RequestNotValidException, NotFoundException, GenericException {
     Path binaryPath = FSUtils.getEntityPath(basePath, storagePath);
-    Resource resource = FSUtils.convertPathToResource(basePath, binaryPath);
+    Resource resource = getResource(binaryPath);
     if (resource instanceof Binary) {
       return (Binary) resource;
     } else {
@@ -424,7 +583,11 @@ public class FileStorageService implements StorageService {
   @Override
   public void deleteResource(StoragePath storagePath) throws NotFoundException, GenericException {
     Path resourcePath = FSUtils.getEntityPath(basePath, storagePath);
-    trash(resourcePath);
+    try {
+      trash(resourcePath);
+    } finally {
+      invalidateTree(resourcePath);
+    }
 
     // cleanup history
     deleteAllBinaryVersionsUnder(storagePath);
@@ -438,25 +601,135 @@ public class FileStorageService implements StorageService {
   public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
-    if (fromService instanceof FileStorageService) {
-      Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
+    StorageService sourceService = StorageServiceUtils.unwrap(fromService);
+    if (sourceService instanceof FileStorageService) {
+      Path sourcePath = ((FileStorageService) sourceService).resolve(fromStoragePath);
       Path targetPath = FSUtils.getEntityPath(basePath, toStoragePath);
-      FSUtils.copy(sourcePath, targetPath, false);
-
+      try {
+        if (deduplicate) {
+          copyAsReference(sourcePath, targetPath);
+        } else {
+          FSUtils.copy(sourcePath, targetPath, false, getCopier(sourcePath));
+        }
+      } finally {
+        // the source may now be linked to the copy (or to a blob)
+        ((FileStorageService) sourceService).invalidateTree(sourcePath);
+        invalidateTree(targetPath);
+      }
     } else {
       Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
       StorageServiceUtils.copyBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
     }
   }
 
+  private void copyAsReference(Path sourcePath, Path targetPath) throws AlreadyExistsException, GenericException {
+    if (FSUtils.exists(targetPath)) {
+      throw new AlreadyExistsException("Cannot copy because target path already exists: " + targetPath);
+    }
+
+    // files of other storages (e.g. a submission) are not made read-only
+    boolean adoptSource = sourcePath.startsWith(basePath);
+    try {
+      if (FSUtils.isDirectory(sourcePath)) {
+        blobStore.linkTree(sourcePath, targetPath, adoptSource);
+      } else {
+        blobStore.link(sourcePath, targetPath, adoptSource, false);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Could not copy {} as reference, copying its content instead", sourcePath, e);
+      FSUtils.deletePathQuietly(targetPath);
+      FSUtils.copy(sourcePath, targetPath, false, getCopier(sourcePath));
+    }
+  }
+
+  private FSCopier getCopier(Path sourcePath) {
+    // read-only files of other storages (e.g. a submission) may still change
+    return sourcePath.startsWith(basePath) ? copier : foreignCopier;
+  }
+
+  private Binary createReference(StoragePath storagePath, Path binPath, ContentPayload payload,
+    boolean replaceExisting) throws GenericException, FileAlreadyExistsException {
+    if (blobStore == null) {
+      throw new GenericException("Binaries as reference are not supported by the file system of " + basePath);
+    }
+
+    try {
+      String sha256 = blobStore.link(payload, binPath, replaceExisting);
+      ContentPayload newPayload = new FSPathContentPayload(binPath);
+      Long sizeInBytes = Files.size(binPath);
+      boolean isReference = true;
+      Map<String, String> contentDigest = new HashMap<>();
+      contentDigest.put(RodaConstants.SHA256, sha256);
+
+      return new DefaultBinary(storagePath, newPayload, sizeInBytes, isReference, contentDigest);
+    } catch (FileAlreadyExistsException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new GenericException("Could not create binary", e);
+    } finally {
+      invalidate(binPath);
+    }
+  }
+
+  private Resource getResource(Path path) throws RequestNotValidException, NotFoundException, GenericException {
+    if (attributeCache == null) {
+      return FSUtils.convertPathToResource(basePath, path);
+    }
+
+    try {
+      return FSUtils.convertPathToResource(basePath, path, attributeCache.get(path));
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Cannot find file or directory at " + path);
+    } catch (IOException e) {
+      throw new GenericException("Could not get file attributes", e);
+    }
+  }
+
+  private void invalidate(Path path) {
+    if (attributeCache != null) {
+      attributeCache.invalidate(path);
+    }
+  }
+
+  private void invalidateTree(Path path) {
+    if (attributeCache != null) {
+      attributeCache.invalidateTree(path);
+    }
+  }
+
+  /**
+   * Removes the content no longer referenced by any binary (or binary version)
+   * from the content addressed store. Binaries in the trash still reference
+   * their content.
+   * 
+   * @return the number of bytes freed
+   */
+  public long collectGarbage() throws GenericException {
+    if (blobStore == null) {
+      return 0;
+    }
+
+    try {
+      return blobStore.collectGarbage();
+    } catch (IOException e) {
+      throw new GenericException("Could not collect garbage from the content addressed store", e);
+    }
+  }
+
   @Override
   public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
-    if (fromService instanceof FileStorageService) {
-      Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
+    StorageService sourceService = StorageServiceUtils.unwrap(fromService);
+    if (sourceService instanceof FileStorageService) {
+      Path sourcePath = ((FileStorageService) sourceService).resolve(fromStoragePath);
       Path targetPath = FSUtils.getEntityPath(basePath, toStoragePath);
-      FSUtils.move(sourcePath, targetPath, false);
+      try {
+        FSUtils.move(sourcePath, targetPath, false);
+      } finally {
+        ((FileStorageService) sourceService).invalidateTree(sourcePath);
+        invalidateTree(targetPath);
+      }
     } else {
       Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
       StorageServiceUtils.moveBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
@@ -495,7 +768,8 @@ public class FileStorageService implements StorageService {
 
       @Override
       public void close() throws IOException {
-        // nothing to do
+        // the resource may have been changed
+        invalidateTree(FSUtils.getEntityPath(basePath, storagePath));
       }
     };
   }
@@ -615,7 +889,12 @@ public class FileStorageService implements StorageService {
       }
 
       // writing file
-      Files.copy(binPath, dataPath);
+      if (deduplicate) {
+        blobStore.link(binPath, dataPath, true, false);
+        invalidate(binPath);
+      } else {
+        Files.copy(binPath, dataPath);
+      }
 
       // Creating metadata
       DefaultBinaryVersion b = new DefaultBinaryVersion();
@@ -657,9 +936,15 @@ public class FileStorageService implements StorageService {
 
     try {
       // writing file
-      Files.copy(binVersionPath, binPath, StandardCopyOption.REPLACE_EXISTING);
+      if (deduplicate) {
+        blobStore.link(binVersionPath, binPath, true, true);
+      } else {
+        FSUtils.safeUpdate(new FSPathContentPayload(binVersionPath), binPath, tempPath);
+      }
     } catch (IOException e) {
       throw new GenericException("Could not create binary", e);
+    } finally {
+      invalidate(binPath);
     }
 
   }
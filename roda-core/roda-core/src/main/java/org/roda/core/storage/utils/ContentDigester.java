@@ -0,0 +1,242 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.fs.FSPathContentPayload;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Single-pass digest engine: reads content only once and feeds every requested
+ * {@link MessageDigest} with the same bytes.
+ *
+ * Small files (and non file based payloads) are read through a pool of direct
+ * buffers; large files are read through sliding memory mapped windows whose
+ * digests are updated concurrently.
+ */
+public final class ContentDigester {
+
+  private static final int BUFFER_SIZE = 1048576;
+  private static final int BUFFER_POOL_SIZE = 16;
+  private static final long MAPPED_WINDOW_SIZE = 64L * 1048576L;
+  private static final long MAPPED_THRESHOLD = MAPPED_WINDOW_SIZE;
+
+  private static final BlockingQueue<ByteBuffer> BUFFER_POOL = new ArrayBlockingQueue<>(BUFFER_POOL_SIZE);
+  private static final ExecutorService DIGEST_EXECUTOR = Executors
+    .newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+      Thread thread = new Thread(r, "content-digester");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  private static Meter bytesMeter = null;
+  private static Timer digestTimer = null;
+
+  /** Private empty constructor */
+  private ContentDigester() {
+    // do nothing
+  }
+
+  /**
+   * Registers the metrics (digested bytes per second and time per digest
+   * operation) in the provided registry.
+   */
+  public static void initializeMetrics(MetricRegistry metrics) {
+    if (metrics != null) {
+      bytesMeter = metrics.meter(MetricRegistry.name(ContentDigester.class, "bytes"));
+      digestTimer = metrics.timer(MetricRegistry.name(ContentDigester.class, "digests"));
+    }
+  }
+
+  /**
+   * Computes the digests of a content payload, using the file system path
+   * directly when the payload is backed by one.
+   *
+   * @return a map from algorithm to lower case hexadecimal digest
+   */
+  public static Map<String, String> digest(ContentPayload payload, Collection<String> algorithms)
+    throws IOException, NoSuchAlgorithmException {
+    if (payload instanceof FSPathContentPayload) {
+      return digest(((FSPathContentPayload) payload).getPath(), algorithms);
+    } else {
+      try (InputStream inputStream = payload.createInputStream()) {
+        return digest(inputStream, algorithms);
+      }
+    }
+  }
+
+  /**
+   * Computes the digests of a file reading it only once.
+   *
+   * @return a map from algorithm to lower case hexadecimal digest
+   */
+  public static Map<String, String> digest(Path path, Collection<String> algorithms)
+    throws IOException, NoSuchAlgorithmException {
+    Map<String, MessageDigest> digestors = createDigestors(algorithms);
+    long start = System.nanoTime();
+    long bytes;
+
+    try (FileChannel channel = FileChannel.open(path)) {
+      long size = channel.size();
+      if (size >= MAPPED_THRESHOLD) {
+        bytes = updateMapped(channel, size, digestors.values());
+      } else {
+        bytes = updateBuffered(channel, digestors.values());
+      }
+    }
+
+    return finish(digestors, bytes, start);
+  }
+
+  /**
+   * Computes the digests of a stream reading it only once. The stream is not
+   * closed.
+   *
+   * @return a map from algorithm to lower case hexadecimal digest
+   */
+  public static Map<String, String> digest(InputStream inputStream, Collection<String> algorithms)
+    throws IOException, NoSuchAlgorithmException {
+    Map<String, MessageDigest> digestors = createDigestors(algorithms);
+    long start = System.nanoTime();
+    long bytes = updateBuffered(Channels.newChannel(inputStream), digestors.values());
+    return finish(digestors, bytes, start);
+  }
+
+  private static Map<String, MessageDigest> createDigestors(Collection<String> algorithms)
+    throws NoSuchAlgorithmException {
+    Map<String, MessageDigest> digestors = new LinkedHashMap<>();
+    for (String algorithm : algorithms) {
+      if (!digestors.containsKey(algorithm)) {
+        digestors.put(algorithm, MessageDigest.getInstance(algorithm));
+      }
+    }
+    return digestors;
+  }
+
+  private static long updateBuffered(ReadableByteChannel channel, Collection<MessageDigest> digestors)
+    throws IOException {
+    long bytes = 0;
+    ByteBuffer buffer = acquireBuffer();
+    try {
+      int read;
+      while ((read = channel.read(buffer)) != -1) {
+        if (read == 0) {
+          continue;
+        }
+        buffer.flip();
+        for (MessageDigest digestor : digestors) {
+          buffer.mark();
+          digestor.update(buffer);
+          buffer.reset();
+        }
+        bytes += buffer.remaining();
+        buffer.clear();
+      }
+    } finally {
+      releaseBuffer(buffer);
+    }
+    return bytes;
+  }
+
+  private static long updateMapped(FileChannel channel, long size, Collection<MessageDigest> digestors)
+    throws IOException {
+    long position = 0;
+    while (position < size) {
+      long windowSize = Math.min(size - position, MAPPED_WINDOW_SIZE);
+      MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+      if (digestors.size() == 1) {
+        digestors.iterator().next().update(window);
+      } else {
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+        for (MessageDigest digestor : digestors) {
+          ByteBuffer view = window.duplicate();
+          updates.add(CompletableFuture.runAsync(() -> digestor.update(view), DIGEST_EXECUTOR));
+        }
+
+        try {
+          CompletableFuture.allOf(updates.toArray(new CompletableFuture[updates.size()])).join();
+        } catch (CompletionException e) {
+          throw new IOException("Error updating content digest", e.getCause());
+        }
+      }
+
+      position += windowSize;
+    }
+    return position;
+  }
+
+  private static Map<String, String> finish(Map<String, MessageDigest> digestors, long bytes, long start) {
+    Map<String, String> ret = new HashMap<>();
+    for (Entry<String, MessageDigest> entry : digestors.entrySet()) {
+      ret.put(entry.getKey(), toHexString(entry.getValue().digest()));
+    }
+
+    if (bytesMeter != null) {
+      bytesMeter.mark(bytes);
+    }
+    if (digestTimer != null) {
+      digestTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    return ret;
+  }
+
+  private static ByteBuffer acquireBuffer() {
+    ByteBuffer buffer = BUFFER_POOL.poll();
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    return buffer;
+  }
+
+  private static void releaseBuffer(ByteBuffer buffer) {
+    buffer.clear();
+    BUFFER_POOL.offer(buffer);
+  }
+
+  public static String toHexString(byte[] bytes) {
+    StringBuilder hexString = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      String hexInt = Integer.toHexString(0xFF & b);
+      if (hexInt.length() == 1) {
+        hexString.append('0');
+      }
+      hexString.append(hexInt);
+    }
+    return hexString.toString();
+  }
+
+}
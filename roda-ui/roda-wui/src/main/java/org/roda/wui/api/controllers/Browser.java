@@ -1741,6 +1741,8 @@ public class Browser extends RodaWuiController {
     try {
       List<String> fileFields = new ArrayList<>(RodaConstants.FILE_FIELDS_TO_RETURN);
       fileFields.add(RodaConstants.FILE_ISDIRECTORY);
+      // the fixity is used to tag the content
+      fileFields.add(RodaConstants.FILE_HASH);
       file = BrowserHelper.retrieve(IndexedFile.class, fileUUID, fileFields);
       controllerAssistant.checkObjectPermissions(user, file, PermissionType.READ);
 
@@ -37,6 +37,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.custommonkey.xmlunit.Diff;
 import org.custommonkey.xmlunit.XMLUnit;
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.BinaryConsumesOutputStream;
 import org.roda.core.common.ClassificationPlanUtils;
 import org.roda.core.common.ConsumesOutputStream;
 import org.roda.core.common.DownloadUtils;
@@ -134,6 +135,7 @@ import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.plugins.plugins.characterization.SiegfriedPlugin;
 import org.roda.core.plugins.plugins.ingest.AutoAcceptSIPPlugin;
@@ -577,8 +579,15 @@ public class BrowserHelper {
   protected static <T extends IsIndexed> IndexResult<T> find(Class<T> returnClass, Filter filter, Sorter sorter,
     Sublist sublist, Facets facets, User user, boolean justActive, List<String> fieldsToReturn)
     throws GenericException, RequestNotValidException {
-    return RodaCoreFactory.getIndexService().find(returnClass, filter, sorter, sublist, facets, user, justActive,
-      fieldsToReturn);
+    IndexResult<T> ret = RodaCoreFactory.getIndexService().find(returnClass, filter, sorter, sublist, facets, user,
+      justActive, fieldsToReturn);
+    if (Job.class.equals(returnClass)) {
+      // running jobs only persist their counters from time to time
+      for (T job : ret.getResults()) {
+        JobsHelper.applyLiveJobStats((Job) job);
+      }
+    }
+    return ret;
   }
 
   protected static <T extends IsIndexed> IterableIndexResult<T> findAll(final Class<T> returnClass, final Filter filter,
@@ -594,7 +603,12 @@ public class BrowserHelper {
 
   protected static <T extends IsIndexed> T retrieve(Class<T> returnClass, String id, List<String> fieldsToReturn)
     throws GenericException, NotFoundException, RequestNotValidException {
-    return RodaCoreFactory.getIndexService().retrieve(returnClass, id, fieldsToReturn);
+    T ret = RodaCoreFactory.getIndexService().retrieve(returnClass, id, fieldsToReturn);
+    if (ret instanceof Job) {
+      // running jobs only persist their counters from time to time
+      JobsHelper.applyLiveJobStats((Job) ret);
+    }
+    return ret;
   }
 
   protected static <T extends IsIndexed> void commit(Class<T> returnClass) throws GenericException, NotFoundException {
@@ -1815,39 +1829,18 @@ public class BrowserHelper {
       iFile.getId());
 
     if (!iFile.isDirectory() && RodaConstants.API_QUERY_VALUE_ACCEPT_FORMAT_BIN.equals(acceptFormat)) {
-      final String filename;
-      final String mediaType;
-      final ConsumesOutputStream stream;
-
       StorageService storage = RodaCoreFactory.getStorageService();
       Binary representationFileBinary = storage.getBinary(filePath);
-      filename = representationFileBinary.getStoragePath().getName();
-      mediaType = MimeTypeHelper.getContentType(filename, RodaConstants.MEDIA_TYPE_WILDCARD);
-
-      stream = new ConsumesOutputStream() {
+      String filename = representationFileBinary.getStoragePath().getName();
+      String mediaType = MimeTypeHelper.getContentType(filename, RodaConstants.MEDIA_TYPE_WILDCARD);
 
-        @Override
-        public String getMediaType() {
-          return acceptFormat;
-        }
-
-        @Override
-        public String getFileName() {
-          return filename;
-        }
-
-        @Override
-        public void consumeOutputStream(OutputStream out) throws IOException {
-          InputStream fileInputStream = null;
-          try {
-            fileInputStream = representationFileBinary.getContent().createInputStream();
-            IOUtils.copy(fileInputStream, out);
-          } finally {
-            IOUtils.closeQuietly(fileInputStream);
-          }
-        }
-      };
-      return new StreamResponse(filename, mediaType, stream);
+      try {
+        ConsumesOutputStream stream = new BinaryConsumesOutputStream(representationFileBinary, filename,
+          acceptFormat, getFixityDigest(iFile.getHash()));
+        return new StreamResponse(filename, mediaType, stream);
+      } catch (IOException e) {
+        throw new GenericException("Error reading file " + filePath, e);
+      }
     } else if (iFile.isDirectory() && (RodaConstants.API_QUERY_VALUE_ACCEPT_FORMAT_ZIP.equals(acceptFormat)
       || RodaConstants.API_QUERY_VALUE_ACCEPT_FORMAT_BIN.equals(acceptFormat))) {
       Directory directory = RodaCoreFactory.getStorageService().getDirectory(filePath);
@@ -1862,6 +1855,19 @@ public class BrowserHelper {
     }
   }
 
+  /**
+   * @return the digest of the first fixity of a file, as indexed from its
+   *         PREMIS file (i.e. "digest (algorithm[, originator])"), or null if
+   *         there is none
+   */
+  private static String getFixityDigest(List<String> hashes) {
+    String ret = null;
+    if (hashes != null && !hashes.isEmpty() && StringUtils.isNotBlank(hashes.get(0))) {
+      ret = StringUtils.substringBefore(hashes.get(0), " ").trim();
+    }
+    return ret;
+  }
+
   public static DescriptiveMetadata createOrUpdateAIPDescriptiveMetadataFile(String aipId, String representationId,
     String metadataId, String metadataType, String metadataVersion, Map<String, String> properties, InputStream is,
     boolean create) throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException,
@@ -3036,35 +3042,19 @@ public class BrowserHelper {
       RodaConstants.DIPFILE_FIELDS_TO_RETURN);
 
     if (!iFile.isDirectory() && RodaConstants.API_QUERY_VALUE_ACCEPT_FORMAT_BIN.equals(acceptFormat)) {
-      final String filename;
-      final String mediaType;
-      final ConsumesOutputStream stream;
-
       StorageService storage = RodaCoreFactory.getStorageService();
-      Binary representationFileBinary = storage.getBinary(ModelUtils.getDIPFileStoragePath(iFile));
-      filename = representationFileBinary.getStoragePath().getName();
-      mediaType = RodaConstants.MEDIA_TYPE_WILDCARD;
-
-      stream = new ConsumesOutputStream() {
-
-        @Override
-        public String getMediaType() {
-          return acceptFormat;
-        }
-
-        @Override
-        public String getFileName() {
-          return filename;
-        }
+      StoragePath filePath = ModelUtils.getDIPFileStoragePath(iFile);
+      Binary representationFileBinary = storage.getBinary(filePath);
+      String filename = representationFileBinary.getStoragePath().getName();
+      String mediaType = RodaConstants.MEDIA_TYPE_WILDCARD;
 
-        @Override
-        public void consumeOutputStream(OutputStream out) throws IOException {
-          try (InputStream fileInputStream = representationFileBinary.getContent().createInputStream()) {
-            IOUtils.copy(fileInputStream, out);
-          }
-        }
-      };
-      return new StreamResponse(filename, mediaType, stream);
+      try {
+        ConsumesOutputStream stream = new BinaryConsumesOutputStream(representationFileBinary, filename,
+          acceptFormat);
+        return new StreamResponse(filename, mediaType, stream);
+      } catch (IOException e) {
+        throw new GenericException("Error reading file " + filePath, e);
+      }
     } else if (iFile.isDirectory() && (RodaConstants.API_QUERY_VALUE_ACCEPT_FORMAT_ZIP.equals(acceptFormat)
       || RodaConstants.API_QUERY_VALUE_ACCEPT_FORMAT_BIN.equals(acceptFormat))) {
       StoragePath filePath = ModelUtils.getDIPFileStoragePath(iFile);
@@ -10,6 +10,7 @@ package org.roda.wui.api.controllers;
 import java.util.List;
 import java.util.SortedMap;
 
+import org.roda.core.common.PrometheusTextFormat;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.v2.log.LogEntry.LOG_ENTRY_STATE;
 import org.roda.core.data.v2.user.User;
@@ -48,4 +49,15 @@ public class Metrics extends RodaWuiController {
     controllerAssistant.registerAction(user, LOG_ENTRY_STATE.SUCCESS);
     return metrics;
   }
+
+  public static String getMetricsInPrometheusFormat(User user) throws AuthorizationDeniedException {
+    ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    // delegate (not registered in the action log as it is periodically
+    // scraped)
+    return PrometheusTextFormat.toString(RodaWuiController.getMetricRegistry());
+  }
 }
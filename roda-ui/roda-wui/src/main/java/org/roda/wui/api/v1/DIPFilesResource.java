@@ -22,6 +22,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.xml.transform.TransformerException;
 
@@ -96,7 +97,7 @@ public class DIPFilesResource {
   public Response retrieve(
     @ApiParam(value = "The UUID of the existing DIP file", required = true) @PathParam(RodaConstants.API_PATH_PARAM_DIP_FILE_UUID) String dipFileUUID,
     @ApiParam(value = "Choose format in which to get the file", allowableValues = RodaConstants.API_GET_FILE_MEDIA_TYPES) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat,
-    @QueryParam(RodaConstants.API_QUERY_KEY_INLINE) boolean inline) throws RODAException {
+    @QueryParam(RodaConstants.API_QUERY_KEY_INLINE) boolean inline, @Context Request req) throws RODAException {
     String mediaType = ApiUtils.getMediaType(acceptFormat, request);
 
     // get user
@@ -109,7 +110,7 @@ public class DIPFilesResource {
       ObjectResponse<DIPFile> file = (ObjectResponse<DIPFile>) efile;
       return Response.ok(file.getObject(), mediaType).build();
     } else {
-      return ApiUtils.okResponse((StreamResponse) efile, inline);
+      return ApiUtils.okResponse((StreamResponse) efile, inline, req, request);
     }
   }
 
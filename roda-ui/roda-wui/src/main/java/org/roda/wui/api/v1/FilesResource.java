@@ -23,6 +23,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.xml.transform.TransformerException;
 
@@ -102,7 +103,7 @@ public class FilesResource {
   public Response retrieve(
     @ApiParam(value = "The UUID of the existing file", required = true) @PathParam(RodaConstants.API_PATH_PARAM_FILE_UUID) String fileUUID,
     @ApiParam(value = "Choose format in which to get the file", allowableValues = RodaConstants.API_GET_FILE_MEDIA_TYPES) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat,
-    @QueryParam(RodaConstants.API_QUERY_KEY_INLINE) boolean inline) throws RODAException {
+    @QueryParam(RodaConstants.API_QUERY_KEY_INLINE) boolean inline, @Context Request req) throws RODAException {
     String mediaType = ApiUtils.getMediaType(acceptFormat, request);
 
     // get user
@@ -115,7 +116,7 @@ public class FilesResource {
       ObjectResponse<org.roda.core.data.v2.ip.File> file = (ObjectResponse<org.roda.core.data.v2.ip.File>) efile;
       return Response.ok(file.getObject(), mediaType).build();
     } else {
-      return ApiUtils.okResponse((StreamResponse) efile, inline);
+      return ApiUtils.okResponse((StreamResponse) efile, inline, req, request);
     }
   }
 
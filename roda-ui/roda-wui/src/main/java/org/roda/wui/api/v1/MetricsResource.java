@@ -18,6 +18,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.roda.core.common.PrometheusTextFormat;
 import org.roda.core.common.UserUtility;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.RODAException;
@@ -61,4 +62,19 @@ public class MetricsResource {
     return Response.ok(metrics, mediaType).build();
   }
 
+  @GET
+  @Path("/prometheus")
+  @Produces({PrometheusTextFormat.CONTENT_TYPE})
+  @ApiOperation(value = "Get all RODA metrics in the Prometheus text format", notes = "Get all RODA metrics in the Prometheus text exposition format (to be scraped by a Prometheus server)", response = String.class)
+  @ApiResponses(value = {@ApiResponse(code = 200, message = "Successful response", response = String.class)})
+
+  public Response getMetricsInPrometheusFormat() throws RODAException {
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    String metrics = Metrics.getMetricsInPrometheusFormat(user);
+    return Response.ok(metrics, PrometheusTextFormat.CONTENT_TYPE).build();
+  }
+
 }
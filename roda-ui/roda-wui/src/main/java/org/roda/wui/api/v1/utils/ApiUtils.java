@@ -11,6 +11,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -21,12 +24,16 @@ import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
 import javax.xml.transform.TransformerException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.BinaryConsumesOutputStream;
 import org.roda.core.common.ConsumesOutputStream;
 import org.roda.core.common.DownloadUtils;
 import org.roda.core.common.EntityResponse;
@@ -77,6 +84,11 @@ public class ApiUtils {
   private static final String CONTENT_DISPOSITION_FILENAME_ARGUMENT = "filename=";
   private static final String CONTENT_DISPOSITION_INLINE = "inline; ";
   private static final String CONTENT_DISPOSITION_ATTACHMENT = "attachment; ";
+  private static final String HEADER_RANGE = "Range";
+  private static final String HEADER_IF_RANGE = "If-Range";
+  private static final String HEADER_CONTENT_RANGE = "Content-Range";
+  private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+  private static final String RANGE_UNIT_BYTES = "bytes";
 
   private ApiUtils() {
     // do nothing
@@ -223,6 +235,102 @@ public class ApiUtils {
       .build();
   }
 
+  /**
+   * Response with the content of a binary supporting conditional requests
+   * (If-None-Match, If-Modified-Since, ...) and byte ranges (Range and
+   * If-Range), so that downloads can be resumed and media can be seeked. Other
+   * streams are sent whole, as in {@link #okResponse(StreamResponse, boolean)}.
+   */
+  public static Response okResponse(StreamResponse streamResponse, boolean inline, Request request,
+    HttpServletRequest servletRequest) {
+    if (!(streamResponse.getStream() instanceof BinaryConsumesOutputStream)) {
+      return okResponse(streamResponse, inline);
+    }
+
+    BinaryConsumesOutputStream stream = (BinaryConsumesOutputStream) streamResponse.getStream();
+    EntityTag tag = stream.getEntityTag() != null ? new EntityTag(stream.getEntityTag()) : null;
+    Date lastModified = stream.getLastModified();
+    long size = stream.getSize();
+
+    // cached copies must always be revalidated as permissions may change
+    CacheControl cacheControl = new CacheControl();
+    cacheControl.setPrivate(true);
+    cacheControl.setNoCache(true);
+
+    ResponseBuilder builder = evaluatePreconditions(request, lastModified, tag);
+    if (builder != null) {
+      // not modified or precondition failed
+      return builder.cacheControl(cacheControl).tag(tag).lastModified(lastModified).build();
+    }
+
+    ByteRange range = null;
+    if (size != BinaryConsumesOutputStream.UNKNOWN_SIZE
+      && isRangeApplicable(servletRequest.getHeader(HEADER_IF_RANGE), tag, lastModified)) {
+      try {
+        range = ByteRange.parse(servletRequest.getHeader(HEADER_RANGE), size);
+      } catch (ByteRange.UnsatisfiableRangeException e) {
+        return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+          .header(HEADER_CONTENT_RANGE, ByteRange.unsatisfiableContentRange(size)).build();
+      }
+    }
+
+    if (range == null) {
+      StreamingOutput so = output -> stream.consumeOutputStream(output);
+      builder = Response.ok(so, streamResponse.getMediaType());
+      if (size != BinaryConsumesOutputStream.UNKNOWN_SIZE) {
+        builder.header(HttpHeaders.CONTENT_LENGTH, size);
+      }
+    } else {
+      final ByteRange partial = range;
+      StreamingOutput so = output -> stream.consumeOutputStream(output, partial.getStart(), partial.getLength());
+      builder = Response.status(Status.PARTIAL_CONTENT).entity(so).type(streamResponse.getMediaType())
+        .header(HEADER_CONTENT_RANGE, partial.toContentRange(size))
+        .header(HttpHeaders.CONTENT_LENGTH, partial.getLength());
+    }
+
+    return builder.header(HEADER_ACCEPT_RANGES, RANGE_UNIT_BYTES)
+      .header(HttpHeaders.CONTENT_DISPOSITION,
+        contentDisposition(inline) + CONTENT_DISPOSITION_FILENAME_ARGUMENT + "\"" + streamResponse.getFilename() + "\"")
+      .cacheControl(cacheControl).tag(tag).lastModified(lastModified).build();
+  }
+
+  private static ResponseBuilder evaluatePreconditions(Request request, Date lastModified, EntityTag tag) {
+    ResponseBuilder ret = null;
+    if (tag != null && lastModified != null) {
+      ret = request.evaluatePreconditions(lastModified, tag);
+    } else if (tag != null) {
+      ret = request.evaluatePreconditions(tag);
+    } else if (lastModified != null) {
+      ret = request.evaluatePreconditions(lastModified);
+    }
+    return ret;
+  }
+
+  /**
+   * A range must only be sent if the If-Range validator (a strong entity tag
+   * or a date) matches the current content
+   */
+  private static boolean isRangeApplicable(String ifRange, EntityTag tag, Date lastModified) {
+    if (StringUtils.isBlank(ifRange)) {
+      return true;
+    }
+
+    String validator = ifRange.trim();
+    if (validator.startsWith("\"") || validator.startsWith("W/")) {
+      // strong comparison, weak entity tags never match
+      return tag != null && validator.equals("\"" + tag.getValue() + "\"");
+    } else if (lastModified != null) {
+      try {
+        return ZonedDateTime.parse(validator, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+          .toEpochMilli() == lastModified.getTime();
+      } catch (DateTimeParseException e) {
+        return false;
+      }
+    } else {
+      return false;
+    }
+  }
+
   private static String contentDisposition(boolean inline) {
     return inline ? CONTENT_DISPOSITION_INLINE : CONTENT_DISPOSITION_ATTACHMENT;
   }
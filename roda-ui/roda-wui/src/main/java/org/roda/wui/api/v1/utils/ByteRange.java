@@ -0,0 +1,123 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.wui.api.v1.utils;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Range of bytes of a HTTP Range request (RFC 7233). Only single ranges are
+ * supported, requests with several ranges are answered with the whole content
+ * (as allowed by the RFC).
+ */
+public final class ByteRange {
+  private static final String BYTES_UNIT = "bytes=";
+
+  private final long start;
+  private final long end;
+
+  private ByteRange(long start, long end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @return the position of the first byte
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * @return the position of the last byte (inclusive)
+   */
+  public long getEnd() {
+    return end;
+  }
+
+  public long getLength() {
+    return end - start + 1;
+  }
+
+  public String toContentRange(long size) {
+    return "bytes " + start + "-" + end + "/" + size;
+  }
+
+  public static String unsatisfiableContentRange(long size) {
+    return "bytes */" + size;
+  }
+
+  /**
+   * Thrown when a valid range does not overlap the content
+   */
+  public static class UnsatisfiableRangeException extends Exception {
+    private static final long serialVersionUID = 4590512390366741593L;
+
+    public UnsatisfiableRangeException(String range) {
+      super("Range not satisfiable: " + range);
+    }
+  }
+
+  /**
+   * @param range
+   *          value of the Range header
+   * @param size
+   *          size of the content
+   * @return the range or null if the header must be ignored (i.e. it is
+   *         missing, syntactically invalid, of another unit or has several
+   *         ranges)
+   * @throws UnsatisfiableRangeException
+   *           if the range starts after the end of the content or is an
+   *           empty suffix
+   */
+  public static ByteRange parse(String range, long size) throws UnsatisfiableRangeException {
+    if (StringUtils.isBlank(range) || !range.startsWith(BYTES_UNIT) || range.contains(",")) {
+      return null;
+    }
+
+    String spec = range.substring(BYTES_UNIT.length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+
+    String first = spec.substring(0, dash).trim();
+    String last = spec.substring(dash + 1).trim();
+    // positions are unsigned digits, so e.g. "--5" or "+1-2" are ignored
+    if ((!first.isEmpty() && !StringUtils.isNumeric(first)) || (!last.isEmpty() && !StringUtils.isNumeric(last))
+      || (first.isEmpty() && last.isEmpty())) {
+      return null;
+    }
+
+    try {
+      ByteRange ret;
+
+      if (first.isEmpty()) {
+        // suffix range, i.e. the last bytes
+        long suffixLength = Long.parseLong(last);
+        if (suffixLength <= 0 || size == 0) {
+          throw new UnsatisfiableRangeException(range);
+        }
+        ret = new ByteRange(Math.max(0, size - suffixLength), size - 1);
+      } else {
+        long start = Long.parseLong(first);
+        long end = last.isEmpty() ? size - 1 : Long.parseLong(last);
+        if (start < 0 || end < start) {
+          return null;
+        }
+        if (start >= size) {
+          throw new UnsatisfiableRangeException(range);
+        }
+        ret = new ByteRange(start, Math.min(end, size - 1));
+      }
+
+      return ret;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.wui.api.v1.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.roda.core.common.BinaryConsumesOutputStream;
+import org.roda.core.common.StreamResponse;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSPathContentPayload;
+
+/**
+ * Tests of the byte ranges (Range and If-Range) and conditional requests
+ * (If-None-Match and If-Modified-Since) of
+ * {@link ApiUtils#okResponse(StreamResponse, boolean, javax.ws.rs.core.Request, HttpServletRequest)}.
+ */
+public class ApiUtilsRangeTest {
+  private static final String CONTENT = "0123456789";
+  private static final String DIGEST = "5d41402abc4b2a76b9719d911017c592";
+  private static final String MEDIA_TYPE = "text/plain";
+
+  private Path file;
+  private BinaryConsumesOutputStream stream;
+
+  @Before
+  public void setUp() throws IOException, RequestNotValidException {
+    file = Files.createTempFile(ApiUtilsRangeTest.class.getSimpleName(), ".txt");
+    Files.write(file, CONTENT.getBytes(StandardCharsets.US_ASCII));
+    stream = new BinaryConsumesOutputStream(new DefaultBinary(DefaultStoragePath.parse("container", "file.txt"),
+      new FSPathContentPayload(file), (long) CONTENT.length(), false, Collections.singletonMap("MD5", DIGEST)),
+      "file.txt", MEDIA_TYPE);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void testWholeContent() throws IOException {
+    Response response = get(headers());
+
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertEquals(CONTENT, body(response));
+    assertEquals("10", response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+    assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+    assertEquals(DIGEST + "-a", response.getEntityTag().getValue());
+    assertNull(response.getHeaderString("Content-Range"));
+  }
+
+  @Test
+  public void testRanges() throws IOException {
+    assertPartial(get(headers("Range", "bytes=2-5")), "2345", "bytes 2-5/10");
+    assertPartial(get(headers("Range", "bytes=7-")), "789", "bytes 7-9/10");
+    assertPartial(get(headers("Range", "bytes=-3")), "789", "bytes 7-9/10");
+    assertPartial(get(headers("Range", "bytes=8-100")), "89", "bytes 8-9/10");
+  }
+
+  @Test
+  public void testIgnoredRangesSendTheWholeContent() throws IOException {
+    for (String range : new String[] {"bytes=--5", "bytes=+1-2", "bytes=0-1,4-5", "items=0-1", "bytes=5-2"}) {
+      Response response = get(headers("Range", range));
+      assertEquals(range, Status.OK.getStatusCode(), response.getStatus());
+      assertEquals(range, CONTENT, body(response));
+    }
+  }
+
+  @Test
+  public void testUnsatisfiableRange() {
+    for (String range : new String[] {"bytes=10-", "bytes=-0"}) {
+      Response response = get(headers("Range", range));
+      assertEquals(range, Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), response.getStatus());
+      assertEquals(range, "bytes */10", response.getHeaderString("Content-Range"));
+    }
+  }
+
+  @Test
+  public void testIfRange() throws IOException {
+    String tag = "\"" + stream.getEntityTag() + "\"";
+    assertPartial(get(headers("Range", "bytes=0-1", "If-Range", tag)), "01", "bytes 0-1/10");
+    assertPartial(get(headers("Range", "bytes=0-1", "If-Range", httpDate(stream.getLastModified()))), "01",
+      "bytes 0-1/10");
+
+    // the content changed (or the validator is weak or invalid), so it is all sent
+    for (String ifRange : new String[] {"\"other\"", "W/" + tag, httpDate(new Date(0)), "not a date"}) {
+      Response response = get(headers("Range", "bytes=0-1", "If-Range", ifRange));
+      assertEquals(ifRange, Status.OK.getStatusCode(), response.getStatus());
+      assertEquals(ifRange, CONTENT, body(response));
+    }
+  }
+
+  @Test
+  public void testNotModified() throws IOException {
+    String tag = "\"" + stream.getEntityTag() + "\"";
+    assertEquals(Status.NOT_MODIFIED.getStatusCode(), get(headers("If-None-Match", tag)).getStatus());
+    assertEquals(Status.NOT_MODIFIED.getStatusCode(), get(headers("If-None-Match", "*")).getStatus());
+    assertEquals(Status.NOT_MODIFIED.getStatusCode(),
+      get(headers("If-Modified-Since", httpDate(stream.getLastModified()))).getStatus());
+    // preconditions are evaluated before the range
+    assertEquals(Status.NOT_MODIFIED.getStatusCode(),
+      get(headers("If-None-Match", tag, "Range", "bytes=0-1")).getStatus());
+
+    Response modified = get(headers("If-None-Match", "\"other\""));
+    assertEquals(Status.OK.getStatusCode(), modified.getStatus());
+    assertEquals(CONTENT, body(modified));
+    assertEquals(Status.OK.getStatusCode(), get(headers("If-Modified-Since", httpDate(new Date(0)))).getStatus());
+  }
+
+  @Test
+  public void testPreconditionFailed() {
+    assertEquals(Status.PRECONDITION_FAILED.getStatusCode(), get(headers("If-Match", "\"other\"")).getStatus());
+  }
+
+  @Test
+  public void testUnknownSizeIgnoresRanges() throws IOException, RequestNotValidException {
+    stream = new BinaryConsumesOutputStream(new DefaultBinary(DefaultStoragePath.parse("container", "file.txt"),
+      new StringContentPayload(CONTENT), null, false, null), "file.txt", MEDIA_TYPE);
+
+    Response response = get(headers("Range", "bytes=0-1"));
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertEquals(CONTENT, body(response));
+    assertNull(response.getEntityTag());
+    assertNull(response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+  }
+
+  private Response get(Map<String, String> headers) {
+    ContainerRequest request = new ContainerRequest(URI.create("http://localhost/"),
+      URI.create("http://localhost/api/v1/files/uuid"), "GET", null, new MapPropertiesDelegate());
+    headers.forEach(request::header);
+
+    HttpServletRequest servletRequest = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+        if ("getHeader".equals(method.getName())) {
+          return headers.get(args[0]);
+        }
+        throw new UnsupportedOperationException(method.getName());
+      });
+
+    return ApiUtils.okResponse(new StreamResponse("file.txt", MEDIA_TYPE, stream), false, request, servletRequest);
+  }
+
+  private static void assertPartial(Response response, String content, String contentRange) throws IOException {
+    assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+    assertEquals(content, body(response));
+    assertEquals(contentRange, response.getHeaderString("Content-Range"));
+    assertEquals(Integer.toString(content.length()), response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+    assertNotNull(response.getEntityTag());
+  }
+
+  private static String body(Response response) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(output);
+    return new String(output.toByteArray(), StandardCharsets.US_ASCII);
+  }
+
+  private static Map<String, String> headers(String... namesAndValues) {
+    Map<String, String> headers = new HashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      headers.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return headers;
+  }
+
+  private static String httpDate(Date date) {
+    return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(date.toInstant(), ZoneOffset.UTC));
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.wui.api.v1.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests of the parsing of HTTP Range headers by {@link ByteRange}.
+ */
+public class ByteRangeTest {
+  private static final long SIZE = 100;
+
+  @Test
+  public void testClosedRange() throws ByteRange.UnsatisfiableRangeException {
+    assertRange(0, 0, "bytes=0-0");
+    assertRange(10, 19, "bytes=10-19");
+    assertRange(10, 19, "bytes= 10 - 19 ");
+    // the end is limited to the content
+    assertRange(90, 99, "bytes=90-1000");
+  }
+
+  @Test
+  public void testOpenRange() throws ByteRange.UnsatisfiableRangeException {
+    assertRange(50, 99, "bytes=50-");
+    assertRange(99, 99, "bytes=99-");
+  }
+
+  @Test
+  public void testSuffixRange() throws ByteRange.UnsatisfiableRangeException {
+    assertRange(95, 99, "bytes=-5");
+    // the whole content if the suffix is longer
+    assertRange(0, 99, "bytes=-500");
+  }
+
+  @Test
+  public void testRangeAndContentDescriptions() throws ByteRange.UnsatisfiableRangeException {
+    ByteRange range = ByteRange.parse("bytes=10-19", SIZE);
+    assertEquals(10, range.getLength());
+    assertEquals("bytes 10-19/100", range.toContentRange(SIZE));
+    assertEquals("bytes */100", ByteRange.unsatisfiableContentRange(SIZE));
+  }
+
+  @Test
+  public void testIgnoredHeaders() throws ByteRange.UnsatisfiableRangeException {
+    assertIgnored(null);
+    assertIgnored("");
+    assertIgnored("  ");
+    // other units
+    assertIgnored("items=0-5");
+    assertIgnored("bytes 0-5");
+    // several ranges
+    assertIgnored("bytes=0-5,10-15");
+    // syntactically invalid
+    assertIgnored("bytes=");
+    assertIgnored("bytes=-");
+    assertIgnored("bytes=5");
+    assertIgnored("bytes=a-b");
+    assertIgnored("bytes=1-b");
+    assertIgnored("bytes=--5");
+    assertIgnored("bytes=-+5");
+    assertIgnored("bytes=+1-2");
+    assertIgnored("bytes=1--2");
+    assertIgnored("bytes=1-2-3");
+    assertIgnored("bytes=1.5-2");
+    assertIgnored("bytes=99999999999999999999-");
+    // the end before the start
+    assertIgnored("bytes=20-10");
+  }
+
+  @Test
+  public void testUnsatisfiableRanges() {
+    assertUnsatisfiable("bytes=100-", SIZE);
+    assertUnsatisfiable("bytes=100-200", SIZE);
+    assertUnsatisfiable("bytes=-0", SIZE);
+    assertUnsatisfiable("bytes=0-", 0);
+    assertUnsatisfiable("bytes=-5", 0);
+  }
+
+  private static void assertRange(long start, long end, String header) throws ByteRange.UnsatisfiableRangeException {
+    ByteRange range = ByteRange.parse(header, SIZE);
+    assertEquals(header, start, range.getStart());
+    assertEquals(header, end, range.getEnd());
+  }
+
+  private static void assertIgnored(String header) throws ByteRange.UnsatisfiableRangeException {
+    assertNull(header, ByteRange.parse(header, SIZE));
+  }
+
+  private static void assertUnsatisfiable(String header, long size) {
+    try {
+      ByteRange.parse(header, size);
+      fail("Range should not be satisfiable: " + header);
+    } catch (ByteRange.UnsatisfiableRangeException e) {
+      // expected
+    }
+  }
+}